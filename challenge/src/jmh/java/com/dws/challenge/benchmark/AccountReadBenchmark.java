@@ -0,0 +1,101 @@
+package com.dws.challenge.benchmark;
+
+import java.math.BigDecimal;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.dws.challenge.domain.Account;
+import com.dws.challenge.repository.AccountsRepositoryInMemory;
+import com.dws.challenge.service.AccountSnapshots;
+import com.dws.challenge.service.AccountsService;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+// Cost of answering GET /v1/accounts/{id} without the web layer: serializing the live account on
+// every read, against the cached JSON of its published snapshot. One writer thread keeps
+// transferring, so some reads find a new version to serialize.
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(8)
+public class AccountReadBenchmark {
+
+	private static final int ACCOUNTS = 10_000;
+
+	private final ObjectMapper objectMapper = new ObjectMapper();
+
+	private AccountsService accountsService;
+
+	private AccountSnapshots accountSnapshots;
+
+	private String[] accountIds;
+
+	private Thread writer;
+
+	@State(Scope.Thread)
+	public static class Cursor {
+
+		private final SplittableRandom random = new SplittableRandom(Thread.currentThread().threadId());
+
+		int nextIndex(int bound) {
+			return random.nextInt(bound);
+		}
+	}
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		accountsService = Services.accountsService(new AccountsRepositoryInMemory());
+		accountSnapshots = new AccountSnapshots(objectMapper, true);
+		accountsService.setAccountSnapshots(accountSnapshots);
+		accountIds = new String[ACCOUNTS];
+		for (int i = 0; i < ACCOUNTS; i++) {
+			accountIds[i] = "Id-" + i;
+			accountsService.createAccount(new Account(accountIds[i], new BigDecimal("1000000000.00")));
+		}
+
+		writer = new Thread(() -> {
+			SplittableRandom random = new SplittableRandom(1);
+			BigDecimal amount = new BigDecimal("0.01");
+			while (!Thread.currentThread().isInterrupted()) {
+				int from = random.nextInt(ACCOUNTS);
+				accountsService.amountTransfer(accountIds[from], accountIds[(from + 1) % ACCOUNTS], amount);
+			}
+		}, "benchmark-writer");
+		writer.setDaemon(true);
+		writer.start();
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws InterruptedException {
+		writer.interrupt();
+		writer.join();
+	}
+
+	@Benchmark
+	public byte[] liveAccount(Cursor cursor) throws JsonProcessingException {
+		return objectMapper.writeValueAsBytes(accountsService.getAccount(accountIds[cursor.nextIndex(ACCOUNTS)]));
+	}
+
+	@Benchmark
+	public byte[] snapshot(Cursor cursor) {
+		return accountSnapshots.json(accountsService.getAccountSnapshot(accountIds[cursor.nextIndex(ACCOUNTS)]));
+	}
+}
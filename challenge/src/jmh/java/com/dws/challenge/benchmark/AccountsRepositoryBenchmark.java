@@ -0,0 +1,109 @@
+package com.dws.challenge.benchmark;
+
+import java.math.BigDecimal;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.dws.challenge.domain.Account;
+import com.dws.challenge.repository.AccountsRepository;
+import com.dws.challenge.repository.AccountsRepositoryInMemory;
+import com.dws.challenge.repository.AccountsRepositoryOffHeap;
+
+// Lookup and insert cost of the on-heap and off-heap repositories once they hold a million or
+// more accounts. Compare the GC logs of the two implementations as well as the scores.
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = { "-Xmx4g", "-XX:MaxDirectMemorySize=4g" })
+public class AccountsRepositoryBenchmark {
+
+	@State(Scope.Benchmark)
+	public static class Filled {
+
+		@Param({ "1000000", "4000000" })
+		public int accounts;
+
+		@Param({ "IN_MEMORY", "OFF_HEAP" })
+		public String store;
+
+		AccountsRepository repository;
+
+		String[] accountIds;
+
+		@Setup(Level.Trial)
+		public void setUp() {
+			repository = newRepository(store);
+			accountIds = fill(repository, accounts);
+		}
+	}
+
+	@State(Scope.Thread)
+	public static class Cursor {
+
+		private final SplittableRandom random = new SplittableRandom(Thread.currentThread().threadId());
+
+		private long created;
+
+		int nextIndex(int bound) {
+			return random.nextInt(bound);
+		}
+	}
+
+	// Repository refilled before every iteration, so inserts always land on a map of the target size
+	@State(Scope.Benchmark)
+	public static class Growing {
+
+		@Param({ "1000000" })
+		public int accounts;
+
+		@Param({ "IN_MEMORY", "OFF_HEAP" })
+		public String store;
+
+		AccountsRepository repository;
+
+		@Setup(Level.Iteration)
+		public void setUp() {
+			repository = newRepository(store);
+			fill(repository, accounts);
+		}
+	}
+
+	@Benchmark
+	public Account getAccount(Filled filled, Cursor cursor) {
+		return filled.repository.getAccount(filled.accountIds[cursor.nextIndex(filled.accountIds.length)]);
+	}
+
+	@Benchmark
+	public void createAccount(Growing growing, Cursor cursor) {
+		growing.repository.createAccount(new Account("New-" + Thread.currentThread().threadId() + "-" + cursor.created++));
+	}
+
+	private static AccountsRepository newRepository(String store) {
+		return "OFF_HEAP".equals(store) ? new AccountsRepositoryOffHeap(1 << 20, false) : new AccountsRepositoryInMemory();
+	}
+
+	private static String[] fill(AccountsRepository repository, int accounts) {
+		String[] accountIds = new String[accounts];
+		BigDecimal balance = new BigDecimal("100.00");
+		for (int i = 0; i < accounts; i++) {
+			accountIds[i] = "Id-" + i;
+			repository.createAccount(new Account(accountIds[i], balance));
+		}
+		return accountIds;
+	}
+}
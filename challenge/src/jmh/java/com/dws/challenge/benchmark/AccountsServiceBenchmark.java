@@ -0,0 +1,139 @@
+package com.dws.challenge.benchmark;
+
+import java.math.BigDecimal;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.dws.challenge.domain.Account;
+import com.dws.challenge.repository.AccountsRepositoryInMemory;
+import com.dws.challenge.service.AccountsService;
+import com.dws.challenge.service.ShardedTransferEngine;
+import com.dws.challenge.service.TransferMode;
+import com.dws.challenge.service.TransferValidator;
+
+// Throughput of AccountsService.amountTransfer at 1, 4, 16 and 64 threads. Pairs are drawn either
+// uniformly or from a Zipf distribution, where a handful of hot accounts take most transfers.
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AccountsServiceBenchmark {
+
+	// Pairs pre-drawn per thread, so sampling stays out of the measured path
+	private static final int PAIRS_PER_THREAD = 1 << 16;
+
+	@Param({ "UNIFORM", "ZIPF" })
+	public String distribution;
+
+	@Param({ "10000" })
+	public int accounts;
+
+	@Param({ "LOCKING", "SHARDED" })
+	public TransferMode transferMode;
+
+	private AccountsService accountsService;
+
+	private ShardedTransferEngine shardedTransferEngine;
+
+	private String[] accountIds;
+
+	private final BigDecimal amount = new BigDecimal("0.01");
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		accountsService = Services.accountsService(new AccountsRepositoryInMemory());
+		accountsService.setTransferMode(transferMode);
+		if (transferMode == TransferMode.SHARDED) {
+			shardedTransferEngine = new ShardedTransferEngine(accountsService.getAccountsRepository(),
+					new TransferValidator(), 4, 4096);
+			accountsService.setShardedTransferEngine(shardedTransferEngine);
+		}
+		accountIds = new String[accounts];
+		for (int i = 0; i < accounts; i++) {
+			accountIds[i] = "Id-" + i;
+			accountsService.createAccount(new Account(accountIds[i], new BigDecimal("1000000000.00")));
+		}
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws InterruptedException {
+		if (shardedTransferEngine != null) {
+			shardedTransferEngine.shutdown();
+		}
+	}
+
+	@State(Scope.Thread)
+	public static class Pairs {
+
+		private final int[] from = new int[PAIRS_PER_THREAD];
+
+		private final int[] to = new int[PAIRS_PER_THREAD];
+
+		private int next;
+
+		@Setup(Level.Trial)
+		public void setUp(AccountsServiceBenchmark benchmark) {
+			long seed = Thread.currentThread().threadId();
+			int n = benchmark.accounts;
+			SplittableRandom uniform = new SplittableRandom(seed);
+			ZipfSampler zipf = "ZIPF".equals(benchmark.distribution) ? new ZipfSampler(n, 1.1, seed) : null;
+			for (int i = 0; i < PAIRS_PER_THREAD; i++) {
+				int a;
+				int b;
+				do {
+					a = zipf != null ? zipf.next() : uniform.nextInt(n);
+					b = zipf != null ? zipf.next() : uniform.nextInt(n);
+				} while (a == b);
+				from[i] = a;
+				to[i] = b;
+			}
+		}
+	}
+
+	@Benchmark
+	@Threads(1)
+	public void amountTransfer_1thread(Pairs pairs) {
+		transfer(pairs);
+	}
+
+	@Benchmark
+	@Threads(4)
+	public void amountTransfer_4threads(Pairs pairs) {
+		transfer(pairs);
+	}
+
+	@Benchmark
+	@Threads(16)
+	public void amountTransfer_16threads(Pairs pairs) {
+		transfer(pairs);
+	}
+
+	@Benchmark
+	@Threads(64)
+	public void amountTransfer_64threads(Pairs pairs) {
+		transfer(pairs);
+	}
+
+	private void transfer(Pairs pairs) {
+		int i = pairs.next++ & (PAIRS_PER_THREAD - 1);
+		accountsService.amountTransfer(accountIds[pairs.from[i]], accountIds[pairs.to[i]], amount);
+	}
+}
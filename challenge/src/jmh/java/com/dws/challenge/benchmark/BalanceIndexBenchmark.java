@@ -0,0 +1,94 @@
+package com.dws.challenge.benchmark;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.dws.challenge.domain.Account;
+import com.dws.challenge.domain.AccountSnapshot;
+import com.dws.challenge.repository.AccountsRepositoryInMemory;
+import com.dws.challenge.service.AccountsService;
+import com.dws.challenge.service.BalanceIndex;
+
+// Cost of keeping the balance index current. amountTransfer with the index ENABLED against
+// DISABLED is the throughput the index takes from transfers: two skip-list updates per transfer.
+// top100 and belowThreshold are the queries it serves, against 100,000 accounts.
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BalanceIndexBenchmark {
+
+	private static final int ACCOUNTS = 100_000;
+
+	@Param({ "DISABLED", "ENABLED" })
+	public String index;
+
+	private AccountsService accountsService;
+
+	private String[] accountIds;
+
+	private final BigDecimal amount = new BigDecimal("0.01");
+
+	private final BigDecimal threshold = new BigDecimal("1000.00");
+
+	@State(Scope.Thread)
+	public static class Cursor {
+
+		private final SplittableRandom random = new SplittableRandom(Thread.currentThread().threadId());
+
+		int nextIndex(int bound) {
+			return random.nextInt(bound);
+		}
+	}
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		accountsService = Services.accountsService(new AccountsRepositoryInMemory(ACCOUNTS));
+		accountsService.setBalanceIndex(new BalanceIndex("ENABLED".equals(index)));
+		accountIds = new String[ACCOUNTS];
+		SplittableRandom random = new SplittableRandom(42);
+		for (int i = 0; i < ACCOUNTS; i++) {
+			accountIds[i] = "Id-" + i;
+			accountsService.createAccount(new Account(accountIds[i], BigDecimal.valueOf(random.nextLong(1_000_000, 100_000_000), 2)));
+		}
+	}
+
+	@Benchmark
+	@Threads(4)
+	public void amountTransfer(Cursor cursor) {
+		int from = cursor.nextIndex(ACCOUNTS);
+		int to = (from + 1 + cursor.nextIndex(ACCOUNTS - 1)) % ACCOUNTS;
+		accountsService.amountTransfer(accountIds[from], accountIds[to], amount);
+	}
+
+	@Benchmark
+	@Threads(1)
+	public List<AccountSnapshot> top100() {
+		return "ENABLED".equals(index) ? accountsService.getTopAccountsByBalance(100) : List.of();
+	}
+
+	@Benchmark
+	@Threads(1)
+	public List<AccountSnapshot> belowThreshold() {
+		return "ENABLED".equals(index) ? accountsService.getAccountsByBalance(null, threshold, 100) : List.of();
+	}
+}
@@ -0,0 +1,103 @@
+package com.dws.challenge.benchmark;
+
+import java.math.BigDecimal;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.dws.challenge.domain.Account;
+import com.dws.challenge.domain.MinorUnitsAccount;
+import com.dws.challenge.repository.AccountsRepositoryInMemory;
+import com.dws.challenge.service.AccountsService;
+
+// Compares the BigDecimal balance path with the long minor-units path. Run with -prof gc to see
+// the allocation rate per operation next to the timings.
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BalanceRepresentationBenchmark {
+
+	@Param({ "false", "true" })
+	public boolean minorUnits;
+
+	private AccountsService accountsService;
+
+	private final BigDecimal amount = new BigDecimal("1.25");
+
+	private final long amountMinorUnits = 125;
+
+	private Account decimalFrom;
+
+	private Account decimalTo;
+
+	private MinorUnitsAccount minorFrom;
+
+	private MinorUnitsAccount minorTo;
+
+	private boolean forward;
+
+	@Setup
+	public void setUp() {
+		accountsService = Services.accountsService(new AccountsRepositoryInMemory());
+		accountsService.setMinorUnits(minorUnits);
+		accountsService.createAccount(new Account("Id-1", new BigDecimal("1000000.00")));
+		accountsService.createAccount(new Account("Id-2", new BigDecimal("1000000.00")));
+
+		decimalFrom = new Account("Id-3", new BigDecimal("1000000.00"));
+		decimalTo = new Account("Id-4", new BigDecimal("1000000.00"));
+		minorFrom = new MinorUnitsAccount("Id-5", 100_000_000);
+		minorTo = new MinorUnitsAccount("Id-6", 100_000_000);
+	}
+
+	// Full service call, including validation and stripe locking
+	@Benchmark
+	public void amountTransfer() {
+		forward = !forward;
+		if (forward) {
+			accountsService.amountTransfer("Id-1", "Id-2", amount);
+		} else {
+			accountsService.amountTransfer("Id-2", "Id-1", amount);
+		}
+	}
+
+	// Balance check, debit and credit alone, as done by TransferValidator and AccountsService
+	@Benchmark
+	public BigDecimal decimalArithmetic() {
+		if (decimalFrom.getBalance().compareTo(amount) < 0) {
+			throw new IllegalStateException();
+		}
+		decimalFrom.setBalance(decimalFrom.getBalance().subtract(amount));
+		decimalTo.setBalance(decimalTo.getBalance().add(amount));
+		Account swap = decimalFrom;
+		decimalFrom = decimalTo;
+		decimalTo = swap;
+		return decimalTo.getBalance();
+	}
+
+	@Benchmark
+	public long minorUnitsArithmetic() {
+		if (minorFrom.getMinorUnits() < amountMinorUnits) {
+			throw new IllegalStateException();
+		}
+		minorFrom.setMinorUnits(minorFrom.getMinorUnits() - amountMinorUnits);
+		minorTo.setMinorUnits(Math.addExact(minorTo.getMinorUnits(), amountMinorUnits));
+		MinorUnitsAccount swap = minorFrom;
+		minorFrom = minorTo;
+		minorTo = swap;
+		return minorTo.getMinorUnits();
+	}
+}
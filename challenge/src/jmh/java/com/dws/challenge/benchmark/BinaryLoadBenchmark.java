@@ -0,0 +1,203 @@
+package com.dws.challenge.benchmark;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import com.dws.challenge.ChallengeApplication;
+import com.dws.challenge.domain.Account;
+import com.dws.challenge.domain.TransferOutcome;
+import com.dws.challenge.service.AccountsService;
+import com.dws.challenge.web.BinaryProtocol;
+import com.dws.challenge.web.BinaryTransferServer;
+
+// Transfers over the binary ingress (BinaryTransferServer) against POST /v1/accounts/transferAmount
+// on the same application, on localhost, with 64 clients and the journal in GROUP_COMMIT:
+//  - rest: one JSON request at a time per client, as in RestLoadBenchmark
+//  - binary: one frame at a time per connection, so the difference is the protocol alone
+//  - binaryPipelined: 64 frames written together per connection, then their 64 responses read
+// Throughput mode reports transfers per millisecond; SampleTime mode reports the latency of an
+// invocation, which for binaryPipelined covers 64 transfers.
+//
+// ./gradlew jmh -PjmhIncludes=BinaryLoadBenchmark
+
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 10)
+@Fork(1)
+@Threads(64)
+public class BinaryLoadBenchmark {
+
+	private static final int PIPELINE_DEPTH = 64;
+
+	@Param({ "1000" })
+	public int accounts;
+
+	private ConfigurableApplicationContext context;
+
+	private HttpClient httpClient;
+
+	private URI transferUri;
+
+	private int binaryPort;
+
+	private Path journalDirectory;
+
+	@Setup(Level.Trial)
+	public void setUp() throws IOException {
+		journalDirectory = Files.createTempDirectory("binary-load");
+		// passed as command-line arguments so they take precedence over application.properties
+		context = new SpringApplicationBuilder(ChallengeApplication.class).run("--server.port=0",
+				"--accounts.binary.enabled=true", "--accounts.binary.port=0", "--accounts.journal.enabled=true",
+				"--accounts.journal.dir=" + journalDirectory, "--accounts.journal.durability=GROUP_COMMIT",
+				"--accounts.snapshot.interval-seconds=0", "--transfers.admission.enabled=false",
+				"--logging.level.com.dws.challenge=WARN");
+		final AccountsService accountsService = context.getBean(AccountsService.class);
+		for (int i = 0; i < accounts; i++) {
+			accountsService.createAccount(new Account("Id-" + i, new BigDecimal("1000000000.00")));
+		}
+		final int port = ((WebServerApplicationContext) context).getWebServer().getPort();
+		transferUri = URI.create("http://localhost:" + port + "/v1/accounts/transferAmount");
+		httpClient = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+		binaryPort = context.getBean(BinaryTransferServer.class).getPort();
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws IOException {
+		context.close();
+		try (Stream<Path> files = Files.walk(journalDirectory)) {
+			files.sorted(Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
+		}
+	}
+
+	@State(Scope.Thread)
+	public static class Client {
+
+		private static final BigDecimal AMOUNT = new BigDecimal("0.01");
+
+		private final SplittableRandom random = new SplittableRandom(Thread.currentThread().threadId());
+
+		private final ByteBuffer requests = ByteBuffer.allocateDirect(PIPELINE_DEPTH * BinaryProtocol.MAX_FRAME_LENGTH);
+
+		private final ByteBuffer responses = ByteBuffer
+				.allocateDirect(PIPELINE_DEPTH * BinaryProtocol.MAX_RESPONSE_LENGTH);
+
+		private SocketChannel channel;
+
+		private int accounts;
+
+		private long correlationId;
+
+		@Setup(Level.Trial)
+		public void connect(BinaryLoadBenchmark benchmark) throws IOException {
+			accounts = benchmark.accounts;
+			channel = SocketChannel.open(new InetSocketAddress("localhost", benchmark.binaryPort));
+			channel.socket().setTcpNoDelay(true);
+		}
+
+		@TearDown(Level.Trial)
+		public void disconnect() throws IOException {
+			channel.close();
+		}
+
+		String nextJson() {
+			final int from = random.nextInt(accounts);
+			final int to = (from + 1 + random.nextInt(accounts - 1)) % accounts;
+			return "{\"accountFrom\":\"Id-" + from + "\",\"accountTo\":\"Id-" + to + "\",\"transferAmount\":0.01}";
+		}
+
+		// Sends count transfer frames in one write and waits for their responses
+		int transfer(int count) throws IOException {
+			requests.clear();
+			for (int i = 0; i < count; i++) {
+				final int from = random.nextInt(accounts);
+				final int to = (from + 1 + random.nextInt(accounts - 1)) % accounts;
+				BinaryProtocol.writeTransfer(requests, correlationId++, "Id-" + from, "Id-" + to, AMOUNT, null);
+			}
+			requests.flip();
+			while (requests.hasRemaining()) {
+				channel.write(requests);
+			}
+
+			int completed = 0;
+			int received = 0;
+			responses.clear();
+			while (received < count) {
+				if (channel.read(responses) < 0) {
+					throw new IOException("Binary ingress closed the connection");
+				}
+				responses.flip();
+				while (responses.remaining() >= 4
+						&& responses.remaining() >= 4 + responses.getInt(responses.position())) {
+					final int start = responses.position();
+					if (responses.get(start + 4) == BinaryProtocol.STATUS_OK && BinaryProtocol.outcomeOf(
+							responses.get(start + BinaryProtocol.HEADER_LENGTH)) == TransferOutcome.COMPLETED) {
+						completed++;
+					}
+					responses.position(start + 4 + responses.getInt(start));
+					received++;
+				}
+				responses.compact();
+			}
+			if (completed != count) {
+				throw new IllegalStateException((count - completed) + " binary transfers failed");
+			}
+			return completed;
+		}
+	}
+
+	@Benchmark
+	public int rest(Client client) throws IOException, InterruptedException {
+		final HttpRequest request = HttpRequest.newBuilder(transferUri).header("Content-Type", "application/json")
+				.POST(HttpRequest.BodyPublishers.ofString(client.nextJson())).build();
+		final HttpResponse<Void> response = httpClient.send(request, HttpResponse.BodyHandlers.discarding());
+		if (response.statusCode() != 202) {
+			throw new IllegalStateException("Transfer failed with HTTP " + response.statusCode());
+		}
+		return response.statusCode();
+	}
+
+	@Benchmark
+	public int binary(Client client) throws IOException {
+		return client.transfer(1);
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(PIPELINE_DEPTH)
+	public int binaryPipelined(Client client) throws IOException {
+		return client.transfer(PIPELINE_DEPTH);
+	}
+}
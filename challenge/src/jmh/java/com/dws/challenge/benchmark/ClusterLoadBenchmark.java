@@ -0,0 +1,186 @@
+package com.dws.challenge.benchmark;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import com.dws.challenge.ChallengeApplication;
+import com.dws.challenge.domain.Account;
+import com.dws.challenge.service.AccountsService;
+import com.dws.challenge.service.ClusterRing;
+
+// End-to-end load test of a cluster of 1, 2 or 4 nodes on localhost, each a full application
+// context with its own journal (GROUP_COMMIT) and cluster log. Clients send each transfer to the
+// node owning its source account, as a client aware of the ring would. With pairs=LOCAL both
+// accounts are owned by the same node, so throughput grows with the nodes as long as cores and
+// disk keep up; with pairs=RANDOM (n-1)/n of the transfers cross nodes and pay for the two-phase
+// commit: two more HTTP calls and three forced log writes.
+//
+// All nodes run in this one JVM and share its cores, heap and disk with each other and with the
+// 512 client threads, so the numbers compare the two pairings and the cost of the two-phase
+// commit; they do not show how throughput scales with real machines.
+//
+// ./gradlew jmh -PjmhIncludes=ClusterLoadBenchmark
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 10)
+@Fork(1)
+@Threads(512)
+public class ClusterLoadBenchmark {
+
+	@Param({ "1", "2", "4" })
+	public int nodes;
+
+	@Param({ "LOCAL", "RANDOM" })
+	public String pairs;
+
+	@Param({ "1000" })
+	public int accounts;
+
+	private final List<ConfigurableApplicationContext> contexts = new ArrayList<>();
+
+	private HttpClient client;
+
+	private Path dataDirectory;
+
+	// transfer URI of each node, and the accounts each node owns
+	private URI[] transferUris;
+
+	private int[][] owned;
+
+	private int[] ownerOf;
+
+	@Setup(Level.Trial)
+	public void setUp() throws IOException {
+		dataDirectory = Files.createTempDirectory("cluster-load");
+		final List<String> urls = new ArrayList<>();
+		for (int node = 0; node < nodes; node++) {
+			// every node is given the full list up front, so the ports are picked before any starts
+			try (ServerSocket socket = new ServerSocket(0)) {
+				urls.add("http://localhost:" + socket.getLocalPort());
+			}
+		}
+
+		// node-to-node calls are only accepted with the shared secret
+		final String secret = UUID.randomUUID().toString();
+
+		final ClusterRing ring = new ClusterRing(urls, urls.get(0), 128);
+		transferUris = new URI[nodes];
+		ownerOf = new int[accounts];
+		final List<List<Integer>> ownedLists = new ArrayList<>();
+		for (int node = 0; node < nodes; node++) {
+			ownedLists.add(new ArrayList<>());
+		}
+		for (int i = 0; i < accounts; i++) {
+			ownerOf[i] = urls.indexOf(ring.ownerOf("Id-" + i));
+			ownedLists.get(ownerOf[i]).add(i);
+		}
+		owned = new int[nodes][];
+
+		for (int node = 0; node < nodes; node++) {
+			final String url = urls.get(node);
+			final Path nodeDirectory = dataDirectory.resolve("node-" + node);
+			// passed as command-line arguments so they take precedence over application.properties
+			final ConfigurableApplicationContext context = new SpringApplicationBuilder(ChallengeApplication.class).run(
+					"--server.port=" + URI.create(url).getPort(), "--accounts.cluster.nodes=" + String.join(",", urls),
+					"--accounts.cluster.self=" + url, "--accounts.cluster.secret=" + secret,
+					"--accounts.cluster.log-dir=" + nodeDirectory.resolve("cluster"),
+					"--accounts.journal.enabled=true", "--accounts.journal.dir=" + nodeDirectory.resolve("journal"),
+					"--accounts.journal.durability=GROUP_COMMIT", "--accounts.snapshot.interval-seconds=0",
+					"--transfers.admission.enabled=false", "--logging.level.com.dws.challenge=WARN");
+			contexts.add(context);
+			final AccountsService accountsService = context.getBean(AccountsService.class);
+			owned[node] = ownedLists.get(node).stream().mapToInt(Integer::intValue).toArray();
+			for (int i : owned[node]) {
+				accountsService.createAccount(new Account("Id-" + i, new BigDecimal("1000000000.00")));
+			}
+			transferUris[node] = URI.create(url + "/v1/accounts/transferAmount");
+		}
+		client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws IOException {
+		contexts.forEach(ConfigurableApplicationContext::close);
+		contexts.clear();
+		try (Stream<Path> files = Files.walk(dataDirectory)) {
+			files.sorted(Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
+		}
+	}
+
+	@State(Scope.Thread)
+	public static class Client {
+
+		private final SplittableRandom random = new SplittableRandom(Thread.currentThread().threadId());
+
+		int next(int bound) {
+			return random.nextInt(bound);
+		}
+	}
+
+	@Benchmark
+	public int transfer(Client client) throws IOException, InterruptedException {
+		final int from = client.next(accounts);
+		final int node = ownerOf[from];
+		int to;
+		if ("LOCAL".equals(pairs)) {
+			to = owned[node][client.next(owned[node].length)];
+			if (to == from) {
+				to = owned[node][(indexOf(owned[node], from) + 1) % owned[node].length];
+			}
+		} else {
+			to = (from + 1 + client.next(accounts - 1)) % accounts;
+		}
+		final String body = "{\"accountFrom\":\"Id-" + from + "\",\"accountTo\":\"Id-" + to
+				+ "\",\"transferAmount\":0.01}";
+		final HttpRequest request = HttpRequest.newBuilder(transferUris[node]).header("Content-Type", "application/json")
+				.POST(HttpRequest.BodyPublishers.ofString(body)).build();
+		final HttpResponse<Void> response = this.client.send(request, HttpResponse.BodyHandlers.discarding());
+		if (response.statusCode() != 202) {
+			throw new IllegalStateException("Transfer failed with HTTP " + response.statusCode());
+		}
+		return response.statusCode();
+	}
+
+	private static int indexOf(int[] values, int value) {
+		for (int i = 0; i < values.length; i++) {
+			if (values[i] == value) {
+				return i;
+			}
+		}
+		return -1;
+	}
+}
@@ -0,0 +1,107 @@
+package com.dws.challenge.benchmark;
+
+import java.math.BigDecimal;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.dws.challenge.domain.Account;
+import com.dws.challenge.repository.AccountsRepositoryInMemory;
+import com.dws.challenge.service.AccountsService;
+import com.dws.challenge.service.IdempotencyCache;
+
+// What an idempotency key adds to a transfer. replayedKey is the lookup a retry pays against a
+// cache holding a few million keys; amountTransfer with KEYED against NONE is the reserve and
+// complete pair on the first attempt of every request, including the evictions of a full cache.
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+@Threads(4)
+public class IdempotencyCacheBenchmark {
+
+	private static final int ACCOUNTS = 10_000;
+
+	@Param({ "4000000" })
+	public int keys;
+
+	@Param({ "NONE", "KEYED" })
+	public String idempotency;
+
+	private IdempotencyCache idempotencyCache;
+
+	private AccountsService accountsService;
+
+	private String[] accountIds;
+
+	private String[] keyIds;
+
+	private final BigDecimal amount = new BigDecimal("0.01");
+
+	@State(Scope.Thread)
+	public static class Cursor {
+
+		private final SplittableRandom random = new SplittableRandom(Thread.currentThread().threadId());
+
+		private final String prefix = "Fresh-" + Thread.currentThread().threadId() + "-";
+
+		private long next;
+
+		int nextIndex(int bound) {
+			return random.nextInt(bound);
+		}
+
+		String nextKey() {
+			return prefix + next++;
+		}
+	}
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		idempotencyCache = new IdempotencyCache(keys, 86400);
+		keyIds = new String[keys];
+		for (int i = 0; i < keys; i++) {
+			keyIds[i] = "Key-" + i;
+			final long key = IdempotencyCache.keyOf(keyIds[i]);
+			idempotencyCache.reserve(key, 1);
+			idempotencyCache.complete(key, 1);
+		}
+
+		accountsService = Services.accountsService(new AccountsRepositoryInMemory());
+		accountsService.setIdempotencyCache(idempotencyCache);
+		accountIds = new String[ACCOUNTS];
+		for (int i = 0; i < ACCOUNTS; i++) {
+			accountIds[i] = "Id-" + i;
+			accountsService.createAccount(new Account(accountIds[i], new BigDecimal("1000000000.00")));
+		}
+	}
+
+	@Benchmark
+	public IdempotencyCache.Outcome replayedKey(Cursor cursor) {
+		return idempotencyCache.reserve(IdempotencyCache.keyOf(keyIds[cursor.nextIndex(keys)]), 1);
+	}
+
+	@Benchmark
+	public void amountTransfer(Cursor cursor) {
+		int from = cursor.nextIndex(ACCOUNTS);
+		int to = (from + 1 + cursor.nextIndex(ACCOUNTS - 1)) % ACCOUNTS;
+		accountsService.amountTransfer("KEYED".equals(idempotency) ? cursor.nextKey() : null, accountIds[from],
+				accountIds[to], amount);
+	}
+}
@@ -0,0 +1,107 @@
+package com.dws.challenge.benchmark;
+
+import java.math.BigDecimal;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.dws.challenge.domain.Account;
+import com.dws.challenge.repository.AccountsRepositoryInMemory;
+import com.dws.challenge.service.AccountLocks;
+import com.dws.challenge.service.AccountsService;
+
+// Every thread moves money back and forth inside its own pair of accounts, and no two pairs share
+// a lock stripe, so nothing is contended. Throughput should grow with the thread count up to the
+// number of cores; with a global transfer lock it stays flat.
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class IndependentPairsBenchmark {
+
+	private static final int PAIRS = 64;
+
+	private AccountsService accountsService;
+
+	private String[][] pairs;
+
+	private final AtomicInteger nextPair = new AtomicInteger();
+
+	private final BigDecimal amount = new BigDecimal("1.00");
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		accountsService = Services.accountsService(new AccountsRepositoryInMemory());
+		final AccountLocks accountLocks = accountsService.getAccountLocks();
+		final Set<Integer> usedStripes = new HashSet<>();
+		pairs = new String[PAIRS][2];
+		int next = 0;
+		for (String[] pair : pairs) {
+			for (int i = 0; i < 2; i++) {
+				String id;
+				do {
+					id = "Pair-" + next++;
+				} while (!usedStripes.add(accountLocks.stripeOf(id)));
+				pair[i] = id;
+				accountsService.createAccount(new Account(id, new BigDecimal("100.00")));
+			}
+		}
+	}
+
+	@State(Scope.Thread)
+	public static class Pair {
+
+		private String[] accounts;
+
+		private boolean back;
+
+		@Setup(Level.Trial)
+		public void setUp(IndependentPairsBenchmark benchmark) {
+			accounts = benchmark.pairs[benchmark.nextPair.getAndIncrement() % PAIRS];
+		}
+	}
+
+	@Benchmark
+	@Threads(1)
+	public void independentPairs_1thread(Pair pair) {
+		transfer(pair);
+	}
+
+	@Benchmark
+	@Threads(4)
+	public void independentPairs_4threads(Pair pair) {
+		transfer(pair);
+	}
+
+	@Benchmark
+	@Threads(8)
+	public void independentPairs_8threads(Pair pair) {
+		transfer(pair);
+	}
+
+	private void transfer(Pair pair) {
+		pair.back = !pair.back;
+		if (pair.back) {
+			accountsService.amountTransfer(pair.accounts[0], pair.accounts[1], amount);
+		} else {
+			accountsService.amountTransfer(pair.accounts[1], pair.accounts[0], amount);
+		}
+	}
+}
@@ -0,0 +1,113 @@
+package com.dws.challenge.benchmark;
+
+import java.math.BigDecimal;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.dws.challenge.domain.Account;
+import com.dws.challenge.domain.TransferLeg;
+import com.dws.challenge.domain.TransferNotification;
+import com.dws.challenge.service.CoalescingNotificationService;
+import com.dws.challenge.service.NotificationService;
+
+// The notifications of a transfer storm over a few hot accounts, as AccountsService hands them out:
+//  - eager: the description is built on the transfer thread, as before TransferNotification
+//  - structured: a TransferNotification rendered by the default method, one delivery each
+//  - coalescing: the same notifications merged by CoalescingNotificationService, flushed by its
+//    own thread every quarter of a 100 ms window
+// The wrapped service only counts its calls; TearDown prints calls per notification. Run with
+// -PjmhProfilers=gc for the bytes allocated per notification.
+//
+// ./gradlew jmh -PjmhIncludes=NotificationBenchmark -PjmhProfilers=gc
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(4)
+public class NotificationBenchmark {
+
+	@Param({ "16", "1024" })
+	public int accounts;
+
+	private final LongAdder notified = new LongAdder();
+
+	private final LongAdder delivered = new LongAdder();
+
+	private final NotificationService sink = (account, transferDescription) -> delivered.increment();
+
+	private CoalescingNotificationService coalescing;
+
+	private Account[] hotAccounts;
+
+	private final BigDecimal amount = new BigDecimal("12.34");
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		hotAccounts = new Account[accounts];
+		for (int i = 0; i < accounts; i++) {
+			hotAccounts[i] = new Account("Id-" + i);
+		}
+		coalescing = new CoalescingNotificationService(sink, 100, System::currentTimeMillis);
+		coalescing.start();
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws InterruptedException {
+		coalescing.shutdown();
+		System.out.printf("%n%d notifications, %d deliveries (%.4f per notification)%n", notified.sum(),
+				delivered.sum(), (double) delivered.sum() / Math.max(1, notified.sum()));
+	}
+
+	@State(Scope.Thread)
+	public static class Cursor {
+
+		private final SplittableRandom random = new SplittableRandom(Thread.currentThread().threadId());
+
+		int nextIndex(int bound) {
+			return random.nextInt(bound);
+		}
+	}
+
+	@Benchmark
+	public void eager(Cursor cursor) {
+		final Account account = hotAccounts[cursor.nextIndex(accounts)];
+		sink.notifyAboutTransfer(account, "The transfer to the account with ID " + account.getAccountId()
+				+ " is now complete for the amount of " + amount + ".");
+		notified.increment();
+	}
+
+	@Benchmark
+	public void structured(Cursor cursor) {
+		final Account account = hotAccounts[cursor.nextIndex(accounts)];
+		sink.notifyAboutTransfer(
+				new TransferNotification(account, TransferLeg.DEBIT, account.getAccountId(), "Id-x", amount));
+		notified.increment();
+	}
+
+	@Benchmark
+	public void coalescing(Cursor cursor) {
+		final Account account = hotAccounts[cursor.nextIndex(accounts)];
+		coalescing.notifyAboutTransfer(
+				new TransferNotification(account, TransferLeg.DEBIT, account.getAccountId(), "Id-x", amount));
+		notified.increment();
+	}
+}
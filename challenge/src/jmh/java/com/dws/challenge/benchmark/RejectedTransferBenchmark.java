@@ -0,0 +1,91 @@
+package com.dws.challenge.benchmark;
+
+import java.math.BigDecimal;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.dws.challenge.domain.Account;
+import com.dws.challenge.domain.TransferOutcome;
+import com.dws.challenge.repository.AccountsRepositoryInMemory;
+import com.dws.challenge.service.AccountsService;
+
+// Rejection-heavy load: nine in ten transfers ask for more than the source holds, the rest name an
+// unknown account. amountTransferThrowing is the exception API (run it on the parent commit for
+// the cost with stack traces); tryAmountTransfer is the result-code API the endpoint now uses.
+// Run with -prof gc to see the allocation per rejection.
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RejectedTransferBenchmark {
+
+	private static final int ACCOUNTS = 10_000;
+
+	private AccountsService accountsService;
+
+	private String[] accountIds;
+
+	private final BigDecimal amount = new BigDecimal("1000.00");
+
+	@State(Scope.Thread)
+	public static class Cursor {
+
+		private final SplittableRandom random = new SplittableRandom(Thread.currentThread().threadId());
+
+		int nextIndex(int bound) {
+			return random.nextInt(bound);
+		}
+	}
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		accountsService = Services.accountsService(new AccountsRepositoryInMemory());
+		accountIds = new String[ACCOUNTS];
+		for (int i = 0; i < ACCOUNTS; i++) {
+			accountIds[i] = "Id-" + i;
+			accountsService.createAccount(new Account(accountIds[i], new BigDecimal("1.00")));
+		}
+	}
+
+	@Benchmark
+	@Threads(4)
+	public RuntimeException amountTransferThrowing(Cursor cursor) {
+		int from = cursor.nextIndex(ACCOUNTS);
+		try {
+			accountsService.amountTransfer(accountIds[from], destination(cursor, from), amount);
+			return null;
+		} catch (RuntimeException e) {
+			return e;
+		}
+	}
+
+	@Benchmark
+	@Threads(4)
+	public TransferOutcome tryAmountTransfer(Cursor cursor) {
+		int from = cursor.nextIndex(ACCOUNTS);
+		return accountsService.tryAmountTransfer(null, accountIds[from], destination(cursor, from), amount);
+	}
+
+	private String destination(Cursor cursor, int from) {
+		if (cursor.nextIndex(10) == 0) {
+			return "Unknown";
+		}
+		return accountIds[(from + 1 + cursor.nextIndex(ACCOUNTS - 1)) % ACCOUNTS];
+	}
+}
@@ -0,0 +1,119 @@
+package com.dws.challenge.benchmark;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import com.dws.challenge.ChallengeApplication;
+import com.dws.challenge.domain.Account;
+import com.dws.challenge.service.AccountsService;
+
+// End-to-end load test of POST /v1/accounts/transferAmount with 512 concurrent clients, served by
+// AccountsController on Tomcat's platform thread pool (200 threads), by AccountsController on one
+// virtual thread per request, or by ReactiveAccountsController on WebFlux. The journal runs with GROUP_COMMIT, so every request blocks until its record is forced: the more
+// requests are in flight, the more records each force covers. Throughput mode reports requests
+// per millisecond; SampleTime mode reports the latency distribution, including p0.99.
+//
+// ./gradlew jmh -PjmhIncludes=RestLoadBenchmark
+
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 10)
+@Fork(1)
+@Threads(512)
+public class RestLoadBenchmark {
+
+	@Param({ "SERVLET_PLATFORM", "SERVLET_VIRTUAL", "REACTIVE" })
+	public String stack;
+
+	@Param({ "1000" })
+	public int accounts;
+
+	private ConfigurableApplicationContext context;
+
+	private HttpClient client;
+
+	private URI transferUri;
+
+	private Path journalDirectory;
+
+	@Setup(Level.Trial)
+	public void setUp() throws IOException {
+		journalDirectory = Files.createTempDirectory("rest-load");
+		// passed as command-line arguments so they take precedence over application.properties;
+		// admission control is off, since all 512 clients share one address and would be shed as one
+		context = new SpringApplicationBuilder(ChallengeApplication.class).run("--server.port=0",
+				"--spring.main.web-application-type=" + ("REACTIVE".equals(stack) ? "reactive" : "servlet"),
+				"--spring.threads.virtual.enabled=" + "SERVLET_VIRTUAL".equals(stack), "--accounts.journal.enabled=true",
+				"--accounts.journal.dir=" + journalDirectory, "--accounts.journal.durability=GROUP_COMMIT",
+				"--accounts.snapshot.interval-seconds=0", "--transfers.admission.enabled=false",
+				"--logging.level.com.dws.challenge=WARN");
+		final AccountsService accountsService = context.getBean(AccountsService.class);
+		for (int i = 0; i < accounts; i++) {
+			accountsService.createAccount(new Account("Id-" + i, new BigDecimal("1000000000.00")));
+		}
+		final int port = ((WebServerApplicationContext) context).getWebServer().getPort();
+		transferUri = URI.create("http://localhost:" + port + "/v1/accounts/transferAmount");
+		client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws IOException {
+		context.close();
+		try (Stream<Path> files = Files.walk(journalDirectory)) {
+			files.sorted(Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
+		}
+	}
+
+	@State(Scope.Thread)
+	public static class Client {
+
+		private final SplittableRandom random = new SplittableRandom(Thread.currentThread().threadId());
+
+		String nextTransfer(int accounts) {
+			final int from = random.nextInt(accounts);
+			final int to = (from + 1 + random.nextInt(accounts - 1)) % accounts;
+			return "{\"accountFrom\":\"Id-" + from + "\",\"accountTo\":\"Id-" + to + "\",\"transferAmount\":0.01}";
+		}
+	}
+
+	@Benchmark
+	public int transfer(Client client) throws IOException, InterruptedException {
+		final HttpRequest request = HttpRequest.newBuilder(transferUri).header("Content-Type", "application/json")
+				.POST(HttpRequest.BodyPublishers.ofString(client.nextTransfer(accounts))).build();
+		final HttpResponse<Void> response = this.client.send(request, HttpResponse.BodyHandlers.discarding());
+		if (response.statusCode() != 202) {
+			throw new IllegalStateException("Transfer failed with HTTP " + response.statusCode());
+		}
+		return response.statusCode();
+	}
+}
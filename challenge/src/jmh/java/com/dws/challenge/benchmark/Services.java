@@ -0,0 +1,23 @@
+package com.dws.challenge.benchmark;
+
+import com.dws.challenge.repository.AccountsRepository;
+import com.dws.challenge.service.AccountLocks;
+import com.dws.challenge.service.AccountsService;
+import com.dws.challenge.service.TransferValidator;
+
+// Wires an AccountsService by hand, without a Spring context, for use inside benchmarks
+
+final class Services {
+
+	private Services() {
+	}
+
+	static AccountsService accountsService(AccountsRepository repository) {
+		AccountsService accountsService = new AccountsService(repository);
+		accountsService.setAccountLocks(new AccountLocks(1024));
+		accountsService.setTransferValidator(new TransferValidator());
+		accountsService.setNotificationService((account, transferDescription) -> {
+		});
+		return accountsService;
+	}
+}
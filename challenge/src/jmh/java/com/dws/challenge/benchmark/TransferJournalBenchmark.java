@@ -0,0 +1,74 @@
+package com.dws.challenge.benchmark;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.dws.challenge.repository.JournalDurability;
+import com.dws.challenge.repository.MappedTransferJournal;
+
+// Journaled transfers per second for each durability level. With 16 threads appending, the
+// difference between FSYNC_EACH and GROUP_COMMIT shows how many records each force covers.
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TransferJournalBenchmark {
+
+	@Param({ "FSYNC_EACH", "GROUP_COMMIT", "ASYNC" })
+	public JournalDurability durability;
+
+	private final BigDecimal amount = new BigDecimal("12.34");
+
+	private Path directory;
+
+	private MappedTransferJournal journal;
+
+	@Setup(Level.Trial)
+	public void setUp() throws IOException {
+		directory = Files.createTempDirectory("journal-bench");
+		journal = new MappedTransferJournal(directory.toString(), durability, 64 << 20, 100);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws IOException {
+		journal.close();
+		try (Stream<Path> files = Files.walk(directory)) {
+			files.sorted(Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
+		}
+	}
+
+	@Benchmark
+	@Threads(1)
+	public void logTransfer_1thread() {
+		journal.sync(journal.logTransfer("Id-1", "Id-2", amount));
+	}
+
+	@Benchmark
+	@Threads(16)
+	public void logTransfer_16threads() {
+		journal.sync(journal.logTransfer("Id-1", "Id-2", amount));
+	}
+}
@@ -0,0 +1,101 @@
+package com.dws.challenge.benchmark;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.dws.challenge.domain.TransferHistoryPage;
+import com.dws.challenge.repository.TransferLedger;
+
+// Cost of the transfer ledger. append is what every committed transfer pays on top of the
+// transfer itself, alone and with four appending threads. historyPage reads a 100 entry page from
+// the middle of an account holding two million entries. The bytes per entry are printed at the end
+// of each trial.
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = "-Xmx4g")
+public class TransferLedgerBenchmark {
+
+	private static final int ACCOUNTS = 10_000;
+
+	private static final int HOT_ENTRIES = 2_000_000;
+
+	private final BigDecimal amount = new BigDecimal("12.34");
+
+	private TransferLedger ledger;
+
+	private String[] accountIds;
+
+	private Instant start;
+
+	@State(Scope.Thread)
+	public static class Cursor {
+
+		private final SplittableRandom random = new SplittableRandom(Thread.currentThread().threadId());
+
+		int nextIndex(int bound) {
+			return random.nextInt(bound);
+		}
+	}
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		ledger = new TransferLedger(true, Integer.MAX_VALUE);
+		accountIds = new String[ACCOUNTS];
+		for (int i = 0; i < ACCOUNTS; i++) {
+			accountIds[i] = "Id-" + i;
+		}
+		start = Instant.now();
+		for (int i = 0; i < HOT_ENTRIES; i++) {
+			ledger.append("Hot", accountIds[i % ACCOUNTS], amount);
+		}
+	}
+
+	@TearDown(Level.Trial)
+	public void report() {
+		System.out.printf("%n%d entries, %d bytes per entry%n", ledger.size(), ledger.memoryBytes() / ledger.size());
+	}
+
+	@Benchmark
+	@Threads(1)
+	public void append(Cursor cursor) {
+		appendRandom(cursor);
+	}
+
+	@Benchmark
+	@Threads(4)
+	public void appendContended(Cursor cursor) {
+		appendRandom(cursor);
+	}
+
+	@Benchmark
+	@Threads(1)
+	public TransferHistoryPage historyPage() {
+		return ledger.history("Hot", start, null, HOT_ENTRIES / 2, 100);
+	}
+
+	private void appendRandom(Cursor cursor) {
+		int from = cursor.nextIndex(ACCOUNTS);
+		int to = (from + 1 + cursor.nextIndex(ACCOUNTS - 1)) % ACCOUNTS;
+		ledger.append(accountIds[from], accountIds[to], amount);
+	}
+}
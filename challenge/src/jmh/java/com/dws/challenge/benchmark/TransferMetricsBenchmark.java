@@ -0,0 +1,95 @@
+package com.dws.challenge.benchmark;
+
+import java.math.BigDecimal;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.dws.challenge.domain.Account;
+import com.dws.challenge.repository.AccountsRepositoryInMemory;
+import com.dws.challenge.service.AccountsService;
+import com.dws.challenge.service.TransferMetrics;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+// Cost of the transfer metrics. recordStep is one timer update with percentiles, the unit every
+// instrumented call pays; it should stay within a few hundred nanoseconds. amountTransfer with
+// metrics ENABLED against DISABLED gives the overhead of the whole instrumented path.
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TransferMetricsBenchmark {
+
+	private static final int ACCOUNTS = 10_000;
+
+	@Param({ "DISABLED", "ENABLED" })
+	public String metrics;
+
+	private AccountsService accountsService;
+
+	private TransferMetrics transferMetrics;
+
+	private String[] accountIds;
+
+	private final BigDecimal amount = new BigDecimal("0.01");
+
+	@State(Scope.Thread)
+	public static class Cursor {
+
+		private final SplittableRandom random = new SplittableRandom(Thread.currentThread().threadId());
+
+		int nextIndex(int bound) {
+			return random.nextInt(bound);
+		}
+	}
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		AccountsRepositoryInMemory repository = new AccountsRepositoryInMemory();
+		transferMetrics = new TransferMetrics(new SimpleMeterRegistry(), repository, "ENABLED".equals(metrics));
+		accountsService = Services.accountsService(repository);
+		accountsService.setTransferMetrics(transferMetrics);
+		accountIds = new String[ACCOUNTS];
+		for (int i = 0; i < ACCOUNTS; i++) {
+			accountIds[i] = "Id-" + i;
+			accountsService.createAccount(new Account(accountIds[i], new BigDecimal("1000000000.00")));
+		}
+	}
+
+	@Benchmark
+	@Threads(1)
+	public void recordStep() {
+		transferMetrics.debited(System.nanoTime());
+	}
+
+	@Benchmark
+	@Threads(4)
+	public void recordStepContended() {
+		transferMetrics.debited(System.nanoTime());
+	}
+
+	@Benchmark
+	@Threads(4)
+	public void amountTransfer(Cursor cursor) {
+		int from = cursor.nextIndex(ACCOUNTS);
+		int to = (from + 1 + cursor.nextIndex(ACCOUNTS - 1)) % ACCOUNTS;
+		accountsService.amountTransfer(accountIds[from], accountIds[to], amount);
+	}
+}
@@ -0,0 +1,32 @@
+package com.dws.challenge.benchmark;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+// Draws ranks in [0, n) following a Zipf distribution: rank 0 is the hottest account. Uses an
+// inverse-CDF lookup, so sampling is a binary search over a precomputed table.
+
+final class ZipfSampler {
+
+	private final double[] cdf;
+
+	private final SplittableRandom random;
+
+	ZipfSampler(int n, double exponent, long seed) {
+		this.cdf = new double[n];
+		double sum = 0;
+		for (int rank = 0; rank < n; rank++) {
+			sum += 1.0 / Math.pow(rank + 1, exponent);
+			cdf[rank] = sum;
+		}
+		for (int rank = 0; rank < n; rank++) {
+			cdf[rank] /= sum;
+		}
+		this.random = new SplittableRandom(seed);
+	}
+
+	int next() {
+		int index = Arrays.binarySearch(cdf, random.nextDouble());
+		return Math.min(index < 0 ? -index - 1 : index, cdf.length - 1);
+	}
+}
@@ -1,5 +1,7 @@
 package com.dws.challenge.domain;
 
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
 import java.math.BigDecimal;
 
 import com.fasterxml.jackson.annotation.JsonCreator;
@@ -12,13 +14,23 @@ import lombok.Data;
 @Data
 public class Account {
 
+	private static final VarHandle BALANCE;
+
+	static {
+		try {
+			BALANCE = MethodHandles.lookup().findVarHandle(Account.class, "balance", BigDecimal.class);
+		} catch (ReflectiveOperationException e) {
+			throw new ExceptionInInitializerError(e);
+		}
+	}
+
 	@NotNull
 
 	private final String accountId;
 
 	@NotNull
 	@Min(value = 0, message = "Initial balance must be positive.")
-	private BigDecimal balance;
+	private volatile BigDecimal balance;
 
 	public Account(String accountId) {
 		this.accountId = accountId;
@@ -30,4 +42,10 @@ public class Account {
 		this.accountId = accountId;
 		this.balance = balance;
 	}
-}
\ No newline at end of file
+
+	// Atomically replaces the balance if it is still the expected instance. Balances are immutable
+	// BigDecimals, so a successful swap commits the update without any lock.
+	public boolean compareAndSetBalance(BigDecimal expected, BigDecimal update) {
+		return BALANCE.compareAndSet(this, expected, update);
+	}
+}
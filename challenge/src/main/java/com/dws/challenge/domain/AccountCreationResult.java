@@ -0,0 +1,18 @@
+package com.dws.challenge.domain;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+import lombok.Data;
+
+// Result of one item of a bulk account creation; index is the item's position in the request
+
+@Data
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class AccountCreationResult {
+
+	private final int index;
+
+	private final AccountCreationStatus status;
+
+	private final String message;
+}
@@ -0,0 +1,16 @@
+package com.dws.challenge.domain;
+
+// Outcome of creating one account of a bulk request
+
+public enum AccountCreationStatus {
+
+	CREATED,
+
+	// An account with the same id already existed, or came earlier in the same request
+	DUPLICATE,
+
+	INVALID,
+
+	// Not attempted because admission control shed it; retry later
+	RATE_LIMITED
+}
@@ -0,0 +1,48 @@
+package com.dws.challenge.domain;
+
+import java.math.BigDecimal;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
+// Immutable copy of an account as left by its latest committed change, which is what balance reads
+// are served from. version grows by one with every publication of the account.
+
+public final class AccountSnapshot {
+
+	private final String accountId;
+
+	private final BigDecimal balance;
+
+	private final long version;
+
+	// Serialized form, filled by the first read of this version and shared by all later ones
+	private volatile byte[] json;
+
+	public AccountSnapshot(String accountId, BigDecimal balance, long version) {
+		this.accountId = accountId;
+		this.balance = balance;
+		this.version = version;
+	}
+
+	public String getAccountId() {
+		return accountId;
+	}
+
+	public BigDecimal getBalance() {
+		return balance;
+	}
+
+	@JsonIgnore
+	public long getVersion() {
+		return version;
+	}
+
+	@JsonIgnore
+	public byte[] getJson() {
+		return json;
+	}
+
+	public void setJson(byte[] json) {
+		this.json = json;
+	}
+}
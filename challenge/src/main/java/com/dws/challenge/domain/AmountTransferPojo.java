@@ -21,13 +21,22 @@ public class AmountTransferPojo {
 	@NotNull
 	@Min(value = 0, message = "Initial balance must be positive.")
 	private BigDecimal transferAmount;
-	
+
+	// Optional; a retried request carrying the same key is applied only once
+	private String idempotencyKey;
+
+	public AmountTransferPojo(String accountFrom, String accountTo, BigDecimal transferAmount) {
+		this(accountFrom, accountTo, transferAmount, null);
+	}
+
 	@JsonCreator
 	public AmountTransferPojo(@JsonProperty("accountFrom") String accountFrom,
 			@JsonProperty("accountTo") String accountTo,
-	    @JsonProperty("transferAmount") BigDecimal transferAmount) {
+	    @JsonProperty("transferAmount") BigDecimal transferAmount,
+	    @JsonProperty("idempotencyKey") String idempotencyKey) {
 		this.accountFrom = accountFrom;
 		this.accountTo = accountTo;
 	    this.transferAmount = transferAmount;
+	    this.idempotencyKey = idempotencyKey;
 	}
 }
@@ -0,0 +1,12 @@
+package com.dws.challenge.domain;
+
+// How a batch of transfers reacts to an item that cannot be applied
+
+public enum BatchMode {
+
+	// The first failing item reverts every item applied before it
+	ALL_OR_NOTHING,
+
+	// Every item that is valid on its own is applied
+	BEST_EFFORT
+}
@@ -0,0 +1,22 @@
+package com.dws.challenge.domain;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+
+import lombok.Data;
+
+// One committed transfer as recorded by the transfer ledger; sequence gives the commit order
+
+@Data
+public class LedgerEntry {
+
+	private final long sequence;
+
+	private final Instant timestamp;
+
+	private final String accountFrom;
+
+	private final String accountTo;
+
+	private final BigDecimal amount;
+}
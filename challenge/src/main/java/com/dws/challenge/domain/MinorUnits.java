@@ -0,0 +1,24 @@
+package com.dws.challenge.domain;
+
+import java.math.BigDecimal;
+
+// Fixed-point helpers for balances kept as a long count of minor units (cents). Conversion to and
+// from BigDecimal is meant for the edges (JSON, notifications); arithmetic on the transfer path
+// works on the long value with Math.addExact / Math.subtractExact.
+
+public final class MinorUnits {
+
+	public static final int SCALE = 2;
+
+	private MinorUnits() {
+	}
+
+	// Throws ArithmeticException when the amount has more than SCALE decimals or does not fit a long
+	public static long of(BigDecimal amount) {
+		return amount.movePointRight(SCALE).longValueExact();
+	}
+
+	public static BigDecimal toBigDecimal(long minorUnits) {
+		return BigDecimal.valueOf(minorUnits, SCALE);
+	}
+}
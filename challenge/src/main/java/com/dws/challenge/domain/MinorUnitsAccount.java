@@ -0,0 +1,64 @@
+package com.dws.challenge.domain;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.math.BigDecimal;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
+// Account whose balance is held as a long count of minor units instead of a BigDecimal, so debits
+// and credits do not allocate. The BigDecimal accessors convert on the fly, which keeps the JSON
+// contract of Account unchanged.
+
+public class MinorUnitsAccount extends Account {
+
+	private static final VarHandle MINOR_UNITS;
+
+	static {
+		try {
+			MINOR_UNITS = MethodHandles.lookup().findVarHandle(MinorUnitsAccount.class, "minorUnits", long.class);
+		} catch (ReflectiveOperationException e) {
+			throw new ExceptionInInitializerError(e);
+		}
+	}
+
+	private volatile long minorUnits;
+
+	public MinorUnitsAccount(String accountId, long minorUnits) {
+		super(accountId, null);
+		this.minorUnits = minorUnits;
+	}
+
+	public static MinorUnitsAccount of(Account account) {
+		return new MinorUnitsAccount(account.getAccountId(), MinorUnits.of(account.getBalance()));
+	}
+
+	@JsonIgnore
+	public long getMinorUnits() {
+		return minorUnits;
+	}
+
+	public void setMinorUnits(long minorUnits) {
+		this.minorUnits = minorUnits;
+	}
+
+	public boolean compareAndSetMinorUnits(long expected, long update) {
+		return MINOR_UNITS.compareAndSet(this, expected, update);
+	}
+
+	@Override
+	public BigDecimal getBalance() {
+		return MinorUnits.toBigDecimal(minorUnits);
+	}
+
+	@Override
+	public void setBalance(BigDecimal balance) {
+		this.minorUnits = MinorUnits.of(balance);
+	}
+
+	// Compares by value, since getBalance() hands out a fresh BigDecimal on every call
+	@Override
+	public boolean compareAndSetBalance(BigDecimal expected, BigDecimal update) {
+		return compareAndSetMinorUnits(MinorUnits.of(expected), MinorUnits.of(update));
+	}
+}
@@ -0,0 +1,193 @@
+package com.dws.challenge.domain;
+
+import java.math.BigDecimal;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+// Account for a hot destination, e.g. a merchant receiving most of the traffic. Credits are added
+// to one of several sub-balances (cells) picked by the crediting thread, like a LongAdder, so
+// concurrent credits rarely contend on the same compare-and-set. Debits are taken from the base
+// balance after checking the exact sum of base and cells.
+//
+// Credits only ever add to the cells (or, while a reader is stuck, to the base), so the sum a
+// debit checks can only grow while the debit is committing; the compare-and-set on the base fails
+// when another debit or credit got in first, and the check is repeated. A debit therefore never
+// overdraws the account, with or without locks.
+//
+// Publishing a snapshot on every credit would serialize the credits again on the snapshot map,
+// so changes only mark the account dirty; the next read that needs the published balance takes
+// the mark and publishes once (see AccountsService.publish).
+
+public class StripedAccount extends Account {
+
+	// Cells are spread this many references apart so that two of them never share a cache line
+	private static final int PAD = 16;
+
+	// Failed collects of getBalance before it makes credits go to the base instead of the cells
+	private static final int MAX_COLLECTS = 64;
+
+	private final AtomicReference<BigDecimal> base;
+
+	private final AtomicReferenceArray<BigDecimal> cells;
+
+	private final int mask;
+
+	// readers that gave up on collecting while credits kept landing in the cells
+	private final AtomicInteger stuckReaders = new AtomicInteger();
+
+	private final AtomicBoolean dirty = new AtomicBoolean();
+
+	public StripedAccount(String accountId, BigDecimal balance, int cellCount) {
+		super(accountId, null);
+		int size = cellCount <= 1 ? 1 : Integer.highestOneBit(cellCount - 1) << 1;
+		this.base = new AtomicReference<>(balance);
+		this.cells = new AtomicReferenceArray<>(size * PAD);
+		for (int i = 0; i < size; i++) {
+			this.cells.set(i * PAD, BigDecimal.ZERO);
+		}
+		this.mask = size - 1;
+	}
+
+	public static StripedAccount of(Account account, int cellCount) {
+		return new StripedAccount(account.getAccountId(), account.getBalance(), cellCount);
+	}
+
+	// Adds the amount to the cell of the calling thread, moving on to the next cell when that one
+	// is contended
+	public void credit(BigDecimal amount) {
+		if (stuckReaders.get() != 0) {
+			addToBase(amount);
+			return;
+		}
+		int cell = probe();
+		while (true) {
+			final int index = cell * PAD;
+			final BigDecimal current = cells.get(index);
+			if (cells.compareAndSet(index, current, current.add(amount))) {
+				return;
+			}
+			cell = (cell + 1) & mask;
+		}
+	}
+
+	// Takes the amount from the base balance if base and cells together cover it
+	public boolean tryDebit(BigDecimal amount) {
+		while (true) {
+			final BigDecimal current = base.get();
+			if (current.add(sumCells()).compareTo(amount) < 0) {
+				return false;
+			}
+			if (base.compareAndSet(current, current.subtract(amount))) {
+				return true;
+			}
+		}
+	}
+
+	// Takes the amount from the base balance without a balance check; used to undo a credit that
+	// is known to be there
+	public void subtract(BigDecimal amount) {
+		addToBase(amount.negate());
+	}
+
+	// Marks the account as changed since its balance was last published
+	public void markDirty() {
+		if (!dirty.get()) {
+			dirty.set(true);
+		}
+	}
+
+	// Clears the mark; true when it was set, i.e. the balance has to be published again. The mark
+	// is taken before the balance is read, so a change racing with the publication marks it anew.
+	public boolean takeDirty() {
+		return dirty.get() && dirty.getAndSet(false);
+	}
+
+	// The balance at one instant. The cells are read, then the base, then the cells again; when
+	// no cell changed in between, the sum is the balance at the moment the base was read. A single
+	// pass could add a credit to the cells without one that committed before it, a balance the
+	// account never held. After MAX_COLLECTS failed passes the reader has credits go to the base
+	// until it is done, so only credits already under way can still change a cell and the read
+	// completes.
+	@Override
+	public BigDecimal getBalance() {
+		final BigDecimal[] seen = new BigDecimal[mask + 1];
+		for (int attempt = 0; attempt < MAX_COLLECTS; attempt++) {
+			final BigDecimal balance = collect(seen);
+			if (balance != null) {
+				return balance;
+			}
+			Thread.onSpinWait();
+		}
+		stuckReaders.incrementAndGet();
+		try {
+			while (true) {
+				final BigDecimal balance = collect(seen);
+				if (balance != null) {
+					return balance;
+				}
+				Thread.onSpinWait();
+			}
+		} finally {
+			stuckReaders.decrementAndGet();
+		}
+	}
+
+	// Replaces the whole balance. Only exact while no credit runs concurrently (journal recovery,
+	// or a single shard thread owning the account); transfers use credit and tryDebit instead.
+	@Override
+	public void setBalance(BigDecimal balance) {
+		base.set(balance.subtract(sumCells()));
+	}
+
+	// Compares by value, since getBalance() hands out a fresh BigDecimal on every call. A credit
+	// landing after the check is kept in its cell, as if it had run after this update.
+	@Override
+	public boolean compareAndSetBalance(BigDecimal expected, BigDecimal update) {
+		final BigDecimal current = base.get();
+		if (current.add(sumCells()).compareTo(expected) != 0) {
+			return false;
+		}
+		return base.compareAndSet(current, current.add(update.subtract(expected)));
+	}
+
+	// One pass of getBalance: the sum of the cells and the base, or null when a cell changed
+	// while the base was read
+	private BigDecimal collect(BigDecimal[] seen) {
+		BigDecimal sum = BigDecimal.ZERO;
+		for (int i = 0; i <= mask; i++) {
+			seen[i] = cells.get(i * PAD);
+			sum = sum.add(seen[i]);
+		}
+		final BigDecimal balance = sum.add(base.get());
+		for (int i = 0; i <= mask; i++) {
+			if (seen[i] != cells.get(i * PAD)) {
+				return null;
+			}
+		}
+		return balance;
+	}
+
+	private void addToBase(BigDecimal amount) {
+		while (true) {
+			final BigDecimal current = base.get();
+			if (base.compareAndSet(current, current.add(amount))) {
+				return;
+			}
+		}
+	}
+
+	private BigDecimal sumCells() {
+		BigDecimal sum = BigDecimal.ZERO;
+		for (int i = 0; i <= mask; i++) {
+			sum = sum.add(cells.get(i * PAD));
+		}
+		return sum;
+	}
+
+	private int probe() {
+		final long id = Thread.currentThread().threadId();
+		return (int) ((id * 0x9E3779B97F4A7C15L) >>> 32) & mask;
+	}
+}
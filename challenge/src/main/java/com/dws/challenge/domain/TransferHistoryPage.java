@@ -0,0 +1,24 @@
+package com.dws.challenge.domain;
+
+import java.util.List;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+import lombok.Data;
+
+// One page of an account's transfers, oldest first. next is the sequence to pass as "after" for the
+// following page; absent on the last page. truncated is set when the ledger filled up and stopped
+// recording within the requested time range, so transfers after that point are missing.
+
+@Data
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class TransferHistoryPage {
+
+	private final String accountId;
+
+	private final List<LedgerEntry> transfers;
+
+	private final Long next;
+
+	private final Boolean truncated;
+}
@@ -0,0 +1,11 @@
+package com.dws.challenge.domain;
+
+// The side of a cross-node transfer that one node applies (see ClusterTransactions): the owner of
+// the source account debits it, the owner of the destination credits it
+
+public enum TransferLeg {
+
+	DEBIT,
+
+	CREDIT
+}
@@ -0,0 +1,32 @@
+package com.dws.challenge.domain;
+
+import java.math.BigDecimal;
+
+import lombok.Data;
+
+// A transfer as told to the owner of one of its accounts: leg DEBIT goes to the source, CREDIT to
+// the destination. The text is rendered only when getDescription is called, so a notification
+// that is merged into a digest (see CoalescingNotificationService) never builds its own.
+
+@Data
+public class TransferNotification {
+
+	private final Account account;
+
+	private final TransferLeg leg;
+
+	private final String accountFrom;
+
+	private final String accountTo;
+
+	private final BigDecimal amount;
+
+	// The text owners have always been sent
+	public String getDescription() {
+		if (leg == TransferLeg.DEBIT) {
+			return "The transfer to the account with ID " + accountTo + " is now complete for the amount of " + amount
+					+ ".";
+		}
+		return "The account with ID + " + accountFrom + " has transferred " + amount + " into your account.";
+	}
+}
@@ -0,0 +1,84 @@
+package com.dws.challenge.domain;
+
+import com.dws.challenge.exception.AccountNotFoundException;
+import com.dws.challenge.exception.AmountTransferPojoException;
+import com.dws.challenge.exception.BalanceLimitExceededException;
+import com.dws.challenge.exception.NodeUnavailableException;
+import com.dws.challenge.exception.NotSufficientBalanceException;
+import com.dws.challenge.exception.TransferInProgressException;
+import com.dws.challenge.exception.TransferSameAccountException;
+
+// Result code of AccountsService.tryAmountTransfer: a rejection is reported by returning one of
+// these instead of throwing, so the message is a constant and nothing is allocated for it.
+// exceptionType is the exception the throwing API uses for the same rejection.
+
+public enum TransferOutcome {
+
+	COMPLETED("Transfer Completed", null),
+
+	INVALID_AMOUNT("Transfer amount not valid. Please try with valid amount", AmountTransferPojoException.class),
+
+	IDEMPOTENCY_MISMATCH("Idempotency key was already used for a different transfer",
+			AmountTransferPojoException.class),
+
+	ACCOUNT_NOT_FOUND("Account not found", AccountNotFoundException.class),
+
+	SAME_ACCOUNT("Self Transfer not allowed", TransferSameAccountException.class),
+
+	INSUFFICIENT_BALANCE("Insufficient balance in account", NotSufficientBalanceException.class),
+
+	IN_PROGRESS("A transfer with this idempotency key is still in progress", TransferInProgressException.class),
+
+	// Clustered mode: the node owning one of the accounts did not answer
+	NODE_UNAVAILABLE("Account owner is unavailable. Please retry", NodeUnavailableException.class),
+
+	// Too many idempotency keys are held to remember a new one (see IdempotencyCache)
+	IDEMPOTENCY_CACHE_FULL("Too many idempotency keys in use. Please retry later", TransferInProgressException.class),
+
+	// The destination cannot hold its new balance; nothing was moved
+	BALANCE_LIMIT_EXCEEDED("Balance limit exceeded", BalanceLimitExceededException.class);
+
+	private final String message;
+
+	private final Class<? extends RuntimeException> exceptionType;
+
+	TransferOutcome(String message, Class<? extends RuntimeException> exceptionType) {
+		this.message = message;
+		this.exceptionType = exceptionType;
+	}
+
+	public String getMessage() {
+		return message;
+	}
+
+	public Class<? extends RuntimeException> getExceptionType() {
+		return exceptionType;
+	}
+
+	// Code of a rejection that surfaced as an exception, as TransferStatus.of maps them
+	public static TransferOutcome of(RuntimeException e) {
+		if (e instanceof NotSufficientBalanceException) {
+			return INSUFFICIENT_BALANCE;
+		}
+		if (e instanceof AccountNotFoundException) {
+			return ACCOUNT_NOT_FOUND;
+		}
+		if (e instanceof TransferSameAccountException) {
+			return SAME_ACCOUNT;
+		}
+		if (e instanceof TransferInProgressException) {
+			return IN_PROGRESS;
+		}
+		if (e instanceof NodeUnavailableException) {
+			return NODE_UNAVAILABLE;
+		}
+		if (e instanceof BalanceLimitExceededException) {
+			return BALANCE_LIMIT_EXCEEDED;
+		}
+		if (e instanceof AmountTransferPojoException) {
+			return INVALID_AMOUNT;
+		}
+		// anything else is a fault, not a rejection
+		throw e;
+	}
+}
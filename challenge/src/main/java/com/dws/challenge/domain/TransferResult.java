@@ -0,0 +1,18 @@
+package com.dws.challenge.domain;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+import lombok.Data;
+
+// Result of one item of a transfer batch; index is the item's position in the request
+
+@Data
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class TransferResult {
+
+	private final int index;
+
+	private final TransferStatus status;
+
+	private final String message;
+}
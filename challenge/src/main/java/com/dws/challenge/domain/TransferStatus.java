@@ -0,0 +1,55 @@
+package com.dws.challenge.domain;
+
+import com.dws.challenge.exception.AccountNotFoundException;
+import com.dws.challenge.exception.AmountTransferPojoException;
+import com.dws.challenge.exception.BalanceLimitExceededException;
+import com.dws.challenge.exception.NotSufficientBalanceException;
+import com.dws.challenge.exception.TransferSameAccountException;
+
+// Outcome of a single transfer, as reported for each item of a batch
+
+public enum TransferStatus {
+
+	COMPLETED,
+
+	INVALID_AMOUNT,
+
+	ACCOUNT_NOT_FOUND,
+
+	SAME_ACCOUNT,
+
+	INSUFFICIENT_BALANCE,
+
+	// The destination cannot hold its new balance
+	BALANCE_LIMIT_EXCEEDED,
+
+	// Applied, then reverted because another item of an all-or-nothing batch failed
+	ROLLED_BACK,
+
+	// Not attempted because an earlier item of an all-or-nothing batch failed
+	SKIPPED,
+
+	// Not attempted because admission control shed it; retry later
+	RATE_LIMITED,
+
+	FAILED;
+
+	public static TransferStatus of(RuntimeException exception) {
+		if (exception instanceof NotSufficientBalanceException) {
+			return INSUFFICIENT_BALANCE;
+		}
+		if (exception instanceof AccountNotFoundException) {
+			return ACCOUNT_NOT_FOUND;
+		}
+		if (exception instanceof TransferSameAccountException) {
+			return SAME_ACCOUNT;
+		}
+		if (exception instanceof BalanceLimitExceededException) {
+			return BALANCE_LIMIT_EXCEEDED;
+		}
+		if (exception instanceof AmountTransferPojoException) {
+			return INVALID_AMOUNT;
+		}
+		return FAILED;
+	}
+}
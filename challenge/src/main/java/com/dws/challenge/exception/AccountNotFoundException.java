@@ -10,7 +10,7 @@ public class AccountNotFoundException extends RuntimeException {
 	private static final long serialVersionUID = 1L;
 
 	public AccountNotFoundException(String message) {
-		super(message);
+		super(message, null, false, false);
 	}
 
 }
\ No newline at end of file
@@ -6,7 +6,7 @@ public class AmountTransferPojoException extends RuntimeException {
 	private static final long serialVersionUID = 1L;
 
 	public AmountTransferPojoException(String message) {
-		super(message);
+		super(message, null, false, false);
 	}
 
 }
@@ -0,0 +1,14 @@
+package com.dws.challenge.exception;
+
+// This class is meant for handling a transfer whose destination cannot hold the new balance (see
+// AccountsRepositoryOffHeap and MinorUnitsAccount); nothing was moved. It is still an invalid
+// amount to the throwing API, but tryAmountTransfer reports it with its own code.
+
+public class BalanceLimitExceededException extends AmountTransferPojoException {
+
+	private static final long serialVersionUID = 1L;
+
+	public BalanceLimitExceededException(String message) {
+		super(message);
+	}
+}
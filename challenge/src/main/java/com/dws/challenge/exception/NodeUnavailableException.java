@@ -0,0 +1,13 @@
+package com.dws.challenge.exception;
+
+// This class is meant for handling a transfer that needs an account owned by another cluster node
+// which could not be reached; nothing was moved and the request can be retried
+
+public class NodeUnavailableException extends RuntimeException {
+
+	private static final long serialVersionUID = 1L;
+
+	public NodeUnavailableException(String message) {
+		super(message, null, false, false);
+	}
+}
@@ -7,6 +7,6 @@ public class NotSufficientBalanceException extends RuntimeException {
 	private static final long serialVersionUID = 1L;
 
 	public NotSufficientBalanceException(String message) {
-		super(message);
+		super(message, null, false, false);
 	}
 }
\ No newline at end of file
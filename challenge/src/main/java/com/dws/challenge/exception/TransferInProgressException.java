@@ -0,0 +1,13 @@
+package com.dws.challenge.exception;
+
+// This class is meant for handling a retried transfer that arrives while the original request with
+// the same idempotency key is still being applied
+
+public class TransferInProgressException extends RuntimeException {
+
+	private static final long serialVersionUID = 1L;
+
+	public TransferInProgressException(String message) {
+		super(message, null, false, false);
+	}
+}
@@ -7,6 +7,6 @@ public class TransferSameAccountException extends RuntimeException {
 	private static final long serialVersionUID = 1L;
 
 	public TransferSameAccountException(String message) {
-		super(message);
+		super(message, null, false, false);
 	}
 }
\ No newline at end of file
@@ -1,5 +1,8 @@
 package com.dws.challenge.repository;
 
+import java.util.BitSet;
+import java.util.Collection;
+
 import com.dws.challenge.domain.Account;
 import com.dws.challenge.exception.DuplicateAccountIdException;
 
@@ -7,7 +10,18 @@ public interface AccountsRepository {
 
 	void createAccount(Account account) throws DuplicateAccountIdException;
 
+	// Throws what createAccount would for an account this repository cannot hold, without storing
+	// it; a taken id is not checked
+	default void checkAccount(Account account) {
+	}
+
+	// Stores every account whose id is not taken yet; returns the positions (in iteration order) of
+	// the ones that were skipped because their id already existed
+	BitSet createAccounts(Collection<Account> accounts);
+
 	Account getAccount(String accountId);
 
+	int size();
+
 	void clearAccounts();
 }
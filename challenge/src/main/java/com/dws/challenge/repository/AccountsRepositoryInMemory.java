@@ -2,15 +2,35 @@ package com.dws.challenge.repository;
 
 import com.dws.challenge.domain.Account;
 import com.dws.challenge.exception.DuplicateAccountIdException;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
 import org.springframework.stereotype.Repository;
 
+import java.util.BitSet;
+import java.util.Collection;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.IntStream;
 
 @Repository
+@Profile("!offheap")
 public class AccountsRepositoryInMemory implements AccountsRepository {
 
-	private final Map<String, Account> accounts = new ConcurrentHashMap<>();
+	// Below this many accounts a bulk insert is not worth splitting across threads
+	private static final int PARALLEL_THRESHOLD = 4096;
+
+	private final Map<String, Account> accounts;
+
+	public AccountsRepositoryInMemory() {
+		this(16);
+	}
+
+	// Sizing the map for the expected number of accounts up front saves rehashing it while it fills
+	@Autowired
+	public AccountsRepositoryInMemory(@Value("${accounts.in-memory.initial-capacity:16}") int initialCapacity) {
+		this.accounts = new ConcurrentHashMap<>(initialCapacity);
+	}
 
 	@Override
 	public void createAccount(Account account) throws DuplicateAccountIdException {
@@ -20,11 +40,35 @@ public class AccountsRepositoryInMemory implements AccountsRepository {
 		}
 	}
 
+	// Large collections are inserted from the common pool; threads inserting while the map grows
+	// help move its bins instead of waiting for the resize
+	@Override
+	public BitSet createAccounts(Collection<Account> newAccounts) {
+		final Account[] items = newAccounts.toArray(new Account[0]);
+		final boolean[] duplicate = new boolean[items.length];
+		final IntStream positions = IntStream.range(0, items.length);
+		(items.length >= PARALLEL_THRESHOLD ? positions.parallel() : positions).forEach(
+				i -> duplicate[i] = accounts.putIfAbsent(items[i].getAccountId(), items[i]) != null);
+
+		final BitSet duplicates = new BitSet(items.length);
+		for (int i = 0; i < items.length; i++) {
+			if (duplicate[i]) {
+				duplicates.set(i);
+			}
+		}
+		return duplicates;
+	}
+
 	@Override
 	public Account getAccount(String accountId) {
 		return accounts.get(accountId);
 	}
 
+	@Override
+	public int size() {
+		return accounts.size();
+	}
+
 	@Override
 	public void clearAccounts() {
 		accounts.clear();
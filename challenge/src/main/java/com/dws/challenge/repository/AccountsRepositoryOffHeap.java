@@ -0,0 +1,278 @@
+package com.dws.challenge.repository;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.IntStream;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Repository;
+
+import com.dws.challenge.domain.Account;
+import com.dws.challenge.exception.DuplicateAccountIdException;
+
+// Accounts kept outside the Java heap, selected with the "offheap" Spring profile. Each account
+// is one record in a chunk of direct memory:
+//
+//   long packed balance | int id hash | short id length | id bytes (UTF-8) | padding to 8 bytes
+//
+// Records never move, so a record is addressed by chunk index and offset packed into 32 bits.
+// The index is an open-addressing (linear probing) table of longs holding the id hash in the
+// upper half and the record address in the lower half, so most probes are decided without
+// touching the record. Creations are serialised by a lock; lookups take no lock and read index
+// slots with acquire semantics, which makes a record visible once its slot is.
+//
+// getAccount hands out OffHeapAccount views: their balance reads and writes go straight to the
+// record, so they behave like the live Account objects of AccountsRepositoryInMemory.
+
+@Repository
+@Profile("offheap")
+public class AccountsRepositoryOffHeap implements AccountsRepository {
+
+	private static final VarHandle SLOTS = MethodHandles.arrayElementVarHandle(long[].class);
+
+	private static final int CHUNK_SHIFT = 20;
+
+	private static final int CHUNK_SIZE = 1 << CHUNK_SHIFT;
+
+	private static final int MAX_CHUNKS = 1 << (Integer.SIZE - CHUNK_SHIFT);
+
+	private static final int HASH_OFFSET = 8;
+
+	private static final int LENGTH_OFFSET = 12;
+
+	private static final int ID_OFFSET = 14;
+
+	private static final int MAX_ID_LENGTH = 0xFFFF;
+
+	private final int initialSlots;
+
+	private final ReentrantLock writeLock = new ReentrantLock();
+
+	private volatile long[] slots;
+
+	private volatile ByteBuffer[] chunks;
+
+	// written under writeLock, read without it by size()
+	private volatile int size;
+
+	// guarded by writeLock
+	private int chunkPosition;
+
+	@Autowired
+	public AccountsRepositoryOffHeap(@Value("${accounts.offheap.initial-capacity:1048576}") int initialCapacity,
+			@Value("${accounts.balance.minor-units:false}") boolean minorUnits) {
+		if (minorUnits) {
+			throw new IllegalStateException(
+					"The offheap profile keeps balances in its own packed format; disable accounts.balance.minor-units");
+		}
+		// the table is kept at most half full
+		final int wanted = Math.max(2, initialCapacity) * 2;
+		this.initialSlots = wanted > 1 << 30 ? 1 << 30 : Integer.highestOneBit(wanted - 1) << 1;
+		clearAccounts();
+	}
+
+	@Override
+	public void createAccount(Account account) throws DuplicateAccountIdException {
+		final String accountId = account.getAccountId();
+		final byte[] id = accountId.getBytes(StandardCharsets.UTF_8);
+		if (id.length > MAX_ID_LENGTH) {
+			throw new IllegalArgumentException("Account id is too long");
+		}
+		// fails before anything is written if the balance cannot be packed
+		final long balance = OffHeapAccount.pack(account.getBalance());
+		final int hash = accountId.hashCode();
+
+		writeLock.lock();
+		try {
+			if (!store(id, hash, balance)) {
+				throw new DuplicateAccountIdException("Account id " + accountId + " already exists!");
+			}
+		} finally {
+			writeLock.unlock();
+		}
+	}
+
+	@Override
+	public void checkAccount(Account account) {
+		if (account.getAccountId().getBytes(StandardCharsets.UTF_8).length > MAX_ID_LENGTH) {
+			throw new IllegalArgumentException("Account id is too long");
+		}
+		OffHeapAccount.pack(account.getBalance());
+	}
+
+	// Ids are encoded and balances packed on all cores first; the index is then grown once for the
+	// whole collection and the records written under a single acquisition of the write lock. Nothing
+	// is stored if any balance cannot be packed.
+	@Override
+	public BitSet createAccounts(Collection<Account> accounts) {
+		final Account[] items = accounts.toArray(new Account[0]);
+		final byte[][] ids = new byte[items.length][];
+		final long[] balances = new long[items.length];
+		IntStream.range(0, items.length).parallel().forEach(i -> {
+			ids[i] = items[i].getAccountId().getBytes(StandardCharsets.UTF_8);
+			if (ids[i].length > MAX_ID_LENGTH) {
+				throw new IllegalArgumentException("Account id is too long");
+			}
+			balances[i] = OffHeapAccount.pack(items[i].getBalance());
+		});
+
+		final BitSet duplicates = new BitSet(items.length);
+		writeLock.lock();
+		try {
+			while ((long) size + items.length > slots.length >>> 1 && slots.length < 1 << 30) {
+				resize();
+			}
+			for (int i = 0; i < items.length; i++) {
+				if (!store(ids[i], items[i].getAccountId().hashCode(), balances[i])) {
+					duplicates.set(i);
+				}
+			}
+		} finally {
+			writeLock.unlock();
+		}
+		return duplicates;
+	}
+
+	@Override
+	public Account getAccount(String accountId) {
+		if (accountId == null) {
+			return null;
+		}
+		final long slot = find(slots, accountId.hashCode(), accountId.getBytes(StandardCharsets.UTF_8));
+		if (slot == 0) {
+			return null;
+		}
+		final int address = (int) slot;
+		return new OffHeapAccount(accountId, chunks[address >>> CHUNK_SHIFT], address & (CHUNK_SIZE - 1));
+	}
+
+	@Override
+	public int size() {
+		return size;
+	}
+
+	// Views handed out before the clear keep their own chunks alive and simply stop being reachable
+	// through the repository
+	@Override
+	public void clearAccounts() {
+		writeLock.lock();
+		try {
+			this.chunks = new ByteBuffer[0];
+			this.slots = new long[initialSlots];
+			this.size = 0;
+			this.chunkPosition = CHUNK_SIZE;
+		} finally {
+			writeLock.unlock();
+		}
+	}
+
+	// Called under writeLock. Writes the record and publishes it in the index; false if the id exists.
+	private boolean store(byte[] id, int hash, long balance) {
+		if (find(slots, hash, id) != 0) {
+			return false;
+		}
+		if (size + 1 > slots.length >>> 1) {
+			resize();
+		}
+		final int address = allocate(align(ID_OFFSET + id.length));
+		final ByteBuffer chunk = chunks[address >>> CHUNK_SHIFT];
+		final int offset = address & (CHUNK_SIZE - 1);
+		chunk.putInt(offset + HASH_OFFSET, hash);
+		chunk.putShort(offset + LENGTH_OFFSET, (short) id.length);
+		for (int i = 0; i < id.length; i++) {
+			chunk.put(offset + ID_OFFSET + i, id[i]);
+		}
+		OffHeapAccount.PACKED.setRelease(chunk, offset, balance);
+		insert(slots, ((long) hash << 32) | (address & 0xFFFFFFFFL));
+		size++;
+		return true;
+	}
+
+	// Returns the index slot of the account, or 0 when there is none
+	private long find(long[] table, int hash, byte[] id) {
+		final int mask = table.length - 1;
+		for (int i = spread(hash) & mask;; i = (i + 1) & mask) {
+			final long slot = (long) SLOTS.getAcquire(table, i);
+			if (slot == 0) {
+				return 0;
+			}
+			if ((int) (slot >>> 32) == hash && idEquals((int) slot, id)) {
+				return slot;
+			}
+		}
+	}
+
+	private boolean idEquals(int address, byte[] id) {
+		final ByteBuffer chunk = chunks[address >>> CHUNK_SHIFT];
+		final int offset = address & (CHUNK_SIZE - 1);
+		if ((chunk.getShort(offset + LENGTH_OFFSET) & 0xFFFF) != id.length) {
+			return false;
+		}
+		for (int i = 0; i < id.length; i++) {
+			if (chunk.get(offset + ID_OFFSET + i) != id[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	// Called under writeLock
+	private static void insert(long[] table, long slot) {
+		final int mask = table.length - 1;
+		int i = spread((int) (slot >>> 32)) & mask;
+		while ((long) SLOTS.getAcquire(table, i) != 0) {
+			i = (i + 1) & mask;
+		}
+		SLOTS.setRelease(table, i, slot);
+	}
+
+	// Called under writeLock. Slots carry their hash, so rehashing never reads a record; lookups
+	// still running on the old table see every account that existed before the resize.
+	private void resize() {
+		final long[] current = slots;
+		if (current.length == 1 << 30) {
+			throw new IllegalStateException("Off-heap account index is full");
+		}
+		final long[] larger = new long[current.length << 1];
+		for (long slot : current) {
+			if (slot != 0) {
+				insert(larger, slot);
+			}
+		}
+		this.slots = larger;
+	}
+
+	// Called under writeLock. Address 0 is never handed out, so an empty slot is always 0.
+	private int allocate(int recordSize) {
+		if (chunkPosition + recordSize > CHUNK_SIZE) {
+			if (chunks.length == MAX_CHUNKS) {
+				throw new IllegalStateException("Off-heap account store is full");
+			}
+			final ByteBuffer[] grown = Arrays.copyOf(chunks, chunks.length + 1);
+			// aligned so that the packed balance supports atomic access
+			grown[chunks.length] = ByteBuffer.allocateDirect(CHUNK_SIZE + Long.BYTES).alignedSlice(Long.BYTES);
+			this.chunks = grown;
+			this.chunkPosition = chunks.length == 1 ? Long.BYTES : 0;
+		}
+		final int address = ((chunks.length - 1) << CHUNK_SHIFT) | chunkPosition;
+		chunkPosition += recordSize;
+		return address;
+	}
+
+	private static int align(int length) {
+		return (length + Long.BYTES - 1) & -Long.BYTES;
+	}
+
+	private static int spread(int hash) {
+		final int h = hash * 0x9E3779B9;
+		return h ^ (h >>> 16);
+	}
+}
@@ -0,0 +1,169 @@
+package com.dws.challenge.repository;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+// Snapshots of every account balance as of a journal sequence, kept next to the journal segments
+// as snapshot-<sequence>.snap. A snapshot is
+//
+//   int magic | int version | long sequence | (byte 1, utf id, int scale, byte length, unscaled)* |
+//   byte 0 | long count | long crc32(everything before the crc)
+//
+// and is written to a temporary file that is moved into place only once complete, so a reader
+// never sees a partial snapshot.
+
+@Component
+@ConditionalOnProperty(name = "accounts.journal.enabled", havingValue = "true")
+public class AccountsSnapshotStore {
+
+	private static final int MAGIC = 0x41534E50;
+
+	private static final int VERSION = 1;
+
+	private static final String SNAPSHOT_PREFIX = "snapshot-";
+
+	private static final String SNAPSHOT_SUFFIX = ".snap";
+
+	private final Path directory;
+
+	@Autowired
+	public AccountsSnapshotStore(@Value("${accounts.journal.dir:journal}") String directory) throws IOException {
+		this.directory = Paths.get(directory);
+		Files.createDirectories(this.directory);
+	}
+
+	// Feeds every account of the newest snapshot to the visitor and returns the journal sequence it
+	// covers, or 0 when there is no snapshot yet
+	public long load(Visitor visitor) throws IOException {
+		final List<Path> snapshots = listSnapshots();
+		if (snapshots.isEmpty()) {
+			return 0;
+		}
+		final Path newest = snapshots.get(snapshots.size() - 1);
+		final CRC32 crc = new CRC32();
+		try (DataInputStream in = new DataInputStream(
+				new CheckedInputStream(new BufferedInputStream(Files.newInputStream(newest), 1 << 16), crc))) {
+			if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+				throw new IOException("Not an accounts snapshot: " + newest);
+			}
+			final long sequence = in.readLong();
+			long count = 0;
+			while (in.readByte() != 0) {
+				visitor.account(in.readUTF(), readDecimal(in));
+				count++;
+			}
+			if (in.readLong() != count) {
+				throw new IOException("Account count mismatch in snapshot " + newest);
+			}
+			final long expectedCrc = crc.getValue();
+			if (in.readLong() != expectedCrc) {
+				throw new IOException("Checksum mismatch in snapshot " + newest);
+			}
+			return sequence;
+		}
+	}
+
+	// Journal sequence covered by the newest snapshot, read from its header, or 0 when there is none
+	public long latestSequence() throws IOException {
+		final List<Path> snapshots = listSnapshots();
+		if (snapshots.isEmpty()) {
+			return 0;
+		}
+		try (DataInputStream in = new DataInputStream(Files.newInputStream(snapshots.get(snapshots.size() - 1)))) {
+			in.readInt();
+			in.readInt();
+			return in.readLong();
+		}
+	}
+
+	// Writes a new snapshot covering the journal up to sequence with the accounts the source emits.
+	// Older snapshots are removed once the new one is durable and in place.
+	public void write(long sequence, Source source) throws IOException {
+		final Path target = directory.resolve(String.format("%s%020d%s", SNAPSHOT_PREFIX, sequence, SNAPSHOT_SUFFIX));
+		final Path temp = directory.resolve(target.getFileName() + ".tmp");
+		final CRC32 crc = new CRC32();
+		try (CheckedOutputStream checked = new CheckedOutputStream(
+				new BufferedOutputStream(Files.newOutputStream(temp), 1 << 16), crc);
+				DataOutputStream out = new DataOutputStream(checked)) {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeLong(sequence);
+			final long[] count = new long[1];
+			source.writeTo((accountId, balance) -> {
+				out.writeByte(1);
+				out.writeUTF(accountId);
+				writeDecimal(out, balance);
+				count[0]++;
+			});
+			out.writeByte(0);
+			out.writeLong(count[0]);
+			out.flush();
+			out.writeLong(crc.getValue());
+		}
+		try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+			channel.force(true);
+		}
+		Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE);
+
+		for (Path older : listSnapshots()) {
+			if (!older.equals(target)) {
+				Files.deleteIfExists(older);
+			}
+		}
+	}
+
+	private List<Path> listSnapshots() throws IOException {
+		try (Stream<Path> files = Files.list(directory)) {
+			return files.filter(file -> {
+				final String name = file.getFileName().toString();
+				return name.startsWith(SNAPSHOT_PREFIX) && name.endsWith(SNAPSHOT_SUFFIX);
+			}).sorted().collect(Collectors.toList());
+		}
+	}
+
+	private static void writeDecimal(DataOutputStream out, BigDecimal value) throws IOException {
+		final byte[] unscaled = value.unscaledValue().toByteArray();
+		out.writeInt(value.scale());
+		out.writeByte(unscaled.length);
+		out.write(unscaled);
+	}
+
+	private static BigDecimal readDecimal(DataInputStream in) throws IOException {
+		final int scale = in.readInt();
+		final byte[] unscaled = new byte[in.readUnsignedByte()];
+		in.readFully(unscaled);
+		return new BigDecimal(new BigInteger(unscaled), scale);
+	}
+
+	public interface Visitor {
+
+		void account(String accountId, BigDecimal balance) throws IOException;
+	}
+
+	public interface Source {
+
+		void writeTo(Visitor out) throws IOException;
+	}
+}
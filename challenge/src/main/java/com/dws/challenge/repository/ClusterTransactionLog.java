@@ -0,0 +1,363 @@
+package com.dws.challenge.repository;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.dws.challenge.domain.TransferLeg;
+
+// This class is meant for making the two-phase commit of cross-node transfers (see
+// ClusterTransactions) survive a crash. A node records here every step it takes in such a transfer,
+// and the step is on disk before the node acts on it or answers:
+//  - as a participant, PREPARED for a leg it agreed to (a prepared debit is already taken from the
+//    balance), then COMMITTED or ABORTED
+//  - as a coordinator, DECIDED with the nodes of both legs once every leg is prepared and the
+//    transfer will commit, and DONE once both acknowledged the commit (DONE alone is not forced)
+//
+// Leg balance changes are recorded only here, never in the transfer journal, so a journal snapshot
+// never includes them and replaying this log after journal recovery counts each one exactly once.
+// The log is rewritten at startup with the net change of the settled legs per account (SETTLED)
+// and only the steps still unresolved. Records are
+//
+//   int length | int crc32(body) | body = byte type, fields...
+//
+// and, as in the journal, several threads waiting for a force are covered by one.
+
+public class ClusterTransactionLog {
+
+	static final byte PREPARED = 1;
+
+	static final byte COMMITTED = 2;
+
+	static final byte ABORTED = 3;
+
+	static final byte DECIDED = 4;
+
+	static final byte DONE = 5;
+
+	static final byte SETTLED = 6;
+
+	private static final int HEADER_SIZE = 8;
+
+	Logger log = LoggerFactory.getLogger(ClusterTransactionLog.class);
+
+	private final Path file;
+
+	private final ReentrantLock appendLock = new ReentrantLock();
+
+	private final ReentrantLock forceLock = new ReentrantLock();
+
+	// guarded by appendLock
+	private FileChannel channel;
+
+	private long position;
+
+	// end of the part known to be on disk
+	private volatile long durablePosition;
+
+	public ClusterTransactionLog(Path file) throws IOException {
+		this.file = file;
+		if (file.getParent() != null) {
+			Files.createDirectories(file.getParent());
+		}
+		open();
+	}
+
+	public void prepared(String txId, TransferLeg leg, String coordinator, String accountId, String counterpart,
+			BigDecimal amount) {
+		write(encode(PREPARED, txId, leg, amount, coordinator, accountId, counterpart), true);
+	}
+
+	public void committed(String txId, TransferLeg leg) {
+		write(encode(COMMITTED, txId, leg, null), true);
+	}
+
+	public void aborted(String txId, TransferLeg leg) {
+		write(encode(ABORTED, txId, leg, null), true);
+	}
+
+	public void decided(String txId, String debitNode, String creditNode) {
+		write(encode(DECIDED, txId, null, null, debitNode, creditNode), true);
+	}
+
+	public void done(String txId) {
+		write(encode(DONE, txId, null, null), false);
+	}
+
+	// Feeds every intact record to the visitor, in order
+	public void replay(Visitor visitor) throws IOException {
+		appendLock.lock();
+		try {
+			scan(visitor);
+		} finally {
+			appendLock.unlock();
+		}
+	}
+
+	// Replaces the log with the records the source emits, written to a temporary file that is
+	// forced and moved into place. Appends wait until it is done.
+	public void rewrite(Source source) throws IOException {
+		final Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+		appendLock.lock();
+		try (FileChannel out = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING)) {
+			try {
+				source.writeTo(new Visitor() {
+
+					@Override
+					public void prepared(String txId, TransferLeg leg, String coordinator, String accountId,
+							String counterpart, BigDecimal amount) {
+						writeFully(out, encode(PREPARED, txId, leg, amount, coordinator, accountId, counterpart));
+					}
+
+					@Override
+					public void committed(String txId, TransferLeg leg) {
+						writeFully(out, encode(COMMITTED, txId, leg, null));
+					}
+
+					@Override
+					public void aborted(String txId, TransferLeg leg) {
+						writeFully(out, encode(ABORTED, txId, leg, null));
+					}
+
+					@Override
+					public void decided(String txId, String debitNode, String creditNode) {
+						writeFully(out, encode(DECIDED, txId, null, null, debitNode, creditNode));
+					}
+
+					@Override
+					public void done(String txId) {
+						writeFully(out, encode(DONE, txId, null, null));
+					}
+
+					@Override
+					public void settled(String accountId, BigDecimal delta) {
+						writeFully(out, encode(SETTLED, "", null, delta, accountId));
+					}
+				});
+			} catch (UncheckedIOException e) {
+				throw e.getCause();
+			}
+			out.force(true);
+			channel.close();
+			Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+			open();
+		} finally {
+			appendLock.unlock();
+		}
+	}
+
+	public long size() {
+		return position;
+	}
+
+	public void close() throws IOException {
+		appendLock.lock();
+		try {
+			channel.force(false);
+			channel.close();
+		} finally {
+			appendLock.unlock();
+		}
+	}
+
+	// Positions the append cursor after the last intact record, cutting off a torn one
+	private void open() throws IOException {
+		channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+		position = scan(null);
+		if (position < channel.size()) {
+			log.warn("Dropping {} bytes of a torn record at the end of {}", channel.size() - position, file);
+			channel.truncate(position);
+			channel.force(false);
+		}
+		durablePosition = position;
+	}
+
+	private void write(ByteBuffer record, boolean force) {
+		final long end;
+		appendLock.lock();
+		try {
+			position += writeFully(channel, record);
+			end = position;
+		} finally {
+			appendLock.unlock();
+		}
+		if (force && durablePosition < end) {
+			forceLock.lock();
+			try {
+				if (durablePosition < end) {
+					final FileChannel target;
+					final long upTo;
+					appendLock.lock();
+					try {
+						target = channel;
+						upTo = position;
+					} finally {
+						appendLock.unlock();
+					}
+					target.force(false);
+					durablePosition = upTo;
+				}
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			} finally {
+				forceLock.unlock();
+			}
+		}
+	}
+
+	// Called under appendLock: visits the intact records (when a visitor is given) and returns
+	// where they end
+	private long scan(Visitor visitor) throws IOException {
+		channel.position(0);
+		final DataInputStream in = new DataInputStream(
+				new BufferedInputStream(Channels.newInputStream(channel), 1 << 16));
+		final CRC32 check = new CRC32();
+		long end = 0;
+		while (true) {
+			final byte[] body;
+			try {
+				final int length = in.readInt();
+				final int expected = in.readInt();
+				if (length <= 0 || end + HEADER_SIZE + length > channel.size()) {
+					break;
+				}
+				body = new byte[length];
+				in.readFully(body);
+				check.reset();
+				check.update(body);
+				if ((int) check.getValue() != expected) {
+					break;
+				}
+			} catch (EOFException e) {
+				break;
+			}
+			if (visitor != null) {
+				decode(new DataInputStream(new ByteArrayInputStream(body)), visitor);
+			}
+			end += HEADER_SIZE + body.length;
+		}
+		channel.position(end);
+		return end;
+	}
+
+	// body = byte type, utf txId, [byte leg], utf fields..., [int scale, byte length, unscaled amount]
+	private static ByteBuffer encode(byte type, String txId, TransferLeg leg, BigDecimal amount, String... fields) {
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+		try (DataOutputStream body = new DataOutputStream(bytes)) {
+			body.writeByte(type);
+			body.writeUTF(txId);
+			if (leg != null) {
+				body.writeByte(leg.ordinal());
+			}
+			for (String field : fields) {
+				body.writeUTF(field);
+			}
+			if (amount != null) {
+				final byte[] unscaled = amount.unscaledValue().toByteArray();
+				body.writeInt(amount.scale());
+				body.writeByte(unscaled.length);
+				body.write(unscaled);
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		final byte[] encoded = bytes.toByteArray();
+		final ByteBuffer record = ByteBuffer.allocate(HEADER_SIZE + encoded.length);
+		final CRC32 crc = new CRC32();
+		crc.update(encoded);
+		return record.putInt(encoded.length).putInt((int) crc.getValue()).put(encoded).flip();
+	}
+
+	private static void decode(DataInputStream body, Visitor visitor) throws IOException {
+		final byte type = body.readByte();
+		final String txId = body.readUTF();
+		final TransferLeg leg = type == PREPARED || type == COMMITTED || type == ABORTED
+				? TransferLeg.values()[body.readByte()]
+				: null;
+		switch (type) {
+		case PREPARED:
+			final String coordinator = body.readUTF();
+			final String accountId = body.readUTF();
+			visitor.prepared(txId, leg, coordinator, accountId, body.readUTF(), readDecimal(body));
+			break;
+		case COMMITTED:
+			visitor.committed(txId, leg);
+			break;
+		case ABORTED:
+			visitor.aborted(txId, leg);
+			break;
+		case DECIDED:
+			final String debitNode = body.readUTF();
+			visitor.decided(txId, debitNode, body.readUTF());
+			break;
+		case DONE:
+			visitor.done(txId);
+			break;
+		case SETTLED:
+			visitor.settled(body.readUTF(), readDecimal(body));
+			break;
+		default:
+			throw new IOException("Unknown cluster transaction record type " + type);
+		}
+	}
+
+	private static BigDecimal readDecimal(DataInputStream in) throws IOException {
+		final int scale = in.readInt();
+		final byte[] unscaled = new byte[in.readUnsignedByte()];
+		in.readFully(unscaled);
+		return new BigDecimal(new BigInteger(unscaled), scale);
+	}
+
+	private static int writeFully(FileChannel target, ByteBuffer record) {
+		final int length = record.remaining();
+		try {
+			while (record.hasRemaining()) {
+				target.write(record);
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		return length;
+	}
+
+	public interface Visitor {
+
+		void prepared(String txId, TransferLeg leg, String coordinator, String accountId, String counterpart,
+				BigDecimal amount);
+
+		void committed(String txId, TransferLeg leg);
+
+		void aborted(String txId, TransferLeg leg);
+
+		void decided(String txId, String debitNode, String creditNode);
+
+		void done(String txId);
+
+		void settled(String accountId, BigDecimal delta);
+	}
+
+	public interface Source {
+
+		void writeTo(Visitor out) throws IOException;
+	}
+}
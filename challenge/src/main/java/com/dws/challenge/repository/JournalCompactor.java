@@ -0,0 +1,132 @@
+package com.dws.challenge.repository;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PreDestroy;
+
+// This class is meant for keeping restarts fast by periodically folding the journal into a new
+// snapshot. The snapshot is built from files only (the previous snapshot plus the durable journal
+// records after it), never from the live accounts, so transfers keep running while it is written
+// and the result is exactly the state as of one journal sequence. Only the accounts touched since
+// the previous snapshot are held in memory; the rest are streamed from the old snapshot to the new
+// one. Journal segments the new snapshot covers are deleted afterwards.
+
+@Component
+@ConditionalOnProperty(name = "accounts.journal.enabled", havingValue = "true")
+public class JournalCompactor {
+
+	Logger log = LoggerFactory.getLogger(JournalCompactor.class);
+
+	private final MappedTransferJournal journal;
+
+	private final AccountsSnapshotStore snapshotStore;
+
+	private final long minRecords;
+
+	private final ScheduledExecutorService scheduler;
+
+	private volatile long snapshotSequence;
+
+	@Autowired
+	public JournalCompactor(MappedTransferJournal journal, AccountsSnapshotStore snapshotStore,
+			@Value("${accounts.snapshot.interval-seconds:300}") long intervalSeconds,
+			@Value("${accounts.snapshot.min-records:100000}") long minRecords) {
+		this.journal = journal;
+		this.snapshotStore = snapshotStore;
+		this.minRecords = minRecords;
+		this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "journal-compactor");
+			thread.setDaemon(true);
+			return thread;
+		});
+		if (intervalSeconds > 0) {
+			this.scheduler.scheduleWithFixedDelay(this::compactQuietly, intervalSeconds, intervalSeconds,
+					TimeUnit.SECONDS);
+		}
+	}
+
+	// Writes a snapshot covering every durable journal record and returns its sequence, or the
+	// previous snapshot's sequence when fewer than minRecords records were added since then
+	public synchronized long compact() throws IOException {
+		final long start = System.nanoTime();
+		final long upTo = journal.getDurableSequence();
+		final long previous = snapshotStore.latestSequence();
+		if (upTo - previous < Math.max(minRecords, 1)) {
+			snapshotSequence = previous;
+			return previous;
+		}
+
+		// Net change per account since the previous snapshot; accounts created since then are
+		// recorded with their opening balance and emitted after the existing ones
+		final Map<String, BigDecimal> deltas = new HashMap<>();
+		final Set<String> created = new LinkedHashSet<>();
+		journal.replay(previous, new TransferJournal.Visitor() {
+
+			@Override
+			public void accountCreated(long sequence, String accountId, BigDecimal balance) {
+				if (sequence <= upTo) {
+					deltas.merge(accountId, balance, BigDecimal::add);
+					created.add(accountId);
+				}
+			}
+
+			@Override
+			public void transfer(long sequence, String accountFromId, String accountToId, BigDecimal amount) {
+				if (sequence <= upTo) {
+					deltas.merge(accountFromId, amount.negate(), BigDecimal::add);
+					deltas.merge(accountToId, amount, BigDecimal::add);
+				}
+			}
+		});
+
+		snapshotStore.write(upTo, out -> {
+			snapshotStore.load((accountId, balance) -> {
+				final BigDecimal delta = deltas.remove(accountId);
+				out.account(accountId, delta == null ? balance : balance.add(delta));
+			});
+			for (String accountId : created) {
+				out.account(accountId, deltas.remove(accountId));
+			}
+			if (!deltas.isEmpty()) {
+				throw new IOException("Journal refers to " + deltas.size() + " accounts missing from the snapshot");
+			}
+		});
+		snapshotSequence = upTo;
+		final int discarded = journal.discardThrough(upTo);
+		log.info("Snapshot written at sequence {} in {} ms; {} journal segments discarded", upTo,
+				TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start), discarded);
+		return upTo;
+	}
+
+	public long getSnapshotSequence() {
+		return snapshotSequence;
+	}
+
+	@PreDestroy
+	public void shutdown() {
+		scheduler.shutdown();
+	}
+
+	private void compactQuietly() {
+		try {
+			compact();
+		} catch (IOException | RuntimeException e) {
+			log.error("Journal compaction failed", e);
+		}
+	}
+}
@@ -0,0 +1,15 @@
+package com.dws.challenge.repository;
+
+// When a journaled record counts as durable, selected with accounts.journal.durability
+
+public enum JournalDurability {
+
+	// Every record is forced to disk before the call returns
+	FSYNC_EACH,
+
+	// Callers wait for a force, but one force covers every record appended before it started
+	GROUP_COMMIT,
+
+	// Callers never wait; a background task forces the journal periodically
+	ASYNC
+}
@@ -0,0 +1,409 @@
+package com.dws.challenge.repository;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PreDestroy;
+
+// Journal kept in fixed-size memory-mapped segment files named after the first sequence they
+// hold (journal-00000000000000000001.log, ...). Each record is
+//
+//   int length | int crc32(body) | body = byte type, long sequence, fields...
+//
+// and a zero length marks the end of the written part of a segment. Records are encoded on the
+// calling thread; only the copy into the mapped segment happens under the append lock. Durability
+// is obtained by forcing the mapping: with GROUP_COMMIT the first waiter forces everything
+// appended so far and the threads queued behind it find their records already durable.
+
+@Component
+@ConditionalOnProperty(name = "accounts.journal.enabled", havingValue = "true")
+public class MappedTransferJournal implements TransferJournal {
+
+	static final byte ACCOUNT_CREATED = 1;
+
+	static final byte TRANSFER = 2;
+
+	private static final int HEADER_SIZE = 8;
+
+	private static final int SEQUENCE_OFFSET = 1;
+
+	private static final String SEGMENT_PREFIX = "journal-";
+
+	private static final String SEGMENT_SUFFIX = ".log";
+
+	Logger log = LoggerFactory.getLogger(MappedTransferJournal.class);
+
+	private final Path directory;
+
+	private final JournalDurability durability;
+
+	private final int segmentSize;
+
+	// Locks rather than monitors, so a virtual thread waiting on a force does not pin its carrier
+	private final ReentrantLock appendLock = new ReentrantLock();
+
+	private final ReentrantLock forceLock = new ReentrantLock();
+
+	private final CRC32 crc = new CRC32();
+
+	private final ThreadLocal<ByteBuffer> encodeBuffers = ThreadLocal.withInitial(() -> ByteBuffer.allocate(256));
+
+	private final AtomicLong durableSequence = new AtomicLong();
+
+	private final ScheduledExecutorService flusher;
+
+	// guarded by appendLock
+	private FileChannel channel;
+
+	private MappedByteBuffer segment;
+
+	private long lastSequence;
+
+	@Autowired
+	public MappedTransferJournal(@Value("${accounts.journal.dir:journal}") String directory,
+			@Value("${accounts.journal.durability:GROUP_COMMIT}") JournalDurability durability,
+			@Value("${accounts.journal.segment-size:67108864}") int segmentSize,
+			@Value("${accounts.journal.async-flush-millis:100}") long asyncFlushMillis) throws IOException {
+		this.directory = Paths.get(directory);
+		this.durability = durability;
+		this.segmentSize = segmentSize;
+		Files.createDirectories(this.directory);
+		open();
+
+		if (durability == JournalDurability.ASYNC) {
+			this.flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+				Thread thread = new Thread(runnable, "journal-flusher");
+				thread.setDaemon(true);
+				return thread;
+			});
+			this.flusher.scheduleWithFixedDelay(this::forceQuietly, asyncFlushMillis, asyncFlushMillis,
+					TimeUnit.MILLISECONDS);
+		} else {
+			this.flusher = null;
+		}
+	}
+
+	@Override
+	public long logAccountCreated(String accountId, BigDecimal balance) {
+		ByteBuffer body = startRecord(ACCOUNT_CREATED);
+		body = putString(body, accountId);
+		body = putDecimal(body, balance);
+		return append(body);
+	}
+
+	@Override
+	public long logTransfer(String accountFromId, String accountToId, BigDecimal amount) {
+		ByteBuffer body = startRecord(TRANSFER);
+		body = putString(body, accountFromId);
+		body = putString(body, accountToId);
+		body = putDecimal(body, amount);
+		return append(body);
+	}
+
+	@Override
+	public void sync(long sequence) {
+		if (durability == JournalDurability.ASYNC) {
+			return;
+		}
+		if (durability == JournalDurability.GROUP_COMMIT && sequence <= durableSequence.get()) {
+			return;
+		}
+		forceLock.lock();
+		try {
+			if (durability == JournalDurability.GROUP_COMMIT && sequence <= durableSequence.get()) {
+				return;
+			}
+			force();
+		} finally {
+			forceLock.unlock();
+		}
+	}
+
+	@Override
+	public long replay(long afterSequence, Visitor visitor) throws IOException {
+		long last = afterSequence;
+		final List<Path> segments = listSegments();
+		for (int i = 0; i < segments.size(); i++) {
+			// a segment is skipped when the next one starts at or before the first wanted record
+			if (i + 1 < segments.size() && firstSequence(segments.get(i + 1)) <= afterSequence + 1) {
+				continue;
+			}
+			try (FileChannel readChannel = FileChannel.open(segments.get(i), StandardOpenOption.READ)) {
+				final ByteBuffer buffer = readChannel.map(FileChannel.MapMode.READ_ONLY, 0, readChannel.size());
+				last = Math.max(last, scan(buffer, afterSequence, visitor));
+			}
+		}
+		return last;
+	}
+
+	// Deletes the segments whose records all have a sequence up to and including the given one,
+	// e.g. once a snapshot covers them. The segment being written is never deleted.
+	public int discardThrough(long sequence) throws IOException {
+		final List<Path> segments = listSegments();
+		int discarded = 0;
+		for (int i = 0; i + 1 < segments.size(); i++) {
+			if (firstSequence(segments.get(i + 1)) > sequence + 1) {
+				break;
+			}
+			Files.deleteIfExists(segments.get(i));
+			discarded++;
+		}
+		return discarded;
+	}
+
+	public long getLastSequence() {
+		appendLock.lock();
+		try {
+			return lastSequence;
+		} finally {
+			appendLock.unlock();
+		}
+	}
+
+	public long getDurableSequence() {
+		return durableSequence.get();
+	}
+
+	@PreDestroy
+	public void close() throws IOException {
+		if (flusher != null) {
+			flusher.shutdown();
+		}
+		forceLock.lock();
+		try {
+			force();
+		} finally {
+			forceLock.unlock();
+		}
+		appendLock.lock();
+		try {
+			channel.close();
+		} finally {
+			appendLock.unlock();
+		}
+	}
+
+	// Reopens the newest segment and positions the append cursor after its last intact record.
+	// Anything behind that point (a torn record from a crash) is zeroed so it cannot be mistaken
+	// for data once new records are written over it.
+	private void open() throws IOException {
+		final List<Path> segments = listSegments();
+		if (segments.isEmpty()) {
+			openSegment(1);
+			lastSequence = 0;
+		} else {
+			final Path newest = segments.get(segments.size() - 1);
+			channel = FileChannel.open(newest, StandardOpenOption.READ, StandardOpenOption.WRITE);
+			segment = channel.map(FileChannel.MapMode.READ_WRITE, 0, Math.max(channel.size(), segmentSize));
+			lastSequence = Math.max(firstSequence(newest) - 1, scan(segment, Long.MAX_VALUE, null));
+			final int end = segment.position();
+			for (int i = end; i < segment.capacity(); i++) {
+				segment.put(i, (byte) 0);
+			}
+			segment.position(end);
+		}
+		durableSequence.set(lastSequence);
+		log.info("Journal opened in {} at sequence {} ({})", directory.toAbsolutePath(), lastSequence, durability);
+	}
+
+	private ByteBuffer startRecord(byte type) {
+		final ByteBuffer body = encodeBuffers.get();
+		body.clear();
+		body.put(type);
+		body.putLong(0);
+		return body;
+	}
+
+	private long append(ByteBuffer body) {
+		body.flip();
+		final int length = body.remaining();
+		if (HEADER_SIZE + length >= segmentSize) {
+			throw new IllegalArgumentException("Journal record of " + length + " bytes does not fit a segment");
+		}
+		appendLock.lock();
+		try {
+			final long sequence = ++lastSequence;
+			body.putLong(SEQUENCE_OFFSET, sequence);
+			crc.reset();
+			crc.update(body.duplicate());
+
+			// keep room for the zero length that terminates the segment
+			if (segment.remaining() < HEADER_SIZE + length + Integer.BYTES) {
+				rollSegment(sequence);
+			}
+			segment.putInt(length);
+			segment.putInt((int) crc.getValue());
+			segment.put(body);
+			return sequence;
+		} finally {
+			appendLock.unlock();
+		}
+	}
+
+	// Forces the segment being written and marks everything appended before the force as durable
+	private void force() {
+		final MappedByteBuffer target;
+		final long upTo;
+		appendLock.lock();
+		try {
+			target = segment;
+			upTo = lastSequence;
+		} finally {
+			appendLock.unlock();
+		}
+		target.force();
+		durableSequence.accumulateAndGet(upTo, Math::max);
+	}
+
+	private void forceQuietly() {
+		try {
+			forceLock.lock();
+			try {
+				force();
+			} finally {
+				forceLock.unlock();
+			}
+		} catch (RuntimeException e) {
+			log.error("Background journal force failed", e);
+		}
+	}
+
+	// Called under appendLock: the full segment is forced before the next one is started
+	private void rollSegment(long firstSequence) {
+		try {
+			segment.force();
+			durableSequence.accumulateAndGet(firstSequence - 1, Math::max);
+			channel.close();
+			openSegment(firstSequence);
+		} catch (IOException e) {
+			throw new UncheckedIOException("Could not roll journal segment", e);
+		}
+	}
+
+	private void openSegment(long firstSequence) throws IOException {
+		final Path file = directory.resolve(String.format("%s%020d%s", SEGMENT_PREFIX, firstSequence, SEGMENT_SUFFIX));
+		channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ,
+				StandardOpenOption.WRITE);
+		segment = channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+	}
+
+	private List<Path> listSegments() throws IOException {
+		try (Stream<Path> files = Files.list(directory)) {
+			return files.filter(file -> {
+				final String name = file.getFileName().toString();
+				return name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX);
+			}).sorted().collect(Collectors.toList());
+		}
+	}
+
+	private static long firstSequence(Path segmentFile) {
+		final String name = segmentFile.getFileName().toString();
+		return Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+	}
+
+	// Reads records from the start of the buffer until the end marker or the first damaged record,
+	// leaving the buffer positioned there. Records after afterSequence go to the visitor, if any.
+	// Returns the last intact sequence, or 0 when the buffer holds none.
+	static long scan(ByteBuffer buffer, long afterSequence, Visitor visitor) {
+		final CRC32 checksum = new CRC32();
+		long last = 0;
+		buffer.position(0);
+		while (buffer.remaining() >= HEADER_SIZE) {
+			final int start = buffer.position();
+			final int length = buffer.getInt();
+			if (length <= 0 || length > buffer.remaining() - Integer.BYTES) {
+				buffer.position(start);
+				break;
+			}
+			final int expectedCrc = buffer.getInt();
+			final ByteBuffer body = buffer.duplicate();
+			body.limit(body.position() + length);
+			checksum.reset();
+			checksum.update(body.duplicate());
+			if ((int) checksum.getValue() != expectedCrc) {
+				buffer.position(start);
+				break;
+			}
+			final byte type = body.get();
+			final long sequence = body.getLong();
+			if (visitor != null && sequence > afterSequence) {
+				if (type == ACCOUNT_CREATED) {
+					visitor.accountCreated(sequence, getString(body), getDecimal(body));
+				} else if (type == TRANSFER) {
+					visitor.transfer(sequence, getString(body), getString(body), getDecimal(body));
+				}
+			}
+			last = sequence;
+			buffer.position(start + HEADER_SIZE + length);
+		}
+		return last;
+	}
+
+	private ByteBuffer putString(ByteBuffer body, String value) {
+		final byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		if (bytes.length > 0xFFFF) {
+			throw new IllegalArgumentException("Account id too long for the journal");
+		}
+		return ensureCapacity(body, Short.BYTES + bytes.length).putShort((short) bytes.length).put(bytes);
+	}
+
+	private ByteBuffer putDecimal(ByteBuffer body, BigDecimal value) {
+		final byte[] unscaled = value.unscaledValue().toByteArray();
+		if (unscaled.length > 0xFF) {
+			throw new IllegalArgumentException("Amount too large for the journal");
+		}
+		return ensureCapacity(body, Integer.BYTES + 1 + unscaled.length).putInt(value.scale())
+				.put((byte) unscaled.length).put(unscaled);
+	}
+
+	// Grows this thread's encode buffer when a record outgrows it
+	private ByteBuffer ensureCapacity(ByteBuffer body, int needed) {
+		if (body.remaining() >= needed) {
+			return body;
+		}
+		final ByteBuffer larger = ByteBuffer.allocate(Math.max(body.capacity() * 2, body.position() + needed));
+		body.flip();
+		larger.put(body);
+		encodeBuffers.set(larger);
+		return larger;
+	}
+
+	private static String getString(ByteBuffer body) {
+		final byte[] bytes = new byte[body.getShort() & 0xFFFF];
+		body.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	private static BigDecimal getDecimal(ByteBuffer body) {
+		final int scale = body.getInt();
+		final byte[] unscaled = new byte[body.get() & 0xFF];
+		body.get(unscaled);
+		return new BigDecimal(new BigInteger(unscaled), scale);
+	}
+}
@@ -0,0 +1,61 @@
+package com.dws.challenge.repository;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import com.dws.challenge.domain.Account;
+
+// Flyweight view of an account record held by AccountsRepositoryOffHeap. The view itself only
+// points at the record; the balance is read and written in the off-heap chunk, packed into one
+// long as a 56-bit unscaled value and an 8-bit scale, so BigDecimal equality (scale included) is
+// preserved across a round trip.
+
+public final class OffHeapAccount extends Account {
+
+	static final VarHandle PACKED = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.nativeOrder());
+
+	private static final int UNSCALED_BITS = 55;
+
+	private final ByteBuffer chunk;
+
+	private final int offset;
+
+	OffHeapAccount(String accountId, ByteBuffer chunk, int offset) {
+		super(accountId, null);
+		this.chunk = chunk;
+		this.offset = offset;
+	}
+
+	@Override
+	public BigDecimal getBalance() {
+		return unpack((long) PACKED.getVolatile(chunk, offset));
+	}
+
+	@Override
+	public void setBalance(BigDecimal balance) {
+		PACKED.setVolatile(chunk, offset, pack(balance));
+	}
+
+	// Compares by value, since getBalance() hands out a fresh BigDecimal on every call
+	@Override
+	public boolean compareAndSetBalance(BigDecimal expected, BigDecimal update) {
+		return PACKED.compareAndSet(chunk, offset, pack(expected), pack(update));
+	}
+
+	static long pack(BigDecimal value) {
+		final BigInteger unscaled = value.unscaledValue();
+		final int scale = value.scale();
+		if (unscaled.bitLength() > UNSCALED_BITS || scale != (byte) scale) {
+			throw new ArithmeticException("Balance " + value.toPlainString() + " is out of range for off-heap storage");
+		}
+		return (unscaled.longValue() << 8) | (scale & 0xFF);
+	}
+
+	static BigDecimal unpack(long packed) {
+		return BigDecimal.valueOf(packed >> 8, (byte) packed);
+	}
+}
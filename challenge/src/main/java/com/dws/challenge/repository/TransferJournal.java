@@ -0,0 +1,28 @@
+package com.dws.challenge.repository;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+
+// Write-ahead journal of committed account creations and transfers. Appending returns the
+// record's sequence number straight away; sync(sequence) then waits until that record is as
+// durable as the configured JournalDurability requires.
+
+public interface TransferJournal {
+
+	long logAccountCreated(String accountId, BigDecimal balance);
+
+	long logTransfer(String accountFromId, String accountToId, BigDecimal amount);
+
+	void sync(long sequence);
+
+	// Feeds every record with a sequence greater than afterSequence to the visitor, in order, and
+	// returns the last sequence seen
+	long replay(long afterSequence, Visitor visitor) throws IOException;
+
+	interface Visitor {
+
+		void accountCreated(long sequence, String accountId, BigDecimal balance);
+
+		void transfer(long sequence, String accountFromId, String accountToId, BigDecimal amount);
+	}
+}
@@ -0,0 +1,301 @@
+package com.dws.challenge.repository;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongSupplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Repository;
+
+import com.dws.challenge.domain.LedgerEntry;
+import com.dws.challenge.domain.TransferHistoryPage;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+// This class is meant for keeping the history of committed transfers in memory. Entries are never
+// changed or removed, and are stored column-wise in fixed-size chunks of primitive arrays:
+//
+//   long timestamp | int from account | int to account | long unscaled amount | byte scale
+//
+// Account ids are kept once and referred to by number; the rare amount that does not fit a long
+// and a byte scale is kept aside as a BigDecimal. Every account has an index of the positions of
+// its entries, in append order, so a time range of one account is found by binary search over that
+// index without looking at other accounts' entries. An entry costs 25 bytes in the chunks and 8 in
+// the two indexes (16 just after an index doubled); transfers.ledger.memory reports the total.
+//
+// Appends are serialised by a lock held for a handful of array stores. Readers take no lock: an
+// entry is written before the volatile sizes that publish it, and timestamps never go backwards,
+// so every account's index is sorted by time as well as by sequence.
+//
+// Once transfers.ledger.max-entries are held, later transfers are not recorded. They are counted
+// (transfers.ledger.dropped), and every history page whose time range reaches past the first of
+// them is marked truncated.
+
+@Repository
+public class TransferLedger implements MeterBinder {
+
+	Logger log = LoggerFactory.getLogger(TransferLedger.class);
+
+	private static final int CHUNK_SHIFT = 16;
+
+	private static final int CHUNK_SIZE = 1 << CHUNK_SHIFT;
+
+	private static final int CHUNK_BYTES = CHUNK_SIZE * (Long.BYTES + 2 * Integer.BYTES + Long.BYTES + 1);
+
+	// Scale marking an amount kept in largeAmounts
+	private static final byte LARGE = Byte.MIN_VALUE;
+
+	private final boolean enabled;
+
+	private final int maxEntries;
+
+	private final LongSupplier clock;
+
+	private final ReentrantLock appendLock = new ReentrantLock();
+
+	private final Map<String, AccountIndex> indexes = new ConcurrentHashMap<>();
+
+	private final Map<Integer, BigDecimal> largeAmounts = new ConcurrentHashMap<>();
+
+	private volatile Chunk[] chunks = new Chunk[0];
+
+	private volatile String[] accountIds = new String[1024];
+
+	// written under appendLock, read without it
+	private volatile int size;
+
+	private volatile long indexBytes;
+
+	private volatile long dropped;
+
+	// time of the first transfer that was not recorded
+	private volatile long fullSince = Long.MAX_VALUE;
+
+	// guarded by appendLock
+	private int accountCount;
+
+	private long lastTimestamp;
+
+	@Autowired
+	public TransferLedger(@Value("${transfers.ledger.enabled:true}") boolean enabled,
+			@Value("${transfers.ledger.max-entries:10000000}") int maxEntries) {
+		this(enabled, maxEntries, System::currentTimeMillis);
+	}
+
+	public TransferLedger(boolean enabled, int maxEntries, LongSupplier clock) {
+		this.enabled = enabled;
+		this.maxEntries = maxEntries;
+		this.clock = clock;
+	}
+
+	// Records nothing; the default until Spring injects the real one
+	public static TransferLedger disabled() {
+		return new TransferLedger(false, 0);
+	}
+
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	public void append(String accountFrom, String accountTo, BigDecimal amount) {
+		if (!enabled) {
+			return;
+		}
+		final BigInteger unscaled = amount.unscaledValue();
+		final boolean large = unscaled.bitLength() > 63 || amount.scale() <= LARGE || amount.scale() > Byte.MAX_VALUE;
+		final long now = clock.getAsLong();
+
+		appendLock.lock();
+		try {
+			final int position = size;
+			if (position == maxEntries) {
+				if (dropped++ == 0) {
+					fullSince = now;
+					log.warn("Transfer ledger is full at {} entries; later transfers are not recorded", maxEntries);
+				}
+				return;
+			}
+			final Chunk chunk = chunkFor(position);
+			final int offset = position & (CHUNK_SIZE - 1);
+			lastTimestamp = Math.max(lastTimestamp, now);
+			chunk.timestamps[offset] = lastTimestamp;
+			final AccountIndex from = indexOf(accountFrom);
+			final AccountIndex to = indexOf(accountTo);
+			chunk.accounts[2 * offset] = from.account;
+			chunk.accounts[2 * offset + 1] = to.account;
+			if (large) {
+				largeAmounts.put(position, amount);
+				chunk.scales[offset] = LARGE;
+			} else {
+				chunk.amounts[offset] = unscaled.longValue();
+				chunk.scales[offset] = (byte) amount.scale();
+			}
+			from.add(position);
+			to.add(position);
+			size = position + 1;
+		} finally {
+			appendLock.unlock();
+		}
+	}
+
+	// Transfers of the account with from <= timestamp < to (either bound may be null) and a sequence
+	// greater than after, oldest first, at most limit of them
+	public TransferHistoryPage history(String accountId, Instant from, Instant to, long after, int limit) {
+		final long fromMillis = from == null ? Long.MIN_VALUE : from.toEpochMilli();
+		final long toMillis = to == null ? Long.MAX_VALUE : to.toEpochMilli();
+		final Boolean truncated = toMillis > fullSince ? Boolean.TRUE : null;
+		final AccountIndex index = indexes.get(accountId);
+		if (index == null) {
+			return new TransferHistoryPage(accountId, List.of(), null, truncated);
+		}
+		final int count = index.size;
+		final int[] positions = index.positions;
+		final Chunk[] chunks = this.chunks;
+		final long firstPosition = Math.max(0, after);
+
+		// first entry at or after both lower bounds; both grow along the index
+		int low = 0;
+		int high = count;
+		while (low < high) {
+			final int middle = (low + high) >>> 1;
+			final int position = positions[middle];
+			if (position < firstPosition || timestamp(chunks, position) < fromMillis) {
+				low = middle + 1;
+			} else {
+				high = middle;
+			}
+		}
+
+		final List<LedgerEntry> entries = new ArrayList<>(Math.min(limit, count - low));
+		int i = low;
+		for (; i < count && entries.size() < limit; i++) {
+			final int position = positions[i];
+			if (timestamp(chunks, position) >= toMillis) {
+				break;
+			}
+			entries.add(entry(chunks, position));
+		}
+		final boolean more = i < count && timestamp(chunks, positions[i]) < toMillis;
+		return new TransferHistoryPage(accountId, entries,
+				more && !entries.isEmpty() ? entries.get(entries.size() - 1).getSequence() : null, truncated);
+	}
+
+	public int size() {
+		return size;
+	}
+
+	// Transfers not recorded because the ledger was full
+	public long getDroppedCount() {
+		return dropped;
+	}
+
+	// Bytes held by the chunks and the per-account indexes
+	public long memoryBytes() {
+		return (long) chunks.length * CHUNK_BYTES + indexBytes;
+	}
+
+	@Override
+	public void bindTo(MeterRegistry registry) {
+		Gauge.builder("transfers.ledger.size", this, TransferLedger::size)
+				.description("Transfers recorded by the ledger").register(registry);
+		Gauge.builder("transfers.ledger.memory", this, TransferLedger::memoryBytes).baseUnit("bytes")
+				.description("Memory held by the ledger's entries and account indexes").register(registry);
+		FunctionCounter.builder("transfers.ledger.dropped", this, TransferLedger::getDroppedCount)
+				.description("Transfers not recorded because the ledger was full").register(registry);
+	}
+
+	private LedgerEntry entry(Chunk[] chunks, int position) {
+		final Chunk chunk = chunks[position >>> CHUNK_SHIFT];
+		final int offset = position & (CHUNK_SIZE - 1);
+		final String[] ids = accountIds;
+		final byte scale = chunk.scales[offset];
+		final BigDecimal amount = scale == LARGE ? largeAmounts.get(position)
+				: BigDecimal.valueOf(chunk.amounts[offset], scale);
+		// sequences start at 1, so "after=0" means from the beginning
+		return new LedgerEntry(position + 1L, Instant.ofEpochMilli(chunk.timestamps[offset]),
+				ids[chunk.accounts[2 * offset]], ids[chunk.accounts[2 * offset + 1]], amount);
+	}
+
+	private static long timestamp(Chunk[] chunks, int position) {
+		return chunks[position >>> CHUNK_SHIFT].timestamps[position & (CHUNK_SIZE - 1)];
+	}
+
+	// Called under appendLock
+	private Chunk chunkFor(int position) {
+		final int index = position >>> CHUNK_SHIFT;
+		if (index == chunks.length) {
+			final Chunk[] grown = Arrays.copyOf(chunks, index + 1);
+			grown[index] = new Chunk();
+			chunks = grown;
+		}
+		return chunks[index];
+	}
+
+	// Called under appendLock. The id is stored before the index is published in the map.
+	private AccountIndex indexOf(String accountId) {
+		AccountIndex index = indexes.get(accountId);
+		if (index == null) {
+			final int account = accountCount++;
+			if (account == accountIds.length) {
+				accountIds = Arrays.copyOf(accountIds, account * 2);
+			}
+			accountIds[account] = accountId;
+			index = new AccountIndex(account);
+			indexes.put(accountId, index);
+		}
+		return index;
+	}
+
+	private static final class Chunk {
+
+		private final long[] timestamps = new long[CHUNK_SIZE];
+
+		// from and to of each entry, side by side
+		private final int[] accounts = new int[2 * CHUNK_SIZE];
+
+		private final long[] amounts = new long[CHUNK_SIZE];
+
+		private final byte[] scales = new byte[CHUNK_SIZE];
+	}
+
+	private final class AccountIndex {
+
+		private final int account;
+
+		private volatile int[] positions = new int[4];
+
+		// written under appendLock after the position it covers
+		private volatile int size;
+
+		private AccountIndex(int account) {
+			this.account = account;
+			indexBytes += 4 * Integer.BYTES;
+		}
+
+		// Called under appendLock. A transfer between an account and itself is rejected before it
+		// gets here, so a position is never added twice.
+		private void add(int position) {
+			int[] current = positions;
+			if (size == current.length) {
+				current = Arrays.copyOf(current, current.length * 2);
+				indexBytes += (long) (current.length / 2) * Integer.BYTES;
+				positions = current;
+			}
+			current[size] = position;
+			size = size + 1;
+		}
+	}
+}
@@ -0,0 +1,79 @@
+package com.dws.challenge.service;
+
+import java.util.BitSet;
+import java.util.Objects;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+// This class is meant for locking only the accounts involved in a transfer. Account ids are
+// hashed onto a fixed set of lock stripes and stripes are always taken in ascending index
+// order, so transfers in opposite directions between the same accounts cannot deadlock.
+
+@Component
+public class AccountLocks {
+
+	private final ReentrantLock[] stripes;
+
+	private final int mask;
+
+	@Autowired
+	public AccountLocks(@Value("${accounts.lock.stripes:1024}") int stripeCount) {
+		int size = stripeCount <= 1 ? 1 : Integer.highestOneBit(stripeCount - 1) << 1;
+		this.stripes = new ReentrantLock[size];
+		for (int i = 0; i < size; i++) {
+			this.stripes[i] = new ReentrantLock();
+		}
+		this.mask = size - 1;
+	}
+
+	public int stripeOf(String accountId) {
+		int h = Objects.hashCode(accountId);
+		return (h ^ (h >>> 16)) & mask;
+	}
+
+	// Locks the stripes of both accounts, lowest stripe first
+	public void lock(String firstAccountId, String secondAccountId) {
+		int first = stripeOf(firstAccountId);
+		int second = stripeOf(secondAccountId);
+		if (first == second) {
+			stripes[first].lock();
+			return;
+		}
+		stripes[Math.min(first, second)].lock();
+		stripes[Math.max(first, second)].lock();
+	}
+
+	public void unlock(String firstAccountId, String secondAccountId) {
+		int first = stripeOf(firstAccountId);
+		int second = stripeOf(secondAccountId);
+		stripes[first].unlock();
+		if (first != second) {
+			stripes[second].unlock();
+		}
+	}
+
+	// Locks the stripe of a single account, e.g. the source of a credit that needs no lock
+	public void lock(String accountId) {
+		stripes[stripeOf(accountId)].lock();
+	}
+
+	public void unlock(String accountId) {
+		stripes[stripeOf(accountId)].unlock();
+	}
+
+	// Locks a set of stripes, e.g. every account of a batch, in ascending index order
+	public void lockStripes(BitSet stripeSet) {
+		for (int i = stripeSet.nextSetBit(0); i >= 0; i = stripeSet.nextSetBit(i + 1)) {
+			stripes[i].lock();
+		}
+	}
+
+	public void unlockStripes(BitSet stripeSet) {
+		for (int i = stripeSet.nextSetBit(0); i >= 0; i = stripeSet.nextSetBit(i + 1)) {
+			stripes[i].unlock();
+		}
+	}
+}
@@ -0,0 +1,97 @@
+package com.dws.challenge.service;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.dws.challenge.domain.Account;
+import com.dws.challenge.domain.AccountSnapshot;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+
+// This class is meant for serving balance reads without touching the live, mutable accounts.
+// AccountsService publishes an AccountSnapshot whenever a change to an account commits (in LOCKING
+// mode while it still holds the account's lock), so a snapshot only ever carries a balance some
+// committed transfer left behind, never the half-applied state of a transfer or batch in progress.
+//
+// Readers only do a map lookup and never wait for writers. Publishing replaces the entry under
+// the map's per-key lock and reads the live balance inside it, so concurrent publications of one
+// account land in order and a newer balance is never overwritten by an older one.
+
+@Component
+public class AccountSnapshots {
+
+	private static final AtomicInteger GENERATIONS = new AtomicInteger();
+
+	private final ObjectWriter writer;
+
+	private final boolean enabled;
+
+	private final Map<String, AccountSnapshot> snapshots = new ConcurrentHashMap<>();
+
+	// Versions restart with the process and after clear, so ETags carry the time the versions
+	// started counting from, and a count of such starts, to stay unique across both
+	private volatile String etagPrefix = etagPrefix();
+
+	@Autowired
+	public AccountSnapshots(ObjectMapper objectMapper, @Value("${accounts.read.snapshots:true}") boolean enabled) {
+		this.writer = objectMapper.writerFor(AccountSnapshot.class);
+		this.enabled = enabled;
+	}
+
+	// Does nothing; the default until Spring injects the real one
+	public static AccountSnapshots disabled() {
+		return new AccountSnapshots(new ObjectMapper(), false);
+	}
+
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	public void publish(Account account) {
+		if (!enabled || account == null) {
+			return;
+		}
+		snapshots.compute(account.getAccountId(), (accountId, previous) -> new AccountSnapshot(accountId,
+				account.getBalance(), previous == null ? 1 : previous.getVersion() + 1));
+	}
+
+	// Forgets every snapshot; used when the repository is cleared
+	public void clear() {
+		snapshots.clear();
+		etagPrefix = etagPrefix();
+	}
+
+	// Null when nothing was published for the account
+	public AccountSnapshot get(String accountId) {
+		return enabled ? snapshots.get(accountId) : null;
+	}
+
+	public byte[] json(AccountSnapshot snapshot) {
+		byte[] json = snapshot.getJson();
+		if (json == null) {
+			// two readers may both serialize a new version; they produce the same bytes
+			try {
+				json = writer.writeValueAsBytes(snapshot);
+			} catch (JsonProcessingException e) {
+				throw new IllegalStateException("Could not serialize account " + snapshot.getAccountId(), e);
+			}
+			snapshot.setJson(json);
+		}
+		return json;
+	}
+
+	// Strong ETag of a published snapshot; null for one built from a live account (version 0)
+	public String etag(AccountSnapshot snapshot) {
+		return snapshot.getVersion() == 0 ? null : etagPrefix + snapshot.getVersion() + "\"";
+	}
+
+	private static String etagPrefix() {
+		return "\"" + Long.toHexString(System.currentTimeMillis()) + "-" + GENERATIONS.incrementAndGet() + "-";
+	}
+}
@@ -0,0 +1,319 @@
+package com.dws.challenge.service;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.dws.challenge.domain.Account;
+import com.dws.challenge.domain.AccountCreationResult;
+import com.dws.challenge.domain.AccountCreationStatus;
+
+// This class is meant for filling the repository from a file at startup, set with
+// accounts.preload.file. It runs once every bean is created (so after journal recovery, whose
+// accounts count as duplicates) and before the web server starts accepting requests.
+//
+// Two formats are read, told apart by the first four bytes:
+//  - CSV, one "accountId,balance" per line, with an optional header line. The file is cut into
+//    ranges of about RANGE_SIZE bytes ending at a newline, and the ranges are parsed on all threads.
+//  - Binary, as written by write(): a header (magic, version) followed by blocks, each starting with
+//    its record count and byte length. Only the block headers are read sequentially; the blocks are
+//    then decoded on all threads. A record is an unsigned short id length, the UTF-8 id, an int scale,
+//    a byte length and the two's-complement bytes of the unscaled balance.
+//
+// Every thread hands its accounts to AccountsService.createAccounts in batches of BATCH_SIZE.
+
+@Component
+public class AccountsPreloader implements SmartInitializingSingleton {
+
+	Logger log = LoggerFactory.getLogger(AccountsPreloader.class);
+
+	public static final int MAGIC = 0x4150524C;
+
+	public static final int VERSION = 1;
+
+	static final int BATCH_SIZE = 10_000;
+
+	static final int RANGE_SIZE = 8 << 20;
+
+	private static final int HEADER_SIZE = 2 * Integer.BYTES;
+
+	private static final int BLOCK_HEADER_SIZE = 2 * Integer.BYTES;
+
+	private final AccountsService accountsService;
+
+	private final String file;
+
+	private final int threads;
+
+	@Autowired
+	public AccountsPreloader(AccountsService accountsService, @Value("${accounts.preload.file:}") String file,
+			@Value("${accounts.preload.threads:0}") int threads) {
+		this.accountsService = accountsService;
+		this.file = file;
+		this.threads = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+	}
+
+	@Override
+	public void afterSingletonsInstantiated() {
+		if (file == null || file.isBlank()) {
+			return;
+		}
+		try {
+			load(Paths.get(file));
+		} catch (IOException e) {
+			throw new IllegalStateException("Could not preload accounts from " + file, e);
+		}
+	}
+
+	// Returns how many accounts ended up in each status; unreadable CSV lines count as INVALID
+	public Map<AccountCreationStatus, Long> load(Path path) throws IOException {
+		final long start = System.nanoTime();
+		final Map<AccountCreationStatus, Long> totals = new EnumMap<>(AccountCreationStatus.class);
+		for (AccountCreationStatus status : AccountCreationStatus.values()) {
+			totals.put(status, 0L);
+		}
+
+		final AtomicInteger threadCount = new AtomicInteger();
+		final ExecutorService pool = Executors.newFixedThreadPool(threads, runnable -> {
+			Thread thread = new Thread(runnable, "accounts-preload-" + threadCount.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		});
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			final List<Callable<long[]>> tasks = isBinary(channel) ? binaryBlocks(channel) : csvRanges(channel);
+			for (Future<long[]> future : pool.invokeAll(tasks)) {
+				final long[] counts = future.get();
+				for (AccountCreationStatus status : AccountCreationStatus.values()) {
+					totals.merge(status, counts[status.ordinal()], Long::sum);
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while preloading accounts", e);
+		} catch (ExecutionException e) {
+			throw e.getCause() instanceof IOException io ? io : new IOException("Failed to preload accounts", e.getCause());
+		} finally {
+			pool.shutdownNow();
+		}
+
+		log.info("Preloaded accounts from {} in {} ms: {} created, {} duplicate, {} invalid", path,
+				(System.nanoTime() - start) / 1_000_000, totals.get(AccountCreationStatus.CREATED),
+				totals.get(AccountCreationStatus.DUPLICATE), totals.get(AccountCreationStatus.INVALID));
+		return totals;
+	}
+
+	// Writes accounts in the binary preload format
+	public static void write(Path path, Collection<Account> accounts) throws IOException {
+		try (OutputStream file = Files.newOutputStream(path);
+				DataOutputStream out = new DataOutputStream(new BufferedOutputStream(file, 1 << 16))) {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			final List<Account> block = new ArrayList<>(BATCH_SIZE);
+			for (Account account : accounts) {
+				block.add(account);
+				if (block.size() == BATCH_SIZE) {
+					writeBlock(out, block);
+					block.clear();
+				}
+			}
+			if (!block.isEmpty()) {
+				writeBlock(out, block);
+			}
+		}
+	}
+
+	private static void writeBlock(DataOutputStream out, List<Account> block) throws IOException {
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream(block.size() * 32);
+		final DataOutputStream records = new DataOutputStream(bytes);
+		for (Account account : block) {
+			final byte[] id = account.getAccountId().getBytes(StandardCharsets.UTF_8);
+			final byte[] unscaled = account.getBalance().unscaledValue().toByteArray();
+			if (id.length > 0xFFFF || unscaled.length > 0xFF) {
+				throw new IllegalArgumentException("Account " + account.getAccountId() + " does not fit the preload format");
+			}
+			records.writeShort(id.length);
+			records.write(id);
+			records.writeInt(account.getBalance().scale());
+			records.writeByte(unscaled.length);
+			records.write(unscaled);
+		}
+		out.writeInt(block.size());
+		out.writeInt(bytes.size());
+		bytes.writeTo(out);
+	}
+
+	private static boolean isBinary(FileChannel channel) throws IOException {
+		final ByteBuffer header = read(channel, 0, (int) Math.min(HEADER_SIZE, channel.size()));
+		if (header.remaining() < HEADER_SIZE || header.getInt() != MAGIC) {
+			return false;
+		}
+		final int version = header.getInt();
+		if (version != VERSION) {
+			throw new IOException("Unsupported preload file version " + version);
+		}
+		return true;
+	}
+
+	// Sequential walk over the block headers only; each block becomes one decoding task
+	private List<Callable<long[]>> binaryBlocks(FileChannel channel) throws IOException {
+		final List<Callable<long[]>> tasks = new ArrayList<>();
+		final long size = channel.size();
+		long position = HEADER_SIZE;
+		while (position < size) {
+			final ByteBuffer header = read(channel, position, BLOCK_HEADER_SIZE);
+			if (header.remaining() < BLOCK_HEADER_SIZE) {
+				throw new IOException("Truncated block header at offset " + position);
+			}
+			final int records = header.getInt();
+			final int length = header.getInt();
+			final long blockStart = position + BLOCK_HEADER_SIZE;
+			if (length < 0 || blockStart + length > size) {
+				throw new IOException("Truncated block at offset " + position);
+			}
+			tasks.add(() -> decodeBlock(read(channel, blockStart, length), records));
+			position = blockStart + length;
+		}
+		return tasks;
+	}
+
+	private long[] decodeBlock(ByteBuffer block, int records) {
+		final List<Account> accounts = new ArrayList<>(records);
+		for (int i = 0; i < records; i++) {
+			final byte[] id = new byte[block.getShort() & 0xFFFF];
+			block.get(id);
+			final int scale = block.getInt();
+			final byte[] unscaled = new byte[block.get() & 0xFF];
+			block.get(unscaled);
+			accounts.add(new Account(new String(id, StandardCharsets.UTF_8),
+					new BigDecimal(new BigInteger(unscaled), scale)));
+		}
+		final long[] counts = new long[AccountCreationStatus.values().length];
+		create(accounts, counts);
+		return counts;
+	}
+
+	// Cuts the file after the first newline following every RANGE_SIZE bytes
+	private List<Callable<long[]>> csvRanges(FileChannel channel) throws IOException {
+		final List<Callable<long[]>> tasks = new ArrayList<>();
+		final long size = channel.size();
+		long start = 0;
+		while (start < size) {
+			long end = Math.min(size, start + RANGE_SIZE);
+			while (end < size) {
+				final ByteBuffer probe = read(channel, end, (int) Math.min(4096, size - end));
+				int newline = -1;
+				for (int i = 0; i < probe.limit(); i++) {
+					if (probe.get(i) == '\n') {
+						newline = i;
+						break;
+					}
+				}
+				if (newline >= 0) {
+					end += newline + 1;
+					break;
+				}
+				end += probe.limit();
+			}
+			final long rangeStart = start;
+			final long rangeEnd = end;
+			if (rangeEnd - rangeStart > Integer.MAX_VALUE) {
+				throw new IOException("CSV line at offset " + rangeStart + " is too long");
+			}
+			tasks.add(() -> parseRange(read(channel, rangeStart, (int) (rangeEnd - rangeStart)), rangeStart == 0));
+			start = end;
+		}
+		return tasks;
+	}
+
+	private long[] parseRange(ByteBuffer range, boolean first) {
+		final long[] counts = new long[AccountCreationStatus.values().length];
+		final byte[] bytes = range.array();
+		final int length = range.limit();
+		final List<Account> accounts = new ArrayList<>(BATCH_SIZE);
+		int lineStart = 0;
+		boolean header = first;
+		while (lineStart < length) {
+			int lineEnd = lineStart;
+			while (lineEnd < length && bytes[lineEnd] != '\n') {
+				lineEnd++;
+			}
+			final String line = new String(bytes, lineStart, lineEnd - lineStart, StandardCharsets.UTF_8).strip();
+			lineStart = lineEnd + 1;
+			if (line.isEmpty()) {
+				continue;
+			}
+			final int comma = line.indexOf(',');
+			BigDecimal balance = null;
+			if (comma > 0) {
+				try {
+					balance = new BigDecimal(line.substring(comma + 1).strip());
+				} catch (NumberFormatException e) {
+					// counted below, unless it is the header
+				}
+			}
+			final boolean wasFirstLine = header;
+			header = false;
+			if (balance == null) {
+				if (!wasFirstLine) {
+					counts[AccountCreationStatus.INVALID.ordinal()]++;
+				}
+				continue;
+			}
+			accounts.add(new Account(line.substring(0, comma).strip(), balance));
+			if (accounts.size() == BATCH_SIZE) {
+				create(accounts, counts);
+				accounts.clear();
+			}
+		}
+		create(accounts, counts);
+		return counts;
+	}
+
+	private void create(List<Account> accounts, long[] counts) {
+		if (accounts.isEmpty()) {
+			return;
+		}
+		for (AccountCreationResult result : accountsService.createAccounts(accounts)) {
+			counts[result.getStatus().ordinal()]++;
+		}
+	}
+
+	private static ByteBuffer read(FileChannel channel, long position, int length) throws IOException {
+		final ByteBuffer buffer = ByteBuffer.allocate(length);
+		while (buffer.hasRemaining()) {
+			if (channel.read(buffer, position + buffer.position()) < 0) {
+				break;
+			}
+		}
+		return buffer.flip();
+	}
+}
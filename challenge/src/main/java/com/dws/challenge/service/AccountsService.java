@@ -1,16 +1,48 @@
 package com.dws.challenge.service;
 
 import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import com.dws.challenge.domain.Account;
+import com.dws.challenge.domain.AccountCreationResult;
+import com.dws.challenge.domain.AccountCreationStatus;
+import com.dws.challenge.domain.AccountSnapshot;
+import com.dws.challenge.domain.AmountTransferPojo;
+import com.dws.challenge.domain.BatchMode;
+import com.dws.challenge.domain.MinorUnits;
+import com.dws.challenge.domain.MinorUnitsAccount;
+import com.dws.challenge.domain.StripedAccount;
+import com.dws.challenge.domain.TransferHistoryPage;
+import com.dws.challenge.domain.TransferLeg;
+import com.dws.challenge.domain.TransferNotification;
+import com.dws.challenge.domain.TransferOutcome;
+import com.dws.challenge.domain.TransferResult;
+import com.dws.challenge.domain.TransferStatus;
 import com.dws.challenge.exception.AccountNotFoundException;
 import com.dws.challenge.exception.AmountTransferPojoException;
+import com.dws.challenge.exception.BalanceLimitExceededException;
+import com.dws.challenge.exception.DuplicateAccountIdException;
 import com.dws.challenge.exception.NotSufficientBalanceException;
+import com.dws.challenge.exception.TransferInProgressException;
 import com.dws.challenge.exception.TransferSameAccountException;
 import com.dws.challenge.repository.AccountsRepository;
+import com.dws.challenge.repository.NoOpTransferJournal;
+import com.dws.challenge.repository.TransferJournal;
+import com.dws.challenge.repository.TransferLedger;
 
 import lombok.Data;
 
@@ -18,9 +50,42 @@ import lombok.Data;
 @Data
 public class AccountsService {
 
+	// Accounts of a bulk creation whose stripes are held at once
+	private static final int CREATE_CHUNK = 64;
+
 	private final AccountsRepository accountsRepository;
 
-	private final Object lock = new Object();
+	public static final int MAX_HISTORY_PAGE = 1000;
+
+	public static final int MAX_BALANCE_QUERY = 1000;
+
+	static final String RATE_LIMITED_MESSAGE = "Shed by admission control, retry later";
+
+	@Value("${accounts.transfer.mode:LOCKING}")
+	private TransferMode transferMode = TransferMode.LOCKING;
+
+	// When set, accounts keep their balance as a long count of minor units (see MinorUnitsAccount)
+	@Value("${accounts.balance.minor-units:false}")
+	private boolean minorUnits;
+
+	// Hot accounts whose credits are spread over sub-balances (see StripedAccount)
+	@Value("${accounts.striped.account-ids:}")
+	private Set<String> stripedAccountIds = Set.of();
+
+	@Value("${accounts.striped.cells:16}")
+	private int stripedCells = 16;
+
+	// How long a caller waits for the shards to complete its transfer, or all the items of its batch
+	@Value("${accounts.sharded.await-millis:5000}")
+	private long shardedAwaitMillis = 5000;
+
+	// Items accepted in one transfer batch; an all-or-nothing batch holds the stripes of all its
+	// accounts while it is applied, so this also bounds how much of the lock table it can take
+	@Value("${transfers.batch.max-items:1000}")
+	private int maxBatchItems = 1000;
+
+	@Autowired
+	private AccountLocks accountLocks;
 
 	@Autowired
 	private NotificationService notificationService;
@@ -28,39 +93,866 @@ public class AccountsService {
 	@Autowired
 	private TransferValidator transferValidator;
 
+	@Autowired(required = false)
+	private ShardedTransferEngine shardedTransferEngine;
+
+	@Autowired
+	private TransferJournal transferJournal = new NoOpTransferJournal();
+
+	@Autowired
+	private TransferMetrics transferMetrics = TransferMetrics.noop();
+
+	@Autowired
+	private AccountSnapshots accountSnapshots = AccountSnapshots.disabled();
+
+	@Autowired
+	private BalanceIndex balanceIndex = BalanceIndex.disabled();
+
+	@Autowired
+	private TransferLedger transferLedger = TransferLedger.disabled();
+
+	@Autowired
+	private IdempotencyCache idempotencyCache = new IdempotencyCache(1 << 16, 86400);
+
 	@Autowired
 	public AccountsService(AccountsRepository accountsRepository) {
 		this.accountsRepository = accountsRepository;
 
 	}
 
+	// The creation is journaled before the account is stored, so any transfer that can find the
+	// account is journaled after it and a replay always meets the creation first. The stripe lock
+	// of the id keeps a concurrent creation of the same id from journaling it twice, and the
+	// repository's checks run before the record is written; an insert that fails after that (the
+	// off-heap store is out of space) leaves the record behind, so the account appears after a
+	// restart, as it could after a request that timed out.
 	public void createAccount(Account account) {
-		this.accountsRepository.createAccount(account);
+		final Account stored = stored(account);
+		this.accountsRepository.checkAccount(stored);
+		final String accountId = account.getAccountId();
+		final long sequence;
+		accountLocks.lock(accountId);
+		try {
+			if (getAccount(accountId) != null) {
+				throw new DuplicateAccountIdException("Account id " + accountId + " already exists!");
+			}
+			sequence = transferJournal.logAccountCreated(accountId, account.getBalance());
+			this.accountsRepository.createAccount(stored);
+			this.publish(getAccount(accountId));
+		} finally {
+			accountLocks.unlock(accountId);
+		}
+		transferJournal.sync(sequence);
+	}
+
+	// This method is meant for creating many accounts in one call (bulk endpoint, preloading). Items
+	// are checked first, then the valid ones go in chunks of CREATE_CHUNK: the stripes of a chunk are
+	// locked, its new accounts journaled as in createAccount and inserted together, and the stripes
+	// released before the next chunk, so a large request never holds much of the lock table. The
+	// created accounts are journaled with a single durability wait.
+	public List<AccountCreationResult> createAccounts(final List<Account> accounts) {
+		return createAccounts(accounts, new BitSet());
+	}
+
+	// As above, except that the items at the positions set in shed (turned away by admission control)
+	// are not attempted and are reported as RATE_LIMITED
+	public List<AccountCreationResult> createAccounts(final List<Account> accounts, final BitSet shed) {
+		final AccountCreationResult[] results = new AccountCreationResult[accounts.size()];
+		final List<Account> valid = new ArrayList<>(accounts.size());
+		final int[] positions = new int[accounts.size()];
+		for (int i = 0; i < accounts.size(); i++) {
+			if (shed.get(i)) {
+				results[i] = new AccountCreationResult(i, AccountCreationStatus.RATE_LIMITED, RATE_LIMITED_MESSAGE);
+				continue;
+			}
+			final Account account = accounts.get(i);
+			final String problem = checkNewAccount(account);
+			if (problem != null) {
+				results[i] = new AccountCreationResult(i, AccountCreationStatus.INVALID, problem);
+				continue;
+			}
+			try {
+				final Account stored = stored(account);
+				this.accountsRepository.checkAccount(stored);
+				positions[valid.size()] = i;
+				valid.add(stored);
+			} catch (ArithmeticException e) {
+				results[i] = new AccountCreationResult(i, AccountCreationStatus.INVALID, "Balance not valid: "
+						+ e.getMessage());
+			} catch (IllegalArgumentException e) {
+				results[i] = new AccountCreationResult(i, AccountCreationStatus.INVALID, "Account not valid: "
+						+ e.getMessage());
+			}
+		}
+
+		final Set<String> ids = new HashSet<>();
+		long lastSequence = 0;
+		for (int from = 0; from < valid.size(); from += CREATE_CHUNK) {
+			final int to = Math.min(from + CREATE_CHUNK, valid.size());
+			final BitSet stripes = new BitSet();
+			for (int j = from; j < to; j++) {
+				stripes.set(accountLocks.stripeOf(valid.get(j).getAccountId()));
+			}
+			final List<Account> created = new ArrayList<>(to - from);
+			accountLocks.lockStripes(stripes);
+			try {
+				for (int j = from; j < to; j++) {
+					final int i = positions[j];
+					final String accountId = valid.get(j).getAccountId();
+					if (!ids.add(accountId) || getAccount(accountId) != null) {
+						results[i] = new AccountCreationResult(i, AccountCreationStatus.DUPLICATE,
+								"Account id " + accountId + " already exists!");
+						continue;
+					}
+					lastSequence = transferJournal.logAccountCreated(accountId, accounts.get(i).getBalance());
+					created.add(valid.get(j));
+					results[i] = new AccountCreationResult(i, AccountCreationStatus.CREATED, null);
+				}
+				// every id was checked under its stripe lock, so none of them is a duplicate any more
+				this.accountsRepository.createAccounts(created);
+				for (Account account : created) {
+					this.publish(getAccount(account.getAccountId()));
+				}
+			} finally {
+				accountLocks.unlockStripes(stripes);
+			}
+		}
+		if (lastSequence > 0) {
+			transferJournal.sync(lastSequence);
+		}
+		return Arrays.asList(results);
+	}
+
+	// The checks bean validation applies to a single created account
+	private static String checkNewAccount(final Account account) {
+		if (account == null || account.getAccountId() == null || account.getAccountId().isEmpty()) {
+			return "Account id is missing";
+		}
+		if (account.getBalance() == null) {
+			return "Balance is missing";
+		}
+		if (account.getBalance().signum() < 0) {
+			return "Initial balance must be positive.";
+		}
+		return null;
+	}
+
+	// Removes every account, with the snapshots and balance index entries published for them
+	public void clearAccounts() {
+		this.accountsRepository.clearAccounts();
+		accountSnapshots.clear();
+		balanceIndex.clear();
+	}
+
+	// Used by journal recovery: stores an account as journaled, without journaling it again
+	public void restoreAccount(String accountId, BigDecimal balance) {
+		this.accountsRepository.createAccount(stored(new Account(accountId, balance)));
+		this.publish(getAccount(accountId));
+	}
+
+	// Minor units apply to every account, so they take precedence over striping
+	private Account stored(Account account) {
+		if (minorUnits) {
+			return MinorUnitsAccount.of(account);
+		}
+		if (stripedAccountIds.contains(account.getAccountId())) {
+			return StripedAccount.of(account, stripedCells);
+		}
+		return account;
+	}
+
+	// Used by journal recovery: re-applies a journaled transfer as two balance deltas. There is no
+	// validation, since only transfers that committed were journaled, in the order they committed.
+	public void restoreTransfer(String fromAccount, String toAccount, BigDecimal transferAmount) {
+		final Account from = getAccount(fromAccount);
+		final Account to = getAccount(toAccount);
+		if (from == null || to == null) {
+			throw new IllegalStateException("Journaled transfer refers to unknown account " + fromAccount + " or "
+					+ toAccount);
+		}
+		from.setBalance(from.getBalance().subtract(transferAmount));
+		to.setBalance(to.getBalance().add(transferAmount));
+		this.publish(fromAccount, toAccount);
+	}
+
+	// Cluster legs (see ClusterTransactions): one side of a transfer whose other account is owned
+	// by another node. Only the stripe of the local account is locked, and a debit leg is checked
+	// against the balance under it. Nothing is journaled; ClusterTransactionLog records the legs.
+	public TransferOutcome debitLeg(final String accountId, final BigDecimal amount) {
+		if (amount == null || amount.signum() < 0) {
+			return TransferOutcome.INVALID_AMOUNT;
+		}
+		accountLocks.lock(accountId);
+		try {
+			final Account account = getAccount(accountId);
+			if (account == null) {
+				return TransferOutcome.ACCOUNT_NOT_FOUND;
+			}
+			this.debit(accountId, amount);
+			this.publish(account);
+			return TransferOutcome.COMPLETED;
+		} catch (AmountTransferPojoException e) {
+			// the only rejection debit raises for an existing account
+			return TransferOutcome.INSUFFICIENT_BALANCE;
+		} catch (ArithmeticException e) {
+			// more decimals than minor units hold
+			return TransferOutcome.INVALID_AMOUNT;
+		} finally {
+			accountLocks.unlock(accountId);
+		}
+	}
+
+	// Credits the destination of a committed leg, or refunds the source of an aborted one
+	public void creditLeg(final String accountId, final BigDecimal amount) {
+		accountLocks.lock(accountId);
+		try {
+			this.publish(this.credit(accountId, amount));
+		} finally {
+			accountLocks.unlock(accountId);
+		}
+	}
+
+	// Ledger entry and notification of a committed leg, for the side held on this node
+	public void completeLeg(final String fromAccount, final String toAccount, final BigDecimal amount,
+			final boolean debit) {
+		transferLedger.append(fromAccount, toAccount, amount);
+		if (debit) {
+			this.notifySource(fromAccount, toAccount, amount);
+		} else {
+			this.notifyDestination(fromAccount, toAccount, amount);
+		}
+	}
+
+	// Used by cluster recovery: applies the net change of logged legs to an account, without locks
+	// or checks. False when the account does not exist (any more).
+	public boolean restoreLeg(final String accountId, final BigDecimal delta) {
+		final Account account = getAccount(accountId);
+		if (account == null) {
+			return false;
+		}
+		account.setBalance(account.getBalance().add(delta));
+		this.publish(account);
+		return true;
+	}
+
+	// Balance reads are served from here rather than from the live account (see AccountSnapshots).
+	// Null when the account does not exist.
+	public AccountSnapshot getAccountSnapshot(String accountId) {
+		final Account account = getAccount(accountId);
+		if (account == null) {
+			return null;
+		}
+		if (account instanceof StripedAccount striped) {
+			this.publishIfDirty(striped);
+		}
+		final AccountSnapshot snapshot = accountSnapshots.get(accountId);
+		return snapshot != null ? snapshot : new AccountSnapshot(accountId, account.getBalance(), 0);
+	}
+
+	// Called once both sides of a transfer are committed; in LOCKING mode before the locks are released
+	private void publish(final String fromAccount, final String toAccount) {
+		this.publish(getAccount(fromAccount), getAccount(toAccount));
+	}
+
+	private void publish(final Account from, final Account to) {
+		this.publish(from);
+		this.publish(to);
+	}
+
+	// A striped account is only marked here: it takes most of the credits, and publishing each of
+	// them would queue them all on the snapshot map's lock for its key. Reads publish it instead,
+	// once per batch of changes (see publishIfDirty).
+	private void publish(final Account account) {
+		if (account instanceof StripedAccount striped) {
+			striped.markDirty();
+			return;
+		}
+		accountSnapshots.publish(account);
+		balanceIndex.update(account);
+	}
+
+	private void publishIfDirty(final StripedAccount account) {
+		if (account.takeDirty()) {
+			accountSnapshots.publish(account);
+			balanceIndex.update(account);
+		}
+	}
+
+	// Brings the striped accounts up to date in the balance index before it is queried
+	private void publishStriped() {
+		for (String accountId : stripedAccountIds) {
+			if (getAccount(accountId) instanceof StripedAccount striped) {
+				this.publishIfDirty(striped);
+			}
+		}
+	}
+
+	// Accounts with min <= balance < max (either bound may be null), lowest first, at most limit of them
+	public List<AccountSnapshot> getAccountsByBalance(BigDecimal min, BigDecimal max, int limit) {
+		this.publishStriped();
+		return balanceIndex.range(min, max, Math.max(1, Math.min(limit, MAX_BALANCE_QUERY)));
+	}
+
+	// The accounts with the highest balances, highest first
+	public List<AccountSnapshot> getTopAccountsByBalance(int limit) {
+		this.publishStriped();
+		return balanceIndex.top(Math.max(1, Math.min(limit, MAX_BALANCE_QUERY)));
+	}
+
+	// A page of the account's committed transfers from the ledger, of 1 to MAX_HISTORY_PAGE entries
+	public TransferHistoryPage getTransferHistory(String accountId, Instant from, Instant to, long after, int limit)
+			throws AccountNotFoundException {
+		if (getAccount(accountId) == null) {
+			throw new AccountNotFoundException("Account " + accountId + " not found");
+		}
+		return transferLedger.history(accountId, from, to, after, Math.max(1, Math.min(limit, MAX_HISTORY_PAGE)));
 	}
 
 	public Account getAccount(String accountId) {
-		return this.accountsRepository.getAccount(accountId);
+		final long start = System.nanoTime();
+		final Account account = this.accountsRepository.getAccount(accountId);
+		transferMetrics.lookedUp(start);
+		return account;
 	}
 
 	public void amountTransfer(final String fromAccount, final String toAccount, final BigDecimal transferAmount)
 			throws AmountTransferPojoException, AccountNotFoundException, TransferSameAccountException,
 			NotSufficientBalanceException {
+		this.amountTransfer(null, fromAccount, toAccount, transferAmount);
+	}
 
-		// Validating the accounts Ids and balance amount
+	// This method is meant for a transfer request that may be a retry. The first request with a
+	// given idempotency key is applied and its key remembered once the balances are committed; a
+	// replay returns straight from IdempotencyCache, without locks or balance changes. A key whose
+	// transfer failed is forgotten, so the retry is applied afresh.
+	public void amountTransfer(final String idempotencyKey, final String fromAccount, final String toAccount,
+			final BigDecimal transferAmount) throws AmountTransferPojoException, AccountNotFoundException,
+			TransferSameAccountException, NotSufficientBalanceException, TransferInProgressException {
+
+		long key = 0;
+		int fingerprint = 0;
+		if (idempotencyKey != null && fromAccount != null && toAccount != null && transferAmount != null) {
+			key = IdempotencyCache.keyOf(idempotencyKey);
+			fingerprint = IdempotencyCache.fingerprintOf(fromAccount, toAccount, transferAmount);
+			final TransferOutcome reservation = reserve(key, fingerprint);
+			if (reservation == TransferOutcome.COMPLETED) {
+				return;
+			}
+			if (reservation != null) {
+				throw TransferValidator.exceptionFor(reservation);
+			}
+		}
+
+		final long start = System.nanoTime();
+		final long sequence;
+		try {
+			sequence = this.transfer(fromAccount, toAccount, transferAmount);
+		} catch (RuntimeException e) {
+			if (key != 0) {
+				idempotencyCache.release(key);
+			}
+			transferMetrics.rejected(e);
+			transferMetrics.transferred(start);
+			throw e;
+		}
+		this.completeTransfer(key, fingerprint, fromAccount, toAccount, transferAmount, sequence, start);
+	}
 
-		synchronized (lock) {
+	// This method is meant for callers that expect many rejections, such as the transfer endpoint
+	// under abuse. The transfer is first checked against the current balances without locks; a
+	// request failing that check is answered with its TransferOutcome, without throwing, building a
+	// message or touching any lock. One that passes is applied as by amountTransfer, and the rare
+	// rejection found there (a concurrent transfer drained the source in between) is converted to
+	// its code as well.
+	public TransferOutcome tryAmountTransfer(final String idempotencyKey, final String fromAccount,
+			final String toAccount, final BigDecimal transferAmount) {
 
-			transferValidator.validate(getAccount(fromAccount), getAccount(toAccount), transferAmount);
+		long key = 0;
+		int fingerprint = 0;
+		if (idempotencyKey != null && fromAccount != null && toAccount != null && transferAmount != null) {
+			key = IdempotencyCache.keyOf(idempotencyKey);
+			fingerprint = IdempotencyCache.fingerprintOf(fromAccount, toAccount, transferAmount);
+			final TransferOutcome reservation = reserve(key, fingerprint);
+			if (reservation != null) {
+				return reservation;
+			}
+		}
+
+		final long start = System.nanoTime();
+		TransferOutcome rejection;
+		long sequence = 0;
+		try {
+			rejection = precheck(fromAccount, toAccount, transferAmount);
+			if (rejection == null) {
+				try {
+					sequence = this.transfer(fromAccount, toAccount, transferAmount);
+				} catch (RuntimeException e) {
+					rejection = TransferOutcome.of(e);
+				}
+			}
+		} catch (RuntimeException e) {
+			// a fault rather than a rejection (TransferOutcome.of rethrows those): as in amountTransfer,
+			// the key is freed for a retry and the failure counted before it propagates
+			if (key != 0) {
+				idempotencyCache.release(key);
+			}
+			transferMetrics.rejected(e);
+			transferMetrics.transferred(start);
+			throw e;
+		}
+		if (rejection != null) {
+			if (key != 0) {
+				idempotencyCache.release(key);
+			}
+			transferMetrics.rejected(rejection.getExceptionType());
+			transferMetrics.transferred(start);
+			return rejection;
+		}
+		this.completeTransfer(key, fingerprint, fromAccount, toAccount, transferAmount, sequence, start);
+		return TransferOutcome.COMPLETED;
+	}
+
+	// Null when the key is new and reserved for this request; otherwise what to answer with
+	private TransferOutcome reserve(final long key, final int fingerprint) {
+		switch (idempotencyCache.reserve(key, fingerprint)) {
+		case COMPLETED:
+			return TransferOutcome.COMPLETED;
+		case IN_PROGRESS:
+			return TransferOutcome.IN_PROGRESS;
+		case MISMATCH:
+			return TransferOutcome.IDEMPOTENCY_MISMATCH;
+		case FULL:
+			return TransferOutcome.IDEMPOTENCY_CACHE_FULL;
+		default:
+			return null;
+		}
+	}
+
+	// The validation without locks tryAmountTransfer answers most rejections with
+	private TransferOutcome precheck(final String fromAccount, final String toAccount,
+			final BigDecimal transferAmount) {
+		if (fromAccount == null || toAccount == null) {
+			return TransferOutcome.ACCOUNT_NOT_FOUND;
+		}
+		return transferValidator.check(getAccount(fromAccount), getAccount(toAccount), transferAmount);
+	}
+
+	// Applies one transfer with the configured commit strategy and returns the sequence of its
+	// journal record. The record is appended before any later transfer can spend what this one
+	// credited, so journal order is commit order; only waiting for durability is left to the caller.
+	private long transfer(final String fromAccount, final String toAccount, final BigDecimal transferAmount) {
+		if (transferMode == TransferMode.SHARDED) {
+			return this.shardedTransfer(fromAccount, toAccount, transferAmount);
+		} else {
+			return this.lockingTransfer(fromAccount, toAccount, transferAmount);
+		}
+	}
+
+	// Everything that follows a committed transfer: its idempotency key, ledger entry, the wait for
+	// its journal record to be durable, and notifications
+	private void completeTransfer(final long key, final int fingerprint, final String fromAccount,
+			final String toAccount, final BigDecimal transferAmount, final long sequence, final long start) {
+		if (key != 0) {
+			idempotencyCache.complete(key, fingerprint);
+		}
+		transferLedger.append(fromAccount, toAccount, transferAmount);
+
+		// The record was appended under the account locks; the fsync or group commit happens after
+		// they are released, and the call returns once the record is durable
+		transferJournal.sync(sequence);
+
+		this.notifyTransfer(fromAccount, toAccount, transferAmount);
+		transferMetrics.transferred(start);
+	}
+
+	// Returns why a batch of that many items is refused, or null when it is accepted
+	public String checkBatchSize(final int items) {
+		return items > maxBatchItems
+				? "Batch of " + items + " items exceeds the limit of " + maxBatchItems + " (transfers.batch.max-items)"
+				: null;
+	}
+
+	// This method is meant for transferring a whole batch, in request order. BEST_EFFORT applies
+	// every item that is valid on its own, each under the locks of its two accounts only, as a
+	// single transfer would. In LOCKING mode ALL_OR_NOTHING takes the stripes of every account in
+	// the batch once, in ascending order, applies all items under them and reverts the applied
+	// items as soon as one item fails.
+	public List<TransferResult> amountTransferBatch(final List<AmountTransferPojo> transfers, final BatchMode mode) {
+		final String problem = checkBatchSize(transfers.size());
+		if (problem != null) {
+			throw new AmountTransferPojoException(problem);
+		}
+		final List<TransferResult> results = new ArrayList<>(transfers.size());
+
+		if (transferMode != TransferMode.LOCKING) {
+			if (mode == BatchMode.ALL_OR_NOTHING) {
+				throw new AmountTransferPojoException(
+						"All-or-nothing batches require accounts.transfer.mode=" + TransferMode.LOCKING);
+			}
+			return completeBatch(transfers, results, this.shardedTransferBatch(transfers, results));
+		}
+
+		if (mode == BatchMode.BEST_EFFORT) {
+			long lastSequence = 0;
+			for (int i = 0; i < transfers.size(); i++) {
+				final AmountTransferPojo transfer = transfers.get(i);
+				try {
+					checkRequest(transfer);
+					lastSequence = Math.max(lastSequence, this.lockingTransfer(transfer.getAccountFrom(),
+							transfer.getAccountTo(), transfer.getTransferAmount()));
+					results.add(new TransferResult(i, TransferStatus.COMPLETED, null));
+				} catch (RuntimeException e) {
+					results.add(failed(i, e));
+				}
+			}
+			return completeBatch(transfers, results, lastSequence);
+		}
+
+		final BitSet stripes = new BitSet();
+		for (AmountTransferPojo transfer : transfers) {
+			stripes.set(accountLocks.stripeOf(transfer.getAccountFrom()));
+			stripes.set(accountLocks.stripeOf(transfer.getAccountTo()));
+		}
+
+		int failedIndex = -1;
+		long lastSequence = 0;
+		final long requested = System.nanoTime();
+		accountLocks.lockStripes(stripes);
+		final long acquired = System.nanoTime();
+		transferMetrics.lockAcquired(requested, acquired);
+		try {
+			for (int i = 0; i < transfers.size(); i++) {
+				final AmountTransferPojo transfer = transfers.get(i);
+				try {
+					checkRequest(transfer);
+					this.applyTransfer(transfer.getAccountFrom(), transfer.getAccountTo(), transfer.getTransferAmount(),
+							false);
+					results.add(new TransferResult(i, TransferStatus.COMPLETED, null));
+				} catch (RuntimeException e) {
+					results.add(failed(i, e));
+					failedIndex = i;
+					break;
+				}
+			}
+
+			if (failedIndex >= 0) {
+				// Undo in reverse order, so every revert sees the balances its own transfer left behind
+				for (int i = failedIndex - 1; i >= 0; i--) {
+					final AmountTransferPojo transfer = transfers.get(i);
+					this.revertTransfer(transfer.getAccountFrom(), transfer.getAccountTo(), transfer.getTransferAmount());
+					results.set(i, new TransferResult(i, TransferStatus.ROLLED_BACK, null));
+				}
+				for (int i = failedIndex + 1; i < transfers.size(); i++) {
+					results.add(new TransferResult(i, TransferStatus.SKIPPED, null));
+				}
+			}
+			// Journaled only once it is known which items stay applied, still under the stripes
+			for (TransferResult result : results) {
+				if (result.getStatus() == TransferStatus.COMPLETED) {
+					final AmountTransferPojo transfer = transfers.get(result.getIndex());
+					this.publish(transfer.getAccountFrom(), transfer.getAccountTo());
+					lastSequence = transferJournal.logTransfer(transfer.getAccountFrom(), transfer.getAccountTo(),
+							transfer.getTransferAmount());
+				}
+			}
+		} finally {
+			accountLocks.unlockStripes(stripes);
+			transferMetrics.lockReleased(acquired);
+		}
+		return completeBatch(transfers, results, lastSequence);
+	}
+
+	// As above, except for the items at the positions set in shed (turned away by admission control),
+	// which are reported as RATE_LIMITED and not attempted. An all-or-nothing batch with a shed item
+	// is not applied at all; its other items are reported as SKIPPED.
+	public List<TransferResult> amountTransferBatch(final List<AmountTransferPojo> transfers, final BatchMode mode,
+			final BitSet shed) {
+		final String problem = checkBatchSize(transfers.size());
+		if (problem != null) {
+			throw new AmountTransferPojoException(problem);
+		}
+		if (shed.isEmpty()) {
+			return amountTransferBatch(transfers, mode);
+		}
+		final List<TransferResult> results = new ArrayList<>(transfers.size());
+		final List<AmountTransferPojo> admitted = new ArrayList<>(transfers.size());
+		for (int i = 0; i < transfers.size(); i++) {
+			if (!shed.get(i)) {
+				admitted.add(transfers.get(i));
+			}
+		}
+		final List<TransferResult> applied = mode == BatchMode.ALL_OR_NOTHING || admitted.isEmpty() ? null
+				: amountTransferBatch(admitted, mode);
+		int next = 0;
+		for (int i = 0; i < transfers.size(); i++) {
+			if (shed.get(i)) {
+				results.add(new TransferResult(i, TransferStatus.RATE_LIMITED, RATE_LIMITED_MESSAGE));
+			} else if (applied == null) {
+				results.add(new TransferResult(i, TransferStatus.SKIPPED, null));
+			} else {
+				final TransferResult result = applied.get(next++);
+				results.add(new TransferResult(i, result.getStatus(), result.getMessage()));
+			}
+		}
+		return results;
+	}
+
+	// Records and notifies the completed items of a batch once their balances are committed. Their
+	// journal records are already appended; one durability wait, up to the last of them, covers the
+	// whole batch.
+	private List<TransferResult> completeBatch(final List<AmountTransferPojo> transfers,
+			final List<TransferResult> results, final long lastSequence) {
+		for (TransferResult result : results) {
+			if (result.getStatus() == TransferStatus.COMPLETED) {
+				final AmountTransferPojo transfer = transfers.get(result.getIndex());
+				transferLedger.append(transfer.getAccountFrom(), transfer.getAccountTo(), transfer.getTransferAmount());
+			}
+		}
+		if (lastSequence > 0) {
+			transferJournal.sync(lastSequence);
+		}
+
+		for (TransferResult result : results) {
+			if (result.getStatus() == TransferStatus.COMPLETED) {
+				final AmountTransferPojo transfer = transfers.get(result.getIndex());
+				this.notifyTransfer(transfer.getAccountFrom(), transfer.getAccountTo(), transfer.getTransferAmount());
+			}
+		}
+		return results;
+	}
+
+	// Submits every item to the shards before waiting for any, so the whole batch is worked on at
+	// once; results are still reported in request order. Returns the highest journal sequence.
+	private long shardedTransferBatch(final List<AmountTransferPojo> transfers, final List<TransferResult> results) {
+		final List<CompletableFuture<Long>> completions = new ArrayList<>(transfers.size());
+		long lastSequence = 0;
+		for (AmountTransferPojo transfer : transfers) {
+			try {
+				checkRequest(transfer);
+				completions.add(submitSharded(transfer.getAccountFrom(), transfer.getAccountTo(),
+						transfer.getTransferAmount()));
+			} catch (RuntimeException e) {
+				completions.add(CompletableFuture.failedFuture(e));
+			}
+		}
+		final long deadline = awaitDeadline();
+		for (int i = 0; i < completions.size(); i++) {
+			try {
+				lastSequence = Math.max(lastSequence, await(completions.get(i), deadline));
+				this.publish(transfers.get(i).getAccountFrom(), transfers.get(i).getAccountTo());
+				results.add(new TransferResult(i, TransferStatus.COMPLETED, null));
+			} catch (RuntimeException e) {
+				results.add(failed(i, e));
+			}
+		}
+		return lastSequence;
+	}
 
-			this.debit(fromAccount, transferAmount);
+	// This method is meant for transferring under the stripe locks of both accounts
+	private long lockingTransfer(final String fromAccount, final String toAccount, final BigDecimal transferAmount) {
+
+		// Only the two accounts of this transfer are locked, so unrelated transfers run in parallel.
+		// A credit to a striped account commits on its own, so only the source is locked then; its
+		// published balance is still one the account held (see StripedAccount.getBalance).
+
+		final boolean sourceOnly = getAccount(toAccount) instanceof StripedAccount;
+		final long requested = System.nanoTime();
+		if (sourceOnly) {
+			accountLocks.lock(fromAccount);
+		} else {
+			accountLocks.lock(fromAccount, toAccount);
+		}
+		final long acquired = System.nanoTime();
+		transferMetrics.lockAcquired(requested, acquired);
+		try {
+			final long sequence = this.applyTransfer(fromAccount, toAccount, transferAmount, true);
+			this.publish(fromAccount, toAccount);
+			return sequence;
+		} finally {
+			if (sourceOnly) {
+				accountLocks.unlock(fromAccount);
+			} else {
+				accountLocks.unlock(fromAccount, toAccount);
+			}
+			transferMetrics.lockReleased(acquired);
+		}
+	}
+
+	// Validates and applies one transfer; the caller holds the stripe lock of the source, and of
+	// the destination unless it is a striped account. With journal set, the transfer is appended
+	// to the journal before another transfer can spend the credit, and its sequence is returned.
+	// A striped destination is credited without its lock, so its record goes in before the credit,
+	// which cannot fail for a striped account.
+	private long applyTransfer(final String fromAccount, final String toAccount, final BigDecimal transferAmount,
+			final boolean journal) {
+		if (minorUnits) {
+			this.applyMinorUnitsTransfer(fromAccount, toAccount, toMinorUnits(transferAmount));
+			return journal ? transferJournal.logTransfer(fromAccount, toAccount, transferAmount) : 0;
+		}
+
+		// Validating the accounts Ids and balance amount
+		long step = System.nanoTime();
+		final Account to = getAccount(toAccount);
+		transferValidator.validate(getAccount(fromAccount), to, transferAmount);
+		transferMetrics.validated(step);
+
+		step = System.nanoTime();
+		this.debit(fromAccount, transferAmount);
+		transferMetrics.debited(step);
+		final boolean striped = to instanceof StripedAccount;
+		long sequence = 0;
+		if (journal && striped) {
+			try {
+				sequence = transferJournal.logTransfer(fromAccount, toAccount, transferAmount);
+			} catch (RuntimeException e) {
+				this.credit(fromAccount, transferAmount);
+				throw e;
+			}
+		}
+		try {
+			step = System.nanoTime();
 			this.credit(toAccount, transferAmount);
+			transferMetrics.credited(step);
+		} catch (ArithmeticException e) {
+			// The repository cannot hold the new destination balance (see AccountsRepositoryOffHeap)
+			this.credit(fromAccount, transferAmount);
+			throw new BalanceLimitExceededException(TransferOutcome.BALANCE_LIMIT_EXCEEDED.getMessage());
+		}
+		if (journal && !striped) {
+			sequence = transferJournal.logTransfer(fromAccount, toAccount, transferAmount);
+		}
+		return sequence;
+	}
+
+	// Undoes a transfer applied by applyTransfer; the caller still holds the stripe locks it was
+	// applied under, so the credited amount is still there to take back
+	private void revertTransfer(final String fromAccount, final String toAccount, final BigDecimal transferAmount) {
+		final Account from = getAccount(fromAccount);
+		final Account to = getAccount(toAccount);
+		if (minorUnits) {
+			final long amount = MinorUnits.of(transferAmount);
+			final MinorUnitsAccount minorFrom = (MinorUnitsAccount) from;
+			final MinorUnitsAccount minorTo = (MinorUnitsAccount) to;
+			minorTo.setMinorUnits(minorTo.getMinorUnits() - amount);
+			minorFrom.setMinorUnits(minorFrom.getMinorUnits() + amount);
+			return;
+		}
+		if (to instanceof StripedAccount striped) {
+			striped.subtract(transferAmount);
+		} else {
+			to.setBalance(to.getBalance().subtract(transferAmount));
+		}
+		this.credit(fromAccount, transferAmount);
+	}
+
+	// This method is meant for transferring through the single-writer shards (see
+	// ShardedTransferEngine); the caller waits until the destination has been credited and the
+	// transfer journaled
+	private long shardedTransfer(final String fromAccount, final String toAccount, final BigDecimal transferAmount) {
+		final long sequence = await(submitSharded(fromAccount, toAccount, transferAmount), awaitDeadline());
+		this.publish(fromAccount, toAccount);
+		return sequence;
+	}
+
+	private CompletableFuture<Long> submitSharded(final String fromAccount, final String toAccount,
+			final BigDecimal transferAmount) {
+		if (shardedTransferEngine == null) {
+			throw new IllegalStateException("accounts.transfer.mode=SHARDED requires the ShardedTransferEngine");
+		}
+		if (minorUnits) {
+			// rejected here, before the source shard debits an amount it cannot represent
+			toMinorUnits(transferAmount);
+		}
+		return shardedTransferEngine.submit(fromAccount, toAccount, transferAmount);
+	}
 
+	// The transfer's journal sequence, or the exception a shard failed it with, rethrown as if it
+	// was raised here. Gives up at the deadline (a System.nanoTime value); the transfer may still
+	// complete after that, so its outcome is then unknown to the caller.
+	private long await(final CompletableFuture<Long> completion, final long deadline) {
+		try {
+			return completion.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			throw new IllegalStateException("Sharded transfer failed", e.getCause());
+		} catch (TimeoutException e) {
+			throw new IllegalStateException("Sharded transfer did not complete within " + shardedAwaitMillis
+					+ " ms (accounts.sharded.await-millis); its outcome is unknown");
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while waiting for a sharded transfer", e);
 		}
+	}
+
+	private long awaitDeadline() {
+		return System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(shardedAwaitMillis);
+	}
+
+	// Locked transfer between accounts holding minor units. Both new balances are computed with
+	// overflow checks before either account is written, so a failed credit never leaves a debit behind.
+	private void applyMinorUnitsTransfer(final String fromAccount, final String toAccount, final long amount) {
+		final MinorUnitsAccount from = (MinorUnitsAccount) getAccount(fromAccount);
+		final MinorUnitsAccount to = (MinorUnitsAccount) getAccount(toAccount);
+		final long step = System.nanoTime();
+		transferValidator.validate(from, to, amount);
+		transferMetrics.validated(step);
+
+		final long fromBalance = from.getMinorUnits() - amount;
+		final long toBalance = addMinorUnits(to.getMinorUnits(), amount);
+		from.setMinorUnits(fromBalance);
+		to.setMinorUnits(toBalance);
+	}
+
+	private static long addMinorUnits(long balance, long amount) throws AmountTransferPojoException {
+		try {
+			return Math.addExact(balance, amount);
+		} catch (ArithmeticException e) {
+			throw new BalanceLimitExceededException(TransferOutcome.BALANCE_LIMIT_EXCEEDED.getMessage());
+		}
+	}
+
+	// Converts a request amount at the edge; more than two decimals cannot be held in minor units
+	private static long toMinorUnits(final BigDecimal amount) throws AmountTransferPojoException {
+		try {
+			return MinorUnits.of(amount);
+		} catch (ArithmeticException e) {
+			throw new AmountTransferPojoException("Transfer amount not valid. Please try with valid amount");
+		}
+	}
 
-		notificationService.notifyAboutTransfer(getAccount(fromAccount), "The transfer to the account with ID "
-				+ toAccount + " is now complete for the amount of " + transferAmount + ".");
-		notificationService.notifyAboutTransfer(getAccount(toAccount),
-				"The account with ID + " + fromAccount + " has transferred " + transferAmount + " into your account.");
+	// Null fields would otherwise surface as NullPointerExceptions from the lookups
+	private static void checkRequest(final AmountTransferPojo transfer) {
+		if (transfer.getAccountFrom() == null || transfer.getAccountTo() == null) {
+			throw new AccountNotFoundException("Account id is missing");
+		}
+		if (transfer.getTransferAmount() == null) {
+			throw new AmountTransferPojoException("Transfer amount not valid. Please try with valid amount");
+		}
+	}
+
+	private static TransferResult failed(final int index, final RuntimeException e) {
+		return new TransferResult(index, TransferStatus.of(e), e.getMessage());
+	}
+
+	private void notifyTransfer(final String fromAccount, final String toAccount, final BigDecimal transferAmount) {
+		this.notifySource(fromAccount, toAccount, transferAmount);
+		this.notifyDestination(fromAccount, toAccount, transferAmount);
+	}
+
+	private void notifySource(final String fromAccount, final String toAccount, final BigDecimal transferAmount) {
+		final long start = System.nanoTime();
+		notificationService.notifyAboutTransfer(
+				new TransferNotification(getAccount(fromAccount), TransferLeg.DEBIT, fromAccount, toAccount, transferAmount));
+		transferMetrics.notified(start);
+	}
+
+	private void notifyDestination(final String fromAccount, final String toAccount, final BigDecimal transferAmount) {
+		final long start = System.nanoTime();
+		notificationService.notifyAboutTransfer(
+				new TransferNotification(getAccount(toAccount), TransferLeg.CREDIT, fromAccount, toAccount, transferAmount));
+		transferMetrics.notified(start);
 	}
 
 	// This method is meant for Debit the amount from Source Account
@@ -75,6 +967,12 @@ public class AccountsService {
 		if (account == null) {
 			throw new AmountTransferPojoException("Account does not exist");
 		}
+		if (account instanceof StripedAccount striped) {
+			if (!striped.tryDebit(amount)) {
+				throw new AmountTransferPojoException("Insufficient balance in account");
+			}
+			return account;
+		}
 		if (account.getBalance().compareTo(amount) == -1) {
 			throw new AmountTransferPojoException("Insufficient balance in account");
 		}
@@ -94,6 +992,10 @@ public class AccountsService {
 		if (account == null) {
 			throw new AmountTransferPojoException("Account does not exist");
 		}
+		if (account instanceof StripedAccount striped) {
+			striped.credit(amount);
+			return account;
+		}
 		BigDecimal bal = account.getBalance().add(amount);
 		account.setBalance(bal);
 		return account;
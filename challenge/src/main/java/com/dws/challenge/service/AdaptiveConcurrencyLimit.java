@@ -0,0 +1,140 @@
+package com.dws.challenge.service;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+// This class is meant for bounding the number of transfers in flight with a limit that follows
+// the observed latency (the gradient method of TCP Vegas and Netflix's concurrency-limits). The
+// limit is recomputed once per window from the average latency of that window (short RTT) and a
+// slowly moving average of past windows (long RTT):
+//
+//   newLimit = limit * clamp(TOLERANCE * longRtt / shortRtt, 0.5, 1) + sqrt(limit)
+//
+// so it shrinks as soon as latency rises above its usual level and grows by about sqrt(limit) per
+// window while latency is steady. The limit only grows when the window actually used at least
+// half of it, so a quiet period does not inflate it.
+//
+// Requests only touch an atomic counter and two adders; the window update is done by whichever
+// releasing thread first notices the window is over, and skipped by the others.
+
+public class AdaptiveConcurrencyLimit {
+
+	private static final double TOLERANCE = 1.5;
+
+	private static final double SMOOTHING = 0.2;
+
+	private static final int MIN_SAMPLES = 10;
+
+	private final int minLimit;
+
+	private final int maxLimit;
+
+	private final long windowNanos;
+
+	private final AtomicInteger inFlight = new AtomicInteger();
+
+	private final LongAdder latencyNanos = new LongAdder();
+
+	private final LongAdder samples = new LongAdder();
+
+	private final ReentrantLock updateLock = new ReentrantLock();
+
+	private volatile int limit;
+
+	private volatile long windowStart = System.nanoTime();
+
+	// guarded by updateLock
+	private double estimatedLimit;
+
+	private double longRtt;
+
+	// highest in-flight count seen this window; written without synchronisation, so only a rough peak
+	private volatile int maxInFlight;
+
+	public AdaptiveConcurrencyLimit(int initialLimit, int minLimit, int maxLimit, long windowMillis) {
+		this.minLimit = Math.max(1, minLimit);
+		this.maxLimit = Math.max(this.minLimit, maxLimit);
+		this.windowNanos = TimeUnit.MILLISECONDS.toNanos(windowMillis);
+		this.estimatedLimit = Math.min(this.maxLimit, Math.max(this.minLimit, initialLimit));
+		this.limit = (int) estimatedLimit;
+	}
+
+	// Takes a slot; false when the limit is reached and the request should be shed
+	public boolean tryAcquire() {
+		while (true) {
+			final int current = inFlight.get();
+			if (current >= limit) {
+				return false;
+			}
+			if (inFlight.compareAndSet(current, current + 1)) {
+				if (current + 1 > maxInFlight) {
+					maxInFlight = current + 1;
+				}
+				return true;
+			}
+		}
+	}
+
+	// Gives back a slot without a latency sample, for a request turned away after acquiring it
+	public void cancel() {
+		inFlight.decrementAndGet();
+	}
+
+	public void release(long startNanos) {
+		inFlight.decrementAndGet();
+		final long now = System.nanoTime();
+		latencyNanos.add(now - startNanos);
+		samples.increment();
+		if (now - windowStart >= windowNanos && updateLock.tryLock()) {
+			try {
+				if (now - windowStart >= windowNanos) {
+					update(now);
+				}
+			} finally {
+				updateLock.unlock();
+			}
+		}
+	}
+
+	public int getLimit() {
+		return limit;
+	}
+
+	public int getInFlight() {
+		return inFlight.get();
+	}
+
+	// Called under updateLock
+	private void update(long now) {
+		final long count = samples.sum();
+		if (count < MIN_SAMPLES) {
+			return;
+		}
+		final long total = latencyNanos.sumThenReset();
+		samples.add(-count);
+		windowStart = now;
+		final double shortRtt = Math.max(1, (double) total / count);
+		final int peak = maxInFlight;
+		maxInFlight = inFlight.get();
+
+		if (longRtt == 0) {
+			longRtt = shortRtt;
+		} else {
+			longRtt = longRtt * 0.95 + shortRtt * 0.05;
+			// a long RTT far above the current one is stale; let it follow faster
+			if (longRtt / shortRtt > 2) {
+				longRtt *= 0.95;
+			}
+		}
+		if (peak < estimatedLimit / 2) {
+			return;
+		}
+		final double gradient = Math.max(0.5, Math.min(1.0, TOLERANCE * longRtt / shortRtt));
+		final double newLimit = estimatedLimit * gradient + Math.sqrt(estimatedLimit);
+		estimatedLimit = Math.min(maxLimit, Math.max(minLimit,
+				estimatedLimit * (1 - SMOOTHING) + newLimit * SMOOTHING));
+		limit = (int) estimatedLimit;
+	}
+}
@@ -0,0 +1,171 @@
+package com.dws.challenge.service;
+
+import java.util.BitSet;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+// This class is meant for deciding, before a transfer takes any account lock, whether it should
+// run at all. A transfer is shed when the global AdaptiveConcurrencyLimit is reached, or when its
+// client or its source account has used up its TokenBuckets budget; one client or one hot account
+// can then no longer fill the lock queues every other transfer waits in.
+//
+// The controllers call tryAdmit first and, for an admitted transfer, release once it is done, which
+// also feeds its latency to the concurrency limit. Shed transfers are answered with 429. Batches,
+// transfer streams and bulk creations go through tryAdmitBatch per request or chunk: they take one
+// concurrency slot, but every item is charged to the buckets. Clients are told apart by address.
+
+@Component
+public class AdmissionControl implements MeterBinder {
+
+	public enum Admission {
+		ADMITTED(null),
+		OVERLOADED("Too many transfers in progress, retry later"),
+		CLIENT_RATE_LIMITED("Too many requests from this client, retry later"),
+		ACCOUNT_RATE_LIMITED("Too many transfers from this account, retry later");
+
+		private final String message;
+
+		Admission(String message) {
+			this.message = message;
+		}
+
+		public String getMessage() {
+			return message;
+		}
+	}
+
+	private final boolean enabled;
+
+	private final TokenBuckets accountBuckets;
+
+	private final TokenBuckets clientBuckets;
+
+	private final AdaptiveConcurrencyLimit concurrencyLimit;
+
+	private final Map<Admission, LongAdder> decisions = new EnumMap<>(Admission.class);
+
+	@Autowired
+	public AdmissionControl(@Value("${transfers.admission.enabled:true}") boolean enabled,
+			@Value("${transfers.admission.account.rate:1000}") double accountRate,
+			@Value("${transfers.admission.account.burst:2000}") int accountBurst,
+			@Value("${transfers.admission.client.rate:10000}") double clientRate,
+			@Value("${transfers.admission.client.burst:20000}") int clientBurst,
+			@Value("${transfers.admission.concurrency.initial:200}") int initialLimit,
+			@Value("${transfers.admission.concurrency.min:8}") int minLimit,
+			@Value("${transfers.admission.concurrency.max:2000}") int maxLimit,
+			@Value("${transfers.admission.concurrency.window-millis:100}") long windowMillis) {
+		this.enabled = enabled;
+		this.accountBuckets = new TokenBuckets(accountRate, accountBurst);
+		this.clientBuckets = new TokenBuckets(clientRate, clientBurst);
+		this.concurrencyLimit = new AdaptiveConcurrencyLimit(initialLimit, minLimit, maxLimit, windowMillis);
+		for (Admission admission : Admission.values()) {
+			decisions.put(admission, new LongAdder());
+		}
+	}
+
+	// Admits everything; the default until Spring injects the real one
+	public static AdmissionControl disabled() {
+		return new AdmissionControl(false, 1, 1, 1, 1, 1, 1, 1, 1000);
+	}
+
+	// clientId (the caller's address) may be null when the caller cannot be told apart; the account
+	// check is skipped for a missing source, which the transfer itself rejects
+	public Admission tryAdmit(String clientId, String accountFrom) {
+		final Admission admission = decide(clientId, accountFrom);
+		decisions.get(admission).increment();
+		return admission;
+	}
+
+	// Admits the items of a batch, or of one chunk of a stream, as one unit of work in flight. The
+	// batch is shed whole (OVERLOADED) only by the concurrency limit; otherwise each item is charged
+	// to the client's bucket and to its source account's as a single transfer would be, and shed
+	// gets the positions of the items a bucket turned away. A null source is charged to the client
+	// only, as for account creations. Unless OVERLOADED is returned, releaseBatch must follow.
+	public Admission tryAdmitBatch(String clientId, List<String> accountsFrom, BitSet shed) {
+		if (!enabled) {
+			decisions.get(Admission.ADMITTED).add(accountsFrom.size());
+			return Admission.ADMITTED;
+		}
+		if (!concurrencyLimit.tryAcquire()) {
+			decisions.get(Admission.OVERLOADED).add(accountsFrom.size());
+			return Admission.OVERLOADED;
+		}
+		for (int i = 0; i < accountsFrom.size(); i++) {
+			final Admission admission = charge(clientId, accountsFrom.get(i));
+			decisions.get(admission).increment();
+			if (admission != Admission.ADMITTED) {
+				shed.set(i);
+			}
+		}
+		return Admission.ADMITTED;
+	}
+
+	// Called once an admitted transfer is finished, with the System.nanoTime of its admission
+	public void release(long admittedNanos) {
+		if (enabled) {
+			concurrencyLimit.release(admittedNanos);
+		}
+	}
+
+	// A batch's latency says little about the load, so it is not fed to the concurrency limit
+	public void releaseBatch() {
+		if (enabled) {
+			concurrencyLimit.cancel();
+		}
+	}
+
+	public AdaptiveConcurrencyLimit getConcurrencyLimit() {
+		return concurrencyLimit;
+	}
+
+	@Override
+	public void bindTo(MeterRegistry registry) {
+		for (Admission admission : Admission.values()) {
+			FunctionCounter.builder("transfers.admission", decisions.get(admission), LongAdder::sum)
+					.tag("result", admission.name().toLowerCase())
+					.description("Transfers admitted or shed before taking any lock").register(registry);
+		}
+		Gauge.builder("transfers.admission.limit", concurrencyLimit, AdaptiveConcurrencyLimit::getLimit)
+				.description("Current adaptive limit of transfers in flight").register(registry);
+		Gauge.builder("transfers.admission.in-flight", concurrencyLimit, AdaptiveConcurrencyLimit::getInFlight)
+				.description("Admitted transfers not finished yet").register(registry);
+		Gauge.builder("transfers.admission.buckets", this,
+				control -> control.accountBuckets.size() + control.clientBuckets.size())
+				.description("Rate limit buckets held for accounts and clients below full burst").register(registry);
+	}
+
+	private Admission decide(String clientId, String accountFrom) {
+		if (!enabled) {
+			return Admission.ADMITTED;
+		}
+		if (!concurrencyLimit.tryAcquire()) {
+			return Admission.OVERLOADED;
+		}
+		final Admission admission = charge(clientId, accountFrom);
+		if (admission != Admission.ADMITTED) {
+			concurrencyLimit.cancel();
+		}
+		return admission;
+	}
+
+	private Admission charge(String clientId, String accountFrom) {
+		if (clientId != null && !clientBuckets.tryAcquire(clientId)) {
+			return Admission.CLIENT_RATE_LIMITED;
+		}
+		if (accountFrom != null && !accountBuckets.tryAcquire(accountFrom)) {
+			return Admission.ACCOUNT_RATE_LIMITED;
+		}
+		return Admission.ADMITTED;
+	}
+}
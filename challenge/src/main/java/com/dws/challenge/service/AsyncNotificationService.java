@@ -0,0 +1,428 @@
+package com.dws.challenge.service;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.context.annotation.Primary;
+import org.springframework.stereotype.Component;
+
+import com.dws.challenge.domain.Account;
+import com.dws.challenge.domain.TransferNotification;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+import jakarta.annotation.PreDestroy;
+
+// This class is meant for taking transfer notifications off the request thread. Notifications are
+// put on a bounded queue and handed to the wrapped NotificationService in batches by a dedicated
+// dispatcher thread. Structured notifications are queued as they are, so their text is rendered
+// on the dispatcher, not the request thread. What happens when the queue is full is decided by the
+// OverflowPolicy.
+// Queue depth and lag, delivery lag and the delivered, dropped and spilled counts are exported as
+// notifications.async.* meters.
+// CoalescingNotificationService takes its place when notifications.coalescing.enabled is set.
+
+@Primary
+@Component
+@ConditionalOnExpression("${notifications.async.enabled:false} and !${notifications.coalescing.enabled:false}")
+public class AsyncNotificationService implements NotificationService, MeterBinder {
+
+	public enum OverflowPolicy {
+
+		// The caller waits until the dispatcher frees a slot
+		BLOCK,
+
+		// The oldest queued notification is discarded to make room
+		DROP_OLDEST,
+
+		// The notification is appended to a spill file, which the dispatcher replays one batch at a
+		// time between the batches it takes from the queue
+		SPILL_TO_DISK
+	}
+
+	Logger log = LoggerFactory.getLogger(AsyncNotificationService.class);
+
+	private final NotificationService delegate;
+
+	private final BlockingQueue<PendingNotification> queue;
+
+	private final int batchSize;
+
+	private final OverflowPolicy overflowPolicy;
+
+	private final Path spillFile;
+
+	private final Path replayFile;
+
+	private final ReentrantLock spillLock = new ReentrantLock();
+
+	private final ExecutorService dispatcher;
+
+	private final LongAdder delivered = new LongAdder();
+
+	private final LongAdder dropped = new LongAdder();
+
+	private final LongAdder spilled = new LongAdder();
+
+	private volatile boolean running = true;
+
+	private volatile long lastDeliveryLagNanos;
+
+	// Set when notifications may be waiting in the spill files; guarded by spillLock. Starts set, so
+	// files left by a previous run are picked up.
+	private boolean spillPending = true;
+
+	private DataOutputStream spillOut;
+
+	// The replay file being delivered; only used by the dispatcher
+	private DataInputStream replayIn;
+
+	@Autowired
+	public AsyncNotificationService(@Qualifier("emailNotificationService") NotificationService delegate,
+			@Value("${notifications.async.capacity:10000}") int capacity,
+			@Value("${notifications.async.batch-size:256}") int batchSize,
+			@Value("${notifications.async.overflow:BLOCK}") OverflowPolicy overflowPolicy,
+			@Value("${notifications.async.spill-file:notifications-spill.bin}") String spillFile) {
+		this.delegate = delegate;
+		this.queue = new ArrayBlockingQueue<>(capacity);
+		this.batchSize = batchSize;
+		this.overflowPolicy = overflowPolicy;
+		this.spillFile = Paths.get(spillFile);
+		this.replayFile = this.spillFile.resolveSibling(this.spillFile.getFileName() + ".replay");
+		this.dispatcher = Executors.newSingleThreadExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "notification-dispatcher");
+			thread.setDaemon(true);
+			return thread;
+		});
+		this.dispatcher.execute(this::dispatchLoop);
+	}
+
+	@Override
+	public void notifyAboutTransfer(Account account, String transferDescription) {
+		enqueue(new PendingNotification(null, account, transferDescription, System.nanoTime()));
+	}
+
+	@Override
+	public void notifyAboutTransfer(TransferNotification notification) {
+		enqueue(new PendingNotification(notification, notification.getAccount(), null, System.nanoTime()));
+	}
+
+	private void enqueue(PendingNotification notification) {
+		switch (overflowPolicy) {
+		case BLOCK:
+			try {
+				queue.put(notification);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				dropped.increment();
+			}
+			break;
+		case DROP_OLDEST:
+			while (!queue.offer(notification)) {
+				if (queue.poll() != null) {
+					dropped.increment();
+				}
+			}
+			break;
+		case SPILL_TO_DISK:
+			if (!queue.offer(notification)) {
+				spill(notification);
+			}
+			break;
+		}
+	}
+
+	public int getQueueDepth() {
+		return queue.size();
+	}
+
+	// Age of the oldest notification still waiting in the queue
+	public long getQueueLagMillis() {
+		final PendingNotification head = queue.peek();
+		return head == null ? 0 : TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - head.enqueuedAt);
+	}
+
+	// Time between enqueue and delivery of the most recently delivered notification
+	public long getDeliveryLagMillis() {
+		return TimeUnit.NANOSECONDS.toMillis(lastDeliveryLagNanos);
+	}
+
+	public long getDeliveredCount() {
+		return delivered.sum();
+	}
+
+	public long getDroppedCount() {
+		return dropped.sum();
+	}
+
+	public long getSpilledCount() {
+		return spilled.sum();
+	}
+
+	@Override
+	public void bindTo(MeterRegistry registry) {
+		Gauge.builder("notifications.async.queue.depth", this, AsyncNotificationService::getQueueDepth)
+				.description("Notifications waiting for the dispatcher").register(registry);
+		Gauge.builder("notifications.async.queue.lag", this, AsyncNotificationService::getQueueLagMillis)
+				.baseUnit("milliseconds").description("Age of the oldest queued notification").register(registry);
+		Gauge.builder("notifications.async.delivery.lag", this, AsyncNotificationService::getDeliveryLagMillis)
+				.baseUnit("milliseconds").description("Time from enqueue to delivery of the latest notification")
+				.register(registry);
+		FunctionCounter.builder("notifications.async.delivered", delivered, LongAdder::sum)
+				.description("Notifications handed to the wrapped service").register(registry);
+		FunctionCounter.builder("notifications.async.dropped", dropped, LongAdder::sum)
+				.description("Notifications discarded because the queue was full").register(registry);
+		FunctionCounter.builder("notifications.async.spilled", spilled, LongAdder::sum)
+				.description("Notifications written to the spill file").register(registry);
+	}
+
+	@PreDestroy
+	public void shutdown() throws InterruptedException {
+		running = false;
+		dispatcher.shutdown();
+		if (!dispatcher.awaitTermination(10, TimeUnit.SECONDS)) {
+			log.warn("Notification dispatcher stopped with {} notifications still queued", queue.size());
+		}
+		spillLock.lock();
+		try {
+			closeSpillOut();
+		} finally {
+			spillLock.unlock();
+		}
+	}
+
+	// Alternates between a batch from the queue and a batch from the spill files, so spilled
+	// notifications drain even when the queue never runs empty. While some are left the queue is
+	// polled without waiting.
+	private void dispatchLoop() {
+		final List<PendingNotification> batch = new ArrayList<>(batchSize);
+		boolean replaying = true;
+		try {
+			while (running || !queue.isEmpty()) {
+				final PendingNotification first = replaying ? queue.poll() : queue.poll(100, TimeUnit.MILLISECONDS);
+				if (first != null) {
+					batch.add(first);
+					queue.drainTo(batch, batchSize - 1);
+					deliver(batch);
+					batch.clear();
+				}
+				replaying = replaySpilled(batch);
+				batch.clear();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} finally {
+			closeReplayIn();
+		}
+	}
+
+	private void deliver(List<PendingNotification> batch) {
+		for (PendingNotification notification : batch) {
+			try {
+				notification.deliverTo(delegate);
+				delivered.increment();
+			} catch (RuntimeException e) {
+				log.error("Failed to deliver notification to owner of {}", notification.account.getAccountId(), e);
+			}
+		}
+		lastDeliveryLagNanos = System.nanoTime() - batch.get(batch.size() - 1).enqueuedAt;
+	}
+
+	// Spilled notifications keep an account snapshot (id and balance), not the live account. Each
+	// record is flushed to the file before it is counted, so a crash of the process loses none.
+	private void spill(PendingNotification notification) {
+		spillLock.lock();
+		try {
+			if (spillOut == null) {
+				spillOut = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(spillFile,
+						StandardOpenOption.CREATE, StandardOpenOption.APPEND)));
+			}
+			final BigDecimal balance = notification.account.getBalance();
+			spillOut.writeUTF(notification.account.getAccountId());
+			spillOut.writeUTF(balance == null ? "" : balance.toPlainString());
+			spillOut.writeUTF(notification.description());
+			spillOut.flush();
+			spilled.increment();
+			spillPending = true;
+		} catch (IOException e) {
+			throw new UncheckedIOException("Could not spill notification to " + spillFile, e);
+		} finally {
+			spillLock.unlock();
+		}
+	}
+
+	// Delivers up to one batch of spilled notifications and returns whether more may be waiting.
+	// The spill file is moved aside before it is replayed, so new spills go to a fresh file. A replay
+	// file that could not be read is kept and read again from its start, and the spill file is not
+	// rotated onto it until it has been replayed; its notifications are delivered at least once.
+	private boolean replaySpilled(List<PendingNotification> batch) {
+		if (replayIn == null && !openReplayFile()) {
+			return false;
+		}
+		try {
+			while (batch.size() < batchSize) {
+				final String accountId;
+				try {
+					accountId = replayIn.readUTF();
+				} catch (EOFException end) {
+					finishReplayFile();
+					break;
+				}
+				final String balance;
+				final String transferDescription;
+				try {
+					balance = replayIn.readUTF();
+					transferDescription = replayIn.readUTF();
+				} catch (EOFException truncated) {
+					log.warn("Notification spill file {} ends with a partly written record", replayFile);
+					finishReplayFile();
+					break;
+				}
+				final Account account = new Account(accountId, balance.isEmpty() ? null : new BigDecimal(balance));
+				batch.add(new PendingNotification(null, account, transferDescription, System.nanoTime()));
+			}
+		} catch (IOException e) {
+			log.error("Could not replay spilled notifications from {}", replayFile, e);
+			closeReplayIn();
+			markSpillPending();
+			return false;
+		}
+		if (!batch.isEmpty()) {
+			deliver(batch);
+		}
+		return replayIn != null || isSpillPending();
+	}
+
+	// Opens the replay file, rotating the spill file onto it first when there is none
+	private boolean openReplayFile() {
+		spillLock.lock();
+		try {
+			if (!spillPending) {
+				return false;
+			}
+			spillPending = false;
+			if (!Files.exists(replayFile)) {
+				if (!Files.exists(spillFile)) {
+					return false;
+				}
+				closeSpillOut();
+				Files.move(spillFile, replayFile);
+			}
+			replayIn = new DataInputStream(new BufferedInputStream(Files.newInputStream(replayFile)));
+			return true;
+		} catch (IOException e) {
+			log.error("Could not move notification spill file {} aside for replay", spillFile, e);
+			spillPending = true;
+			return false;
+		} finally {
+			spillLock.unlock();
+		}
+	}
+
+	// The spill file may have been written to while the replay file was read
+	private void finishReplayFile() throws IOException {
+		closeReplayIn();
+		Files.delete(replayFile);
+		markSpillPending();
+	}
+
+	private void markSpillPending() {
+		spillLock.lock();
+		try {
+			spillPending = true;
+		} finally {
+			spillLock.unlock();
+		}
+	}
+
+	private boolean isSpillPending() {
+		spillLock.lock();
+		try {
+			return spillPending;
+		} finally {
+			spillLock.unlock();
+		}
+	}
+
+	private void closeReplayIn() {
+		if (replayIn != null) {
+			try {
+				replayIn.close();
+			} catch (IOException e) {
+				log.warn("Could not close notification replay file {}", replayFile, e);
+			}
+			replayIn = null;
+		}
+	}
+
+	private void closeSpillOut() {
+		if (spillOut != null) {
+			try {
+				spillOut.close();
+			} catch (IOException e) {
+				log.warn("Could not close notification spill file {}", spillFile, e);
+			}
+			spillOut = null;
+		}
+	}
+
+	private static final class PendingNotification {
+
+		// Set for a structured notification, whose text is rendered only when it is needed
+		private final TransferNotification notification;
+
+		private final Account account;
+
+		private final String transferDescription;
+
+		private final long enqueuedAt;
+
+		private PendingNotification(TransferNotification notification, Account account, String transferDescription,
+				long enqueuedAt) {
+			this.notification = notification;
+			this.account = account;
+			this.transferDescription = transferDescription;
+			this.enqueuedAt = enqueuedAt;
+		}
+
+		private String description() {
+			return notification == null ? transferDescription : notification.getDescription();
+		}
+
+		private void deliverTo(NotificationService delegate) {
+			if (notification == null) {
+				delegate.notifyAboutTransfer(account, transferDescription);
+			} else {
+				delegate.notifyAboutTransfer(notification);
+			}
+		}
+	}
+}
@@ -0,0 +1,141 @@
+package com.dws.challenge.service;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.dws.challenge.domain.Account;
+import com.dws.challenge.domain.AccountSnapshot;
+
+// This class is meant for answering balance range and top-N queries without scanning every
+// account. Accounts are kept in a skip list ordered by balance (then id), and AccountsService
+// updates an account's entry wherever it publishes the account's snapshot, i.e. whenever a change
+// to it commits.
+//
+// Each account's current entry is also kept in a map and replaced under the map's per-key lock,
+// reading the live balance inside it, so updates of one account apply in order and the newest
+// balance always wins. Between adding the new entry and removing the old one a reader may meet
+// an account twice; queries keep the first of the two. Queries do not lock and are weakly
+// consistent: an account changing balance while a query runs may be reported at either balance.
+
+@Component
+public class BalanceIndex {
+
+	private static final Comparator<Entry> ORDER = Comparator.comparing((Entry entry) -> entry.balance)
+			.thenComparing(entry -> entry.accountId);
+
+	private final boolean enabled;
+
+	private final Map<String, Entry> current = new ConcurrentHashMap<>();
+
+	private final NavigableSet<Entry> sorted = new ConcurrentSkipListSet<>(ORDER);
+
+	@Autowired
+	public BalanceIndex(@Value("${accounts.balance-index.enabled:true}") boolean enabled) {
+		this.enabled = enabled;
+	}
+
+	// Does nothing; the default until Spring injects the real one
+	public static BalanceIndex disabled() {
+		return new BalanceIndex(false);
+	}
+
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	public void update(Account account) {
+		if (!enabled || account == null) {
+			return;
+		}
+		current.compute(account.getAccountId(), (accountId, previous) -> {
+			final BigDecimal balance = account.getBalance();
+			if (previous != null && previous.balance.compareTo(balance) == 0) {
+				return previous;
+			}
+			final Entry entry = new Entry(balance, accountId);
+			sorted.add(entry);
+			if (previous != null) {
+				sorted.remove(previous);
+			}
+			return entry;
+		});
+	}
+
+	// Accounts with min <= balance < max, lowest first; either bound may be null
+	public List<AccountSnapshot> range(BigDecimal min, BigDecimal max, int limit) {
+		checkEnabled();
+		final NavigableSet<Entry> range;
+		if (min == null && max == null) {
+			range = sorted;
+		} else if (min == null) {
+			range = sorted.headSet(new Entry(max, ""), false);
+		} else if (max == null) {
+			range = sorted.tailSet(new Entry(min, ""), true);
+		} else if (min.compareTo(max) >= 0) {
+			return List.of();
+		} else {
+			range = sorted.subSet(new Entry(min, ""), true, new Entry(max, ""), false);
+		}
+		return collect(range, limit);
+	}
+
+	// The limit accounts with the highest balances, highest first
+	public List<AccountSnapshot> top(int limit) {
+		checkEnabled();
+		return collect(sorted.descendingSet(), limit);
+	}
+
+	// Forgets every account; used when the repository is cleared
+	public void clear() {
+		current.clear();
+		sorted.clear();
+	}
+
+	public int size() {
+		return current.size();
+	}
+
+	private static List<AccountSnapshot> collect(Iterable<Entry> entries, int limit) {
+		final List<AccountSnapshot> accounts = new ArrayList<>(Math.min(limit, 1024));
+		final Set<String> seen = new HashSet<>();
+		for (Entry entry : entries) {
+			if (accounts.size() == limit) {
+				break;
+			}
+			if (seen.add(entry.accountId)) {
+				accounts.add(new AccountSnapshot(entry.accountId, entry.balance, 0));
+			}
+		}
+		return accounts;
+	}
+
+	private void checkEnabled() {
+		if (!enabled) {
+			throw new UnsupportedOperationException("Balance queries require accounts.balance-index.enabled=true");
+		}
+	}
+
+	private static final class Entry {
+
+		private final BigDecimal balance;
+
+		private final String accountId;
+
+		private Entry(BigDecimal balance, String accountId) {
+			this.balance = balance;
+			this.accountId = accountId;
+		}
+	}
+}
@@ -0,0 +1,26 @@
+package com.dws.challenge.service;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+
+import com.dws.challenge.domain.TransferLeg;
+import com.dws.challenge.domain.TransferOutcome;
+
+// Calls a node makes on another during a cross-node transfer (see ClusterTransactions). An
+// IOException means the node was not reached or did not answer in time, so the call may or may
+// not have taken effect; every call is safe to repeat.
+
+public interface ClusterClient {
+
+	// Asks the node to prepare its leg: COMPLETED when it is prepared, otherwise the rejection
+	TransferOutcome prepare(String node, String txId, TransferLeg leg, String coordinator, String accountId,
+			String counterpart, BigDecimal amount) throws IOException;
+
+	void commit(String node, String txId) throws IOException;
+
+	void abort(String node, String txId) throws IOException;
+
+	// Asks the coordinator whether the transaction committed. One that has not decided yet decides
+	// to abort, so the answer is final either way.
+	boolean isCommitted(String node, String txId) throws IOException;
+}
@@ -0,0 +1,96 @@
+package com.dws.challenge.service;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+// This class is meant for deciding which node of a cluster owns an account. Every node listed in
+// accounts.cluster.nodes (by its base URL) is placed on a 64-bit hash ring at virtualNodes points,
+// and an account belongs to the node of the first point at or after the hash of its id. Adding a
+// node therefore moves only the accounts that fall just before its points, about 1/n of them, and
+// the virtual points keep the shares even. Every node is given the same list, so every node
+// computes the same owner without asking anyone.
+//
+// With no nodes configured the ring is off and every account is local.
+
+@Component
+public class ClusterRing {
+
+	private final List<String> nodes;
+
+	private final String self;
+
+	// sorted hashes of the virtual points, and the node of each
+	private final long[] points;
+
+	private final String[] owners;
+
+	@Autowired
+	public ClusterRing(@Value("${accounts.cluster.nodes:}") List<String> nodes,
+			@Value("${accounts.cluster.self:}") String self,
+			@Value("${accounts.cluster.virtual-nodes:128}") int virtualNodes) {
+		this.nodes = nodes.stream().map(String::strip).filter(node -> !node.isEmpty()).distinct().toList();
+		this.self = self == null ? "" : self.strip();
+		if (!this.nodes.isEmpty() && !this.nodes.contains(this.self)) {
+			throw new IllegalArgumentException("accounts.cluster.self (" + self + ") must be one of accounts.cluster.nodes "
+					+ this.nodes);
+		}
+
+		final List<long[]> ring = new ArrayList<>(this.nodes.size() * virtualNodes);
+		for (int node = 0; node < this.nodes.size(); node++) {
+			for (int i = 0; i < virtualNodes; i++) {
+				ring.add(new long[] { IdempotencyCache.keyOf(this.nodes.get(node) + "#" + i), node });
+			}
+		}
+		ring.sort((a, b) -> Long.compareUnsigned(a[0], b[0]));
+		this.points = new long[ring.size()];
+		this.owners = new String[ring.size()];
+		for (int i = 0; i < ring.size(); i++) {
+			points[i] = ring.get(i)[0];
+			owners[i] = this.nodes.get((int) ring.get(i)[1]);
+		}
+	}
+
+	// A single node owning every account
+	public static ClusterRing standalone() {
+		return new ClusterRing(List.of(), "", 0);
+	}
+
+	public boolean isEnabled() {
+		return !nodes.isEmpty();
+	}
+
+	public String getSelf() {
+		return self;
+	}
+
+	public List<String> getNodes() {
+		return nodes;
+	}
+
+	// Base URL of the node owning the account; this node's when the ring is off
+	public String ownerOf(String accountId) {
+		if (points.length == 0) {
+			return self;
+		}
+		final long hash = IdempotencyCache.keyOf(accountId);
+		int low = 0;
+		int high = points.length;
+		while (low < high) {
+			final int middle = (low + high) >>> 1;
+			if (Long.compareUnsigned(points[middle], hash) < 0) {
+				low = middle + 1;
+			} else {
+				high = middle;
+			}
+		}
+		return owners[low == points.length ? 0 : low];
+	}
+
+	public boolean isLocal(String accountId) {
+		return points.length == 0 || self.equals(ownerOf(accountId));
+	}
+}
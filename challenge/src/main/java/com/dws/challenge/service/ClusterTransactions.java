@@ -0,0 +1,593 @@
+package com.dws.challenge.service;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.dws.challenge.domain.TransferLeg;
+import com.dws.challenge.domain.TransferOutcome;
+import com.dws.challenge.repository.ClusterTransactionLog;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+// This class is meant for transfers whose two accounts are owned by different nodes (see
+// ClusterRing). They are applied with a two-phase commit under presumed abort:
+//
+//  1. The coordinator, the node owning the source account, prepares the debit leg on itself and
+//     the credit leg on the destination's owner. A prepared debit is already taken from the
+//     balance, so it cannot be spent twice; a prepared credit only checks that the account exists.
+//  2. Once both are prepared it records its decision to commit (forced to disk) and tells both
+//     nodes to commit: the credit is then added. If a leg cannot be prepared, both are aborted and
+//     the debit is refunded.
+//
+// Every step is on disk in ClusterTransactionLog before it is acted on, and a participant left with
+// a prepared leg for longer than accounts.cluster.in-doubt-millis (a lost message, a coordinator
+// that crashed) asks the coordinator for its decision. A coordinator that has no commit decision
+// for the transaction answers abort and, if the transaction is still in flight, makes that the
+// decision, so the answer never changes. Commits a participant did not acknowledge are resent
+// until it does. Money is therefore never created or lost by a crash; at worst a debit stays held
+// until its coordinator is back.
+//
+// Clustered mode requires accounts.transfer.mode=LOCKING, since legs take the account stripe locks.
+
+@Component
+public class ClusterTransactions implements MeterBinder {
+
+	Logger log = LoggerFactory.getLogger(ClusterTransactions.class);
+
+	private final ClusterRing ring;
+
+	private final ClusterClient client;
+
+	private final AccountsService accountsService;
+
+	private final IdempotencyCache idempotencyCache;
+
+	// null when the ring is off
+	private final ClusterTransactionLog transactionLog;
+
+	private final long inDoubtMillis;
+
+	private final ObjectProvider<JournalRecovery> journalRecovery;
+
+	// legs this node prepared and has not committed or aborted yet, by txId and leg
+	private final Map<String, PreparedLeg> preparedLegs = new ConcurrentHashMap<>();
+
+	// transactions this node coordinates, until every participant has finished its leg
+	private final Map<String, Transaction> transactions = new ConcurrentHashMap<>();
+
+	private final LongAdder committed = new LongAdder();
+
+	private final LongAdder aborted = new LongAdder();
+
+	private final LongAdder resolved = new LongAdder();
+
+	private ScheduledExecutorService resolver;
+
+	@Autowired
+	public ClusterTransactions(ClusterRing ring, ClusterClient client, AccountsService accountsService,
+			IdempotencyCache idempotencyCache, ObjectProvider<JournalRecovery> journalRecovery,
+			@Value("${accounts.cluster.log-dir:cluster}") String logDirectory,
+			@Value("${accounts.cluster.in-doubt-millis:5000}") long inDoubtMillis) throws IOException {
+		this(ring, client, accountsService, idempotencyCache,
+				ring.isEnabled() ? new ClusterTransactionLog(Paths.get(logDirectory).resolve("transactions.log")) : null,
+				inDoubtMillis, journalRecovery);
+	}
+
+	public ClusterTransactions(ClusterRing ring, ClusterClient client, AccountsService accountsService,
+			IdempotencyCache idempotencyCache, ClusterTransactionLog transactionLog, long inDoubtMillis) {
+		this(ring, client, accountsService, idempotencyCache, transactionLog, inDoubtMillis, null);
+	}
+
+	private ClusterTransactions(ClusterRing ring, ClusterClient client, AccountsService accountsService,
+			IdempotencyCache idempotencyCache, ClusterTransactionLog transactionLog, long inDoubtMillis,
+			ObjectProvider<JournalRecovery> journalRecovery) {
+		this.ring = ring;
+		this.client = client;
+		this.accountsService = accountsService;
+		this.idempotencyCache = idempotencyCache;
+		this.transactionLog = transactionLog;
+		this.inDoubtMillis = inDoubtMillis;
+		this.journalRecovery = journalRecovery;
+	}
+
+	// Replays the log on top of the recovered accounts, then starts resolving legs in doubt
+	@PostConstruct
+	public void start() throws IOException {
+		if (!ring.isEnabled()) {
+			return;
+		}
+		if (accountsService.getTransferMode() != TransferMode.LOCKING) {
+			throw new IllegalStateException("Clustered mode requires accounts.transfer.mode=" + TransferMode.LOCKING);
+		}
+		if (journalRecovery != null) {
+			// the accounts are restored from the journal before the legs are applied to them
+			journalRecovery.getIfAvailable();
+		}
+		recover();
+		resolver = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "cluster-resolver");
+			thread.setDaemon(true);
+			return thread;
+		});
+		final long period = Math.max(1, inDoubtMillis / 2);
+		resolver.scheduleWithFixedDelay(this::resolveQuietly, period, period, TimeUnit.MILLISECONDS);
+	}
+
+	@PreDestroy
+	public void shutdown() throws IOException {
+		if (resolver != null) {
+			resolver.shutdownNow();
+		}
+		if (transactionLog != null) {
+			transactionLog.close();
+		}
+	}
+
+	// Coordinator side: applies a transfer whose source is owned by this node and whose destination
+	// is owned by another. Idempotency keys are remembered here, as AccountsService does for local
+	// transfers.
+	public TransferOutcome tryTransfer(final String idempotencyKey, final String fromAccount, final String toAccount,
+			final BigDecimal amount) {
+		if (fromAccount == null || toAccount == null) {
+			return TransferOutcome.ACCOUNT_NOT_FOUND;
+		}
+		if (amount == null || amount.signum() < 0) {
+			return TransferOutcome.INVALID_AMOUNT;
+		}
+		if (fromAccount.equals(toAccount)) {
+			return TransferOutcome.SAME_ACCOUNT;
+		}
+
+		long key = 0;
+		int fingerprint = 0;
+		if (idempotencyKey != null) {
+			key = IdempotencyCache.keyOf(idempotencyKey);
+			fingerprint = IdempotencyCache.fingerprintOf(fromAccount, toAccount, amount);
+			switch (idempotencyCache.reserve(key, fingerprint)) {
+			case COMPLETED:
+				return TransferOutcome.COMPLETED;
+			case IN_PROGRESS:
+				return TransferOutcome.IN_PROGRESS;
+			case MISMATCH:
+				return TransferOutcome.IDEMPOTENCY_MISMATCH;
+			case FULL:
+				return TransferOutcome.IDEMPOTENCY_CACHE_FULL;
+			default:
+				break;
+			}
+		}
+
+		final TransferOutcome outcome = coordinate(fromAccount, toAccount, amount);
+		if (key != 0) {
+			if (outcome == TransferOutcome.COMPLETED) {
+				idempotencyCache.complete(key, fingerprint);
+			} else {
+				idempotencyCache.release(key);
+			}
+		}
+		return outcome;
+	}
+
+	private TransferOutcome coordinate(final String fromAccount, final String toAccount, final BigDecimal amount) {
+		final String txId = UUID.randomUUID().toString();
+		final String debitNode = ring.ownerOf(fromAccount);
+		final String creditNode = ring.ownerOf(toAccount);
+		final Transaction transaction = new Transaction(debitNode, creditNode);
+		transactions.put(txId, transaction);
+
+		TransferOutcome outcome = prepareOn(debitNode, txId, TransferLeg.DEBIT, fromAccount, toAccount, amount);
+		if (outcome == TransferOutcome.COMPLETED) {
+			outcome = prepareOn(creditNode, txId, TransferLeg.CREDIT, toAccount, fromAccount, amount);
+		}
+		if (outcome == TransferOutcome.COMPLETED && !transaction.decideCommit(txId)) {
+			// a participant gave up waiting and was told to abort
+			outcome = TransferOutcome.NODE_UNAVAILABLE;
+		}
+
+		if (outcome != TransferOutcome.COMPLETED) {
+			transaction.decideAbort();
+			transactions.remove(txId);
+			// a leg that was never prepared ignores the abort; one not reached asks later and aborts
+			abortOn(debitNode, txId);
+			abortOn(creditNode, txId);
+			aborted.increment();
+			return outcome;
+		}
+
+		committed.increment();
+		finishCommit(txId, transaction);
+		return TransferOutcome.COMPLETED;
+	}
+
+	// Participant side: prepares this node's leg of a transaction. Preparing the same leg again
+	// answers as the first time did. The coordinator must be the ring node owning the source account,
+	// as only that node runs transfers from it; commit and abort then only act on legs it prepared.
+	public TransferOutcome prepare(final String txId, final TransferLeg leg, final String coordinator,
+			final String accountId, final String counterpart, final BigDecimal amount) {
+		final String source = leg == TransferLeg.DEBIT ? accountId : counterpart;
+		if (!ring.getNodes().contains(coordinator) || !coordinator.equals(ring.ownerOf(source))) {
+			throw new IllegalArgumentException("Coordinator " + coordinator + " does not own account " + source);
+		}
+		if (!ring.isLocal(accountId)) {
+			return TransferOutcome.ACCOUNT_NOT_FOUND;
+		}
+		final PreparedLeg prepared = new PreparedLeg(txId, leg, coordinator, accountId, counterpart, amount,
+				System.currentTimeMillis());
+		if (preparedLegs.putIfAbsent(legId(txId, leg), prepared) != null) {
+			return TransferOutcome.COMPLETED;
+		}
+
+		final TransferOutcome outcome;
+		if (leg == TransferLeg.DEBIT) {
+			outcome = accountsService.debitLeg(accountId, amount);
+		} else {
+			outcome = accountsService.getAccount(accountId) == null ? TransferOutcome.ACCOUNT_NOT_FOUND
+					: TransferOutcome.COMPLETED;
+		}
+		if (outcome != TransferOutcome.COMPLETED) {
+			preparedLegs.remove(legId(txId, leg));
+			return outcome;
+		}
+		try {
+			transactionLog.prepared(txId, leg, coordinator, accountId, counterpart, amount);
+		} catch (RuntimeException e) {
+			preparedLegs.remove(legId(txId, leg));
+			if (leg == TransferLeg.DEBIT) {
+				accountsService.creditLeg(accountId, amount);
+			}
+			throw e;
+		}
+		return TransferOutcome.COMPLETED;
+	}
+
+	// Participant side: commits this node's legs of the transaction, if any are still prepared
+	public void commit(final String txId) {
+		for (TransferLeg leg : TransferLeg.values()) {
+			final PreparedLeg prepared = preparedLegs.remove(legId(txId, leg));
+			if (prepared == null) {
+				continue;
+			}
+			transactionLog.committed(txId, leg);
+			if (leg == TransferLeg.CREDIT) {
+				accountsService.creditLeg(prepared.accountId, prepared.amount);
+				accountsService.completeLeg(prepared.counterpart, prepared.accountId, prepared.amount, false);
+			} else {
+				accountsService.completeLeg(prepared.accountId, prepared.counterpart, prepared.amount, true);
+			}
+		}
+	}
+
+	// Participant side: aborts this node's legs of the transaction, refunding a held debit
+	public void abort(final String txId) {
+		for (TransferLeg leg : TransferLeg.values()) {
+			final PreparedLeg prepared = preparedLegs.remove(legId(txId, leg));
+			if (prepared == null) {
+				continue;
+			}
+			transactionLog.aborted(txId, leg);
+			if (leg == TransferLeg.DEBIT) {
+				accountsService.creditLeg(prepared.accountId, prepared.amount);
+			}
+		}
+	}
+
+	// Coordinator side: whether the transaction committed. Presumed abort: a transaction this node
+	// knows nothing about did not commit, and one still in flight is made to abort.
+	public boolean isCommitted(final String txId) {
+		final Transaction transaction = transactions.get(txId);
+		return transaction != null && transaction.decideAbort();
+	}
+
+	// Legs prepared on this node and not finished yet
+	public int getPreparedLegs() {
+		return preparedLegs.size();
+	}
+
+	@Override
+	public void bindTo(MeterRegistry registry) {
+		FunctionCounter.builder("cluster.transactions", committed, LongAdder::sum).tag("result", "committed")
+				.description("Cross-node transfers coordinated by this node").register(registry);
+		FunctionCounter.builder("cluster.transactions", aborted, LongAdder::sum).tag("result", "aborted")
+				.description("Cross-node transfers coordinated by this node").register(registry);
+		FunctionCounter.builder("cluster.legs.resolved", resolved, LongAdder::sum)
+				.description("Legs in doubt settled by asking their coordinator").register(registry);
+		Gauge.builder("cluster.legs.prepared", preparedLegs, Map::size)
+				.description("Legs prepared on this node and waiting for a decision").register(registry);
+	}
+
+	private TransferOutcome prepareOn(final String node, final String txId, final TransferLeg leg,
+			final String accountId, final String counterpart, final BigDecimal amount) {
+		if (node.equals(ring.getSelf())) {
+			return prepare(txId, leg, ring.getSelf(), accountId, counterpart, amount);
+		}
+		try {
+			return client.prepare(node, txId, leg, ring.getSelf(), accountId, counterpart, amount);
+		} catch (IOException e) {
+			log.warn("Could not prepare {} leg of {} on {}: {}", leg, txId, node, e.getMessage());
+			return TransferOutcome.NODE_UNAVAILABLE;
+		}
+	}
+
+	private boolean commitOn(final String node, final String txId) {
+		if (node.equals(ring.getSelf())) {
+			commit(txId);
+			return true;
+		}
+		try {
+			client.commit(node, txId);
+			return true;
+		} catch (IOException e) {
+			log.warn("Could not commit {} on {}, will retry: {}", txId, node, e.getMessage());
+			return false;
+		}
+	}
+
+	private void abortOn(final String node, final String txId) {
+		if (node.equals(ring.getSelf())) {
+			abort(txId);
+			return;
+		}
+		try {
+			client.abort(node, txId);
+		} catch (IOException e) {
+			log.warn("Could not abort {} on {}; it will ask: {}", txId, node, e.getMessage());
+		}
+	}
+
+	// Tells the participants to commit; the transaction is forgotten once both have
+	private void finishCommit(final String txId, final Transaction transaction) {
+		transaction.debitCommitted = transaction.debitCommitted || commitOn(transaction.debitNode, txId);
+		transaction.creditCommitted = transaction.creditCommitted || commitOn(transaction.creditNode, txId);
+		if (transaction.debitCommitted && transaction.creditCommitted) {
+			transactionLog.done(txId);
+			transactions.remove(txId);
+		}
+	}
+
+	// One round of the resolver: legs in doubt ask their coordinator, and unacknowledged commits are
+	// sent again. Runs on the resolver thread every in-doubt-millis / 2.
+	public void resolve() {
+		final long now = System.currentTimeMillis();
+		for (PreparedLeg prepared : preparedLegs.values()) {
+			if (now - prepared.preparedAt < inDoubtMillis) {
+				continue;
+			}
+			final boolean commit;
+			try {
+				commit = prepared.coordinator.equals(ring.getSelf()) ? isCommitted(prepared.txId)
+						: client.isCommitted(prepared.coordinator, prepared.txId);
+			} catch (IOException e) {
+				log.warn("Coordinator {} of {} is unreachable; the {} leg stays prepared", prepared.coordinator,
+						prepared.txId, prepared.leg);
+				continue;
+			}
+			if (commit) {
+				commit(prepared.txId);
+			} else {
+				abort(prepared.txId);
+			}
+			resolved.increment();
+		}
+		for (Map.Entry<String, Transaction> entry : transactions.entrySet()) {
+			if (entry.getValue().isCommitted()) {
+				finishCommit(entry.getKey(), entry.getValue());
+			}
+		}
+	}
+
+	private void resolveQuietly() {
+		try {
+			resolve();
+		} catch (RuntimeException e) {
+			log.error("Resolving cluster transactions failed", e);
+		}
+	}
+
+	// Rebuilds the legs and decisions from the log, applies the legs' balance changes to the
+	// accounts, and rewrites the log with only what is still needed
+	private void recover() throws IOException {
+		final Map<String, PreparedLeg> open = new LinkedHashMap<>();
+		final Map<String, BigDecimal> settled = new HashMap<>();
+		final Map<String, Transaction> decided = new LinkedHashMap<>();
+		transactionLog.replay(new ClusterTransactionLog.Visitor() {
+
+			@Override
+			public void prepared(String txId, TransferLeg leg, String coordinator, String accountId,
+					String counterpart, BigDecimal amount) {
+				open.put(legId(txId, leg), new PreparedLeg(txId, leg, coordinator, accountId, counterpart, amount, 0));
+			}
+
+			@Override
+			public void committed(String txId, TransferLeg leg) {
+				final PreparedLeg prepared = open.remove(legId(txId, leg));
+				if (prepared != null) {
+					settled.merge(prepared.accountId,
+							leg == TransferLeg.DEBIT ? prepared.amount.negate() : prepared.amount, BigDecimal::add);
+				}
+			}
+
+			@Override
+			public void aborted(String txId, TransferLeg leg) {
+				// a refunded debit and a dropped credit leave the balance as it was
+				open.remove(legId(txId, leg));
+			}
+
+			@Override
+			public void decided(String txId, String debitNode, String creditNode) {
+				final Transaction transaction = new Transaction(debitNode, creditNode);
+				transaction.decideCommit(null);
+				decided.put(txId, transaction);
+			}
+
+			@Override
+			public void done(String txId) {
+				decided.remove(txId);
+			}
+
+			@Override
+			public void settled(String accountId, BigDecimal delta) {
+				settled.merge(accountId, delta, BigDecimal::add);
+			}
+		});
+
+		int missing = 0;
+		for (Map.Entry<String, BigDecimal> entry : new ArrayList<>(settled.entrySet())) {
+			if (!accountsService.restoreLeg(entry.getKey(), entry.getValue())) {
+				settled.remove(entry.getKey());
+				missing++;
+			}
+		}
+		final List<PreparedLeg> inDoubt = new ArrayList<>();
+		for (PreparedLeg prepared : open.values()) {
+			// a held debit is still out of the balance; a prepared credit has not been added yet
+			if (prepared.leg == TransferLeg.CREDIT ? accountsService.getAccount(prepared.accountId) != null
+					: accountsService.restoreLeg(prepared.accountId, prepared.amount.negate())) {
+				inDoubt.add(prepared);
+				preparedLegs.put(legId(prepared.txId, prepared.leg), prepared);
+			} else {
+				missing++;
+			}
+		}
+		transactions.putAll(decided);
+		if (missing > 0) {
+			log.warn("{} logged cluster legs refer to accounts that no longer exist and were dropped", missing);
+		}
+
+		transactionLog.rewrite(out -> {
+			for (Map.Entry<String, BigDecimal> entry : settled.entrySet()) {
+				out.settled(entry.getKey(), entry.getValue());
+			}
+			for (PreparedLeg prepared : inDoubt) {
+				out.prepared(prepared.txId, prepared.leg, prepared.coordinator, prepared.accountId,
+						prepared.counterpart, prepared.amount);
+			}
+			for (Map.Entry<String, Transaction> entry : decided.entrySet()) {
+				out.decided(entry.getKey(), entry.getValue().debitNode, entry.getValue().creditNode);
+			}
+		});
+		log.info("Cluster node {} of {}: {} accounts with settled legs, {} legs in doubt, {} commits to resend",
+				ring.getSelf(), ring.getNodes(), settled.size(), inDoubt.size(), decided.size());
+	}
+
+	private static String legId(final String txId, final TransferLeg leg) {
+		return txId + "/" + leg;
+	}
+
+	private static final class PreparedLeg {
+
+		private final String txId;
+
+		private final TransferLeg leg;
+
+		private final String coordinator;
+
+		private final String accountId;
+
+		private final String counterpart;
+
+		private final BigDecimal amount;
+
+		// recovered legs count as prepared long ago, so they are resolved straight away
+		private final long preparedAt;
+
+		private PreparedLeg(String txId, TransferLeg leg, String coordinator, String accountId, String counterpart,
+				BigDecimal amount, long preparedAt) {
+			this.txId = txId;
+			this.leg = leg;
+			this.coordinator = coordinator;
+			this.accountId = accountId;
+			this.counterpart = counterpart;
+			this.amount = amount;
+			this.preparedAt = preparedAt;
+		}
+	}
+
+	// A transaction this node coordinates. Its decision is taken once, under the lock, and a commit
+	// decision is on disk before anyone can see it.
+	private final class Transaction {
+
+		private final ReentrantLock lock = new ReentrantLock();
+
+		private final String debitNode;
+
+		private final String creditNode;
+
+		// null while undecided
+		private Boolean commit;
+
+		// touched by the coordinating thread, then by the resolver only
+		private volatile boolean debitCommitted;
+
+		private volatile boolean creditCommitted;
+
+		private Transaction(String debitNode, String creditNode) {
+			this.debitNode = debitNode;
+			this.creditNode = creditNode;
+		}
+
+		// Records the commit decision (txId null when it is already in the log); false when the
+		// transaction was decided to abort first
+		private boolean decideCommit(String txId) {
+			lock.lock();
+			try {
+				if (commit == null) {
+					if (txId != null) {
+						transactionLog.decided(txId, debitNode, creditNode);
+					}
+					commit = Boolean.TRUE;
+				}
+				return commit;
+			} finally {
+				lock.unlock();
+			}
+		}
+
+		// Decides to abort unless the transaction already committed; true when it did
+		private boolean decideAbort() {
+			lock.lock();
+			try {
+				if (commit == null) {
+					commit = Boolean.FALSE;
+				}
+				return commit;
+			} finally {
+				lock.unlock();
+			}
+		}
+
+		private boolean isCommitted() {
+			lock.lock();
+			try {
+				return Boolean.TRUE.equals(commit);
+			} finally {
+				lock.unlock();
+			}
+		}
+	}
+}
@@ -0,0 +1,226 @@
+package com.dws.challenge.service;
+
+import java.math.BigDecimal;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Primary;
+import org.springframework.stereotype.Component;
+
+import com.dws.challenge.domain.Account;
+import com.dws.challenge.domain.TransferLeg;
+import com.dws.challenge.domain.TransferNotification;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+// This class is meant for sparing a busy account thousands of separate notifications. The transfer
+// notifications of one account arriving within notifications.coalescing.window-millis of the first
+// are merged into a digest (counts and totals per direction), and the digest is handed to the
+// wrapped NotificationService once the window has closed, by the notification-coalescer thread.
+// A window holding a single transfer is delivered with that transfer's usual text. Merged
+// notifications are kept as numbers, so no text is built for them.
+//
+// Only the structured notifications of AccountsService are merged; plain-text ones pass straight
+// through. Delivery already happens off the request thread, so when this is enabled it takes the
+// place of notifications.async and of the reactive notification sink.
+
+@Primary
+@Component
+@ConditionalOnProperty(name = "notifications.coalescing.enabled", havingValue = "true")
+public class CoalescingNotificationService implements NotificationService, MeterBinder {
+
+	Logger log = LoggerFactory.getLogger(CoalescingNotificationService.class);
+
+	private final NotificationService delegate;
+
+	private final long windowMillis;
+
+	private final LongSupplier clock;
+
+	// the digest still collecting for each account
+	private final Map<String, Digest> open = new ConcurrentHashMap<>();
+
+	private final LongAdder received = new LongAdder();
+
+	private final LongAdder delivered = new LongAdder();
+
+	private ScheduledExecutorService flusher;
+
+	@Autowired
+	public CoalescingNotificationService(@Qualifier("emailNotificationService") NotificationService delegate,
+			@Value("${notifications.coalescing.window-millis:1000}") long windowMillis) {
+		this(delegate, windowMillis, System::currentTimeMillis);
+	}
+
+	public CoalescingNotificationService(NotificationService delegate, long windowMillis, LongSupplier clock) {
+		this.delegate = delegate;
+		this.windowMillis = windowMillis;
+		this.clock = clock;
+	}
+
+	@PostConstruct
+	public void start() {
+		flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "notification-coalescer");
+			thread.setDaemon(true);
+			return thread;
+		});
+		// a digest is delivered at most a quarter of a window late
+		final long period = Math.max(1, windowMillis / 4);
+		flusher.scheduleWithFixedDelay(this::flushQuietly, period, period, TimeUnit.MILLISECONDS);
+	}
+
+	// Delivers every open digest, without waiting for its window to close
+	@PreDestroy
+	public void shutdown() throws InterruptedException {
+		if (flusher != null) {
+			flusher.shutdown();
+			flusher.awaitTermination(10, TimeUnit.SECONDS);
+		}
+		flush(Long.MAX_VALUE);
+	}
+
+	@Override
+	public void notifyAboutTransfer(Account account, String transferDescription) {
+		received.increment();
+		deliver(account, transferDescription);
+	}
+
+	@Override
+	public void notifyAboutTransfer(TransferNotification notification) {
+		received.increment();
+		final long now = clock.getAsLong();
+		open.compute(notification.getAccount().getAccountId(), (accountId, digest) -> {
+			if (digest == null) {
+				return new Digest(notification, now);
+			}
+			digest.add(notification);
+			return digest;
+		});
+	}
+
+	// Delivers the digests whose window has closed; returns how many
+	public int flush() {
+		return flush(clock.getAsLong());
+	}
+
+	// Notifications handed in, and calls made to the wrapped service for them
+	public long getReceivedCount() {
+		return received.sum();
+	}
+
+	public long getDeliveredCount() {
+		return delivered.sum();
+	}
+
+	@Override
+	public void bindTo(MeterRegistry registry) {
+		FunctionCounter.builder("notifications.coalescing.received", received, LongAdder::sum)
+				.description("Transfer notifications handed to the coalescing layer").register(registry);
+		FunctionCounter.builder("notifications.coalescing.delivered", delivered, LongAdder::sum)
+				.description("Notifications and digests delivered by the coalescing layer").register(registry);
+		Gauge.builder("notifications.coalescing.open", open, Map::size)
+				.description("Accounts with a digest still collecting").register(registry);
+	}
+
+	private int flush(long now) {
+		int flushed = 0;
+		for (Map.Entry<String, Digest> entry : open.entrySet()) {
+			final Digest digest = entry.getValue();
+			// removing takes the same lock as compute, so every notification merged before is seen
+			if (now - digest.openedAt >= windowMillis && open.remove(entry.getKey(), digest)) {
+				deliver(digest.account, digest.render());
+				flushed++;
+			}
+		}
+		return flushed;
+	}
+
+	private void flushQuietly() {
+		try {
+			flush();
+		} catch (RuntimeException e) {
+			log.error("Delivering notification digests failed", e);
+		}
+	}
+
+	private void deliver(Account account, String description) {
+		try {
+			delegate.notifyAboutTransfer(account, description);
+			delivered.increment();
+		} catch (RuntimeException e) {
+			log.error("Failed to deliver notification to owner of {}", account.getAccountId(), e);
+		}
+	}
+
+	// Notifications of one account within one window; changed only inside open.compute
+	private final class Digest {
+
+		private final long openedAt;
+
+		private final TransferNotification first;
+
+		private Account account;
+
+		private int count;
+
+		private int debits;
+
+		private BigDecimal debitTotal = BigDecimal.ZERO;
+
+		private int credits;
+
+		private BigDecimal creditTotal = BigDecimal.ZERO;
+
+		private Digest(TransferNotification first, long openedAt) {
+			this.first = first;
+			this.openedAt = openedAt;
+			add(first);
+		}
+
+		private void add(TransferNotification notification) {
+			account = notification.getAccount();
+			count++;
+			if (notification.getLeg() == TransferLeg.DEBIT) {
+				debits++;
+				debitTotal = debitTotal.add(notification.getAmount());
+			} else {
+				credits++;
+				creditTotal = creditTotal.add(notification.getAmount());
+			}
+		}
+
+		private String render() {
+			if (count == 1) {
+				return first.getDescription();
+			}
+			final StringBuilder text = new StringBuilder(128).append(count).append(" transfers in the last ")
+					.append(windowMillis).append(" ms:");
+			if (debits > 0) {
+				text.append(' ').append(debits).append(" sent for a total of ").append(debitTotal);
+			}
+			if (credits > 0) {
+				text.append(debits > 0 ? "," : "").append(' ').append(credits).append(" received for a total of ")
+						.append(creditTotal);
+			}
+			return text.append('.').toString();
+		}
+	}
+}
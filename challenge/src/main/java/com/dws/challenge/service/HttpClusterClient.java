@@ -0,0 +1,123 @@
+package com.dws.challenge.service;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.math.BigDecimal;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.time.Duration;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.dws.challenge.domain.TransferLeg;
+import com.dws.challenge.domain.TransferOutcome;
+
+// ClusterClient over the internal endpoints of ClusterController, and the proxy AccountsController
+// uses to hand a request to the node owning its account. Every call has the same timeout; a node
+// that does not answer within it is reported with an IOException. Every call also carries the
+// shared secret of accounts.cluster.secret, which the receiving node checks with isPeer.
+
+@Component
+public class HttpClusterClient implements ClusterClient {
+
+	// Set on a request a node forwarded, so the receiving node serves it instead of forwarding again
+	public static final String FORWARDED_HEADER = "X-Cluster-Forwarded";
+
+	// Carries the shared secret that tells a node's calls apart from a client's
+	public static final String SECRET_HEADER = "X-Cluster-Secret";
+
+	static final String TRANSACTIONS_PATH = "/internal/cluster/transactions/";
+
+	private final HttpClient client;
+
+	private final Duration timeout;
+
+	private final String secret;
+
+	@Autowired
+	public HttpClusterClient(@Value("${accounts.cluster.timeout-millis:2000}") long timeoutMillis,
+			@Value("${accounts.cluster.secret:}") String secret) {
+		this.secret = secret;
+		this.timeout = Duration.ofMillis(timeoutMillis);
+		this.client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).connectTimeout(timeout).build();
+	}
+
+	@Override
+	public TransferOutcome prepare(String node, String txId, TransferLeg leg, String coordinator, String accountId,
+			String counterpart, BigDecimal amount) throws IOException {
+		final String query = "?leg=" + leg + "&coordinator=" + encode(coordinator) + "&account=" + encode(accountId)
+				+ "&counterpart=" + encode(counterpart) + "&amount=" + amount.toPlainString();
+		return TransferOutcome.valueOf(post(node, TRANSACTIONS_PATH + encode(txId) + "/prepare" + query));
+	}
+
+	@Override
+	public void commit(String node, String txId) throws IOException {
+		post(node, TRANSACTIONS_PATH + encode(txId) + "/commit");
+	}
+
+	@Override
+	public void abort(String node, String txId) throws IOException {
+		post(node, TRANSACTIONS_PATH + encode(txId) + "/abort");
+	}
+
+	@Override
+	public boolean isCommitted(String node, String txId) throws IOException {
+		return Boolean.parseBoolean(post(node, TRANSACTIONS_PATH + encode(txId) + "/decision"));
+	}
+
+	public boolean hasSecret() {
+		return !secret.isEmpty();
+	}
+
+	// Whether a request presenting this secret comes from another node; never with no secret set.
+	// The comparison takes the same time wherever the first difference is.
+	public boolean isPeer(String presented) {
+		return presented != null && hasSecret() && MessageDigest.isEqual(secret.getBytes(StandardCharsets.UTF_8),
+				presented.getBytes(StandardCharsets.UTF_8));
+	}
+
+	// Sends a client request on to another node and returns its answer as is
+	public HttpResponse<byte[]> forward(String node, String method, String path, String contentType, byte[] body,
+			String ifNoneMatch) throws IOException {
+		final HttpRequest.Builder request = HttpRequest.newBuilder(URI.create(node + path)).timeout(timeout)
+				.header(FORWARDED_HEADER, "true").header(SECRET_HEADER, secret).method(method,
+						body == null ? HttpRequest.BodyPublishers.noBody() : HttpRequest.BodyPublishers.ofByteArray(body));
+		if (contentType != null) {
+			request.header("Content-Type", contentType);
+		}
+		if (ifNoneMatch != null) {
+			request.header("If-None-Match", ifNoneMatch);
+		}
+		return send(request.build(), HttpResponse.BodyHandlers.ofByteArray());
+	}
+
+	private String post(String node, String path) throws IOException {
+		final HttpRequest request = HttpRequest.newBuilder(URI.create(node + path)).timeout(timeout)
+				.header(SECRET_HEADER, secret).POST(HttpRequest.BodyPublishers.noBody()).build();
+		final HttpResponse<String> response = send(request, HttpResponse.BodyHandlers.ofString());
+		if (response.statusCode() != 200) {
+			throw new IOException("Node " + node + " answered " + path + " with HTTP " + response.statusCode());
+		}
+		return response.body();
+	}
+
+	private <T> HttpResponse<T> send(HttpRequest request, HttpResponse.BodyHandler<T> handler) throws IOException {
+		try {
+			return client.send(request, handler);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while calling " + request.uri());
+		}
+	}
+
+	private static String encode(String value) {
+		return URLEncoder.encode(value, StandardCharsets.UTF_8);
+	}
+}
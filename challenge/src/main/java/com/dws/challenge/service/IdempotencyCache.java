@@ -0,0 +1,331 @@
+package com.dws.challenge.service;
+
+import java.math.BigDecimal;
+import java.util.Objects;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongSupplier;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+// This class is meant for remembering which idempotency keys already moved money, so a retried
+// transfer request is answered from here instead of debiting the source again.
+//
+// Keys are not stored as strings: each one is reduced to a 64-bit hash and kept next to a packed
+// long (expiry, a fingerprint of the transfer and a completed flag) in open-addressing arrays,
+// which is 32 bytes per key at the 50% load the tables are kept at. With a million live keys the
+// chance of two different keys sharing a hash is around one in 10^7. The tables are split into
+// segments, each with its own lock and allocated on first use; a segment that fills up first drops
+// its expired entries and then, if it is still full, its oldest completed ones. A segment never
+// holds more than its share of the capacity, so its table always keeps empty slots for lookups to
+// stop at; a new key arriving while it is full of live keys is answered FULL instead.
+
+@Component
+public class IdempotencyCache implements MeterBinder {
+
+	public enum Outcome {
+		// The key is new (or expired): the caller applies the transfer, then completes or releases it
+		RESERVED,
+		// The transfer was already applied; nothing is to be done
+		COMPLETED,
+		// Another request with this key is still being applied
+		IN_PROGRESS,
+		// The key was used for a transfer with different accounts or amount
+		MISMATCH,
+		// The key's segment is full of live keys even after compaction; the request is rejected
+		FULL
+	}
+
+	private static final int SEGMENT_SHIFT = 6;
+
+	private static final int SEGMENTS = 1 << SEGMENT_SHIFT;
+
+	private static final long COMPLETED_BIT = 1L;
+
+	private final Segment[] segments = new Segment[SEGMENTS];
+
+	private final int ttlSeconds;
+
+	private final LongSupplier clock;
+
+	private final long epochMillis;
+
+	private final LongAdder hits = new LongAdder();
+
+	private final LongAdder misses = new LongAdder();
+
+	private final LongAdder expirations = new LongAdder();
+
+	private final LongAdder evictions = new LongAdder();
+
+	private final LongAdder rejections = new LongAdder();
+
+	@Autowired
+	public IdempotencyCache(@Value("${transfers.idempotency.capacity:1000000}") int capacity,
+			@Value("${transfers.idempotency.ttl-seconds:86400}") int ttlSeconds) {
+		this(capacity, ttlSeconds, System::currentTimeMillis);
+	}
+
+	public IdempotencyCache(int capacity, int ttlSeconds, LongSupplier clock) {
+		final int perSegment = Math.max(16, (capacity + SEGMENTS - 1) / SEGMENTS);
+		for (int i = 0; i < SEGMENTS; i++) {
+			segments[i] = new Segment(perSegment);
+		}
+		this.ttlSeconds = ttlSeconds;
+		this.clock = clock;
+		this.epochMillis = clock.getAsLong();
+	}
+
+	// FNV-1a over the characters, finished with the MurmurHash3 mixer; 0 marks an empty slot
+	public static long keyOf(String idempotencyKey) {
+		long h = 0xcbf29ce484222325L;
+		for (int i = 0; i < idempotencyKey.length(); i++) {
+			h ^= idempotencyKey.charAt(i);
+			h *= 0x100000001b3L;
+		}
+		h ^= h >>> 33;
+		h *= 0xff51afd7ed558ccdL;
+		h ^= h >>> 33;
+		h *= 0xc4ceb9fe1a85ec53L;
+		h ^= h >>> 33;
+		return h == 0 ? 1 : h;
+	}
+
+	// Amounts are compared by value, so 10 and 10.00 are the same transfer
+	public static int fingerprintOf(String accountFrom, String accountTo, BigDecimal amount) {
+		return Objects.hash(accountFrom, accountTo, amount.stripTrailingZeros()) & 0x7FFFFFFF;
+	}
+
+	public Outcome reserve(long key, int fingerprint) {
+		return segmentOf(key).reserve(key, fingerprint, now());
+	}
+
+	public void complete(long key, int fingerprint) {
+		segmentOf(key).complete(key, fingerprint, now());
+	}
+
+	// Forgets a reservation whose transfer failed, so a retry applies it afresh
+	public void release(long key) {
+		segmentOf(key).release(key);
+	}
+
+	public long size() {
+		long size = 0;
+		for (Segment segment : segments) {
+			size += segment.count;
+		}
+		return size;
+	}
+
+	@Override
+	public void bindTo(MeterRegistry registry) {
+		FunctionCounter.builder("transfers.idempotency.hits", hits, LongAdder::sum)
+				.description("Requests whose idempotency key was already known").register(registry);
+		FunctionCounter.builder("transfers.idempotency.misses", misses, LongAdder::sum)
+				.description("Requests with a new idempotency key").register(registry);
+		FunctionCounter.builder("transfers.idempotency.evictions", expirations, LongAdder::sum).tag("cause", "expired")
+				.description("Idempotency keys dropped from the cache").register(registry);
+		FunctionCounter.builder("transfers.idempotency.evictions", evictions, LongAdder::sum).tag("cause", "capacity")
+				.description("Idempotency keys dropped from the cache").register(registry);
+		FunctionCounter.builder("transfers.idempotency.rejections", rejections, LongAdder::sum)
+				.description("New idempotency keys turned away because the cache was full").register(registry);
+		Gauge.builder("transfers.idempotency.size", this, IdempotencyCache::size)
+				.description("Idempotency keys held by the cache").register(registry);
+	}
+
+	private Segment segmentOf(long key) {
+		return segments[(int) (key >>> (Long.SIZE - SEGMENT_SHIFT))];
+	}
+
+	// Seconds since the cache was created, which fits the 32 bits an entry keeps its expiry in
+	private int now() {
+		return (int) ((clock.getAsLong() - epochMillis) / 1000);
+	}
+
+	private static long pack(int expiry, int fingerprint, boolean completed) {
+		return ((long) expiry << 32) | ((long) fingerprint << 1) | (completed ? COMPLETED_BIT : 0);
+	}
+
+	private static int expiryOf(long value) {
+		return (int) (value >>> 32);
+	}
+
+	private static int fingerprintIn(long value) {
+		return (int) (value >>> 1) & 0x7FFFFFFF;
+	}
+
+	private final class Segment {
+
+		private final ReentrantLock lock = new ReentrantLock();
+
+		private final int limit;
+
+		private final int mask;
+
+		// allocated on first use; guarded by lock
+		private long[] keys;
+
+		private long[] values;
+
+		// written under lock, read without it by size()
+		private volatile int count;
+
+		private Segment(int limit) {
+			this.limit = limit;
+			this.mask = (Integer.highestOneBit(limit - 1) << 2) - 1;
+		}
+
+		private Outcome reserve(long key, int fingerprint, int now) {
+			lock.lock();
+			try {
+				if (keys == null) {
+					keys = new long[mask + 1];
+					values = new long[mask + 1];
+				}
+				int slot = find(key);
+				if (slot >= 0) {
+					final long value = values[slot];
+					if (expiryOf(value) > now) {
+						hits.increment();
+						if (fingerprintIn(value) != fingerprint) {
+							return Outcome.MISMATCH;
+						}
+						return (value & COMPLETED_BIT) != 0 ? Outcome.COMPLETED : Outcome.IN_PROGRESS;
+					}
+					expirations.increment();
+					values[slot] = pack(now + ttlSeconds, fingerprint, false);
+					misses.increment();
+					return Outcome.RESERVED;
+				}
+				if (count >= limit) {
+					compact(now);
+					if (count >= limit) {
+						rejections.increment();
+						return Outcome.FULL;
+					}
+					slot = find(key);
+				}
+				keys[-slot - 1] = key;
+				values[-slot - 1] = pack(now + ttlSeconds, fingerprint, false);
+				count++;
+				misses.increment();
+				return Outcome.RESERVED;
+			} finally {
+				lock.unlock();
+			}
+		}
+
+		private void complete(long key, int fingerprint, int now) {
+			lock.lock();
+			try {
+				final int slot = keys == null ? -1 : find(key);
+				if (slot >= 0) {
+					values[slot] = pack(now + ttlSeconds, fingerprint, true);
+				}
+			} finally {
+				lock.unlock();
+			}
+		}
+
+		private void release(long key) {
+			lock.lock();
+			try {
+				final int slot = keys == null ? -1 : find(key);
+				if (slot >= 0) {
+					removeAt(slot);
+					count--;
+				}
+			} finally {
+				lock.unlock();
+			}
+		}
+
+		// Index of the key, or -(insertion point + 1) when it is absent. The probe covers the table
+		// at most once; reserve keeps count at or below limit, so an empty slot is always met first.
+		private int find(long key) {
+			int slot = (int) key & mask;
+			for (int probes = 0; probes <= mask; probes++) {
+				if (keys[slot] == 0) {
+					return -slot - 1;
+				}
+				if (keys[slot] == key) {
+					return slot;
+				}
+				slot = (slot + 1) & mask;
+			}
+			throw new IllegalStateException("Idempotency segment has no free slot");
+		}
+
+		// Drops expired entries; if that frees less than a quarter of the segment, also drops the
+		// completed entries in the older half of the remaining expiry range. Reservations still in
+		// progress are always kept.
+		private void compact(int now) {
+			int minExpiry = Integer.MAX_VALUE;
+			int maxExpiry = Integer.MIN_VALUE;
+			int live = 0;
+			for (int i = 0; i <= mask; i++) {
+				if (keys[i] != 0) {
+					final int expiry = expiryOf(values[i]);
+					if (expiry > now) {
+						live++;
+						minExpiry = Math.min(minExpiry, expiry);
+						maxExpiry = Math.max(maxExpiry, expiry);
+					}
+				}
+			}
+			final int cutoff = live > limit - (limit >>> 2) ? minExpiry + (maxExpiry - minExpiry) / 2 : now;
+
+			final long[] oldKeys = keys;
+			final long[] oldValues = values;
+			keys = new long[mask + 1];
+			values = new long[mask + 1];
+			count = 0;
+			for (int i = 0; i < oldKeys.length; i++) {
+				if (oldKeys[i] == 0) {
+					continue;
+				}
+				final long value = oldValues[i];
+				final int expiry = expiryOf(value);
+				if (expiry <= now) {
+					expirations.increment();
+				} else if (expiry <= cutoff && (value & COMPLETED_BIT) != 0) {
+					evictions.increment();
+				} else {
+					final int slot = -find(oldKeys[i]) - 1;
+					keys[slot] = oldKeys[i];
+					values[slot] = value;
+					count++;
+				}
+			}
+		}
+
+		// Backward-shift deletion: later entries of the probe run move into the hole when their
+		// home slot allows it, so lookups never stop early at a gap
+		private void removeAt(int slot) {
+			int hole = slot;
+			int next = slot;
+			while (true) {
+				next = (next + 1) & mask;
+				final long key = keys[next];
+				if (key == 0) {
+					break;
+				}
+				final int home = (int) key & mask;
+				if (((next - home) & mask) >= ((next - hole) & mask)) {
+					keys[hole] = key;
+					values[hole] = values[next];
+					hole = next;
+				}
+			}
+			keys[hole] = 0;
+			values[hole] = 0;
+		}
+	}
+}
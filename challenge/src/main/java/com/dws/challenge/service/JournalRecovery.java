@@ -0,0 +1,109 @@
+package com.dws.challenge.service;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.math.BigDecimal;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import com.dws.challenge.repository.AccountsSnapshotStore;
+import com.dws.challenge.repository.TransferJournal;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+import jakarta.annotation.PostConstruct;
+
+// This class is meant for rebuilding the accounts at startup: the newest snapshot is loaded first
+// and only the journal records after it are replayed. It runs while the context is being created,
+// so the web server only starts accepting requests once recovery is done. Recovery time and time to
+// ready are exported as accounts.recovery.* meters.
+
+@Component
+@ConditionalOnProperty(name = "accounts.journal.enabled", havingValue = "true")
+public class JournalRecovery implements MeterBinder {
+
+	Logger log = LoggerFactory.getLogger(JournalRecovery.class);
+
+	private final AccountsService accountsService;
+
+	private final TransferJournal transferJournal;
+
+	private final AccountsSnapshotStore snapshotStore;
+
+	private volatile long recoveryMillis;
+
+	private volatile long timeToReadyMillis;
+
+	@Autowired
+	public JournalRecovery(AccountsService accountsService, TransferJournal transferJournal,
+			AccountsSnapshotStore snapshotStore) {
+		this.accountsService = accountsService;
+		this.transferJournal = transferJournal;
+		this.snapshotStore = snapshotStore;
+	}
+
+	@PostConstruct
+	public void recover() throws IOException {
+		final long start = System.nanoTime();
+		final long[] accounts = new long[1];
+		final long snapshotSequence = snapshotStore.load((accountId, balance) -> {
+			accountsService.restoreAccount(accountId, balance);
+			accounts[0]++;
+		});
+		final long snapshotMillis = (System.nanoTime() - start) / 1_000_000;
+
+		final long[] records = new long[1];
+		final long lastSequence = transferJournal.replay(snapshotSequence, new TransferJournal.Visitor() {
+
+			@Override
+			public void accountCreated(long sequence, String accountId, BigDecimal balance) {
+				accountsService.restoreAccount(accountId, balance);
+				records[0]++;
+			}
+
+			@Override
+			public void transfer(long sequence, String accountFromId, String accountToId, BigDecimal amount) {
+				accountsService.restoreTransfer(accountFromId, accountToId, amount);
+				records[0]++;
+			}
+		});
+		recoveryMillis = (System.nanoTime() - start) / 1_000_000;
+		log.info("Loaded {} accounts from snapshot at sequence {} in {} ms, then replayed {} journal records up to "
+				+ "sequence {}; recovery took {} ms", accounts[0], snapshotSequence, snapshotMillis, records[0],
+				lastSequence, recoveryMillis);
+	}
+
+	// Time from JVM start until the application accepts requests
+	@EventListener(ApplicationReadyEvent.class)
+	public void ready() {
+		timeToReadyMillis = ManagementFactory.getRuntimeMXBean().getUptime();
+		log.info("Ready to serve {} ms after JVM start ({} ms spent in recovery)", timeToReadyMillis,
+				recoveryMillis);
+	}
+
+	public long getRecoveryMillis() {
+		return recoveryMillis;
+	}
+
+	public long getTimeToReadyMillis() {
+		return timeToReadyMillis;
+	}
+
+	@Override
+	public void bindTo(MeterRegistry registry) {
+		Gauge.builder("accounts.recovery.duration", this, JournalRecovery::getRecoveryMillis)
+				.baseUnit("milliseconds").description("Time spent loading the snapshot and replaying the journal")
+				.register(registry);
+		Gauge.builder("accounts.recovery.time-to-ready", this, JournalRecovery::getTimeToReadyMillis)
+				.baseUnit("milliseconds").description("Time from JVM start until requests were accepted")
+				.register(registry);
+	}
+}
@@ -0,0 +1,72 @@
+package com.dws.challenge.service;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// Bounded ring buffer for many producers and a single consumer. Every slot carries a sequence
+// number telling whose turn it is: a producer claims a position by advancing the tail with a
+// compare-and-set, fills the slot and then publishes it by setting the slot's sequence, so the
+// consumer never sees a half-written entry. Capacity is rounded up to a power of two.
+
+final class MpscRingBuffer<E> {
+
+	private final Object[] entries;
+
+	private final AtomicLongArray sequences;
+
+	private final int mask;
+
+	private final AtomicLong tail = new AtomicLong();
+
+	// only touched by the consumer
+	private long head;
+
+	MpscRingBuffer(int capacity) {
+		final int size = capacity <= 2 ? 2 : Integer.highestOneBit(capacity - 1) << 1;
+		this.entries = new Object[size];
+		this.sequences = new AtomicLongArray(size);
+		for (int i = 0; i < size; i++) {
+			sequences.set(i, i);
+		}
+		this.mask = size - 1;
+	}
+
+	// Returns false when the buffer is full
+	boolean offer(E entry) {
+		while (true) {
+			final long position = tail.get();
+			final int index = (int) position & mask;
+			final long sequence = sequences.get(index);
+			if (sequence == position) {
+				if (tail.compareAndSet(position, position + 1)) {
+					entries[index] = entry;
+					sequences.set(index, position + 1);
+					return true;
+				}
+			} else if (sequence < position) {
+				// the slot still holds the entry from one lap ago
+				return false;
+			}
+			// another producer claimed this position first; retry with the new tail
+		}
+	}
+
+	// Consumer only; returns null when nothing has been published at the head
+	@SuppressWarnings("unchecked")
+	E poll() {
+		final int index = (int) head & mask;
+		if (sequences.get(index) != head + 1) {
+			return null;
+		}
+		final E entry = (E) entries[index];
+		entries[index] = null;
+		sequences.set(index, head + entries.length);
+		head++;
+		return entry;
+	}
+
+	// Consumer only
+	boolean isEmpty() {
+		return sequences.get((int) head & mask) != head + 1;
+	}
+}
@@ -1,8 +1,15 @@
 package com.dws.challenge.service;
 
 import com.dws.challenge.domain.Account;
+import com.dws.challenge.domain.TransferNotification;
 
 public interface NotificationService {
 
   void notifyAboutTransfer(Account account, String transferDescription);
+
+  // AccountsService calls this one; implementations that can use the structured form (see
+  // CoalescingNotificationService) override it, the others get the rendered text
+  default void notifyAboutTransfer(TransferNotification notification) {
+    notifyAboutTransfer(notification.getAccount(), notification.getDescription());
+  }
 }
@@ -0,0 +1,107 @@
+package com.dws.challenge.service;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.BitSet;
+import java.util.List;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication.Type;
+import org.springframework.stereotype.Service;
+
+import com.dws.challenge.domain.Account;
+import com.dws.challenge.domain.AccountCreationResult;
+import com.dws.challenge.domain.AccountSnapshot;
+import com.dws.challenge.domain.AmountTransferPojo;
+import com.dws.challenge.domain.BatchMode;
+import com.dws.challenge.domain.TransferHistoryPage;
+import com.dws.challenge.domain.TransferOutcome;
+import com.dws.challenge.domain.TransferResult;
+
+import jakarta.annotation.PreDestroy;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+// This class is meant for exposing AccountsService to the reactive stack. Anything that can block
+// (stripe locks, the journal's sync) runs on a bounded elastic scheduler, so event-loop threads
+// never wait; once the scheduler's task queue is full, new work fails fast instead of piling up.
+// Lookups only read the repository and run on the caller's thread.
+
+@Service
+@ConditionalOnWebApplication(type = Type.REACTIVE)
+public class ReactiveAccountsService {
+
+	private final AccountsService accountsService;
+
+	private final Scheduler transferScheduler;
+
+	@Autowired
+	public ReactiveAccountsService(AccountsService accountsService,
+			@Value("${transfers.reactive.threads:64}") int threads,
+			@Value("${transfers.reactive.queue:100000}") int queuedTasks) {
+		this.accountsService = accountsService;
+		this.transferScheduler = Schedulers.newBoundedElastic(threads, queuedTasks, "transfers");
+	}
+
+	public Mono<Void> createAccount(Account account) {
+		return Mono.<Void>fromRunnable(() -> accountsService.createAccount(account)).subscribeOn(transferScheduler);
+	}
+
+	public Flux<AccountCreationResult> createAccounts(List<Account> accounts, BitSet shed) {
+		return Mono.fromCallable(() -> accountsService.createAccounts(accounts, shed)).subscribeOn(transferScheduler)
+				.flatMapIterable(results -> results);
+	}
+
+	public Mono<TransferHistoryPage> getTransferHistory(String accountId, Instant from, Instant to, long after,
+			int limit) {
+		return Mono.fromSupplier(() -> accountsService.getTransferHistory(accountId, from, to, after, limit));
+	}
+
+	public Mono<List<AccountSnapshot>> getAccountsByBalance(BigDecimal min, BigDecimal max, int limit) {
+		return Mono.fromSupplier(() -> accountsService.getAccountsByBalance(min, max, limit));
+	}
+
+	public Mono<List<AccountSnapshot>> getTopAccountsByBalance(int limit) {
+		return Mono.fromSupplier(() -> accountsService.getTopAccountsByBalance(limit));
+	}
+
+	// Completes empty when there is no such account
+	public Mono<Account> getAccount(String accountId) {
+		return Mono.fromSupplier(() -> accountsService.getAccount(accountId));
+	}
+
+	// Completes empty when there is no such account
+	public Mono<AccountSnapshot> getAccountSnapshot(String accountId) {
+		return Mono.fromSupplier(() -> accountsService.getAccountSnapshot(accountId));
+	}
+
+	public Mono<Void> amountTransfer(AmountTransferPojo transfer) {
+		return Mono.<Void>fromRunnable(() -> accountsService.amountTransfer(transfer.getIdempotencyKey(),
+				transfer.getAccountFrom(), transfer.getAccountTo(), transfer.getTransferAmount())).subscribeOn(transferScheduler);
+	}
+
+	public Mono<TransferOutcome> tryAmountTransfer(AmountTransferPojo transfer) {
+		return Mono.fromCallable(() -> accountsService.tryAmountTransfer(transfer.getIdempotencyKey(),
+				transfer.getAccountFrom(), transfer.getAccountTo(), transfer.getTransferAmount()))
+				.subscribeOn(transferScheduler);
+	}
+
+	// Returns why a batch of that many items is refused, or null when it is accepted
+	public String checkBatchSize(int items) {
+		return accountsService.checkBatchSize(items);
+	}
+
+	public Flux<TransferResult> amountTransferBatch(List<AmountTransferPojo> transfers, BatchMode mode, BitSet shed) {
+		return Mono.fromCallable(() -> accountsService.amountTransferBatch(transfers, mode, shed))
+				.subscribeOn(transferScheduler).flatMapIterable(results -> results);
+	}
+
+	@PreDestroy
+	public void shutdown() {
+		transferScheduler.dispose();
+	}
+}
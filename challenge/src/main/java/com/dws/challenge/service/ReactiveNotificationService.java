@@ -0,0 +1,107 @@
+package com.dws.challenge.service;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication.Type;
+import org.springframework.context.annotation.Primary;
+import org.springframework.stereotype.Component;
+
+import com.dws.challenge.domain.Account;
+
+import jakarta.annotation.PreDestroy;
+import lombok.Data;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Sinks;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+// This class is meant for turning transfer notifications into a reactive stream on the reactive
+// stack. Each notification is emitted into a multicast sink and never waits for delivery; one
+// subscription hands them to the wrapped NotificationService on its own thread, and other
+// consumers can subscribe through notifications(). When the sink's buffer is full the
+// notification is dropped and counted. If notifications.async.enabled is set, the
+// AsyncNotificationService queue is used instead, and CoalescingNotificationService if
+// notifications.coalescing.enabled is.
+
+@Primary
+@Component
+@ConditionalOnWebApplication(type = Type.REACTIVE)
+@ConditionalOnProperty(name = { "notifications.async.enabled",
+		"notifications.coalescing.enabled" }, havingValue = "false", matchIfMissing = true)
+public class ReactiveNotificationService implements NotificationService {
+
+	Logger log = LoggerFactory.getLogger(ReactiveNotificationService.class);
+
+	private final Sinks.Many<Notification> sink;
+
+	private final Scheduler deliveryScheduler;
+
+	private final LongAdder dropped = new LongAdder();
+
+	@Autowired
+	public ReactiveNotificationService(@Qualifier("emailNotificationService") NotificationService delegate,
+			@Value("${notifications.reactive.buffer:10000}") int bufferSize) {
+		this.sink = Sinks.many().multicast().onBackpressureBuffer(bufferSize, false);
+		this.deliveryScheduler = Schedulers.newSingle("notification-delivery", true);
+		sink.asFlux().publishOn(deliveryScheduler).subscribe(notification -> {
+			try {
+				delegate.notifyAboutTransfer(notification.getAccount(), notification.getTransferDescription());
+			} catch (RuntimeException e) {
+				log.error("Failed to deliver notification to owner of {}", notification.getAccount().getAccountId(), e);
+			}
+		});
+	}
+
+	@Override
+	public void notifyAboutTransfer(Account account, String transferDescription) {
+		final Notification notification = new Notification(account, transferDescription);
+		while (true) {
+			final Sinks.EmitResult result = sink.tryEmitNext(notification);
+			if (result.isSuccess()) {
+				return;
+			}
+			if (result != Sinks.EmitResult.FAIL_NON_SERIALIZED) {
+				dropped.increment();
+				return;
+			}
+			// another thread is emitting at this very moment
+			Thread.onSpinWait();
+		}
+	}
+
+	// Slow consumers miss notifications rather than hold back delivery to the wrapped service
+	public Flux<Notification> notifications() {
+		return sink.asFlux().onBackpressureDrop();
+	}
+
+	public long getDroppedCount() {
+		return dropped.sum();
+	}
+
+	// Delivers what is still buffered, for up to ten seconds
+	@PreDestroy
+	public void shutdown() {
+		sink.tryEmitComplete();
+		try {
+			deliveryScheduler.disposeGracefully().block(Duration.ofSeconds(10));
+		} catch (IllegalStateException e) {
+			log.warn("Notification delivery stopped before the buffer was drained");
+		}
+	}
+
+	@Data
+	public static class Notification {
+
+		private final Account account;
+
+		private final String transferDescription;
+	}
+}
@@ -0,0 +1,311 @@
+package com.dws.challenge.service;
+
+import java.math.BigDecimal;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import com.dws.challenge.domain.Account;
+import com.dws.challenge.domain.TransferOutcome;
+import com.dws.challenge.exception.BalanceLimitExceededException;
+import com.dws.challenge.repository.AccountsRepository;
+import com.dws.challenge.repository.NoOpTransferJournal;
+import com.dws.challenge.repository.TransferJournal;
+
+import jakarta.annotation.PreDestroy;
+
+// This class is meant for committing transfers without locks when a few accounts are very hot
+// (accounts.transfer.mode=SHARDED). Accounts are partitioned into shards by hashing their id, and
+// every balance change of an account happens on the one thread owning its shard. A transfer is
+// submitted to the source shard's ring buffer; that thread validates it and debits the source,
+// then hands a credit to the destination shard, which applies it and completes the transfer's
+// future.
+//
+// Credits travel through an unbounded inbox rather than the destination's ring buffer, so a shard
+// thread never blocks on another shard (two full rings waiting on each other would deadlock).
+// Each message is taken from its queue exactly once and nothing is ever retried, so a debited
+// amount is credited exactly once. A credit the destination cannot hold is sent back to the
+// source as a refund before the transfer fails, and so is a credit that fails in any other way.
+// A message that still throws fails its transfer and is logged; the shard thread goes on with the
+// next one, so no other transfer waits on a dead shard.
+//
+// The destination shard appends the transfer to the journal right after crediting it, before it
+// takes its next message, so no transfer spending that credit can be journaled ahead of it.
+
+@Component
+@ConditionalOnProperty(name = "accounts.transfer.mode", havingValue = "SHARDED")
+public class ShardedTransferEngine {
+
+	// Idle rounds a shard spins before it parks
+	private static final int IDLE_SPINS = 256;
+
+	Logger log = LoggerFactory.getLogger(ShardedTransferEngine.class);
+
+	private final AccountsRepository accountsRepository;
+
+	private final TransferValidator transferValidator;
+
+	@Autowired
+	private TransferJournal transferJournal = new NoOpTransferJournal();
+
+	private final Shard[] shards;
+
+	private final int mask;
+
+	private volatile boolean running = true;
+
+	@Autowired
+	public ShardedTransferEngine(AccountsRepository accountsRepository, TransferValidator transferValidator,
+			@Value("${accounts.sharded.shards:4}") int shardCount,
+			@Value("${accounts.sharded.ring-size:4096}") int ringSize) {
+		this.accountsRepository = accountsRepository;
+		this.transferValidator = transferValidator;
+		final int size = shardCount <= 1 ? 1 : Integer.highestOneBit(shardCount - 1) << 1;
+		this.shards = new Shard[size];
+		this.mask = size - 1;
+		for (int i = 0; i < size; i++) {
+			shards[i] = new Shard(i, ringSize);
+		}
+		for (Shard shard : shards) {
+			shard.thread.start();
+		}
+	}
+
+	public int shardOf(String accountId) {
+		final int h = Objects.hashCode(accountId) * 0x9E3779B9;
+		return (h ^ (h >>> 16)) & mask;
+	}
+
+	// Completes with the transfer's journal sequence once the destination has been credited, or
+	// exceptionally with the validation error. Waits for room when the source shard's ring buffer
+	// is full.
+	public CompletableFuture<Long> submit(String accountFromId, String accountToId, BigDecimal amount) {
+		final Shard shard = shards[shardOf(accountFromId)];
+		final Transfer transfer = new Transfer(shard, accountFromId, accountToId, amount);
+		// counted before the running check, so shutdown either rejects it or waits for it
+		shard.pending.incrementAndGet();
+		if (!running) {
+			shard.pending.decrementAndGet();
+			throw new IllegalStateException("Sharded transfer engine is shut down");
+		}
+		for (int attempt = 0; !shard.ring.offer(transfer); attempt++) {
+			if (attempt < IDLE_SPINS) {
+				Thread.onSpinWait();
+			} else {
+				LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(50));
+			}
+		}
+		shard.wake();
+		return transfer.completion;
+	}
+
+	public void setTransferJournal(TransferJournal transferJournal) {
+		this.transferJournal = transferJournal;
+	}
+
+	// Lets the shards finish every transfer already submitted
+	@PreDestroy
+	public void shutdown() throws InterruptedException {
+		running = false;
+		for (Shard shard : shards) {
+			LockSupport.unpark(shard.thread);
+		}
+		for (Shard shard : shards) {
+			shard.thread.join(TimeUnit.SECONDS.toMillis(10));
+		}
+	}
+
+	private final class Shard implements Runnable {
+
+		private final MpscRingBuffer<Transfer> ring;
+
+		private final Queue<Credit> inbox = new ConcurrentLinkedQueue<>();
+
+		private final Thread thread;
+
+		// transfers submitted to this shard and not completed yet, wherever they are
+		private final AtomicLong pending = new AtomicLong();
+
+		private volatile boolean sleeping;
+
+		private Shard(int index, int ringSize) {
+			this.ring = new MpscRingBuffer<>(ringSize);
+			this.thread = new Thread(this, "transfer-shard-" + index);
+			this.thread.setDaemon(true);
+		}
+
+		@Override
+		public void run() {
+			int idle = 0;
+			// after shutdown a shard keeps serving until no transfer is in flight on any shard,
+			// since one may still owe it a credit
+			while (running || inFlight()) {
+				boolean worked = false;
+				// credits first: they complete transfers already debited
+				Credit credit;
+				while ((credit = inbox.poll()) != null) {
+					try {
+						apply(credit);
+					} catch (RuntimeException e) {
+						fail(credit.transfer, e);
+					}
+					worked = true;
+				}
+				final Transfer transfer = ring.poll();
+				if (transfer != null) {
+					try {
+						debit(transfer);
+					} catch (RuntimeException e) {
+						fail(transfer, e);
+					}
+					worked = true;
+				}
+				if (worked) {
+					idle = 0;
+				} else if (++idle < IDLE_SPINS) {
+					Thread.onSpinWait();
+				} else {
+					// producers check the flag after publishing, so a wake-up cannot slip between
+					// the emptiness check and the park
+					sleeping = true;
+					if (running && ring.isEmpty() && inbox.isEmpty()) {
+						LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+					}
+					sleeping = false;
+					idle = 0;
+				}
+			}
+		}
+
+		private void fail(Transfer transfer, RuntimeException e) {
+			log.error("Shard {} failed transfer of {} from {} to {}", thread.getName(), transfer.amount,
+					transfer.accountFromId, transfer.accountToId, e);
+			transfer.complete(0, e);
+		}
+
+		private void wake() {
+			if (sleeping) {
+				LockSupport.unpark(thread);
+			}
+		}
+
+		private void debit(Transfer transfer) {
+			final Account to;
+			try {
+				final Account from = accountsRepository.getAccount(transfer.accountFromId);
+				to = accountsRepository.getAccount(transfer.accountToId);
+				transferValidator.validate(from, to, transfer.amount);
+				from.setBalance(from.getBalance().subtract(transfer.amount));
+			} catch (RuntimeException e) {
+				transfer.complete(0, e);
+				return;
+			}
+			send(new Credit(to, transfer.amount, transfer, null));
+		}
+
+		private void apply(Credit credit) {
+			try {
+				credit.account.setBalance(credit.account.getBalance().add(credit.amount));
+			} catch (RuntimeException e) {
+				if (credit.failure == null) {
+					// the destination cannot take the credit: refund the source, then fail
+					final Account from = accountsRepository.getAccount(credit.transfer.accountFromId);
+					send(new Credit(from, credit.amount, credit.transfer, e instanceof ArithmeticException
+							? new BalanceLimitExceededException(TransferOutcome.BALANCE_LIMIT_EXCEEDED.getMessage())
+							: e));
+				} else {
+					log.error("Could not refund {} to {}", credit.amount, credit.account.getAccountId(), e);
+					credit.transfer.complete(0, credit.failure);
+				}
+				return;
+			}
+			if (credit.failure != null) {
+				credit.transfer.complete(0, credit.failure);
+				return;
+			}
+			final Transfer transfer = credit.transfer;
+			transfer.complete(transferJournal.logTransfer(transfer.accountFromId, transfer.accountToId, transfer.amount),
+					null);
+		}
+
+		private void send(Credit credit) {
+			final Shard target = shards[shardOf(credit.account.getAccountId())];
+			if (target == this) {
+				apply(credit);
+			} else {
+				target.inbox.add(credit);
+				target.wake();
+			}
+		}
+	}
+
+	private boolean inFlight() {
+		for (Shard shard : shards) {
+			if (shard.pending.get() != 0) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static final class Transfer {
+
+		private final Shard source;
+
+		private final String accountFromId;
+
+		private final String accountToId;
+
+		private final BigDecimal amount;
+
+		private final CompletableFuture<Long> completion = new CompletableFuture<>();
+
+		private Transfer(Shard source, String accountFromId, String accountToId, BigDecimal amount) {
+			this.source = source;
+			this.accountFromId = accountFromId;
+			this.accountToId = accountToId;
+			this.amount = amount;
+		}
+
+		// With null on success; only the first call counts, so a failed message cannot complete its
+		// transfer twice
+		private void complete(long sequence, RuntimeException failure) {
+			final boolean completed = failure == null ? completion.complete(sequence)
+					: completion.completeExceptionally(failure);
+			if (completed) {
+				source.pending.decrementAndGet();
+			}
+		}
+	}
+
+	// A credit to apply on the account's own shard; failure is set on refunds and is what the
+	// transfer completes with once the refund is in
+	private static final class Credit {
+
+		private final Account account;
+
+		private final BigDecimal amount;
+
+		private final Transfer transfer;
+
+		private final RuntimeException failure;
+
+		private Credit(Account account, BigDecimal amount, Transfer transfer, RuntimeException failure) {
+			this.account = account;
+			this.amount = amount;
+			this.transfer = transfer;
+			this.failure = failure;
+		}
+	}
+}
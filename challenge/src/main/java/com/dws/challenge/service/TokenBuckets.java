@@ -0,0 +1,165 @@
+package com.dws.challenge.service;
+
+import java.util.concurrent.locks.ReentrantLock;
+
+// This class is meant for rate limiting a very large number of keys (account or client ids) in
+// little memory. A key's bucket holds up to burst tokens and refills at ratePerSecond; each
+// admitted request takes one token.
+//
+// Only buckets that are not full are stored: a key that has not been seen, or has been idle long
+// enough to refill, behaves exactly like a full bucket and needs no entry. So the tables hold the
+// keys that sent requests within the last burst / ratePerSecond seconds, not every account. Keys are
+// stored as 64-bit hashes next to a packed state (tokens in thousandths, refill time in
+// milliseconds), in open-addressing arrays split into segments with their own lock, the same
+// layout as IdempotencyCache. A segment that fills up drops its full buckets and doubles only if
+// that is not enough.
+
+public class TokenBuckets {
+
+	private static final int SEGMENT_SHIFT = 6;
+
+	private static final int SEGMENTS = 1 << SEGMENT_SHIFT;
+
+	private static final long MILLI_TOKENS = 1000;
+
+	private final Segment[] segments = new Segment[SEGMENTS];
+
+	private final long capacity;
+
+	// thousandths of a token added per millisecond
+	private final double refillPerMilli;
+
+	private final long epochMillis = System.currentTimeMillis();
+
+	public TokenBuckets(double ratePerSecond, int burst) {
+		if (ratePerSecond <= 0 || burst < 1) {
+			throw new IllegalArgumentException("Token buckets need a positive rate and a burst of at least 1");
+		}
+		this.capacity = Math.min(burst * MILLI_TOKENS, Integer.MAX_VALUE);
+		this.refillPerMilli = ratePerSecond;
+		for (int i = 0; i < SEGMENTS; i++) {
+			segments[i] = new Segment();
+		}
+	}
+
+	// Takes a token from the key's bucket; false when it is empty
+	public boolean tryAcquire(String key) {
+		return tryAcquire(key, System.currentTimeMillis());
+	}
+
+	public boolean tryAcquire(String key, long nowMillis) {
+		final long hash = IdempotencyCache.keyOf(key);
+		return segments[(int) (hash >>> (Long.SIZE - SEGMENT_SHIFT))].tryAcquire(hash, time(nowMillis));
+	}
+
+	// Number of buckets currently stored, i.e. keys that are not at full burst
+	public long size() {
+		long size = 0;
+		for (Segment segment : segments) {
+			size += segment.count;
+		}
+		return size;
+	}
+
+	// Milliseconds since this instance was created; wraps after 49 days, which only makes a bucket
+	// idle for that long look emptier than it is until its next refill
+	private int time(long nowMillis) {
+		return (int) (nowMillis - epochMillis);
+	}
+
+	private long refill(long state, int now) {
+		final long elapsed = (now - timeOf(state)) & 0xFFFFFFFFL;
+		return Math.min(capacity, tokensOf(state) + (long) (elapsed * refillPerMilli));
+	}
+
+	private static long pack(long tokens, int time) {
+		return (tokens << 32) | (time & 0xFFFFFFFFL);
+	}
+
+	private static long tokensOf(long state) {
+		return state >>> 32;
+	}
+
+	private static int timeOf(long state) {
+		return (int) state;
+	}
+
+	private final class Segment {
+
+		private final ReentrantLock lock = new ReentrantLock();
+
+		// guarded by lock
+		private long[] keys = new long[16];
+
+		private long[] states = new long[16];
+
+		// written under lock, read without it by size()
+		private volatile int count;
+
+		private boolean tryAcquire(long key, int now) {
+			lock.lock();
+			try {
+				int slot = find(key);
+				final long tokens;
+				if (slot >= 0) {
+					tokens = refill(states[slot], now);
+				} else {
+					if (count + 1 > keys.length >>> 1) {
+						compact(now);
+						slot = find(key);
+					}
+					tokens = capacity;
+				}
+				final boolean admitted = tokens >= MILLI_TOKENS;
+				final long left = admitted ? tokens - MILLI_TOKENS : tokens;
+				if (slot < 0) {
+					slot = -slot - 1;
+					keys[slot] = key;
+					count++;
+				}
+				states[slot] = pack(left, now);
+				return admitted;
+			} finally {
+				lock.unlock();
+			}
+		}
+
+		// Index of the key, or -(insertion point + 1) when it is absent
+		private int find(long key) {
+			final int mask = keys.length - 1;
+			int slot = (int) key & mask;
+			while (keys[slot] != 0) {
+				if (keys[slot] == key) {
+					return slot;
+				}
+				slot = (slot + 1) & mask;
+			}
+			return -slot - 1;
+		}
+
+		// Drops the buckets that have refilled; doubles the table if more than a quarter of it would
+		// still be in use
+		private void compact(int now) {
+			int live = 0;
+			for (int i = 0; i < keys.length; i++) {
+				if (keys[i] != 0 && refill(states[i], now) < capacity) {
+					live++;
+				}
+			}
+			final long[] oldKeys = keys;
+			final long[] oldStates = states;
+			final int length = live + 1 > oldKeys.length >>> 2 ? oldKeys.length << 1 : oldKeys.length;
+			keys = new long[length];
+			states = new long[length];
+			count = 0;
+			for (int i = 0; i < oldKeys.length; i++) {
+				if (oldKeys[i] != 0 && refill(oldStates[i], now) < capacity) {
+					final int slot = -find(oldKeys[i]) - 1;
+					keys[slot] = oldKeys[i];
+					states[slot] = oldStates[i];
+					count++;
+				}
+			}
+		}
+	}
+}
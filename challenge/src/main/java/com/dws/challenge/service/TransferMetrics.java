@@ -0,0 +1,132 @@
+package com.dws.challenge.service;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.dws.challenge.repository.AccountsRepository;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.composite.CompositeMeterRegistry;
+
+// This class is meant for recording where transfer time goes. Every meter is created once up
+// front (rejection counters once per exception type), so the hot path only reads System.nanoTime
+// and records a long: no tag lookups and no allocation. Callers pass the start time they took
+// themselves. Published through Actuator under /actuator/metrics and /actuator/prometheus.
+
+@Component
+public class TransferMetrics {
+
+	private static final double[] PERCENTILES = { 0.5, 0.99, 0.999 };
+
+	private final MeterRegistry registry;
+
+	private final Timer transfers;
+
+	private final Timer validation;
+
+	private final Timer debit;
+
+	private final Timer credit;
+
+	private final Timer lockWait;
+
+	private final Timer lockHold;
+
+	private final Timer lookup;
+
+	private final Timer notification;
+
+	private final Map<Class<?>, Counter> rejections = new ConcurrentHashMap<>();
+
+	@Autowired
+	public TransferMetrics(MeterRegistry meterRegistry, AccountsRepository accountsRepository,
+			@Value("${accounts.metrics.enabled:true}") boolean enabled) {
+		// a composite registry without children hands out meters that record nothing
+		this.registry = enabled ? meterRegistry : new CompositeMeterRegistry();
+		this.transfers = timer("transfers.duration", "Whole amountTransfer call, including journal and notifications");
+		this.validation = step("validate");
+		this.debit = step("debit");
+		this.credit = step("credit");
+		this.lockWait = timer("transfers.lock.wait", "Time spent waiting for account stripe locks");
+		this.lockHold = timer("transfers.lock.hold", "Time account stripe locks were held");
+		this.lookup = timer("accounts.repository.lookup", "AccountsRepository.getAccount");
+		this.notification = timer("notifications.duration", "NotificationService.notifyAboutTransfer");
+		if (accountsRepository != null) {
+			Gauge.builder("accounts.repository.size", accountsRepository, AccountsRepository::size)
+					.description("Number of accounts held by the repository").register(registry);
+		}
+	}
+
+	// Records nothing; the default until Spring injects the real one
+	public static TransferMetrics noop() {
+		return new TransferMetrics(new CompositeMeterRegistry(), null, false);
+	}
+
+	public void transferred(long startNanos) {
+		record(transfers, startNanos);
+	}
+
+	public void rejected(RuntimeException e) {
+		rejected(e.getClass());
+	}
+
+	// Rejections reported as result codes count under the exception type the throwing API would use
+	public void rejected(Class<?> exceptionType) {
+		Counter counter = rejections.get(exceptionType);
+		if (counter == null) {
+			counter = rejections.computeIfAbsent(exceptionType, type -> Counter.builder("transfers.rejected")
+					.description("Transfers rejected, by exception type").tag("exception", type.getSimpleName())
+					.register(registry));
+		}
+		counter.increment();
+	}
+
+	public void validated(long startNanos) {
+		record(validation, startNanos);
+	}
+
+	public void debited(long startNanos) {
+		record(debit, startNanos);
+	}
+
+	public void credited(long startNanos) {
+		record(credit, startNanos);
+	}
+
+	public void lockAcquired(long requestedNanos, long acquiredNanos) {
+		lockWait.record(acquiredNanos - requestedNanos, TimeUnit.NANOSECONDS);
+	}
+
+	public void lockReleased(long acquiredNanos) {
+		record(lockHold, acquiredNanos);
+	}
+
+	public void lookedUp(long startNanos) {
+		record(lookup, startNanos);
+	}
+
+	public void notified(long startNanos) {
+		record(notification, startNanos);
+	}
+
+	private Timer step(String step) {
+		return Timer.builder("transfers.step").description("One step of a transfer").tag("step", step)
+				.publishPercentiles(PERCENTILES).register(registry);
+	}
+
+	private Timer timer(String name, String description) {
+		return Timer.builder(name).description(description).publishPercentiles(PERCENTILES).register(registry);
+	}
+
+	private static void record(Timer timer, long startNanos) {
+		timer.record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+	}
+}
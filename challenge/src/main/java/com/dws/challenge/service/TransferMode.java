@@ -0,0 +1,12 @@
+package com.dws.challenge.service;
+
+// Strategies AccountsService can use to commit a transfer, selected with accounts.transfer.mode
+
+public enum TransferMode {
+
+	// Stripe locks on both accounts around validation, debit and credit
+	LOCKING,
+
+	// Single-writer shards: each account is only ever changed by the thread owning its shard
+	SHARDED
+}
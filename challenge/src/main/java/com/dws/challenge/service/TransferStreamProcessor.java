@@ -0,0 +1,239 @@
+package com.dws.challenge.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import com.dws.challenge.domain.AmountTransferPojo;
+import com.dws.challenge.domain.BatchMode;
+import com.dws.challenge.domain.TransferResult;
+import com.dws.challenge.domain.TransferStatus;
+import com.dws.challenge.service.AdmissionControl.Admission;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonMappingException;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+
+import jakarta.annotation.PreDestroy;
+
+// This class is meant for applying an NDJSON stream of transfers without holding it in memory.
+// Records are parsed one at a time and grouped into chunks; while one chunk is applied through
+// AccountsService.amountTransferBatch on the apply pool, the next one is parsed. At most two
+// chunks exist at any time, and results are written back as NDJSON in input order. Each chunk
+// passes admission control as one batch, so a stream is rate limited like the transfers in it.
+
+@Service
+public class TransferStreamProcessor {
+
+	Logger log = LoggerFactory.getLogger(TransferStreamProcessor.class);
+
+	private final AccountsService accountsService;
+
+	private final AdmissionControl admissionControl;
+
+	private final ObjectMapper objectMapper;
+
+	private final ObjectWriter resultWriter;
+
+	private final int chunkSize;
+
+	private final ExecutorService applyPool;
+
+	@Autowired
+	public TransferStreamProcessor(AccountsService accountsService, AdmissionControl admissionControl,
+			ObjectMapper objectMapper,
+			@Value("${transfers.stream.chunk-size:1000}") int chunkSize,
+			@Value("${transfers.stream.apply-threads:4}") int applyThreads) {
+		if (accountsService.checkBatchSize(chunkSize) != null) {
+			throw new IllegalStateException("transfers.stream.chunk-size must not exceed transfers.batch.max-items");
+		}
+		this.accountsService = accountsService;
+		this.admissionControl = admissionControl;
+		this.objectMapper = objectMapper;
+		this.resultWriter = objectMapper.writerFor(TransferResult.class)
+				.without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+		this.chunkSize = chunkSize;
+		final AtomicInteger threadCount = new AtomicInteger();
+		this.applyPool = Executors.newFixedThreadPool(applyThreads, runnable -> {
+			Thread thread = new Thread(runnable, "transfer-stream-" + threadCount.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	// Returns the number of records read from the stream; clientId is the caller's address. A
+	// malformed stream is reported in the results and ends them. Failing to read the input, to apply
+	// a chunk or to write the results stops the stream: the chunk waiting to be applied is
+	// cancelled and the failure is thrown to the caller.
+	public int process(InputStream in, OutputStream out, String clientId) throws IOException {
+		final JsonGenerator generator = objectMapper.getFactory().createGenerator(out);
+		generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+
+		int index = 0;
+		Chunk chunk = new Chunk(chunkSize);
+		Future<List<TransferResult>> inFlight = null;
+		Chunk inFlightChunk = null;
+
+		try (JsonParser parser = objectMapper.getFactory().createParser(in);
+				MappingIterator<AmountTransferPojo> records = objectMapper.readerFor(AmountTransferPojo.class)
+						.readValues(parser)) {
+			while (read(records, chunk, index)) {
+				index++;
+
+				if (chunk.size() == chunkSize) {
+					if (inFlight != null) {
+						write(generator, inFlightChunk, await(inFlight));
+					}
+					inFlight = submit(chunk, clientId);
+					inFlightChunk = chunk;
+					chunk = new Chunk(chunkSize);
+				}
+			}
+
+			if (inFlight != null) {
+				write(generator, inFlightChunk, await(inFlight));
+			}
+			if (chunk.size() > 0) {
+				write(generator, chunk, apply(chunk, clientId));
+			}
+			generator.flush();
+		} catch (IOException e) {
+			// Not interrupted: a chunk already being applied finishes under its locks
+			if (inFlight != null) {
+				inFlight.cancel(false);
+			}
+			log.warn("Stopping transfer stream at record {}: {}", index, e.getMessage());
+			throw e;
+		}
+		return index;
+	}
+
+	// Reads the next record into chunk. Returns false at the end of the stream, and when the stream is
+	// malformed, which is reported as the record at index; a failure reading the input is thrown.
+	private boolean read(MappingIterator<AmountTransferPojo> records, Chunk chunk, int index) throws IOException {
+		try {
+			if (!records.hasNextValue()) {
+				return false;
+			}
+			final AmountTransferPojo transfer = records.nextValue();
+			if (transfer == null) {
+				chunk.reject(index, "Empty transfer record");
+			} else {
+				chunk.add(index, transfer);
+			}
+		} catch (JsonMappingException e) {
+			// The record was well-formed JSON but not a transfer; the iterator resyncs to the next one
+			chunk.reject(index, e.getOriginalMessage());
+		} catch (JsonProcessingException e) {
+			// Malformed input cannot be resynchronised: report it, finish what was read, and stop
+			log.warn("Malformed transfer stream at record {}: {}", index, e.getMessage());
+			chunk.reject(index, "Malformed transfer stream: " + e.getMessage());
+			return false;
+		}
+		return true;
+	}
+
+	@PreDestroy
+	public void shutdown() {
+		applyPool.shutdown();
+	}
+
+	private Future<List<TransferResult>> submit(final Chunk chunk, final String clientId) {
+		return applyPool.submit(() -> apply(chunk, clientId));
+	}
+
+	// Records shed by admission control come back as RATE_LIMITED; a chunk shed whole, by the
+	// concurrency limit, has all of its records rate limited
+	private List<TransferResult> apply(final Chunk chunk, final String clientId) {
+		if (chunk.transfers.isEmpty()) {
+			return List.of();
+		}
+		final BitSet shed = new BitSet();
+		if (admissionControl.tryAdmitBatch(clientId,
+				chunk.transfers.stream().map(AmountTransferPojo::getAccountFrom).toList(), shed) != Admission.ADMITTED) {
+			shed.set(0, chunk.transfers.size());
+			return accountsService.amountTransferBatch(chunk.transfers, BatchMode.BEST_EFFORT, shed);
+		}
+		try {
+			return accountsService.amountTransferBatch(chunk.transfers, BatchMode.BEST_EFFORT, shed);
+		} finally {
+			admissionControl.releaseBatch();
+		}
+	}
+
+	private static List<TransferResult> await(Future<List<TransferResult>> future) throws IOException {
+		try {
+			return future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while applying transfer chunk", e);
+		} catch (ExecutionException e) {
+			throw new IOException("Failed to apply transfer chunk", e.getCause());
+		}
+	}
+
+	// Merges the applied results and the rejected records of a chunk back into input order
+	private void write(JsonGenerator generator, Chunk chunk, List<TransferResult> applied) throws IOException {
+		int nextApplied = 0;
+		int nextRejected = 0;
+		while (nextApplied < applied.size() || nextRejected < chunk.rejected.size()) {
+			final TransferResult result;
+			if (nextRejected < chunk.rejected.size() && (nextApplied == applied.size()
+					|| chunk.rejected.get(nextRejected).getIndex() < chunk.indexes[nextApplied])) {
+				result = chunk.rejected.get(nextRejected++);
+			} else {
+				final TransferResult item = applied.get(nextApplied);
+				result = new TransferResult(chunk.indexes[nextApplied++], item.getStatus(), item.getMessage());
+			}
+			resultWriter.writeValue(generator, result);
+			generator.writeRaw('\n');
+		}
+		generator.flush();
+	}
+
+	private static final class Chunk {
+
+		private final List<AmountTransferPojo> transfers;
+
+		// Stream position of each entry in transfers
+		private final int[] indexes;
+
+		private final List<TransferResult> rejected = new ArrayList<>();
+
+		private Chunk(int capacity) {
+			this.transfers = new ArrayList<>(capacity);
+			this.indexes = new int[capacity];
+		}
+
+		private void add(int index, AmountTransferPojo transfer) {
+			indexes[transfers.size()] = index;
+			transfers.add(transfer);
+		}
+
+		private void reject(int index, String message) {
+			rejected.add(new TransferResult(index, TransferStatus.FAILED, message));
+		}
+
+		private int size() {
+			return transfers.size() + rejected.size();
+		}
+	}
+}
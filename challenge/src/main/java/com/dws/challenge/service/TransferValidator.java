@@ -5,35 +5,95 @@ import java.math.BigDecimal;
 import org.springframework.stereotype.Service;
 
 import com.dws.challenge.domain.Account;
+import com.dws.challenge.domain.MinorUnitsAccount;
+import com.dws.challenge.domain.TransferOutcome;
 import com.dws.challenge.exception.AccountNotFoundException;
 import com.dws.challenge.exception.AmountTransferPojoException;
+import com.dws.challenge.exception.NodeUnavailableException;
 import com.dws.challenge.exception.NotSufficientBalanceException;
+import com.dws.challenge.exception.TransferInProgressException;
 import com.dws.challenge.exception.TransferSameAccountException;
 
 @Service
 public class TransferValidator {
 	void validate(final Account accountFrom, final Account accountTo, final BigDecimal amount)
 			throws AccountNotFoundException, NotSufficientBalanceException {
+		final TransferOutcome rejection = check(accountFrom, accountTo, amount);
+		if (rejection != null) {
+			throw exceptionFor(rejection);
+		}
+	}
 
-		if (amount.compareTo(BigDecimal.ZERO) < 0) {
-			throw new AmountTransferPojoException("Transfer amount not valid. Please try with valid amount");
+	// Same checks for an amount in minor units, against accounts holding their balance as a long
+	void validate(final MinorUnitsAccount accountFrom, final MinorUnitsAccount accountTo, final long amount)
+			throws AccountNotFoundException, NotSufficientBalanceException {
+		final TransferOutcome rejection = check(accountFrom, accountTo, amount);
+		if (rejection != null) {
+			throw exceptionFor(rejection);
 		}
+	}
+
+	// The checks of validate without throwing: the code of the first one that fails, or null when
+	// the transfer may go ahead. Nothing is allocated either way.
+	public TransferOutcome check(final Account accountFrom, final Account accountTo, final BigDecimal amount) {
 
-		if (accountFrom == null) {
-			throw new AccountNotFoundException("Account " + accountFrom + "not found");
+		if (amount == null || amount.signum() < 0) {
+			return TransferOutcome.INVALID_AMOUNT;
 		}
 
-		if (accountTo == null) {
-			throw new AccountNotFoundException("Account " + accountTo + "not found");
+		final TransferOutcome accounts = checkAccounts(accountFrom, accountTo);
+		if (accounts != null) {
+			return accounts;
 		}
 
-		if (sameAccount(accountFrom, accountTo)) {
-			throw new TransferSameAccountException("Self Transfer not allowed");
+		return enoughBalance(accountFrom, amount) ? null : TransferOutcome.INSUFFICIENT_BALANCE;
+	}
+
+	public TransferOutcome check(final MinorUnitsAccount accountFrom, final MinorUnitsAccount accountTo,
+			final long amount) {
+
+		if (amount < 0) {
+			return TransferOutcome.INVALID_AMOUNT;
 		}
 
-		if (!enoughBalance(accountFrom, amount)) {
-			throw new NotSufficientBalanceException("Insufficient balance in account");
+		final TransferOutcome accounts = checkAccounts(accountFrom, accountTo);
+		if (accounts != null) {
+			return accounts;
 		}
+
+		return accountFrom.getMinorUnits() < amount ? TransferOutcome.INSUFFICIENT_BALANCE : null;
+	}
+
+	// The exception the throwing API reports a rejection with
+	static RuntimeException exceptionFor(final TransferOutcome rejection) {
+		switch (rejection) {
+		case ACCOUNT_NOT_FOUND:
+			return new AccountNotFoundException(rejection.getMessage());
+		case SAME_ACCOUNT:
+			return new TransferSameAccountException(rejection.getMessage());
+		case INSUFFICIENT_BALANCE:
+			return new NotSufficientBalanceException(rejection.getMessage());
+		case IN_PROGRESS:
+		case IDEMPOTENCY_CACHE_FULL:
+			return new TransferInProgressException(rejection.getMessage());
+		case NODE_UNAVAILABLE:
+			return new NodeUnavailableException(rejection.getMessage());
+		default:
+			return new AmountTransferPojoException(rejection.getMessage());
+		}
+	}
+
+	private TransferOutcome checkAccounts(final Account accountFrom, final Account accountTo) {
+
+		if (accountFrom == null || accountTo == null) {
+			return TransferOutcome.ACCOUNT_NOT_FOUND;
+		}
+
+		if (sameAccount(accountFrom, accountTo)) {
+			return TransferOutcome.SAME_ACCOUNT;
+		}
+
+		return null;
 	}
 
 	private boolean sameAccount(final Account accountFrom, final Account accountTo) {
@@ -41,6 +101,6 @@ public class TransferValidator {
 	}
 
 	private boolean enoughBalance(final Account account, final BigDecimal amount) {
-		return account.getBalance().subtract(amount).compareTo(BigDecimal.ZERO) >= 0;
+		return account.getBalance().compareTo(amount) >= 0;
 	}
-}
\ No newline at end of file
+}
@@ -2,9 +2,23 @@ package com.dws.challenge.web;
 
 
 
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication.Type;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.format.annotation.DateTimeFormat.ISO;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
@@ -12,71 +26,296 @@ import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.util.UriUtils;
 
 import com.dws.challenge.domain.Account;
+import com.dws.challenge.domain.AccountCreationResult;
+import com.dws.challenge.domain.AccountSnapshot;
 import com.dws.challenge.domain.AmountTransferPojo;
+import com.dws.challenge.domain.BatchMode;
+import com.dws.challenge.domain.TransferOutcome;
+import com.dws.challenge.domain.TransferResult;
+import com.dws.challenge.domain.TransferStatus;
 import com.dws.challenge.exception.AccountNotFoundException;
 import com.dws.challenge.exception.AmountTransferPojoException;
 import com.dws.challenge.exception.DuplicateAccountIdException;
-import com.dws.challenge.exception.NotSufficientBalanceException;
-import com.dws.challenge.exception.TransferSameAccountException;
+import com.dws.challenge.exception.NodeUnavailableException;
+import com.dws.challenge.service.AccountSnapshots;
+import com.dws.challenge.service.AdmissionControl;
+import com.dws.challenge.service.AdmissionControl.Admission;
 import com.dws.challenge.service.AccountsService;
+import com.dws.challenge.service.ClusterTransactions;
+import com.dws.challenge.service.HttpClusterClient;
+import com.dws.challenge.service.TransferStreamProcessor;
 
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
 import jakarta.validation.Valid;
 import lombok.extern.slf4j.Slf4j;
 
 @RestController
 @RequestMapping("/v1/accounts")
+@ConditionalOnWebApplication(type = Type.SERVLET)
 @Slf4j
 public class AccountsController {
 
 	Logger log = LoggerFactory.getLogger(AccountsController.class);
 
+	private static final String APPLICATION_NDJSON_VALUE = "application/x-ndjson";
+
 	private final AccountsService accountsService;
 
+	private final TransferStreamProcessor transferStreamProcessor;
+
+	private final AccountSnapshots accountSnapshots;
+
+	private final AdmissionControl admissionControl;
+
+	private final ClusterForwarder clusterForwarder;
+
+	private final ClusterTransactions clusterTransactions;
+
 	@Autowired
-	public AccountsController(AccountsService accountsService) {
+	public AccountsController(AccountsService accountsService, TransferStreamProcessor transferStreamProcessor,
+			AccountSnapshots accountSnapshots, AdmissionControl admissionControl, ClusterForwarder clusterForwarder,
+			ClusterTransactions clusterTransactions) {
 		this.accountsService = accountsService;
+		this.transferStreamProcessor = transferStreamProcessor;
+		this.accountSnapshots = accountSnapshots;
+		this.admissionControl = admissionControl;
+		this.clusterForwarder = clusterForwarder;
+		this.clusterTransactions = clusterTransactions;
 	}
 
+	// In clustered mode (accounts.cluster.nodes), an account owned by another node is created there
+
 	@PostMapping(consumes = MediaType.APPLICATION_JSON_VALUE)
-	public ResponseEntity<Object> createAccount(@RequestBody @Valid Account account) {
+	public ResponseEntity<Object> createAccount(@RequestBody @Valid Account account,
+			@RequestHeader(value = HttpClusterClient.FORWARDED_HEADER, required = false) String forwarded,
+			@RequestHeader(value = HttpClusterClient.SECRET_HEADER, required = false) String secret) {
 		log.info("Creating account {}", account);
+		final String owner = this.clusterForwarder.target(account.getAccountId(), forwarded, secret);
+		if (owner != null) {
+			try {
+				final HttpResponse<byte[]> answer = this.clusterForwarder.forward(owner, "POST", "/v1/accounts", account,
+						null);
+				return ClusterForwarder.relay(answer).<Object>body(answer.body());
+			} catch (NodeUnavailableException ex) {
+				return new ResponseEntity<>(ex.getMessage(), HttpStatus.SERVICE_UNAVAILABLE);
+			}
+		}
 		
 		try {
 			this.accountsService.createAccount(account);
 		} catch (DuplicateAccountIdException daie) {
 			return new ResponseEntity<>(daie.getMessage(), HttpStatus.BAD_REQUEST);
+		} catch (ArithmeticException ae) {
+			// balance has more decimals than the minor-units representation can hold
+			return new ResponseEntity<>("Balance not valid: " + ae.getMessage(), HttpStatus.BAD_REQUEST);
 		}
 
 		return new ResponseEntity<>(HttpStatus.CREATED);
 	}
 
+	// This method is defined for creating many accounts in one request. Every item gets a result in
+	// request order (CREATED, DUPLICATE, INVALID, or RATE_LIMITED when admission control charges the
+	// client for it and sheds it); only a malformed body fails the whole request.
+
+	@PostMapping(path = "/bulk", consumes = MediaType.APPLICATION_JSON_VALUE)
+	public ResponseEntity<Object> createAccounts(@RequestBody List<Account> accounts, HttpServletRequest request) {
+		log.info("Creating {} accounts", accounts.size());
+		final BitSet shed = new BitSet();
+		final Admission admission = this.admissionControl.tryAdmitBatch(request.getRemoteAddr(),
+				Collections.nCopies(accounts.size(), null), shed);
+		if (admission != Admission.ADMITTED) {
+			return tooManyRequests(admission);
+		}
+		try {
+			final List<AccountCreationResult> results = this.accountsService.createAccounts(accounts, shed);
+			return new ResponseEntity<>(results, HttpStatus.OK);
+		} finally {
+			this.admissionControl.releaseBatch();
+		}
+	}
+
+	// Served from the account's latest published snapshot as cached JSON bytes. The ETag changes
+	// with every committed change, so a client polling with If-None-Match gets 304 in between. In
+	// clustered mode the owning node answers.
+
 	@GetMapping(path = "/{accountId}")
-	public Account getAccount(@PathVariable String accountId) {
+	public ResponseEntity<byte[]> getAccount(@PathVariable String accountId,
+			@RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch,
+			@RequestHeader(value = HttpClusterClient.FORWARDED_HEADER, required = false) String forwarded,
+			@RequestHeader(value = HttpClusterClient.SECRET_HEADER, required = false) String secret) {
 		log.info("Retrieving account for id {}", accountId);
-		return this.accountsService.getAccount(accountId);
+		final String owner = this.clusterForwarder.target(accountId, forwarded, secret);
+		if (owner != null) {
+			try {
+				final HttpResponse<byte[]> answer = this.clusterForwarder.forward(owner, "GET",
+						"/v1/accounts/" + UriUtils.encodePathSegment(accountId, StandardCharsets.UTF_8), null, ifNoneMatch);
+				return ClusterForwarder.relay(answer).body(answer.body());
+			} catch (NodeUnavailableException ex) {
+				return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build();
+			}
+		}
+		final AccountSnapshot snapshot = this.accountsService.getAccountSnapshot(accountId);
+		if (snapshot == null) {
+			return ResponseEntity.ok().build();
+		}
+		final String etag = this.accountSnapshots.etag(snapshot);
+		if (etag == null) {
+			return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON).body(accountSnapshots.json(snapshot));
+		}
+		if (etag.equals(ifNoneMatch)) {
+			return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag).build();
+		}
+		return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON).eTag(etag)
+				.body(accountSnapshots.json(snapshot));
 	}
 
-	// This method is defined for transferring the amount between accountIds
+	// This method is defined for balance range queries: accounts with min <= balance < max (either
+	// bound optional), lowest first. Answered from the balance index, without scanning the accounts.
 
-	@PostMapping(path = "/transferAmount", consumes = MediaType.APPLICATION_JSON_VALUE)
-	public  ResponseEntity<Object> amountTransfer(@RequestBody @Valid AmountTransferPojo amountTransfer) {
+	@GetMapping(path = "/by-balance")
+	public ResponseEntity<Object> getAccountsByBalance(@RequestParam(required = false) BigDecimal min,
+			@RequestParam(required = false) BigDecimal max, @RequestParam(defaultValue = "100") int limit) {
 		try {
+			return new ResponseEntity<>(this.accountsService.getAccountsByBalance(min, max, limit), HttpStatus.OK);
+		} catch (UnsupportedOperationException ex) {
+			return new ResponseEntity<>(ex.getMessage(), HttpStatus.BAD_REQUEST);
+		}
+	}
 
-			this.accountsService.amountTransfer(amountTransfer.getAccountFrom(), amountTransfer.getAccountTo(),
-					amountTransfer.getTransferAmount());
-
-		} catch (AmountTransferPojoException | TransferSameAccountException ex) {
+	@GetMapping(path = "/by-balance/top")
+	public ResponseEntity<Object> getTopAccountsByBalance(@RequestParam(defaultValue = "100") int limit) {
+		try {
+			return new ResponseEntity<>(this.accountsService.getTopAccountsByBalance(limit), HttpStatus.OK);
+		} catch (UnsupportedOperationException ex) {
 			return new ResponseEntity<>(ex.getMessage(), HttpStatus.BAD_REQUEST);
+		}
+	}
+
+	// This method is defined for reading an account's transfer history, oldest first. from and to
+	// are ISO-8601 instants (to is exclusive); pass a page's "next" as after to get the following page.
+
+	@GetMapping(path = "/{accountId}/transfers")
+	public ResponseEntity<Object> getTransfers(@PathVariable String accountId,
+			@RequestParam(required = false) @DateTimeFormat(iso = ISO.DATE_TIME) Instant from,
+			@RequestParam(required = false) @DateTimeFormat(iso = ISO.DATE_TIME) Instant to,
+			@RequestParam(defaultValue = "0") long after, @RequestParam(defaultValue = "100") int limit) {
+		try {
+			return new ResponseEntity<>(this.accountsService.getTransferHistory(accountId, from, to, after, limit),
+					HttpStatus.OK);
 		} catch (AccountNotFoundException ex) {
 			return new ResponseEntity<>(ex.getMessage(), HttpStatus.NOT_FOUND);
-		} catch (NotSufficientBalanceException ex) {
-			return new ResponseEntity<>(ex.getMessage(), HttpStatus.UNPROCESSABLE_ENTITY);
 		}
-		return new ResponseEntity<>("Transfer Completed", HttpStatus.ACCEPTED);
+	}
+
+	// This method is defined for transferring the amount between accountIds. Admission control runs
+	// first, so a shed transfer (429) never reaches the account locks. The client is identified by
+	// its address. In clustered mode the transfer is
+	// handed to the node owning the source, which applies it with a two-phase commit when the
+	// destination is owned by another node.
+
+	@PostMapping(path = "/transferAmount", consumes = MediaType.APPLICATION_JSON_VALUE)
+	public  ResponseEntity<Object> amountTransfer(@RequestBody @Valid AmountTransferPojo amountTransfer,
+			@RequestHeader(value = HttpClusterClient.FORWARDED_HEADER, required = false) String forwarded,
+			@RequestHeader(value = HttpClusterClient.SECRET_HEADER, required = false) String secret,
+			HttpServletRequest request) {
+		final String owner = this.clusterForwarder.target(amountTransfer.getAccountFrom(), forwarded, secret);
+		if (owner != null) {
+			// admission is applied by the owner, which sees all of the source account's transfers
+			try {
+				final HttpResponse<byte[]> answer = this.clusterForwarder.forward(owner, "POST",
+						"/v1/accounts/transferAmount", amountTransfer, null);
+				return ClusterForwarder.relay(answer).<Object>body(answer.body());
+			} catch (NodeUnavailableException ex) {
+				return new ResponseEntity<>(ex.getMessage(), HttpStatus.SERVICE_UNAVAILABLE);
+			}
+		}
+
+		final long admitted = System.nanoTime();
+		final Admission admission = this.admissionControl.tryAdmit(request.getRemoteAddr(),
+				amountTransfer.getAccountFrom());
+		if (admission != Admission.ADMITTED) {
+			return tooManyRequests(admission);
+		}
+		try {
+			// Rejections come back as result codes, so a flood of them costs no exceptions
+			final TransferOutcome outcome = this.clusterForwarder.isRemote(amountTransfer.getAccountFrom(),
+					amountTransfer.getAccountTo())
+							? this.clusterTransactions.tryTransfer(amountTransfer.getIdempotencyKey(),
+									amountTransfer.getAccountFrom(), amountTransfer.getAccountTo(),
+									amountTransfer.getTransferAmount())
+							: this.accountsService.tryAmountTransfer(amountTransfer.getIdempotencyKey(),
+									amountTransfer.getAccountFrom(), amountTransfer.getAccountTo(),
+									amountTransfer.getTransferAmount());
+			return new ResponseEntity<>(outcome.getMessage(), TransferOutcomes.status(outcome));
+		} finally {
+			this.admissionControl.release(admitted);
+		}
+	}
+
+	// This method is defined for transferring a list of amounts in one request; mode is
+	// BEST_EFFORT (default) or ALL_OR_NOTHING. The batch passes admission control as a whole, each
+	// item being charged like a single transfer: shed items are reported as RATE_LIMITED, and an
+	// all-or-nothing batch with one is not applied and answered with 429. A batch over
+	// transfers.batch.max-items is refused with 400 before it is charged.
+
+	@PostMapping(path = "/transfers/batch", consumes = MediaType.APPLICATION_JSON_VALUE)
+	public ResponseEntity<Object> amountTransferBatch(@RequestBody List<AmountTransferPojo> transfers,
+			@RequestParam(defaultValue = "BEST_EFFORT") BatchMode mode, HttpServletRequest request) {
+		log.info("Transferring batch of {} items ({})", transfers.size(), mode);
+		final String problem = this.accountsService.checkBatchSize(transfers.size());
+		if (problem != null) {
+			return new ResponseEntity<>(problem, HttpStatus.BAD_REQUEST);
+		}
+
+		final BitSet shed = new BitSet();
+		final Admission admission = this.admissionControl.tryAdmitBatch(request.getRemoteAddr(),
+				transfers.stream().map(AmountTransferPojo::getAccountFrom).toList(), shed);
+		if (admission != Admission.ADMITTED) {
+			return tooManyRequests(admission);
+		}
+		final List<TransferResult> results;
+		try {
+			results = this.accountsService.amountTransferBatch(transfers, mode, shed);
+		} catch (AmountTransferPojoException ex) {
+			return new ResponseEntity<>(ex.getMessage(), HttpStatus.BAD_REQUEST);
+		} finally {
+			this.admissionControl.releaseBatch();
+		}
+
+		if (mode == BatchMode.ALL_OR_NOTHING && !shed.isEmpty()) {
+			return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS).header(HttpHeaders.RETRY_AFTER, "1")
+					.<Object>body(results);
+		}
+		if (mode == BatchMode.ALL_OR_NOTHING
+				&& results.stream().anyMatch(result -> result.getStatus() != TransferStatus.COMPLETED)) {
+			return new ResponseEntity<>(results, HttpStatus.UNPROCESSABLE_ENTITY);
+		}
+		return new ResponseEntity<>(results, HttpStatus.OK);
+	}
+
+	// This method is defined for bulk files: one AmountTransferPojo per line in, one
+	// TransferResult per line out, streamed in both directions. Admission control is charged per
+	// chunk of records, as for a batch.
+
+	@PostMapping(path = "/transfers/stream", consumes = APPLICATION_NDJSON_VALUE, produces = APPLICATION_NDJSON_VALUE)
+	public void amountTransferStream(HttpServletRequest request, HttpServletResponse response) throws IOException {
+		response.setContentType(APPLICATION_NDJSON_VALUE);
+		int records = this.transferStreamProcessor.process(request.getInputStream(), response.getOutputStream(),
+				request.getRemoteAddr());
+		log.info("Processed transfer stream of {} records", records);
+	}
+
+	private static ResponseEntity<Object> tooManyRequests(Admission admission) {
+		return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS).header(HttpHeaders.RETRY_AFTER, "1")
+				.body(admission.getMessage());
 	}
 
 }
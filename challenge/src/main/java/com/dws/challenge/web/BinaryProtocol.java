@@ -0,0 +1,196 @@
+package com.dws.challenge.web;
+
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import com.dws.challenge.domain.MinorUnits;
+import com.dws.challenge.domain.TransferOutcome;
+
+// Frame layout of the binary ingress (see BinaryTransferServer), shared by the server and its
+// clients. All integers are big-endian; strings are a short byte length and UTF-8 bytes; amounts
+// are a long unscaled value and a byte scale (10.50 is 1050, 2). Request amounts carry a scale
+// from 0 to that of a balance (MinorUnits.SCALE); others are answered STATUS_INVALID.
+//
+//   request  = int length | byte opcode | long correlationId | payload
+//     CREATE    accountId, balance
+//     GET       accountId
+//     TRANSFER  accountFrom, accountTo, amount, idempotencyKey (empty for none)
+//
+//   response = int length | byte status | long correlationId | payload
+//     GET       balance, long version (status OK)
+//     TRANSFER  byte outcome code, one of the OUTCOME_* constants (status OK)
+//
+// length counts the bytes after itself. A client may send any number of requests without waiting;
+// every response carries the correlationId of its request, and responses can arrive in a different
+// order than the requests.
+
+public final class BinaryProtocol {
+
+	public static final byte CREATE = 1;
+
+	public static final byte GET = 2;
+
+	public static final byte TRANSFER = 3;
+
+	// the request was served; for a transfer, its outcome says whether it was applied
+	public static final byte STATUS_OK = 0;
+
+	public static final byte STATUS_NOT_FOUND = 1;
+
+	public static final byte STATUS_DUPLICATE = 2;
+
+	// a field is out of range (negative balance, id too long, amount not representable)
+	public static final byte STATUS_INVALID = 3;
+
+	// shed by admission control or a full worker queue; retry later
+	public static final byte STATUS_BUSY = 4;
+
+	// the frame cannot be parsed; the server closes the connection after this response
+	public static final byte STATUS_BAD_FRAME = 5;
+
+	// serving the request failed on the server
+	public static final byte STATUS_ERROR = 6;
+
+	public static final int HEADER_LENGTH = 4 + 1 + 8;
+
+	public static final int MAX_STRING_LENGTH = 1024;
+
+	// the largest request: a transfer with every string at its maximum length
+	public static final int MAX_FRAME_LENGTH = 1 + 8 + 3 * (2 + MAX_STRING_LENGTH) + 8 + 1;
+
+	// the largest response: a GET answer
+	public static final int MAX_RESPONSE_LENGTH = HEADER_LENGTH + 8 + 1 + 8;
+
+	// Outcome codes of a served transfer. They are part of the protocol and independent of the
+	// order of TransferOutcome: a code is never reused or renumbered, and a new outcome takes the
+	// next free one.
+	public static final byte OUTCOME_COMPLETED = 0;
+
+	public static final byte OUTCOME_INVALID_AMOUNT = 1;
+
+	public static final byte OUTCOME_IDEMPOTENCY_MISMATCH = 2;
+
+	public static final byte OUTCOME_ACCOUNT_NOT_FOUND = 3;
+
+	public static final byte OUTCOME_SAME_ACCOUNT = 4;
+
+	public static final byte OUTCOME_INSUFFICIENT_BALANCE = 5;
+
+	public static final byte OUTCOME_IN_PROGRESS = 6;
+
+	public static final byte OUTCOME_NODE_UNAVAILABLE = 7;
+
+	public static final byte OUTCOME_IDEMPOTENCY_CACHE_FULL = 8;
+
+	public static final byte OUTCOME_BALANCE_LIMIT_EXCEEDED = 9;
+
+	private BinaryProtocol() {
+	}
+
+	public static void writeCreate(ByteBuffer out, long correlationId, String accountId, BigDecimal balance) {
+		final int start = begin(out, CREATE, correlationId);
+		putString(out, accountId);
+		putAmount(out, balance);
+		end(out, start);
+	}
+
+	public static void writeGet(ByteBuffer out, long correlationId, String accountId) {
+		final int start = begin(out, GET, correlationId);
+		putString(out, accountId);
+		end(out, start);
+	}
+
+	public static void writeTransfer(ByteBuffer out, long correlationId, String accountFrom, String accountTo,
+			BigDecimal amount, String idempotencyKey) {
+		final int start = begin(out, TRANSFER, correlationId);
+		putString(out, accountFrom);
+		putString(out, accountTo);
+		putAmount(out, amount);
+		putString(out, idempotencyKey == null ? "" : idempotencyKey);
+		end(out, start);
+	}
+
+	// Writes a response header (the length is filled in by end)
+	static int beginResponse(ByteBuffer out, byte status, long correlationId) {
+		return begin(out, status, correlationId);
+	}
+
+	static void end(ByteBuffer out, int start) {
+		out.putInt(start, out.position() - start - 4);
+	}
+
+	// Unscaled values beyond a long, and scales beyond a byte, are not representable
+	public static boolean isRepresentable(BigDecimal amount) {
+		return amount.unscaledValue().bitLength() < 64 && amount.scale() >= Byte.MIN_VALUE
+				&& amount.scale() <= Byte.MAX_VALUE;
+	}
+
+	public static void putAmount(ByteBuffer out, BigDecimal amount) {
+		if (!isRepresentable(amount)) {
+			throw new IllegalArgumentException("Amount " + amount + " does not fit the binary protocol");
+		}
+		out.putLong(amount.unscaledValue().longValue());
+		out.put((byte) amount.scale());
+	}
+
+	// A negative scale would let a single byte stand for amounts like 1E+127
+	public static boolean isRequestScale(ByteBuffer in, int at) {
+		final byte scale = in.get(at + 8);
+		return scale >= 0 && scale <= MinorUnits.SCALE;
+	}
+
+	public static BigDecimal getAmount(ByteBuffer in, int at) {
+		return BigDecimal.valueOf(in.getLong(at), in.get(at + 8));
+	}
+
+	// Exhaustive, so a new TransferOutcome does not compile until it is given a code
+	public static byte outcomeCode(TransferOutcome outcome) {
+		return switch (outcome) {
+		case COMPLETED -> OUTCOME_COMPLETED;
+		case INVALID_AMOUNT -> OUTCOME_INVALID_AMOUNT;
+		case IDEMPOTENCY_MISMATCH -> OUTCOME_IDEMPOTENCY_MISMATCH;
+		case ACCOUNT_NOT_FOUND -> OUTCOME_ACCOUNT_NOT_FOUND;
+		case SAME_ACCOUNT -> OUTCOME_SAME_ACCOUNT;
+		case INSUFFICIENT_BALANCE -> OUTCOME_INSUFFICIENT_BALANCE;
+		case IN_PROGRESS -> OUTCOME_IN_PROGRESS;
+		case NODE_UNAVAILABLE -> OUTCOME_NODE_UNAVAILABLE;
+		case IDEMPOTENCY_CACHE_FULL -> OUTCOME_IDEMPOTENCY_CACHE_FULL;
+		case BALANCE_LIMIT_EXCEEDED -> OUTCOME_BALANCE_LIMIT_EXCEEDED;
+		};
+	}
+
+	// null for a code this side does not know
+	public static TransferOutcome outcomeOf(byte code) {
+		return switch (code) {
+		case OUTCOME_COMPLETED -> TransferOutcome.COMPLETED;
+		case OUTCOME_INVALID_AMOUNT -> TransferOutcome.INVALID_AMOUNT;
+		case OUTCOME_IDEMPOTENCY_MISMATCH -> TransferOutcome.IDEMPOTENCY_MISMATCH;
+		case OUTCOME_ACCOUNT_NOT_FOUND -> TransferOutcome.ACCOUNT_NOT_FOUND;
+		case OUTCOME_SAME_ACCOUNT -> TransferOutcome.SAME_ACCOUNT;
+		case OUTCOME_INSUFFICIENT_BALANCE -> TransferOutcome.INSUFFICIENT_BALANCE;
+		case OUTCOME_IN_PROGRESS -> TransferOutcome.IN_PROGRESS;
+		case OUTCOME_NODE_UNAVAILABLE -> TransferOutcome.NODE_UNAVAILABLE;
+		case OUTCOME_IDEMPOTENCY_CACHE_FULL -> TransferOutcome.IDEMPOTENCY_CACHE_FULL;
+		case OUTCOME_BALANCE_LIMIT_EXCEEDED -> TransferOutcome.BALANCE_LIMIT_EXCEEDED;
+		default -> null;
+		};
+	}
+
+	private static int begin(ByteBuffer out, byte type, long correlationId) {
+		final int start = out.position();
+		out.putInt(0);
+		out.put(type);
+		out.putLong(correlationId);
+		return start;
+	}
+
+	private static void putString(ByteBuffer out, String value) {
+		final byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		if (bytes.length > MAX_STRING_LENGTH) {
+			throw new IllegalArgumentException("Strings are limited to " + MAX_STRING_LENGTH + " bytes");
+		}
+		out.putShort((short) bytes.length);
+		out.put(bytes);
+	}
+}
@@ -0,0 +1,593 @@
+package com.dws.challenge.web;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousCloseException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import com.dws.challenge.domain.Account;
+import com.dws.challenge.domain.AccountSnapshot;
+import com.dws.challenge.domain.TransferOutcome;
+import com.dws.challenge.exception.DuplicateAccountIdException;
+import com.dws.challenge.service.AccountsService;
+import com.dws.challenge.service.AdmissionControl;
+import com.dws.challenge.service.AdmissionControl.Admission;
+import com.dws.challenge.service.ClusterRing;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+// This class is meant for internal high-frequency callers, for whom HTTP and JSON cost more than
+// the transfer itself. It serves the frames of BinaryProtocol over plain TCP, next to the REST API
+// and into the same AccountsService:
+//  - an acceptor thread hands connections round-robin to a few event loops (one per core by
+//    default), each a Selector doing all socket reads and writes of its connections
+//  - frames are decoded in place from the connection's read buffer; the only copies are into the
+//    Strings AccountsService takes. Every frame a read brought in is handled before the next read,
+//    and their responses go out with one write
+//  - GET is answered on the event loop from the account's snapshot. CREATE and TRANSFER block on
+//    locks and on the journal, so they run on a worker pool: many pipelined transfers then share
+//    one journal force. Their responses can overtake earlier ones, hence the correlation ids
+//  - read and write buffers are direct, taken from a pool and returned when the connection closes
+//
+// A connection is read only while its write buffer has room for the responses of every request
+// it has in flight, so a client that does not read its responses is slowed down rather than
+// buffered without bound. Transfers pass admission control as on the REST API, the client being
+// identified by its address. The binary ingress does not route clustered accounts, so it refuses
+// to start with accounts.cluster.nodes set.
+
+@Component
+@ConditionalOnProperty(name = "accounts.binary.enabled", havingValue = "true")
+public class BinaryTransferServer {
+
+	Logger log = LoggerFactory.getLogger(BinaryTransferServer.class);
+
+	private final AccountsService accountsService;
+
+	private final AdmissionControl admissionControl;
+
+	private final int port;
+
+	private final IoLoop[] loops;
+
+	private final ThreadPoolExecutor workers;
+
+	private final BlockingQueue<ByteBuffer> freeBuffers;
+
+	private final int bufferSize;
+
+	private final AtomicInteger nextLoop = new AtomicInteger();
+
+	private ServerSocketChannel serverChannel;
+
+	private Thread acceptor;
+
+	private volatile boolean running;
+
+	@Autowired
+	public BinaryTransferServer(AccountsService accountsService, AdmissionControl admissionControl,
+			ClusterRing clusterRing, @Value("${accounts.binary.port:7070}") int port,
+			@Value("${accounts.binary.io-threads:0}") int ioThreads,
+			@Value("${accounts.binary.worker-threads:64}") int workerThreads,
+			@Value("${accounts.binary.worker-queue:100000}") int workerQueue,
+			@Value("${accounts.binary.buffer-size:65536}") int bufferSize) throws IOException {
+		if (clusterRing.isEnabled()) {
+			throw new IllegalStateException(
+					"The binary ingress (accounts.binary.enabled) does not serve clustered mode (accounts.cluster.nodes)");
+		}
+		if (bufferSize < 4 + BinaryProtocol.MAX_FRAME_LENGTH) {
+			throw new IllegalArgumentException("accounts.binary.buffer-size must be at least "
+					+ (4 + BinaryProtocol.MAX_FRAME_LENGTH));
+		}
+		this.accountsService = accountsService;
+		this.admissionControl = admissionControl;
+		this.port = port;
+		this.bufferSize = bufferSize;
+		this.loops = new IoLoop[ioThreads > 0 ? ioThreads : Runtime.getRuntime().availableProcessors()];
+		this.freeBuffers = new ArrayBlockingQueue<>(1024);
+		final AtomicInteger workerNumber = new AtomicInteger();
+		this.workers = new ThreadPoolExecutor(workerThreads, workerThreads, 0, TimeUnit.MILLISECONDS,
+				new ArrayBlockingQueue<>(workerQueue), runnable -> {
+					Thread thread = new Thread(runnable, "binary-worker-" + workerNumber.incrementAndGet());
+					thread.setDaemon(true);
+					return thread;
+				});
+		for (int i = 0; i < loops.length; i++) {
+			loops[i] = new IoLoop(i);
+		}
+	}
+
+	@PostConstruct
+	public void start() throws IOException {
+		serverChannel = ServerSocketChannel.open();
+		serverChannel.bind(new InetSocketAddress(port), 1024);
+		running = true;
+		for (IoLoop loop : loops) {
+			loop.thread.start();
+		}
+		acceptor = new Thread(this::acceptLoop, "binary-acceptor");
+		acceptor.setDaemon(true);
+		acceptor.start();
+		log.info("Binary ingress listening on port {} with {} event loops", getPort(), loops.length);
+	}
+
+	@PreDestroy
+	public void stop() throws IOException, InterruptedException {
+		running = false;
+		serverChannel.close();
+		for (IoLoop loop : loops) {
+			loop.selector.wakeup();
+		}
+		for (IoLoop loop : loops) {
+			loop.thread.join(TimeUnit.SECONDS.toMillis(5));
+		}
+		workers.shutdown();
+		workers.awaitTermination(5, TimeUnit.SECONDS);
+	}
+
+	// The bound port, which differs from accounts.binary.port when that is 0
+	public int getPort() {
+		try {
+			return ((InetSocketAddress) serverChannel.getLocalAddress()).getPort();
+		} catch (IOException e) {
+			return -1;
+		}
+	}
+
+	private void acceptLoop() {
+		while (running) {
+			try {
+				final SocketChannel channel = serverChannel.accept();
+				channel.configureBlocking(false);
+				channel.socket().setTcpNoDelay(true);
+				loops[Math.floorMod(nextLoop.getAndIncrement(), loops.length)].adopt(channel);
+			} catch (AsynchronousCloseException e) {
+				return;
+			} catch (IOException e) {
+				if (running) {
+					log.warn("Accepting a binary connection failed: {}", e.getMessage());
+				}
+			}
+		}
+	}
+
+	// Called on the event loop: handles the complete frames in the read buffer, as long as the write
+	// buffer has room for their responses
+	private void decode(final Connection connection) {
+		final ByteBuffer in = connection.in;
+		in.flip();
+		try {
+			while (!connection.closing && in.remaining() >= 4 && connection.hasRoom()) {
+				final int position = in.position();
+				final int length = in.getInt(position);
+				if (length < BinaryProtocol.HEADER_LENGTH - 4 || length > BinaryProtocol.MAX_FRAME_LENGTH) {
+					badFrame(connection, 0);
+					return;
+				}
+				if (in.remaining() < 4 + length) {
+					return;
+				}
+				handle(connection, in, position, position + 4 + length);
+				in.position(position + 4 + length);
+			}
+		} finally {
+			in.compact();
+		}
+	}
+
+	private void handle(final Connection connection, final ByteBuffer in, final int start, final int end) {
+		final byte opcode = in.get(start + 4);
+		final long correlationId = in.getLong(start + 5);
+		int at = start + BinaryProtocol.HEADER_LENGTH;
+
+		final String accountId = connection.string(in, at, end);
+		if (accountId == null) {
+			badFrame(connection, correlationId);
+			return;
+		}
+		at += 2 + connection.lastStringLength;
+
+		switch (opcode) {
+		case BinaryProtocol.GET: {
+			final AccountSnapshot snapshot = accountsService.getAccountSnapshot(accountId);
+			if (snapshot == null) {
+				connection.answer(correlationId, BinaryProtocol.STATUS_NOT_FOUND, null, null, false);
+			} else if (!BinaryProtocol.isRepresentable(snapshot.getBalance())) {
+				connection.answer(correlationId, BinaryProtocol.STATUS_INVALID, null, null, false);
+			} else {
+				connection.answer(correlationId, BinaryProtocol.STATUS_OK, null, snapshot, false);
+			}
+			return;
+		}
+		case BinaryProtocol.CREATE: {
+			if (at + 9 > end) {
+				badFrame(connection, correlationId);
+				return;
+			}
+			if (!BinaryProtocol.isRequestScale(in, at)) {
+				connection.answer(correlationId, BinaryProtocol.STATUS_INVALID, null, null, false);
+				return;
+			}
+			final BigDecimal balance = BinaryProtocol.getAmount(in, at);
+			dispatch(connection, correlationId, () -> create(connection, correlationId, accountId, balance));
+			return;
+		}
+		case BinaryProtocol.TRANSFER: {
+			final String accountTo = connection.string(in, at, end);
+			if (accountTo == null) {
+				badFrame(connection, correlationId);
+				return;
+			}
+			at += 2 + connection.lastStringLength;
+			if (at + 9 > end) {
+				badFrame(connection, correlationId);
+				return;
+			}
+			final String key = connection.string(in, at + 9, end);
+			if (key == null) {
+				badFrame(connection, correlationId);
+				return;
+			}
+			if (!BinaryProtocol.isRequestScale(in, at)) {
+				connection.answer(correlationId, BinaryProtocol.STATUS_INVALID, null, null, false);
+				return;
+			}
+			final BigDecimal amount = BinaryProtocol.getAmount(in, at);
+			final String idempotencyKey = key.isEmpty() ? null : key;
+
+			final long admitted = System.nanoTime();
+			final Admission admission = admissionControl.tryAdmit(connection.clientId, accountId);
+			if (admission != Admission.ADMITTED) {
+				connection.answer(correlationId, BinaryProtocol.STATUS_BUSY, null, null, false);
+				return;
+			}
+			final boolean dispatched = dispatch(connection, correlationId,
+					() -> transfer(connection, correlationId, idempotencyKey, accountId, accountTo, amount, admitted));
+			if (!dispatched) {
+				admissionControl.release(admitted);
+			}
+			return;
+		}
+		default:
+			badFrame(connection, correlationId);
+		}
+	}
+
+	// Hands a request to the workers, or answers BUSY when their queue is full
+	private boolean dispatch(final Connection connection, final long correlationId, final Runnable request) {
+		connection.lock.lock();
+		try {
+			connection.pending++;
+		} finally {
+			connection.lock.unlock();
+		}
+		try {
+			workers.execute(request);
+			return true;
+		} catch (RejectedExecutionException e) {
+			connection.answer(correlationId, BinaryProtocol.STATUS_BUSY, null, null, true);
+			return false;
+		}
+	}
+
+	private void create(final Connection connection, final long correlationId, final String accountId,
+			final BigDecimal balance) {
+		byte status;
+		if (accountId.isEmpty() || balance.signum() < 0) {
+			status = BinaryProtocol.STATUS_INVALID;
+		} else {
+			try {
+				accountsService.createAccount(new Account(accountId, balance));
+				status = BinaryProtocol.STATUS_OK;
+			} catch (DuplicateAccountIdException e) {
+				status = BinaryProtocol.STATUS_DUPLICATE;
+			} catch (ArithmeticException | IllegalArgumentException e) {
+				// more decimals than minor units hold, or a balance the repository cannot store
+				status = BinaryProtocol.STATUS_INVALID;
+			} catch (RuntimeException e) {
+				log.error("Creating account {} over the binary ingress failed", accountId, e);
+				status = BinaryProtocol.STATUS_ERROR;
+			}
+		}
+		connection.answer(correlationId, status, null, null, true);
+	}
+
+	private void transfer(final Connection connection, final long correlationId, final String idempotencyKey,
+			final String accountFrom, final String accountTo, final BigDecimal amount, final long admitted) {
+		try {
+			final TransferOutcome outcome = accountsService.tryAmountTransfer(idempotencyKey, accountFrom, accountTo,
+					amount);
+			connection.answer(correlationId, BinaryProtocol.STATUS_OK, outcome, null, true);
+		} catch (RuntimeException e) {
+			log.error("Transfer from {} to {} over the binary ingress failed", accountFrom, accountTo, e);
+			connection.answer(correlationId, BinaryProtocol.STATUS_ERROR, null, null, true);
+		} finally {
+			admissionControl.release(admitted);
+		}
+	}
+
+	// Answers, then stops reading the connection and closes it once its answers are written
+	private void badFrame(final Connection connection, final long correlationId) {
+		connection.answer(correlationId, BinaryProtocol.STATUS_BAD_FRAME, null, null, false);
+		connection.closing = true;
+	}
+
+	private ByteBuffer takeBuffer() {
+		final ByteBuffer buffer = freeBuffers.poll();
+		return buffer != null ? buffer.clear() : ByteBuffer.allocateDirect(bufferSize);
+	}
+
+	private final class IoLoop implements Runnable {
+
+		private final Selector selector;
+
+		private final Thread thread;
+
+		private final Queue<SocketChannel> accepted = new ConcurrentLinkedQueue<>();
+
+		// connections a worker answered on since their last write
+		private final Queue<Connection> flushes = new ConcurrentLinkedQueue<>();
+
+		private IoLoop(int number) throws IOException {
+			this.selector = Selector.open();
+			this.thread = new Thread(this, "binary-io-" + number);
+			this.thread.setDaemon(true);
+		}
+
+		private void adopt(SocketChannel channel) {
+			accepted.add(channel);
+			selector.wakeup();
+		}
+
+		private void requestFlush(Connection connection) {
+			flushes.add(connection);
+			selector.wakeup();
+		}
+
+		@Override
+		public void run() {
+			while (running) {
+				try {
+					selector.select();
+					SocketChannel channel;
+					while ((channel = accepted.poll()) != null) {
+						register(channel);
+					}
+					Connection flushed;
+					while ((flushed = flushes.poll()) != null) {
+						service(flushed, false);
+					}
+					final Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+					while (keys.hasNext()) {
+						final SelectionKey key = keys.next();
+						keys.remove();
+						if (key.isValid()) {
+							service((Connection) key.attachment(), key.isReadable());
+						}
+					}
+				} catch (IOException | RuntimeException e) {
+					log.error("Binary event loop failed", e);
+				}
+			}
+			for (SelectionKey key : selector.keys()) {
+				((Connection) key.attachment()).close();
+			}
+			try {
+				selector.close();
+			} catch (IOException e) {
+				log.warn("Closing a binary event loop failed: {}", e.getMessage());
+			}
+		}
+
+		private void register(SocketChannel channel) {
+			Connection connection = null;
+			try {
+				connection = new Connection(this, channel);
+				connection.key = channel.register(selector, SelectionKey.OP_READ, connection);
+			} catch (IOException e) {
+				log.debug("Binary connection closed before it was registered: {}", e.getMessage());
+				if (connection != null) {
+					connection.close();
+				} else {
+					try {
+						channel.close();
+					} catch (IOException ignored) {
+						// already gone
+					}
+				}
+			}
+		}
+
+		// Reads what arrived, handles it, writes what is answered and sets what to wait for next.
+		// A write that freed room lets frames held back in the read buffer be handled.
+		private void service(Connection connection, boolean readable) {
+			if (connection.closed) {
+				return;
+			}
+			try {
+				if (readable && connection.channel.read(connection.in) < 0) {
+					connection.close();
+					return;
+				}
+				do {
+					decode(connection);
+				} while (connection.flush() && !connection.closed);
+			} catch (IOException e) {
+				log.debug("Binary connection {} failed: {}", connection.clientId, e.getMessage());
+				connection.close();
+			} catch (RuntimeException e) {
+				// a bug in serving one connection must not stop the loop serving the others
+				log.error("Serving binary connection {} failed", connection.clientId, e);
+				connection.close();
+			}
+		}
+	}
+
+	private final class Connection {
+
+		private final IoLoop loop;
+
+		private final SocketChannel channel;
+
+		private final String clientId;
+
+		// touched by the event loop only
+		private final ByteBuffer in;
+
+		private final byte[] scratch = new byte[BinaryProtocol.MAX_STRING_LENGTH];
+
+		private int lastStringLength;
+
+		private SelectionKey key;
+
+		private volatile boolean closing;
+
+		private final ReentrantLock lock = new ReentrantLock();
+
+		// guarded by lock: responses not written yet, requests on the workers, and whether the loop
+		// was asked to write
+		private final ByteBuffer out;
+
+		private int pending;
+
+		private boolean flushRequested;
+
+		private volatile boolean closed;
+
+		private Connection(IoLoop loop, SocketChannel channel) throws IOException {
+			this.loop = loop;
+			this.channel = channel;
+			final InetSocketAddress remote = (InetSocketAddress) channel.getRemoteAddress();
+			this.clientId = remote == null || remote.getAddress() == null ? null
+					: remote.getAddress().getHostAddress();
+			this.in = takeBuffer();
+			this.out = takeBuffer();
+		}
+
+		// Whether one more request can be taken on without its response overflowing the write buffer
+		private boolean hasRoom() {
+			lock.lock();
+			try {
+				return out.position() + (pending + 1) * BinaryProtocol.MAX_RESPONSE_LENGTH <= out.capacity();
+			} finally {
+				lock.unlock();
+			}
+		}
+
+		// Decodes the string at "at", which must end by "end"; null when it does not. Its encoded
+		// length is left in lastStringLength.
+		private String string(ByteBuffer in, int at, int end) {
+			if (at + 2 > end) {
+				return null;
+			}
+			final int length = in.getShort(at);
+			if (length < 0 || length > BinaryProtocol.MAX_STRING_LENGTH || at + 2 + length > end) {
+				return null;
+			}
+			in.get(at + 2, scratch, 0, length);
+			lastStringLength = length;
+			return new String(scratch, 0, length, StandardCharsets.UTF_8);
+		}
+
+		// Appends a response; one from a worker (dispatched) also asks the event loop to write it
+		private void answer(long correlationId, byte status, TransferOutcome outcome, AccountSnapshot snapshot,
+				boolean dispatched) {
+			lock.lock();
+			try {
+				if (dispatched) {
+					pending--;
+				}
+				if (closed) {
+					return;
+				}
+				final int start = BinaryProtocol.beginResponse(out, status, correlationId);
+				if (outcome != null) {
+					out.put(BinaryProtocol.outcomeCode(outcome));
+				}
+				if (snapshot != null) {
+					BinaryProtocol.putAmount(out, snapshot.getBalance());
+					out.putLong(snapshot.getVersion());
+				}
+				BinaryProtocol.end(out, start);
+				if (!dispatched || flushRequested) {
+					return;
+				}
+				flushRequested = true;
+			} finally {
+				lock.unlock();
+			}
+			loop.requestFlush(this);
+		}
+
+		// Called on the event loop: writes what the socket takes, and reads on only while there is
+		// room to read into. True when something was written and frames may be waiting to be handled.
+		private boolean flush() throws IOException {
+			final int written;
+			final boolean unwritten;
+			final boolean finished;
+			lock.lock();
+			try {
+				flushRequested = false;
+				out.flip();
+				written = channel.write(out);
+				out.compact();
+				unwritten = out.position() > 0;
+				finished = closing && !unwritten && pending == 0;
+			} finally {
+				lock.unlock();
+			}
+			if (finished) {
+				close();
+				return false;
+			}
+			key.interestOps((unwritten ? SelectionKey.OP_WRITE : 0)
+					| (!closing && in.hasRemaining() ? SelectionKey.OP_READ : 0));
+			return written > 0 && !closing && in.position() >= 4;
+		}
+
+		private void close() {
+			lock.lock();
+			try {
+				if (closed) {
+					return;
+				}
+				closed = true;
+				freeBuffers.offer(in);
+				freeBuffers.offer(out);
+			} finally {
+				lock.unlock();
+			}
+			if (key != null) {
+				key.cancel();
+			}
+			try {
+				channel.close();
+			} catch (IOException e) {
+				log.debug("Closing binary connection {} failed: {}", clientId, e.getMessage());
+			}
+		}
+	}
+}
@@ -0,0 +1,113 @@
+package com.dws.challenge.web;
+
+import java.math.BigDecimal;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication.Type;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import com.dws.challenge.domain.TransferLeg;
+import com.dws.challenge.service.ClusterRing;
+import com.dws.challenge.service.ClusterTransactions;
+import com.dws.challenge.service.HttpClusterClient;
+
+// Node-to-node endpoints of the two-phase commit of cross-node transfers, called by
+// HttpClusterClient. They answer 404 unless the node is part of a cluster, and 403 to a caller that
+// does not present the nodes' shared secret (accounts.cluster.secret), which clustered mode
+// therefore requires.
+
+@RestController
+@RequestMapping("/internal/cluster/transactions")
+@ConditionalOnWebApplication(type = Type.SERVLET)
+public class ClusterController {
+
+	private final ClusterRing clusterRing;
+
+	private final ClusterTransactions clusterTransactions;
+
+	private final HttpClusterClient clusterClient;
+
+	@Autowired
+	public ClusterController(ClusterRing clusterRing, ClusterTransactions clusterTransactions,
+			HttpClusterClient clusterClient) {
+		if (clusterRing.isEnabled() && !clusterClient.hasSecret()) {
+			throw new IllegalStateException(
+					"Clustered mode (accounts.cluster.nodes) requires a shared secret in accounts.cluster.secret");
+		}
+		this.clusterRing = clusterRing;
+		this.clusterTransactions = clusterTransactions;
+		this.clusterClient = clusterClient;
+	}
+
+	// Answers with the TransferOutcome name: COMPLETED when the leg is prepared. A coordinator that
+	// does not own the source account is answered with 400.
+	@PostMapping(path = "/{txId}/prepare")
+	public ResponseEntity<String> prepare(@PathVariable String txId, @RequestParam TransferLeg leg,
+			@RequestParam String coordinator, @RequestParam String account, @RequestParam String counterpart,
+			@RequestParam BigDecimal amount,
+			@RequestHeader(value = HttpClusterClient.SECRET_HEADER, required = false) String secret) {
+		final ResponseEntity<String> refusal = refusal(secret);
+		if (refusal != null) {
+			return refusal;
+		}
+		try {
+			return new ResponseEntity<>(
+					clusterTransactions.prepare(txId, leg, coordinator, account, counterpart, amount).name(),
+					HttpStatus.OK);
+		} catch (IllegalArgumentException ex) {
+			return new ResponseEntity<>(ex.getMessage(), HttpStatus.BAD_REQUEST);
+		}
+	}
+
+	@PostMapping(path = "/{txId}/commit")
+	public ResponseEntity<String> commit(@PathVariable String txId,
+			@RequestHeader(value = HttpClusterClient.SECRET_HEADER, required = false) String secret) {
+		final ResponseEntity<String> refusal = refusal(secret);
+		if (refusal != null) {
+			return refusal;
+		}
+		clusterTransactions.commit(txId);
+		return new ResponseEntity<>(HttpStatus.OK);
+	}
+
+	@PostMapping(path = "/{txId}/abort")
+	public ResponseEntity<String> abort(@PathVariable String txId,
+			@RequestHeader(value = HttpClusterClient.SECRET_HEADER, required = false) String secret) {
+		final ResponseEntity<String> refusal = refusal(secret);
+		if (refusal != null) {
+			return refusal;
+		}
+		clusterTransactions.abort(txId);
+		return new ResponseEntity<>(HttpStatus.OK);
+	}
+
+	// A POST, since asking may decide an undecided transaction to abort
+	@PostMapping(path = "/{txId}/decision")
+	public ResponseEntity<String> decision(@PathVariable String txId,
+			@RequestHeader(value = HttpClusterClient.SECRET_HEADER, required = false) String secret) {
+		final ResponseEntity<String> refusal = refusal(secret);
+		if (refusal != null) {
+			return refusal;
+		}
+		return new ResponseEntity<>(Boolean.toString(clusterTransactions.isCommitted(txId)), HttpStatus.OK);
+	}
+
+	// 404 outside a cluster, 403 to a caller that is not a node; null when the call is served
+	private ResponseEntity<String> refusal(String secret) {
+		if (!clusterRing.isEnabled()) {
+			return new ResponseEntity<>(HttpStatus.NOT_FOUND);
+		}
+		if (!clusterClient.isPeer(secret)) {
+			return new ResponseEntity<>(HttpStatus.FORBIDDEN);
+		}
+		return null;
+	}
+}
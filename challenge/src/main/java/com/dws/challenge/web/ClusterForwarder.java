@@ -0,0 +1,85 @@
+package com.dws.challenge.web;
+
+import java.io.IOException;
+import java.net.http.HttpResponse;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Component;
+
+import com.dws.challenge.domain.TransferOutcome;
+import com.dws.challenge.exception.NodeUnavailableException;
+import com.dws.challenge.service.ClusterRing;
+import com.dws.challenge.service.HttpClusterClient;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+// Hands a client request for an account owned by another node to that node, and relays its answer
+// with the status, body and the headers a client acts on. A request that was already forwarded is
+// never forwarded again, so two nodes disagreeing about the ring cannot bounce it between them. Only
+// a request presenting the nodes' shared secret counts as forwarded; a client setting the header
+// itself is routed like any other.
+
+@Component
+class ClusterForwarder {
+
+	Logger log = LoggerFactory.getLogger(ClusterForwarder.class);
+
+	private final ClusterRing clusterRing;
+
+	private final HttpClusterClient clusterClient;
+
+	private final ObjectMapper objectMapper;
+
+	@Autowired
+	ClusterForwarder(ClusterRing clusterRing, HttpClusterClient clusterClient, ObjectMapper objectMapper) {
+		this.clusterRing = clusterRing;
+		this.clusterClient = clusterClient;
+		this.objectMapper = objectMapper;
+	}
+
+	// The node to forward to, or null when this node serves the request; forwarded and secret are
+	// the request's FORWARDED_HEADER and SECRET_HEADER
+	String target(String accountId, String forwarded, String secret) {
+		if (!clusterRing.isEnabled() || accountId == null || clusterRing.isLocal(accountId)
+				|| forwarded != null && clusterClient.isPeer(secret)) {
+			return null;
+		}
+		return clusterRing.ownerOf(accountId);
+	}
+
+	// Whether either account of a transfer is owned by another node
+	boolean isRemote(String accountFrom, String accountTo) {
+		return clusterRing.isEnabled() && accountFrom != null && accountTo != null
+				&& !(clusterRing.isLocal(accountFrom) && clusterRing.isLocal(accountTo));
+	}
+
+	// Sends the request on, with body (when not null) as JSON
+	HttpResponse<byte[]> forward(String node, String method, String path, Object body, String ifNoneMatch)
+			throws NodeUnavailableException {
+		try {
+			final byte[] json = body == null ? null : objectMapper.writeValueAsBytes(body);
+			return clusterClient.forward(node, method, path, json == null ? null : MediaType.APPLICATION_JSON_VALUE,
+					json, ifNoneMatch);
+		} catch (JsonProcessingException e) {
+			throw new IllegalArgumentException("Request body cannot be forwarded", e);
+		} catch (IOException e) {
+			log.warn("Could not forward {} {} to {}: {}", method, path, node, e.getMessage());
+			throw new NodeUnavailableException(TransferOutcome.NODE_UNAVAILABLE.getMessage());
+		}
+	}
+
+	// Status and headers of a forwarded answer; the caller adds its body
+	static ResponseEntity.BodyBuilder relay(HttpResponse<byte[]> answer) {
+		final ResponseEntity.BodyBuilder builder = ResponseEntity.status(HttpStatus.valueOf(answer.statusCode()));
+		for (String header : new String[] { HttpHeaders.CONTENT_TYPE, HttpHeaders.ETAG, HttpHeaders.RETRY_AFTER }) {
+			answer.headers().firstValue(header).ifPresent(value -> builder.header(header, value));
+		}
+		return builder;
+	}
+}
@@ -0,0 +1,214 @@
+package com.dws.challenge.web;
+
+import java.math.BigDecimal;
+import java.net.InetSocketAddress;
+import java.time.Instant;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication.Type;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.format.annotation.DateTimeFormat.ISO;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import com.dws.challenge.domain.Account;
+import com.dws.challenge.domain.AmountTransferPojo;
+import com.dws.challenge.domain.BatchMode;
+import com.dws.challenge.domain.TransferStatus;
+import com.dws.challenge.exception.AccountNotFoundException;
+import com.dws.challenge.exception.AmountTransferPojoException;
+import com.dws.challenge.exception.DuplicateAccountIdException;
+import com.dws.challenge.service.AccountSnapshots;
+import com.dws.challenge.service.AdmissionControl;
+import com.dws.challenge.service.AdmissionControl.Admission;
+import com.dws.challenge.service.ClusterRing;
+import com.dws.challenge.service.ReactiveAccountsService;
+
+import jakarta.validation.Valid;
+import reactor.core.publisher.Mono;
+
+// WebFlux counterpart of AccountsController, active when the application runs as a reactive web
+// application (spring.main.web-application-type=reactive). Paths, status codes and messages are
+// the same as on the servlet stack. Clustered mode is not routed here, so it refuses to start with
+// one configured. Work turned away by the full queue of the transfer scheduler (see
+// ReactiveAccountsService) is answered 503 with Retry-After, as it was never started.
+
+@RestController
+@RequestMapping("/v1/accounts")
+@ConditionalOnWebApplication(type = Type.REACTIVE)
+public class ReactiveAccountsController {
+
+	Logger log = LoggerFactory.getLogger(ReactiveAccountsController.class);
+
+	private final ReactiveAccountsService accountsService;
+
+	private final AccountSnapshots accountSnapshots;
+
+	private final AdmissionControl admissionControl;
+
+	@Autowired
+	public ReactiveAccountsController(ReactiveAccountsService accountsService, AccountSnapshots accountSnapshots,
+			AdmissionControl admissionControl, ClusterRing clusterRing) {
+		if (clusterRing.isEnabled()) {
+			throw new IllegalStateException("Clustered mode (accounts.cluster.nodes) is served by the servlet stack only");
+		}
+		this.accountsService = accountsService;
+		this.accountSnapshots = accountSnapshots;
+		this.admissionControl = admissionControl;
+	}
+
+	@PostMapping(consumes = MediaType.APPLICATION_JSON_VALUE)
+	public Mono<ResponseEntity<Object>> createAccount(@RequestBody @Valid Account account) {
+		log.info("Creating account {}", account);
+		return this.accountsService.createAccount(account)
+				.then(Mono.just(new ResponseEntity<Object>(HttpStatus.CREATED)))
+				.onErrorResume(DuplicateAccountIdException.class,
+						daie -> Mono.just(new ResponseEntity<>(daie.getMessage(), HttpStatus.BAD_REQUEST)))
+				.onErrorResume(ArithmeticException.class, ae -> Mono
+						.just(new ResponseEntity<>("Balance not valid: " + ae.getMessage(), HttpStatus.BAD_REQUEST)))
+				.onErrorResume(RejectedExecutionException.class, ReactiveAccountsController::overloaded);
+	}
+
+	// One result per item, in request order; duplicates, invalid items and items shed by admission
+	// control do not fail the request
+	@PostMapping(path = "/bulk", consumes = MediaType.APPLICATION_JSON_VALUE)
+	public Mono<ResponseEntity<Object>> createAccounts(@RequestBody List<Account> accounts,
+			ServerHttpRequest request) {
+		log.info("Creating {} accounts", accounts.size());
+		final BitSet shed = new BitSet();
+		final Admission admission = this.admissionControl.tryAdmitBatch(remoteAddress(request),
+				Collections.nCopies(accounts.size(), null), shed);
+		if (admission != Admission.ADMITTED) {
+			return Mono.just(tooManyRequests(admission));
+		}
+		return this.accountsService.createAccounts(accounts, shed).collectList()
+				.map(results -> new ResponseEntity<Object>(results, HttpStatus.OK))
+				.onErrorResume(RejectedExecutionException.class, ReactiveAccountsController::overloaded)
+				.doFinally(signal -> this.admissionControl.releaseBatch());
+	}
+
+	// An unknown account gives 200 with an empty body, and a matching If-None-Match gives 304, as on
+	// the servlet stack
+	@GetMapping(path = "/{accountId}")
+	public Mono<ResponseEntity<byte[]>> getAccount(@PathVariable String accountId,
+			@RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+		log.info("Retrieving account for id {}", accountId);
+		return this.accountsService.getAccountSnapshot(accountId).map(snapshot -> {
+			final String etag = this.accountSnapshots.etag(snapshot);
+			if (etag == null) {
+				return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON).body(accountSnapshots.json(snapshot));
+			}
+			if (etag.equals(ifNoneMatch)) {
+				return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag).<byte[]>build();
+			}
+			return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON).eTag(etag)
+					.body(accountSnapshots.json(snapshot));
+		}).defaultIfEmpty(ResponseEntity.ok().<byte[]>build());
+	}
+
+	@GetMapping(path = "/by-balance")
+	public Mono<ResponseEntity<Object>> getAccountsByBalance(@RequestParam(required = false) BigDecimal min,
+			@RequestParam(required = false) BigDecimal max, @RequestParam(defaultValue = "100") int limit) {
+		return this.accountsService.getAccountsByBalance(min, max, limit)
+				.map(accounts -> new ResponseEntity<Object>(accounts, HttpStatus.OK))
+				.onErrorResume(UnsupportedOperationException.class,
+						ex -> Mono.just(new ResponseEntity<>(ex.getMessage(), HttpStatus.BAD_REQUEST)));
+	}
+
+	@GetMapping(path = "/by-balance/top")
+	public Mono<ResponseEntity<Object>> getTopAccountsByBalance(@RequestParam(defaultValue = "100") int limit) {
+		return this.accountsService.getTopAccountsByBalance(limit)
+				.map(accounts -> new ResponseEntity<Object>(accounts, HttpStatus.OK))
+				.onErrorResume(UnsupportedOperationException.class,
+						ex -> Mono.just(new ResponseEntity<>(ex.getMessage(), HttpStatus.BAD_REQUEST)));
+	}
+
+	@GetMapping(path = "/{accountId}/transfers")
+	public Mono<ResponseEntity<Object>> getTransfers(@PathVariable String accountId,
+			@RequestParam(required = false) @DateTimeFormat(iso = ISO.DATE_TIME) Instant from,
+			@RequestParam(required = false) @DateTimeFormat(iso = ISO.DATE_TIME) Instant to,
+			@RequestParam(defaultValue = "0") long after, @RequestParam(defaultValue = "100") int limit) {
+		return this.accountsService.getTransferHistory(accountId, from, to, after, limit)
+				.map(page -> new ResponseEntity<Object>(page, HttpStatus.OK))
+				.onErrorResume(AccountNotFoundException.class,
+						ex -> Mono.just(new ResponseEntity<>(ex.getMessage(), HttpStatus.NOT_FOUND)));
+	}
+
+	@PostMapping(path = "/transferAmount", consumes = MediaType.APPLICATION_JSON_VALUE)
+	public Mono<ResponseEntity<Object>> amountTransfer(@RequestBody @Valid AmountTransferPojo amountTransfer,
+			ServerHttpRequest request) {
+		final long admitted = System.nanoTime();
+		final Admission admission = this.admissionControl.tryAdmit(remoteAddress(request),
+				amountTransfer.getAccountFrom());
+		if (admission != Admission.ADMITTED) {
+			return Mono.just(tooManyRequests(admission));
+		}
+		return this.accountsService.tryAmountTransfer(amountTransfer)
+				.map(outcome -> new ResponseEntity<Object>(outcome.getMessage(), TransferOutcomes.status(outcome)))
+				.onErrorResume(RejectedExecutionException.class, ReactiveAccountsController::overloaded)
+				.doFinally(signal -> this.admissionControl.release(admitted));
+	}
+
+	@PostMapping(path = "/transfers/batch", consumes = MediaType.APPLICATION_JSON_VALUE)
+	public Mono<ResponseEntity<Object>> amountTransferBatch(@RequestBody List<AmountTransferPojo> transfers,
+			@RequestParam(defaultValue = "BEST_EFFORT") BatchMode mode, ServerHttpRequest request) {
+		log.info("Transferring batch of {} items ({})", transfers.size(), mode);
+		final String problem = this.accountsService.checkBatchSize(transfers.size());
+		if (problem != null) {
+			return Mono.just(new ResponseEntity<>(problem, HttpStatus.BAD_REQUEST));
+		}
+		final BitSet shed = new BitSet();
+		final Admission admission = this.admissionControl.tryAdmitBatch(remoteAddress(request),
+				transfers.stream().map(AmountTransferPojo::getAccountFrom).toList(), shed);
+		if (admission != Admission.ADMITTED) {
+			return Mono.just(tooManyRequests(admission));
+		}
+		return this.accountsService.amountTransferBatch(transfers, mode, shed).collectList().map(results -> {
+			if (mode == BatchMode.ALL_OR_NOTHING && !shed.isEmpty()) {
+				return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS).header(HttpHeaders.RETRY_AFTER, "1")
+						.<Object>body(results);
+			}
+			if (mode == BatchMode.ALL_OR_NOTHING && results.stream()
+					.anyMatch(result -> result.getStatus() != TransferStatus.COMPLETED)) {
+				return new ResponseEntity<Object>(results, HttpStatus.UNPROCESSABLE_ENTITY);
+			}
+			return new ResponseEntity<Object>(results, HttpStatus.OK);
+		}).onErrorResume(AmountTransferPojoException.class,
+				ex -> Mono.just(new ResponseEntity<>(ex.getMessage(), HttpStatus.BAD_REQUEST)))
+				.onErrorResume(RejectedExecutionException.class, ReactiveAccountsController::overloaded)
+				.doFinally(signal -> this.admissionControl.releaseBatch());
+	}
+
+	private static Mono<ResponseEntity<Object>> overloaded(RejectedExecutionException ex) {
+		return Mono.just(ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).header(HttpHeaders.RETRY_AFTER, "1")
+				.body("Server is busy. Please retry"));
+	}
+
+	private static ResponseEntity<Object> tooManyRequests(Admission admission) {
+		return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS).header(HttpHeaders.RETRY_AFTER, "1")
+				.body(admission.getMessage());
+	}
+
+	private static String remoteAddress(ServerHttpRequest request) {
+		final InetSocketAddress address = request.getRemoteAddress();
+		return address == null || address.getAddress() == null ? null : address.getAddress().getHostAddress();
+	}
+}
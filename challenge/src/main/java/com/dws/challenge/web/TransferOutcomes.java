@@ -0,0 +1,31 @@
+package com.dws.challenge.web;
+
+import org.springframework.http.HttpStatus;
+
+import com.dws.challenge.domain.TransferOutcome;
+
+// HTTP status of each transfer result code, the same the exception handlers of both controllers use
+
+final class TransferOutcomes {
+
+	private TransferOutcomes() {
+	}
+
+	static HttpStatus status(TransferOutcome outcome) {
+		switch (outcome) {
+		case COMPLETED:
+			return HttpStatus.ACCEPTED;
+		case ACCOUNT_NOT_FOUND:
+			return HttpStatus.NOT_FOUND;
+		case INSUFFICIENT_BALANCE:
+			return HttpStatus.UNPROCESSABLE_ENTITY;
+		case IN_PROGRESS:
+			return HttpStatus.CONFLICT;
+		case NODE_UNAVAILABLE:
+		case IDEMPOTENCY_CACHE_FULL:
+			return HttpStatus.SERVICE_UNAVAILABLE;
+		default:
+			return HttpStatus.BAD_REQUEST;
+		}
+	}
+}
@@ -0,0 +1,197 @@
+package com.dws.challenge;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.math.BigDecimal;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.dws.challenge.domain.Account;
+import com.dws.challenge.domain.AmountTransferPojo;
+import com.dws.challenge.domain.BatchMode;
+import com.dws.challenge.domain.TransferResult;
+import com.dws.challenge.domain.TransferStatus;
+import com.dws.challenge.exception.AmountTransferPojoException;
+import com.dws.challenge.repository.AccountsRepositoryInMemory;
+import com.dws.challenge.service.AccountLocks;
+import com.dws.challenge.service.AccountSnapshots;
+import com.dws.challenge.service.AccountsService;
+import com.dws.challenge.service.TransferMode;
+import com.dws.challenge.service.TransferValidator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+public class AccountsServiceBatchTest {
+
+	private AccountsService accountsService;
+
+	@BeforeEach
+	public void prepareService() {
+		this.accountsService = new AccountsService(new AccountsRepositoryInMemory());
+		this.accountsService.setAccountLocks(new AccountLocks(1024));
+		this.accountsService.setTransferValidator(new TransferValidator());
+		this.accountsService.setNotificationService((account, transferDescription) -> {
+		});
+		this.accountsService.setAccountSnapshots(new AccountSnapshots(new ObjectMapper(), true));
+		this.accountsService.createAccount(new Account("Id-1", new BigDecimal("100.00")));
+		this.accountsService.createAccount(new Account("Id-2", new BigDecimal("50.00")));
+		this.accountsService.createAccount(new Account("Id-3", new BigDecimal("0.00")));
+	}
+
+	@Test
+	public void bestEffortBatch_should_applyValidItemsOnly() {
+		List<TransferResult> results = accountsService.amountTransferBatch(List.of(
+				new AmountTransferPojo("Id-1", "Id-3", new BigDecimal("60.00")),
+				new AmountTransferPojo("Id-2", "Id-3", new BigDecimal("80.00")),
+				new AmountTransferPojo("Id-3", "Id-2", new BigDecimal("10.00"))), BatchMode.BEST_EFFORT);
+
+		assertThat(results).extracting(TransferResult::getStatus).containsExactly(TransferStatus.COMPLETED,
+				TransferStatus.INSUFFICIENT_BALANCE, TransferStatus.COMPLETED);
+		assertBalances("40.00", "60.00", "50.00");
+	}
+
+	@Test
+	public void bestEffortBatch_should_commitItemsWhileAnotherAccountIsLocked() throws Exception {
+		AccountLocks accountLocks = new AccountLocks(1024);
+		accountsService.setAccountLocks(accountLocks);
+		assertThat(accountLocks.stripeOf("Id-1")).isNotIn(accountLocks.stripeOf("Id-2"), accountLocks.stripeOf("Id-3"));
+
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		accountLocks.lock("Id-1");
+		try {
+			Future<List<TransferResult>> batch = executor.submit(() -> accountsService.amountTransferBatch(List.of(
+					new AmountTransferPojo("Id-2", "Id-3", new BigDecimal("10.00")),
+					new AmountTransferPojo("Id-1", "Id-3", new BigDecimal("60.00"))), BatchMode.BEST_EFFORT));
+
+			// the first item only needs the stripes of Id-2 and Id-3
+			long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+			while (accountsService.getAccount("Id-3").getBalance().signum() == 0 && System.nanoTime() < deadline) {
+				Thread.sleep(1);
+			}
+			assertThat(accountsService.getAccount("Id-3").getBalance()).isEqualByComparingTo("10.00");
+			assertThat(batch.isDone()).isFalse();
+
+			accountLocks.unlock("Id-1");
+			assertThat(batch.get(10, TimeUnit.SECONDS)).extracting(TransferResult::getStatus)
+					.containsOnly(TransferStatus.COMPLETED);
+		} finally {
+			executor.shutdown();
+		}
+		assertBalances("40.00", "40.00", "70.00");
+	}
+
+	@Test
+	public void oversizedBatch_should_beRejected() {
+		accountsService.setMaxBatchItems(2);
+		List<AmountTransferPojo> transfers = List.of(new AmountTransferPojo("Id-1", "Id-3", new BigDecimal("1.00")),
+				new AmountTransferPojo("Id-1", "Id-3", new BigDecimal("1.00")),
+				new AmountTransferPojo("Id-1", "Id-3", new BigDecimal("1.00")));
+
+		assertThat(accountsService.checkBatchSize(2)).isNull();
+		assertThat(accountsService.checkBatchSize(3)).contains("transfers.batch.max-items");
+		assertThatThrownBy(() -> accountsService.amountTransferBatch(transfers, BatchMode.BEST_EFFORT))
+				.isInstanceOf(AmountTransferPojoException.class);
+		assertThatThrownBy(() -> accountsService.amountTransferBatch(transfers, BatchMode.ALL_OR_NOTHING, new BitSet()))
+				.isInstanceOf(AmountTransferPojoException.class);
+		assertBalances("100.00", "50.00", "0.00");
+	}
+
+	@Test
+	public void allOrNothingBatch_should_revertAppliedItemsOnFailure() {
+		List<TransferResult> results = accountsService.amountTransferBatch(List.of(
+				new AmountTransferPojo("Id-1", "Id-3", new BigDecimal("60.00")),
+				new AmountTransferPojo("Id-3", "Id-2", new BigDecimal("60.00")),
+				new AmountTransferPojo("Id-2", "Id-9", new BigDecimal("1.00")),
+				new AmountTransferPojo("Id-2", "Id-1", new BigDecimal("1.00"))), BatchMode.ALL_OR_NOTHING);
+
+		assertThat(results).extracting(TransferResult::getStatus).containsExactly(TransferStatus.ROLLED_BACK,
+				TransferStatus.ROLLED_BACK, TransferStatus.ACCOUNT_NOT_FOUND, TransferStatus.SKIPPED);
+		assertBalances("100.00", "50.00", "0.00");
+	}
+
+	@Test
+	public void allOrNothingBatch_should_applyEveryItemWhenAllValid() {
+		List<TransferResult> results = accountsService.amountTransferBatch(List.of(
+				new AmountTransferPojo("Id-1", "Id-3", new BigDecimal("60.00")),
+				new AmountTransferPojo("Id-3", "Id-2", new BigDecimal("60.00"))), BatchMode.ALL_OR_NOTHING);
+
+		assertThat(results).extracting(TransferResult::getStatus).containsOnly(TransferStatus.COMPLETED);
+		assertBalances("40.00", "110.00", "0.00");
+	}
+
+	@Test
+	public void rolledBackBatch_should_notPublishSnapshots() {
+		long version = accountsService.getAccountSnapshot("Id-3").getVersion();
+
+		accountsService.amountTransferBatch(List.of(new AmountTransferPojo("Id-1", "Id-3", new BigDecimal("60.00")),
+				new AmountTransferPojo("Id-3", "Id-2", new BigDecimal("100.00"))), BatchMode.ALL_OR_NOTHING);
+
+		assertThat(accountsService.getAccountSnapshot("Id-3").getVersion()).isEqualTo(version);
+		assertThat(accountsService.getAccountSnapshot("Id-3").getBalance()).isEqualByComparingTo("0.00");
+	}
+
+	@Test
+	public void completedBatch_should_publishCommittedBalances() {
+		long version = accountsService.getAccountSnapshot("Id-3").getVersion();
+
+		accountsService.amountTransferBatch(List.of(new AmountTransferPojo("Id-1", "Id-3", new BigDecimal("60.00")),
+				new AmountTransferPojo("Id-3", "Id-2", new BigDecimal("60.00"))), BatchMode.ALL_OR_NOTHING);
+
+		assertThat(accountsService.getAccountSnapshot("Id-3").getVersion()).isGreaterThan(version);
+		assertThat(accountsService.getAccountSnapshot("Id-1").getBalance()).isEqualByComparingTo("40.00");
+		assertThat(accountsService.getAccountSnapshot("Id-2").getBalance()).isEqualByComparingTo("110.00");
+	}
+
+	@Test
+	public void allOrNothingBatch_should_beRejectedOutsideLockingMode() {
+		accountsService.setTransferMode(TransferMode.SHARDED);
+
+		assertThatThrownBy(() -> accountsService.amountTransferBatch(
+				List.of(new AmountTransferPojo("Id-1", "Id-3", new BigDecimal("60.00"))), BatchMode.ALL_OR_NOTHING))
+				.isInstanceOf(AmountTransferPojoException.class);
+		assertBalances("100.00", "50.00", "0.00");
+	}
+
+	@Test
+	public void shedItems_should_beReportedRateLimited() {
+		BitSet shed = new BitSet();
+		shed.set(1);
+
+		List<TransferResult> results = accountsService.amountTransferBatch(List.of(
+				new AmountTransferPojo("Id-1", "Id-3", new BigDecimal("60.00")),
+				new AmountTransferPojo("Id-2", "Id-3", new BigDecimal("10.00")),
+				new AmountTransferPojo("Id-3", "Id-2", new BigDecimal("5.00"))), BatchMode.BEST_EFFORT, shed);
+
+		assertThat(results).extracting(TransferResult::getIndex).containsExactly(0, 1, 2);
+		assertThat(results).extracting(TransferResult::getStatus).containsExactly(TransferStatus.COMPLETED,
+				TransferStatus.RATE_LIMITED, TransferStatus.COMPLETED);
+		assertBalances("40.00", "55.00", "55.00");
+	}
+
+	@Test
+	public void allOrNothingBatch_should_notApplyWhenItemsShed() {
+		BitSet shed = new BitSet();
+		shed.set(1);
+
+		List<TransferResult> results = accountsService.amountTransferBatch(List.of(
+				new AmountTransferPojo("Id-1", "Id-3", new BigDecimal("60.00")),
+				new AmountTransferPojo("Id-2", "Id-3", new BigDecimal("10.00"))), BatchMode.ALL_OR_NOTHING, shed);
+
+		assertThat(results).extracting(TransferResult::getStatus).containsExactly(TransferStatus.SKIPPED,
+				TransferStatus.RATE_LIMITED);
+		assertBalances("100.00", "50.00", "0.00");
+	}
+
+	private void assertBalances(String first, String second, String third) {
+		assertThat(accountsService.getAccount("Id-1").getBalance()).isEqualByComparingTo(first);
+		assertThat(accountsService.getAccount("Id-2").getBalance()).isEqualByComparingTo(second);
+		assertThat(accountsService.getAccount("Id-3").getBalance()).isEqualByComparingTo(third);
+	}
+}
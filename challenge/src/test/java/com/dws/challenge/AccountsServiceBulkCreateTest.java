@@ -0,0 +1,142 @@
+package com.dws.challenge;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.dws.challenge.domain.Account;
+import com.dws.challenge.domain.AccountCreationResult;
+import com.dws.challenge.domain.AccountCreationStatus;
+import com.dws.challenge.repository.AccountsRepositoryInMemory;
+import com.dws.challenge.service.AccountLocks;
+import com.dws.challenge.service.AccountsPreloader;
+import com.dws.challenge.service.AccountsService;
+import com.dws.challenge.service.TransferValidator;
+
+public class AccountsServiceBulkCreateTest {
+
+	@TempDir
+	Path directory;
+
+	private AccountsService accountsService;
+
+	@BeforeEach
+	public void prepareService() {
+		this.accountsService = new AccountsService(new AccountsRepositoryInMemory());
+		this.accountsService.setAccountLocks(new AccountLocks(1024));
+		this.accountsService.setTransferValidator(new TransferValidator());
+		this.accountsService.setNotificationService((account, transferDescription) -> {
+		});
+		this.accountsService.createAccount(new Account("Id-0", new BigDecimal("5.00")));
+	}
+
+	@Test
+	public void createAccounts_should_reportEveryItemInOrder() {
+		List<AccountCreationResult> results = accountsService.createAccounts(Arrays.asList(
+				new Account("Id-1", new BigDecimal("10.00")),
+				new Account("Id-0", new BigDecimal("20.00")),
+				new Account("Id-2", new BigDecimal("-1.00")),
+				new Account("Id-1", new BigDecimal("30.00")),
+				new Account(null, new BigDecimal("1.00"))));
+
+		assertThat(results).extracting(AccountCreationResult::getIndex).containsExactly(0, 1, 2, 3, 4);
+		assertThat(results).extracting(AccountCreationResult::getStatus).containsExactly(
+				AccountCreationStatus.CREATED, AccountCreationStatus.DUPLICATE, AccountCreationStatus.INVALID,
+				AccountCreationStatus.DUPLICATE, AccountCreationStatus.INVALID);
+		assertThat(accountsService.getAccount("Id-0").getBalance()).isEqualByComparingTo("5.00");
+		assertThat(accountsService.getAccount("Id-1").getBalance()).isEqualByComparingTo("10.00");
+		assertThat(accountsService.getAccount("Id-2")).isNull();
+	}
+
+	@Test
+	public void createAccounts_should_insertLargeBatch() {
+		List<Account> accounts = new ArrayList<>();
+		for (int i = 1; i <= 20_000; i++) {
+			accounts.add(new Account("Id-" + i, new BigDecimal("1.00")));
+		}
+
+		List<AccountCreationResult> results = accountsService.createAccounts(accounts);
+
+		assertThat(results).filteredOn(result -> result.getStatus() == AccountCreationStatus.CREATED).hasSize(20_000);
+		assertThat(accountsService.getAccountsRepository().size()).isEqualTo(20_001);
+	}
+
+	@Test
+	public void createAccounts_should_releaseEachChunkBeforeTheNext() throws Exception {
+		AccountLocks accountLocks = new AccountLocks(1024);
+		accountsService.setAccountLocks(accountLocks);
+		// a first chunk of accounts none of which shares a stripe with the last, held, one
+		String held = "Held";
+		List<Account> accounts = new ArrayList<>();
+		for (int i = 1; accounts.size() < 200; i++) {
+			if (accountLocks.stripeOf("Id-" + i) != accountLocks.stripeOf(held)) {
+				accounts.add(new Account("Id-" + i, new BigDecimal("1.00")));
+			}
+		}
+		accounts.add(new Account(held, new BigDecimal("1.00")));
+
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		accountLocks.lock(held);
+		try {
+			Future<List<AccountCreationResult>> creation = executor.submit(() -> accountsService.createAccounts(accounts));
+
+			long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+			while (accountsService.getAccount(accounts.get(0).getAccountId()) == null && System.nanoTime() < deadline) {
+				Thread.sleep(1);
+			}
+			assertThat(accountsService.getAccount(accounts.get(0).getAccountId())).isNotNull();
+			assertThat(creation.isDone()).isFalse();
+
+			accountLocks.unlock(held);
+			assertThat(creation.get(10, TimeUnit.SECONDS)).extracting(AccountCreationResult::getStatus)
+					.containsOnly(AccountCreationStatus.CREATED);
+		} finally {
+			executor.shutdown();
+		}
+		assertThat(accountsService.getAccount(held)).isNotNull();
+	}
+
+	@Test
+	public void preloadCsv_should_createAccountsAndCountBadLines() throws IOException {
+		Path file = directory.resolve("accounts.csv");
+		Files.writeString(file, "accountId,balance\nId-1,10.00\n\nId-2, 20.50\nId-3,abc\nId-0,1.00\nId-4,-3\n");
+
+		Map<AccountCreationStatus, Long> totals = new AccountsPreloader(accountsService, "", 2).load(file);
+
+		assertThat(totals).containsEntry(AccountCreationStatus.CREATED, 2L)
+				.containsEntry(AccountCreationStatus.DUPLICATE, 1L).containsEntry(AccountCreationStatus.INVALID, 2L);
+		assertThat(accountsService.getAccount("Id-2").getBalance()).isEqualByComparingTo("20.50");
+	}
+
+	@Test
+	public void preloadBinary_should_roundTripWrittenAccounts() throws IOException {
+		List<Account> accounts = new ArrayList<>();
+		for (int i = 1; i <= 25_000; i++) {
+			accounts.add(new Account("Id-" + i, new BigDecimal(i).movePointLeft(2)));
+		}
+		Path file = directory.resolve("accounts.bin");
+		AccountsPreloader.write(file, accounts);
+
+		Map<AccountCreationStatus, Long> totals = new AccountsPreloader(accountsService, "", 4).load(file);
+
+		assertThat(totals).containsEntry(AccountCreationStatus.CREATED, 25_000L)
+				.containsEntry(AccountCreationStatus.DUPLICATE, 0L);
+		assertThat(accountsService.getAccount("Id-12345").getBalance()).isEqualByComparingTo("123.45");
+		assertThat(accountsService.getAccount("Id-25000").getBalance()).isEqualByComparingTo("250.00");
+	}
+}
@@ -0,0 +1,273 @@
+package com.dws.challenge;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.dws.challenge.domain.Account;
+import com.dws.challenge.domain.AccountSnapshot;
+import com.dws.challenge.domain.StripedAccount;
+import com.dws.challenge.exception.AmountTransferPojoException;
+import com.dws.challenge.exception.NotSufficientBalanceException;
+import com.dws.challenge.repository.AccountsRepositoryInMemory;
+import com.dws.challenge.service.AccountLocks;
+import com.dws.challenge.service.AccountSnapshots;
+import com.dws.challenge.service.AccountsService;
+import com.dws.challenge.service.BalanceIndex;
+import com.dws.challenge.service.ShardedTransferEngine;
+import com.dws.challenge.service.TransferMode;
+import com.dws.challenge.service.TransferValidator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+// Stress tests for the concurrent transfer modes of AccountsService.amountTransfer. How transfers on
+// independent accounts scale across cores is measured by IndependentPairsBenchmark instead.
+public class AccountsServiceConcurrencyTest {
+
+	private AccountsService accountsService;
+
+	@BeforeEach
+	public void prepareService() {
+		this.accountsService = new AccountsService(new AccountsRepositoryInMemory());
+		this.accountsService.setAccountLocks(new AccountLocks(1024));
+		this.accountsService.setTransferValidator(new TransferValidator());
+		this.accountsService.setNotificationService((account, transferDescription) -> {
+		});
+	}
+
+	@Test
+	public void concurrentTransfers_should_conserveTotalBalance() throws Exception {
+		assertBalanceConservedUnderContention();
+	}
+
+	@Test
+	public void concurrentShardedTransfers_should_conserveTotalBalance() throws Exception {
+		ShardedTransferEngine engine = new ShardedTransferEngine(accountsService.getAccountsRepository(),
+				new TransferValidator(), 4, 1024);
+		accountsService.setShardedTransferEngine(engine);
+		accountsService.setTransferMode(TransferMode.SHARDED);
+		try {
+			assertBalanceConservedUnderContention();
+		} finally {
+			engine.shutdown();
+		}
+	}
+
+	@Test
+	public void concurrentTransfersToStripedAccount_should_conserveTotalBalance() throws Exception {
+		assertStripedAccountConservesBalance();
+	}
+
+	// Credits of 1, 2, 4, ... are paid into the hot account one after another, each from another
+	// thread and so mostly into another cell. Every balance it held is then 2^n - 1; one read in
+	// passing that counts a credit but misses an earlier one is not.
+	@Test
+	public void stripedAccount_should_publishBalancesItHeld() throws Exception {
+		final int threads = 4;
+		final int credits = 500;
+		accountsService.setAccountSnapshots(new AccountSnapshots(new ObjectMapper(), true));
+		accountsService.setStripedAccountIds(Set.of("Hot"));
+		accountsService.createAccount(new Account("Hot", BigDecimal.ZERO));
+		for (int t = 0; t < threads; t++) {
+			accountsService.createAccount(new Account("Id-" + t, new BigDecimal(BigInteger.TWO.pow(credits))));
+		}
+		final AtomicInteger turn = new AtomicInteger();
+		final List<Runnable> tasks = new ArrayList<>();
+		for (int t = 0; t < threads; t++) {
+			final int own = t;
+			tasks.add(() -> {
+				for (int k = own; k < credits; k += threads) {
+					while (turn.get() != k) {
+						Thread.yield();
+					}
+					accountsService.amountTransfer("Id-" + own, "Hot", new BigDecimal(BigInteger.TWO.pow(k)));
+					turn.set(k + 1);
+				}
+			});
+		}
+		tasks.add(() -> {
+			while (turn.get() < credits) {
+				assertHeldByHotAccount(accountsService.getAccount("Hot").getBalance());
+				assertHeldByHotAccount(accountsService.getAccountSnapshot("Hot").getBalance());
+			}
+		});
+
+		runAll(tasks);
+
+		assertThat(accountsService.getAccountSnapshot("Hot").getBalance())
+				.isEqualByComparingTo(new BigDecimal(BigInteger.TWO.pow(credits).subtract(BigInteger.ONE)));
+	}
+
+	// Credits to a striped account are not published one by one; a read publishes what they left
+	// behind, and so does a balance query
+	@Test
+	public void stripedAccount_should_bePublishedWhenRead() throws Exception {
+		accountsService.setAccountSnapshots(new AccountSnapshots(new ObjectMapper(), true));
+		accountsService.setBalanceIndex(new BalanceIndex(true));
+		accountsService.setStripedAccountIds(Set.of("Hot"));
+		accountsService.createAccount(new Account("Hot", BigDecimal.ZERO));
+		accountsService.createAccount(new Account("Id-0", new BigDecimal("150.00")));
+		accountsService.createAccount(new Account("Id-1", new BigDecimal("150.00")));
+		final AtomicInteger nextThread = new AtomicInteger();
+
+		runConcurrently(2, () -> {
+			final String own = "Id-" + nextThread.getAndIncrement();
+			for (int n = 0; n < 100; n++) {
+				accountsService.amountTransfer(own, "Hot", new BigDecimal("1.00"));
+			}
+		});
+
+		assertThat(accountsService.getTopAccountsByBalance(1).get(0).getAccountId()).isEqualTo("Hot");
+		assertThat(accountsService.getTopAccountsByBalance(1).get(0).getBalance()).isEqualByComparingTo("200.00");
+		final AccountSnapshot snapshot = accountsService.getAccountSnapshot("Hot");
+		assertThat(snapshot.getBalance()).isEqualByComparingTo("200.00");
+		// nothing changed since, so the next read finds the same version
+		assertThat(accountsService.getAccountSnapshot("Hot")).isSameAs(snapshot);
+	}
+
+	// Readers of a striped account retry while credits land in its cells; once they have failed
+	// often enough, credits go to the base until they are done. Every balance read has to be one
+	// the account held, and since it is only credited they can only grow.
+	@Test
+	public void stripedAccount_should_readBalanceUnderConstantCredits() throws Exception {
+		final StripedAccount hot = new StripedAccount("Hot", BigDecimal.ZERO, 8);
+		final int creditors = 8;
+		final int credits = 100_000;
+		final List<Runnable> tasks = new ArrayList<>();
+		for (int t = 0; t < creditors; t++) {
+			tasks.add(() -> {
+				for (int n = 0; n < credits; n++) {
+					hot.credit(BigDecimal.ONE);
+				}
+			});
+		}
+		for (int t = 0; t < 2; t++) {
+			tasks.add(() -> {
+				BigDecimal last = BigDecimal.ZERO;
+				for (int n = 0; n < 20_000; n++) {
+					final BigDecimal balance = hot.getBalance();
+					assertThat(balance).isGreaterThanOrEqualTo(last);
+					last = balance;
+				}
+			});
+		}
+
+		runAll(tasks);
+
+		assertThat(hot.getBalance()).isEqualByComparingTo(new BigDecimal(creditors * credits));
+	}
+
+	private static void assertHeldByHotAccount(BigDecimal balance) {
+		assertThat(balance.toBigIntegerExact().add(BigInteger.ONE).bitCount()).as("balance %s", balance).isEqualTo(1);
+	}
+
+	// Every thread pays into one hot account and every other transfer pays out of it, so credits
+	// to the cells race with debits checking their sum
+	private void assertStripedAccountConservesBalance() throws Exception {
+		final int threads = 16;
+		final int transfersPerThread = 20_000;
+		accountsService.setStripedAccountIds(Set.of("Hot"));
+		accountsService.createAccount(new Account("Hot", new BigDecimal("0.00")));
+		for (int t = 0; t < threads; t++) {
+			accountsService.createAccount(new Account("Id-" + t, new BigDecimal("1000.00")));
+		}
+		final AtomicInteger nextThread = new AtomicInteger();
+
+		runConcurrently(threads, () -> {
+			final String own = "Id-" + nextThread.getAndIncrement();
+			ThreadLocalRandom random = ThreadLocalRandom.current();
+			for (int n = 0; n < transfersPerThread; n++) {
+				try {
+					if ((n & 1) == 0) {
+						accountsService.amountTransfer(own, "Hot", BigDecimal.valueOf(random.nextInt(1, 500), 2));
+					} else {
+						accountsService.amountTransfer("Hot", own, BigDecimal.valueOf(random.nextInt(1, 1000), 2));
+					}
+				} catch (NotSufficientBalanceException | AmountTransferPojoException expected) {
+					// rejected transfers must leave both balances untouched
+				}
+			}
+		});
+
+		BigDecimal total = accountsService.getAccount("Hot").getBalance();
+		assertThat(total).isGreaterThanOrEqualTo(BigDecimal.ZERO);
+		for (int t = 0; t < threads; t++) {
+			BigDecimal balance = accountsService.getAccount("Id-" + t).getBalance();
+			assertThat(balance).isGreaterThanOrEqualTo(BigDecimal.ZERO);
+			total = total.add(balance);
+		}
+		assertThat(total).isEqualByComparingTo(new BigDecimal(threads * 1000));
+	}
+
+	private void assertBalanceConservedUnderContention() throws Exception {
+		final int accounts = 64;
+		final int threads = 16;
+		final int transfersPerThread = 20_000;
+		for (int i = 0; i < accounts; i++) {
+			accountsService.createAccount(new Account("Id-" + i, new BigDecimal("1000.00")));
+		}
+
+		runConcurrently(threads, () -> {
+			ThreadLocalRandom random = ThreadLocalRandom.current();
+			for (int n = 0; n < transfersPerThread; n++) {
+				int from = random.nextInt(accounts);
+				int to = (from + 1 + random.nextInt(accounts - 1)) % accounts;
+				try {
+					accountsService.amountTransfer("Id-" + from, "Id-" + to,
+							BigDecimal.valueOf(random.nextInt(1, 5000), 2));
+				} catch (NotSufficientBalanceException expected) {
+					// rejected transfers must leave both balances untouched
+				}
+			}
+		});
+
+		BigDecimal total = BigDecimal.ZERO;
+		for (int i = 0; i < accounts; i++) {
+			BigDecimal balance = accountsService.getAccount("Id-" + i).getBalance();
+			assertThat(balance).isGreaterThanOrEqualTo(BigDecimal.ZERO);
+			total = total.add(balance);
+		}
+		assertThat(total).isEqualByComparingTo(new BigDecimal(accounts * 1000));
+	}
+
+	private void runConcurrently(int threads, Runnable task) throws Exception {
+		List<Runnable> tasks = new ArrayList<>();
+		for (int t = 0; t < threads; t++) {
+			tasks.add(task);
+		}
+		runAll(tasks);
+	}
+
+	private void runAll(List<Runnable> tasks) throws Exception {
+		ExecutorService executor = Executors.newFixedThreadPool(tasks.size());
+		try {
+			CountDownLatch start = new CountDownLatch(1);
+			List<Future<?>> futures = new ArrayList<>();
+			for (Runnable task : tasks) {
+				futures.add(executor.submit(() -> {
+					start.await();
+					task.run();
+					return null;
+				}));
+			}
+			start.countDown();
+			for (Future<?> future : futures) {
+				future.get();
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+}
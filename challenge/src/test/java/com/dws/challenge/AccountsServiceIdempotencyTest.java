@@ -0,0 +1,94 @@
+package com.dws.challenge;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.math.BigDecimal;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.dws.challenge.domain.Account;
+import com.dws.challenge.exception.AmountTransferPojoException;
+import com.dws.challenge.exception.NotSufficientBalanceException;
+import com.dws.challenge.repository.AccountsRepositoryInMemory;
+import com.dws.challenge.service.AccountLocks;
+import com.dws.challenge.service.AccountsService;
+import com.dws.challenge.service.IdempotencyCache;
+import com.dws.challenge.service.TransferValidator;
+
+public class AccountsServiceIdempotencyTest {
+
+	private long clockMillis;
+
+	private AccountsService accountsService;
+
+	@BeforeEach
+	public void prepareService() {
+		this.accountsService = new AccountsService(new AccountsRepositoryInMemory());
+		this.accountsService.setAccountLocks(new AccountLocks(1024));
+		this.accountsService.setTransferValidator(new TransferValidator());
+		this.accountsService.setNotificationService((account, transferDescription) -> {
+		});
+		this.accountsService.setIdempotencyCache(new IdempotencyCache(1024, 60, () -> clockMillis));
+		this.accountsService.createAccount(new Account("Id-1", new BigDecimal("100.00")));
+		this.accountsService.createAccount(new Account("Id-2", new BigDecimal("0.00")));
+	}
+
+	@Test
+	public void replayedKey_should_applyTransferOnce() {
+		accountsService.amountTransfer("key-1", "Id-1", "Id-2", new BigDecimal("30.00"));
+		accountsService.amountTransfer("key-1", "Id-1", "Id-2", new BigDecimal("30"));
+
+		assertBalances("70.00", "30.00");
+	}
+
+	@Test
+	public void keyReusedForOtherTransfer_should_beRejected() {
+		accountsService.amountTransfer("key-1", "Id-1", "Id-2", new BigDecimal("30.00"));
+
+		assertThatThrownBy(() -> accountsService.amountTransfer("key-1", "Id-1", "Id-2", new BigDecimal("40.00")))
+				.isInstanceOf(AmountTransferPojoException.class);
+		assertBalances("70.00", "30.00");
+	}
+
+	@Test
+	public void failedTransfer_should_notRememberKey() {
+		assertThatThrownBy(() -> accountsService.amountTransfer("key-1", "Id-2", "Id-1", new BigDecimal("10.00")))
+				.isInstanceOf(NotSufficientBalanceException.class);
+		accountsService.amountTransfer("Id-1", "Id-2", new BigDecimal("10.00"));
+
+		accountsService.amountTransfer("key-1", "Id-2", "Id-1", new BigDecimal("10.00"));
+		assertBalances("100.00", "0.00");
+	}
+
+	@Test
+	public void expiredKey_should_applyTransferAgain() {
+		accountsService.amountTransfer("key-1", "Id-1", "Id-2", new BigDecimal("30.00"));
+		clockMillis += 61_000;
+		accountsService.amountTransfer("key-1", "Id-1", "Id-2", new BigDecimal("30.00"));
+
+		assertBalances("40.00", "60.00");
+	}
+
+	@Test
+	public void fullSegment_should_rejectNewKeys() {
+		// 1024 keys over 64 segments is 16 per segment; keys 1 to 17 all fall in the first one
+		final IdempotencyCache cache = new IdempotencyCache(1024, 60, () -> clockMillis);
+		for (long key = 1; key <= 16; key++) {
+			assertThat(cache.reserve(key, 7)).isEqualTo(IdempotencyCache.Outcome.RESERVED);
+		}
+
+		assertThat(cache.reserve(17, 7)).isEqualTo(IdempotencyCache.Outcome.FULL);
+		assertThat(cache.reserve(16, 7)).isEqualTo(IdempotencyCache.Outcome.IN_PROGRESS);
+
+		cache.release(3);
+		assertThat(cache.reserve(17, 7)).isEqualTo(IdempotencyCache.Outcome.RESERVED);
+		assertThat(cache.size()).isEqualTo(16);
+	}
+
+	private void assertBalances(String first, String second) {
+		assertThat(accountsService.getAccount("Id-1").getBalance()).isEqualByComparingTo(first);
+		assertThat(accountsService.getAccount("Id-2").getBalance()).isEqualByComparingTo(second);
+	}
+}
@@ -0,0 +1,182 @@
+package com.dws.challenge;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.dws.challenge.domain.Account;
+import com.dws.challenge.domain.AmountTransferPojo;
+import com.dws.challenge.domain.BatchMode;
+import com.dws.challenge.repository.AccountsRepositoryInMemory;
+import com.dws.challenge.repository.TransferJournal;
+import com.dws.challenge.service.AccountLocks;
+import com.dws.challenge.service.AccountsService;
+import com.dws.challenge.service.ShardedTransferEngine;
+import com.dws.challenge.service.TransferMode;
+import com.dws.challenge.service.TransferValidator;
+
+// A replay applies the journal in sequence order, and a crash keeps only a prefix of it. Every
+// prefix must therefore be a state the accounts could have been in: a transfer spending money
+// that arrived through another transfer has to be journaled after it.
+public class AccountsServiceJournalOrderTest {
+
+	private static final int ACCOUNTS = 4;
+
+	private static final int THREADS = 8;
+
+	private static final int TRANSFERS_PER_THREAD = 20_000;
+
+	private AccountsService accountsService;
+
+	private ReplayingJournal journal;
+
+	@BeforeEach
+	public void setUp() {
+		this.journal = new ReplayingJournal();
+		this.accountsService = new AccountsService(new AccountsRepositoryInMemory());
+		accountsService.setAccountLocks(new AccountLocks(1024));
+		accountsService.setTransferValidator(new TransferValidator());
+		accountsService.setNotificationService((account, description) -> {
+		});
+		accountsService.setTransferJournal(journal);
+	}
+
+	@Test
+	public void transfers_should_beJournaledInCommitOrder() throws Exception {
+		createRing();
+		passMoneyAroundRing(false);
+
+		assertThat(journal.overdrawn).isZero();
+		assertThat(journal.transfers).isPositive();
+	}
+
+	@Test
+	public void transfersToStripedAccounts_should_beJournaledInCommitOrder() throws Exception {
+		// credits to a striped account commit under the source's lock only
+		final Set<String> ids = new HashSet<>();
+		for (int i = 0; i < ACCOUNTS; i++) {
+			ids.add("Id-" + i);
+		}
+		accountsService.setStripedAccountIds(ids);
+		createRing();
+		passMoneyAroundRing(false);
+
+		assertThat(journal.overdrawn).isZero();
+		assertThat(journal.transfers).isPositive();
+	}
+
+	@Test
+	public void shardedTransfers_should_beJournaledInCommitOrder() throws Exception {
+		ShardedTransferEngine engine = new ShardedTransferEngine(accountsService.getAccountsRepository(),
+				new TransferValidator(), 4, 1024);
+		engine.setTransferJournal(journal);
+		accountsService.setShardedTransferEngine(engine);
+		accountsService.setTransferMode(TransferMode.SHARDED);
+		try {
+			createRing();
+			passMoneyAroundRing(false);
+		} finally {
+			engine.shutdown();
+		}
+
+		assertThat(journal.overdrawn).isZero();
+		assertThat(journal.transfers).isPositive();
+	}
+
+	@Test
+	public void batchTransfers_should_beJournaledInCommitOrder() throws Exception {
+		createRing();
+		passMoneyAroundRing(true);
+
+		assertThat(journal.overdrawn).isZero();
+		assertThat(journal.transfers).isPositive();
+	}
+
+	// Each account starts with one unit, and every transfer moves one unit to the next account, so
+	// most transfers spend what the one before them paid in
+	private void createRing() {
+		for (int i = 0; i < ACCOUNTS; i++) {
+			accountsService.createAccount(new Account("Id-" + i, BigDecimal.ONE));
+		}
+	}
+
+	private void passMoneyAroundRing(boolean batches) throws Exception {
+		final ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+		try {
+			final List<Future<?>> futures = new ArrayList<>();
+			for (int t = 0; t < THREADS; t++) {
+				futures.add(executor.submit(() -> {
+					for (int n = 0; n < TRANSFERS_PER_THREAD; n++) {
+						final int from = ThreadLocalRandom.current().nextInt(ACCOUNTS);
+						final String fromId = "Id-" + from;
+						final String toId = "Id-" + (from + 1) % ACCOUNTS;
+						if (batches) {
+							accountsService.amountTransferBatch(
+									List.of(new AmountTransferPojo(fromId, toId, BigDecimal.ONE)), BatchMode.BEST_EFFORT);
+						} else {
+							accountsService.tryAmountTransfer(null, fromId, toId, BigDecimal.ONE);
+						}
+					}
+				}));
+			}
+			for (Future<?> future : futures) {
+				future.get();
+			}
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	// Applies every record to its own copy of the balances as it is appended, and counts the
+	// records that take an account below zero
+	private static final class ReplayingJournal implements TransferJournal {
+
+		private final Map<String, BigDecimal> balances = new HashMap<>();
+
+		private long sequence;
+
+		private int overdrawn;
+
+		private int transfers;
+
+		@Override
+		public synchronized long logAccountCreated(String accountId, BigDecimal balance) {
+			balances.put(accountId, balance);
+			return ++sequence;
+		}
+
+		@Override
+		public synchronized long logTransfer(String accountFromId, String accountToId, BigDecimal amount) {
+			final BigDecimal from = balances.get(accountFromId).subtract(amount);
+			if (from.signum() < 0) {
+				overdrawn++;
+			}
+			balances.put(accountFromId, from);
+			balances.merge(accountToId, amount, BigDecimal::add);
+			transfers++;
+			return ++sequence;
+		}
+
+		@Override
+		public void sync(long sequence) {
+		}
+
+		@Override
+		public long replay(long afterSequence, Visitor visitor) {
+			return afterSequence;
+		}
+	}
+}
@@ -0,0 +1,115 @@
+package com.dws.challenge;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.dws.challenge.domain.Account;
+import com.dws.challenge.exception.AccountNotFoundException;
+import com.dws.challenge.exception.DuplicateAccountIdException;
+import com.dws.challenge.exception.NotSufficientBalanceException;
+import com.dws.challenge.repository.AccountsRepositoryOffHeap;
+import com.dws.challenge.service.AccountLocks;
+import com.dws.challenge.service.AccountsService;
+import com.dws.challenge.service.TransferValidator;
+
+// Runs the AccountsService transfer paths against AccountsRepositoryOffHeap
+
+public class AccountsServiceOffHeapTest {
+
+	private final List<String> notifications = new ArrayList<>();
+
+	private AccountsRepositoryOffHeap repository;
+
+	private AccountsService accountsService;
+
+	@BeforeEach
+	public void prepareService() {
+		this.repository = new AccountsRepositoryOffHeap(16, false);
+		this.accountsService = new AccountsService(repository);
+		this.accountsService.setAccountLocks(new AccountLocks(1024));
+		this.accountsService.setTransferValidator(new TransferValidator());
+		this.accountsService.setNotificationService(
+				(account, transferDescription) -> notifications.add(account.getAccountId()));
+		this.accountsService.createAccount(new Account("Id-1", new BigDecimal("500.99")));
+		this.accountsService.createAccount(new Account("Id-2", new BigDecimal("20.00")));
+	}
+
+	@Test
+	public void addAccount_should_keepIdAndBalance() {
+		accountsService.createAccount(new Account("Id-123", new BigDecimal("1000")));
+
+		Account account = accountsService.getAccount("Id-123");
+		assertThat(account.getAccountId()).isEqualTo("Id-123");
+		assertThat(account.getBalance()).isEqualTo(new BigDecimal("1000"));
+		assertThat(accountsService.getAccount("Id-124")).isNull();
+	}
+
+	@Test
+	public void addAccount_failsOnDuplicateId() {
+		assertThatThrownBy(() -> accountsService.createAccount(new Account("Id-1")))
+				.isInstanceOf(DuplicateAccountIdException.class).hasMessage("Account id Id-1 already exists!");
+		assertThat(accountsService.getAccount("Id-1").getBalance()).isEqualTo(new BigDecimal("500.99"));
+	}
+
+	@Test
+	public void addAccount_should_growIndexPastInitialCapacity() {
+		for (int i = 0; i < 1000; i++) {
+			accountsService.createAccount(new Account("Grow-" + i, BigDecimal.valueOf(i, 2)));
+		}
+
+		assertThat(repository.size()).isEqualTo(1002);
+		assertThat(accountsService.getAccount("Grow-999").getBalance()).isEqualTo(new BigDecimal("9.99"));
+		assertThat(accountsService.getAccount("Id-1").getBalance()).isEqualTo(new BigDecimal("500.99"));
+	}
+
+	@Test
+	public void amountTransfer_should_transferFunds() {
+		accountsService.amountTransfer("Id-1", "Id-2", new BigDecimal("200.99"));
+
+		assertThat(accountsService.getAccount("Id-1").getBalance()).isEqualTo(new BigDecimal("300.00"));
+		assertThat(accountsService.getAccount("Id-2").getBalance()).isEqualTo(new BigDecimal("220.99"));
+		assertThat(notifications).containsExactlyInAnyOrder("Id-1", "Id-2");
+	}
+
+	@Test
+	public void amountTransfer_should_transferFunds_when_balanceJustEnough() {
+		accountsService.amountTransfer("Id-1", "Id-2", new BigDecimal("500.99"));
+
+		assertThat(accountsService.getAccount("Id-1").getBalance()).isEqualByComparingTo("0");
+		assertThat(accountsService.getAccount("Id-2").getBalance()).isEqualByComparingTo("520.99");
+	}
+
+	@Test
+	public void amountTransfer_should_fail_when_accountNotEnoughFunds() {
+		assertThatThrownBy(() -> accountsService.amountTransfer("Id-2", "Id-1", new BigDecimal("20.01")))
+				.isInstanceOf(NotSufficientBalanceException.class).hasMessage("Insufficient balance in account");
+
+		assertThat(accountsService.getAccount("Id-1").getBalance()).isEqualTo(new BigDecimal("500.99"));
+		assertThat(accountsService.getAccount("Id-2").getBalance()).isEqualTo(new BigDecimal("20.00"));
+		assertThat(notifications).isEmpty();
+	}
+
+	@Test
+	public void amountTransfer_should_fail_when_accountMissing() {
+		assertThatThrownBy(() -> accountsService.amountTransfer("Id-1", "Id-3", new BigDecimal("5.00")))
+				.isInstanceOf(AccountNotFoundException.class);
+
+		assertThat(accountsService.getAccount("Id-1").getBalance()).isEqualTo(new BigDecimal("500.99"));
+	}
+
+	@Test
+	public void clearedRepository_should_forgetAccounts() {
+		accountsService.clearAccounts();
+
+		assertThat(accountsService.getAccount("Id-1")).isNull();
+		accountsService.createAccount(new Account("Id-1", new BigDecimal("1.00")));
+		assertThat(accountsService.getAccount("Id-1").getBalance()).isEqualTo(new BigDecimal("1.00"));
+	}
+}
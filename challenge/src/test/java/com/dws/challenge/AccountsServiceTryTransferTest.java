@@ -0,0 +1,121 @@
+package com.dws.challenge;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.math.BigDecimal;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.dws.challenge.domain.Account;
+import com.dws.challenge.domain.TransferOutcome;
+import com.dws.challenge.repository.AccountsRepositoryInMemory;
+import com.dws.challenge.service.AccountLocks;
+import com.dws.challenge.service.AccountsService;
+import com.dws.challenge.service.TransferMetrics;
+import com.dws.challenge.service.TransferValidator;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+public class AccountsServiceTryTransferTest {
+
+	private SimpleMeterRegistry registry;
+
+	private AccountsService accountsService;
+
+	@BeforeEach
+	public void prepareService() {
+		AccountsRepositoryInMemory repository = new AccountsRepositoryInMemory();
+		this.registry = new SimpleMeterRegistry();
+		this.accountsService = new AccountsService(repository);
+		this.accountsService.setAccountLocks(new AccountLocks(1024));
+		this.accountsService.setTransferValidator(new TransferValidator());
+		this.accountsService.setNotificationService((account, transferDescription) -> {
+		});
+		this.accountsService.setTransferMetrics(new TransferMetrics(registry, repository, true));
+		this.accountsService.createAccount(new Account("Id-1", new BigDecimal("100.00")));
+		this.accountsService.createAccount(new Account("Id-2", new BigDecimal("0.00")));
+	}
+
+	@Test
+	public void validTransfer_should_complete() {
+		assertThat(accountsService.tryAmountTransfer(null, "Id-1", "Id-2", new BigDecimal("40.00")))
+				.isEqualTo(TransferOutcome.COMPLETED);
+
+		assertBalances("60.00", "40.00");
+	}
+
+	@Test
+	public void rejections_should_beReturnedAsCodes() {
+		assertThat(accountsService.tryAmountTransfer(null, "Id-2", "Id-1", new BigDecimal("1.00")))
+				.isEqualTo(TransferOutcome.INSUFFICIENT_BALANCE);
+		assertThat(accountsService.tryAmountTransfer(null, "Id-1", "Id-9", new BigDecimal("1.00")))
+				.isEqualTo(TransferOutcome.ACCOUNT_NOT_FOUND);
+		assertThat(accountsService.tryAmountTransfer(null, null, "Id-2", new BigDecimal("1.00")))
+				.isEqualTo(TransferOutcome.ACCOUNT_NOT_FOUND);
+		assertThat(accountsService.tryAmountTransfer(null, "Id-1", "Id-1", new BigDecimal("1.00")))
+				.isEqualTo(TransferOutcome.SAME_ACCOUNT);
+		assertThat(accountsService.tryAmountTransfer(null, "Id-1", "Id-2", new BigDecimal("-1.00")))
+				.isEqualTo(TransferOutcome.INVALID_AMOUNT);
+
+		assertBalances("100.00", "0.00");
+		assertThat(registry.get("transfers.rejected").tag("exception", "NotSufficientBalanceException").counter()
+				.count()).isEqualTo(1);
+		assertThat(registry.get("transfers.rejected").tag("exception", "AccountNotFoundException").counter()
+				.count()).isEqualTo(2);
+	}
+
+	@Test
+	public void idempotencyKey_should_beHonoured() {
+		assertThat(accountsService.tryAmountTransfer("key-1", "Id-1", "Id-2", new BigDecimal("10.00")))
+				.isEqualTo(TransferOutcome.COMPLETED);
+		assertThat(accountsService.tryAmountTransfer("key-1", "Id-1", "Id-2", new BigDecimal("20.00")))
+				.isEqualTo(TransferOutcome.IDEMPOTENCY_MISMATCH);
+		assertThat(accountsService.tryAmountTransfer("key-1", "Id-1", "Id-2", new BigDecimal("10")))
+				.isEqualTo(TransferOutcome.COMPLETED);
+
+		// a rejected transfer does not hold on to its key
+		assertThat(accountsService.tryAmountTransfer("key-2", "Id-2", "Id-1", new BigDecimal("50.00")))
+				.isEqualTo(TransferOutcome.INSUFFICIENT_BALANCE);
+		assertThat(accountsService.tryAmountTransfer("key-2", "Id-2", "Id-1", new BigDecimal("5.00")))
+				.isEqualTo(TransferOutcome.COMPLETED);
+
+		assertBalances("95.00", "5.00");
+	}
+
+	@Test
+	public void fault_should_releaseKeyAndBeCounted() {
+		// an account without a balance makes the transfer fail with a NullPointerException, a fault
+		// rather than a rejection
+		accountsService.getAccountsRepository().createAccount(new Account("Id-3", null));
+
+		assertThatThrownBy(() -> accountsService.tryAmountTransfer("key-1", "Id-3", "Id-2", new BigDecimal("1.00")))
+				.isInstanceOf(NullPointerException.class);
+		assertThat(registry.get("transfers.rejected").tag("exception", "NullPointerException").counter().count())
+				.isEqualTo(1);
+
+		// the key is not left IN_PROGRESS, so the retry is applied
+		accountsService.getAccount("Id-3").setBalance(new BigDecimal("5.00"));
+		assertThat(accountsService.tryAmountTransfer("key-1", "Id-3", "Id-2", new BigDecimal("1.00")))
+				.isEqualTo(TransferOutcome.COMPLETED);
+		assertThat(accountsService.getAccount("Id-2").getBalance()).isEqualByComparingTo("1.00");
+	}
+
+	@Test
+	public void balanceLimit_should_haveItsOwnCode() {
+		accountsService.setMinorUnits(true);
+		accountsService.createAccount(new Account("Id-3", new BigDecimal("100.00")));
+		accountsService.createAccount(new Account("Id-4", new BigDecimal("92233720368547758.00")));
+
+		assertThat(accountsService.tryAmountTransfer(null, "Id-3", "Id-4", new BigDecimal("1.00")))
+				.isEqualTo(TransferOutcome.BALANCE_LIMIT_EXCEEDED);
+		assertThat(accountsService.getAccount("Id-3").getBalance()).isEqualByComparingTo("100.00");
+		assertThat(accountsService.getAccount("Id-4").getBalance()).isEqualByComparingTo("92233720368547758.00");
+	}
+
+	private void assertBalances(String balance1, String balance2) {
+		assertThat(accountsService.getAccount("Id-1").getBalance()).isEqualByComparingTo(balance1);
+		assertThat(accountsService.getAccount("Id-2").getBalance()).isEqualByComparingTo(balance2);
+	}
+}
@@ -0,0 +1,113 @@
+package com.dws.challenge;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.BitSet;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import com.dws.challenge.service.AdaptiveConcurrencyLimit;
+import com.dws.challenge.service.AdmissionControl;
+import com.dws.challenge.service.AdmissionControl.Admission;
+import com.dws.challenge.service.TokenBuckets;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+public class AdmissionControlTest {
+
+	@Test
+	public void tokenBucket_should_allowBurstThenRefill() {
+		TokenBuckets buckets = new TokenBuckets(10, 5);
+		long now = System.currentTimeMillis();
+
+		for (int i = 0; i < 5; i++) {
+			assertThat(buckets.tryAcquire("Id-1", now)).isTrue();
+		}
+		assertThat(buckets.tryAcquire("Id-1", now)).isFalse();
+		assertThat(buckets.tryAcquire("Id-2", now)).isTrue();
+
+		assertThat(buckets.tryAcquire("Id-1", now + 100)).isTrue();
+		assertThat(buckets.tryAcquire("Id-1", now + 100)).isFalse();
+	}
+
+	@Test
+	public void tokenBuckets_should_onlyKeepBucketsBelowBurst() {
+		TokenBuckets buckets = new TokenBuckets(1000, 2);
+		long now = System.currentTimeMillis();
+		for (int i = 0; i < 100_000; i++) {
+			buckets.tryAcquire("Id-" + i, now);
+		}
+		assertThat(buckets.size()).isEqualTo(100_000);
+
+		// two seconds later every bucket has refilled, so new keys take the place of the idle ones
+		for (int i = 0; i < 100_000; i++) {
+			buckets.tryAcquire("Other-" + i, now + 2000);
+		}
+		assertThat(buckets.size()).isLessThan(150_000);
+	}
+
+	@Test
+	public void concurrencyLimit_should_shedAboveLimitAndShrinkWhenLatencyRises() throws InterruptedException {
+		AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit(20, 2, 100, 1);
+		for (int i = 0; i < 20; i++) {
+			assertThat(limit.tryAcquire()).isTrue();
+		}
+		assertThat(limit.tryAcquire()).isFalse();
+
+		// a window of fast requests sets the baseline, then slow ones pull the limit down
+		long start = System.nanoTime();
+		for (int i = 0; i < 20; i++) {
+			limit.release(start);
+		}
+		for (int round = 0; round < 5; round++) {
+			Thread.sleep(5);
+			int acquired = 0;
+			while (limit.tryAcquire()) {
+				acquired++;
+			}
+			long slowStart = System.nanoTime() - 50_000_000L;
+			for (int i = 0; i < acquired; i++) {
+				limit.release(slowStart);
+			}
+		}
+		assertThat(limit.getLimit()).isLessThan(20);
+		assertThat(limit.getInFlight()).isZero();
+	}
+
+	@Test
+	public void admission_should_limitOneAccountWithoutAffectingOthers() {
+		AdmissionControl admission = new AdmissionControl(true, 1, 3, 1000, 1000, 100, 1, 100, 100);
+		SimpleMeterRegistry registry = new SimpleMeterRegistry();
+		admission.bindTo(registry);
+
+		for (int i = 0; i < 3; i++) {
+			assertThat(admission.tryAdmit("client", "Id-1")).isEqualTo(Admission.ADMITTED);
+			admission.release(System.nanoTime());
+		}
+		assertThat(admission.tryAdmit("client", "Id-1")).isEqualTo(Admission.ACCOUNT_RATE_LIMITED);
+		assertThat(admission.tryAdmit("client", "Id-2")).isEqualTo(Admission.ADMITTED);
+		admission.release(System.nanoTime());
+
+		assertThat(registry.get("transfers.admission").tag("result", "account_rate_limited").functionCounter()
+				.count()).isEqualTo(1);
+		assertThat(registry.get("transfers.admission").tag("result", "admitted").functionCounter().count())
+				.isEqualTo(4);
+		assertThat(admission.getConcurrencyLimit().getInFlight()).isZero();
+	}
+
+	@Test
+	public void batch_should_takeOneSlotAndChargeEveryItem() {
+		AdmissionControl admission = new AdmissionControl(true, 1, 3, 1000, 1000, 1, 1, 1, 100);
+		BitSet shed = new BitSet();
+
+		assertThat(admission.tryAdmitBatch("client", List.of("Id-1", "Id-1", "Id-2", "Id-1", "Id-1"), shed))
+				.isEqualTo(Admission.ADMITTED);
+		assertThat(shed.stream().toArray()).containsExactly(4);
+		assertThat(admission.tryAdmitBatch("client", List.of("Id-2"), new BitSet())).isEqualTo(Admission.OVERLOADED);
+		admission.releaseBatch();
+
+		assertThat(admission.getConcurrencyLimit().getInFlight()).isZero();
+		assertThat(admission.tryAdmit("client", "Id-1")).isEqualTo(Admission.ACCOUNT_RATE_LIMITED);
+	}
+}
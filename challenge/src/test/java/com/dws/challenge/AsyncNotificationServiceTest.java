@@ -0,0 +1,209 @@
+package com.dws.challenge;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.BooleanSupplier;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.dws.challenge.domain.Account;
+import com.dws.challenge.domain.TransferLeg;
+import com.dws.challenge.domain.TransferNotification;
+import com.dws.challenge.service.AsyncNotificationService;
+import com.dws.challenge.service.AsyncNotificationService.OverflowPolicy;
+import com.dws.challenge.service.NotificationService;
+
+public class AsyncNotificationServiceTest {
+
+	@TempDir
+	Path directory;
+
+	private final GatedNotificationService delegate = new GatedNotificationService();
+
+	private AsyncNotificationService notifications;
+
+	@AfterEach
+	public void shutdown() throws InterruptedException {
+		delegate.open();
+		if (notifications != null) {
+			notifications.shutdown();
+		}
+	}
+
+	@Test
+	public void block_should_holdTheCallerUntilASlotFrees() throws Exception {
+		start(OverflowPolicy.BLOCK);
+		fillQueue();
+
+		ExecutorService caller = Executors.newSingleThreadExecutor();
+		try {
+			Future<?> blocked = caller.submit(() -> notify("Id-4"));
+			Thread.sleep(100);
+			assertThat(blocked.isDone()).isFalse();
+
+			delegate.open();
+			blocked.get(10, TimeUnit.SECONDS);
+		} finally {
+			caller.shutdown();
+		}
+		awaitDelivered(4);
+		assertThat(delegate.accountIds()).containsExactly("Id-1", "Id-2", "Id-3", "Id-4");
+		assertThat(notifications.getDroppedCount()).isZero();
+	}
+
+	@Test
+	public void dropOldest_should_discardTheOldestQueued() throws Exception {
+		start(OverflowPolicy.DROP_OLDEST);
+		fillQueue();
+
+		notify("Id-4");
+		notify("Id-5");
+		assertThat(notifications.getDroppedCount()).isEqualTo(2);
+
+		delegate.open();
+		awaitDelivered(3);
+		assertThat(delegate.accountIds()).containsExactly("Id-1", "Id-4", "Id-5");
+	}
+
+	@Test
+	public void spill_should_writeOverflowToDiskAndReplayIt() throws Exception {
+		start(OverflowPolicy.SPILL_TO_DISK);
+		fillQueue();
+
+		notify("Id-4");
+		notify("Id-5");
+		assertThat(notifications.getSpilledCount()).isEqualTo(2);
+		assertThat(Files.size(directory.resolve("spill.bin"))).isPositive();
+
+		delegate.open();
+		awaitDelivered(5);
+		assertThat(delegate.accountIds()).containsExactlyInAnyOrder("Id-1", "Id-2", "Id-3", "Id-4", "Id-5");
+		assertThat(delegate.descriptions()).contains("Transfer Id-4");
+		waitFor(() -> !Files.exists(directory.resolve("spill.bin.replay")));
+	}
+
+	@Test
+	public void spilledNotifications_should_beReplayedWhileTheQueueIsBusy() throws Exception {
+		start(OverflowPolicy.SPILL_TO_DISK);
+		fillQueue();
+		notify("Spilled-1");
+		notify("Spilled-2");
+
+		// a steady trickle keeps the dispatcher from ever finding the queue idle
+		final AtomicBoolean producing = new AtomicBoolean(true);
+		ExecutorService producer = Executors.newSingleThreadExecutor();
+		producer.execute(() -> {
+			while (producing.get()) {
+				notify("Live");
+				LockSupport.parkNanos(50_000);
+			}
+		});
+		try {
+			delegate.open();
+			waitFor(() -> delegate.accountIds().containsAll(List.of("Spilled-1", "Spilled-2")));
+			assertThat(delegate.accountIds()).contains("Spilled-1", "Spilled-2");
+		} finally {
+			producing.set(false);
+			producer.shutdown();
+		}
+	}
+
+	@Test
+	public void structuredNotifications_should_reachTheDelegateAsTheyAre() throws Exception {
+		start(OverflowPolicy.BLOCK);
+		delegate.open();
+		TransferNotification notification = new TransferNotification(new Account("Id-1", BigDecimal.ONE),
+				TransferLeg.DEBIT, "Id-1", "Id-2", BigDecimal.TEN);
+
+		notifications.notifyAboutTransfer(notification);
+
+		awaitDelivered(1);
+		assertThat(delegate.structured).containsExactly(notification);
+	}
+
+	private void start(OverflowPolicy policy) {
+		this.notifications = new AsyncNotificationService(delegate, 2, 16, policy,
+				directory.resolve("spill.bin").toString());
+	}
+
+	// One notification held by the blocked delegate and two filling the queue
+	private void fillQueue() throws InterruptedException {
+		notify("Id-1");
+		waitFor(() -> delegate.entered.getCount() == 0);
+		notify("Id-2");
+		notify("Id-3");
+	}
+
+	private void notify(String accountId) {
+		notifications.notifyAboutTransfer(new Account(accountId, BigDecimal.ONE), "Transfer " + accountId);
+	}
+
+	private void awaitDelivered(long count) throws InterruptedException {
+		waitFor(() -> notifications.getDeliveredCount() >= count);
+		assertThat(notifications.getDeliveredCount()).isEqualTo(count);
+	}
+
+	private static void waitFor(BooleanSupplier condition) throws InterruptedException {
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+		while (!condition.getAsBoolean() && System.nanoTime() < deadline) {
+			Thread.sleep(1);
+		}
+	}
+
+	// Holds every delivery until opened
+	private static final class GatedNotificationService implements NotificationService {
+
+		private final CountDownLatch entered = new CountDownLatch(1);
+
+		private final CountDownLatch gate = new CountDownLatch(1);
+
+		private final List<Account> accounts = new CopyOnWriteArrayList<>();
+
+		private final List<String> descriptions = new CopyOnWriteArrayList<>();
+
+		private final List<TransferNotification> structured = new CopyOnWriteArrayList<>();
+
+		@Override
+		public void notifyAboutTransfer(Account account, String transferDescription) {
+			entered.countDown();
+			try {
+				gate.await();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			accounts.add(account);
+			descriptions.add(transferDescription);
+		}
+
+		@Override
+		public void notifyAboutTransfer(TransferNotification notification) {
+			structured.add(notification);
+		}
+
+		private void open() {
+			gate.countDown();
+		}
+
+		private List<String> accountIds() {
+			return accounts.stream().map(Account::getAccountId).toList();
+		}
+
+		private List<String> descriptions() {
+			return descriptions;
+		}
+	}
+}
@@ -0,0 +1,112 @@
+package com.dws.challenge;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.dws.challenge.domain.Account;
+import com.dws.challenge.domain.AccountSnapshot;
+import com.dws.challenge.repository.AccountsRepositoryInMemory;
+import com.dws.challenge.service.AccountLocks;
+import com.dws.challenge.service.AccountSnapshots;
+import com.dws.challenge.service.AccountsService;
+import com.dws.challenge.service.BalanceIndex;
+import com.dws.challenge.service.TransferValidator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+public class BalanceIndexTest {
+
+	private AccountsService accountsService;
+
+	@BeforeEach
+	public void prepareService() {
+		this.accountsService = new AccountsService(new AccountsRepositoryInMemory());
+		this.accountsService.setAccountLocks(new AccountLocks(1024));
+		this.accountsService.setTransferValidator(new TransferValidator());
+		this.accountsService.setNotificationService((account, transferDescription) -> {
+		});
+		this.accountsService.setBalanceIndex(new BalanceIndex(true));
+		for (int i = 1; i <= 5; i++) {
+			this.accountsService.createAccount(new Account("Id-" + i, new BigDecimal(i * 100)));
+		}
+	}
+
+	@Test
+	public void transfers_should_reorderAccounts() {
+		accountsService.amountTransfer("Id-5", "Id-1", new BigDecimal("450"));
+
+		assertThat(accountsService.getTopAccountsByBalance(2)).extracting(AccountSnapshot::getAccountId)
+				.containsExactly("Id-1", "Id-4");
+		assertThat(accountsService.getAccountsByBalance(null, new BigDecimal("200"), 10))
+				.extracting(AccountSnapshot::getAccountId).containsExactly("Id-5");
+		assertThat(accountsService.getAccountsByBalance(new BigDecimal("200"), new BigDecimal("400"), 10))
+				.extracting(AccountSnapshot::getAccountId).containsExactly("Id-2", "Id-3");
+	}
+
+	@Test
+	public void equalBalances_should_allBeListed() {
+		accountsService.createAccount(new Account("Id-0", new BigDecimal("300.00")));
+
+		List<AccountSnapshot> accounts = accountsService.getAccountsByBalance(new BigDecimal("300"), null, 10);
+		assertThat(accounts).extracting(AccountSnapshot::getAccountId).containsExactly("Id-0", "Id-3", "Id-4", "Id-5");
+	}
+
+	@Test
+	public void concurrentTransfers_should_leaveIndexMatchingBalances() throws InterruptedException {
+		ExecutorService executor = Executors.newFixedThreadPool(8);
+		for (int i = 0; i < 20_000; i++) {
+			executor.execute(() -> {
+				int from = ThreadLocalRandom.current().nextInt(1, 6);
+				int to = from % 5 + 1;
+				try {
+					accountsService.amountTransfer("Id-" + from, "Id-" + to, BigDecimal.ONE);
+				} catch (RuntimeException e) {
+					// not enough balance; nothing was changed
+				}
+			});
+		}
+		executor.shutdown();
+		assertThat(executor.awaitTermination(1, TimeUnit.MINUTES)).isTrue();
+
+		List<AccountSnapshot> accounts = accountsService.getAccountsByBalance(null, null, 10);
+		assertThat(accounts).hasSize(5);
+		for (AccountSnapshot account : accounts) {
+			assertThat(account.getBalance())
+					.isEqualByComparingTo(accountsService.getAccount(account.getAccountId()).getBalance());
+		}
+	}
+
+	@Test
+	public void clearedAccounts_should_leaveIndexAndSnapshots() {
+		accountsService.setAccountSnapshots(new AccountSnapshots(new ObjectMapper(), true));
+		accountsService.createAccount(new Account("Id-6", new BigDecimal("600")));
+
+		accountsService.clearAccounts();
+
+		assertThat(accountsService.getTopAccountsByBalance(10)).isEmpty();
+		assertThat(accountsService.getAccountsByBalance(null, null, 10)).isEmpty();
+		assertThat(accountsService.getAccountSnapshot("Id-6")).isNull();
+
+		accountsService.createAccount(new Account("Id-6", new BigDecimal("1")));
+		assertThat(accountsService.getTopAccountsByBalance(10)).extracting(AccountSnapshot::getAccountId)
+				.containsExactly("Id-6");
+		assertThat(accountsService.getAccountSnapshot("Id-6").getVersion()).isEqualTo(1);
+	}
+
+	@Test
+	public void disabledIndex_should_rejectQueries() {
+		accountsService.setBalanceIndex(BalanceIndex.disabled());
+
+		assertThatThrownBy(() -> accountsService.getTopAccountsByBalance(10))
+				.isInstanceOf(UnsupportedOperationException.class);
+	}
+}
@@ -0,0 +1,215 @@
+package com.dws.challenge;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.dws.challenge.domain.Account;
+import com.dws.challenge.domain.TransferOutcome;
+import com.dws.challenge.repository.AccountsRepositoryInMemory;
+import com.dws.challenge.service.AccountLocks;
+import com.dws.challenge.service.AccountsService;
+import com.dws.challenge.service.AdmissionControl;
+import com.dws.challenge.service.ClusterRing;
+import com.dws.challenge.service.TransferValidator;
+import com.dws.challenge.web.BinaryProtocol;
+import com.dws.challenge.web.BinaryTransferServer;
+
+public class BinaryTransferServerTest {
+
+	private AccountsRepositoryInMemory repository;
+
+	private AccountsService accountsService;
+
+	private BinaryTransferServer server;
+
+	private SocketChannel client;
+
+	private final ByteBuffer responses = ByteBuffer.allocate(1 << 16);
+
+	@BeforeEach
+	public void startServer() throws IOException {
+		this.repository = new AccountsRepositoryInMemory();
+		this.accountsService = new AccountsService(repository);
+		this.accountsService.setAccountLocks(new AccountLocks(1024));
+		this.accountsService.setTransferValidator(new TransferValidator());
+		this.accountsService.setNotificationService((account, transferDescription) -> {
+		});
+		this.accountsService.createAccount(new Account("Id-1", new BigDecimal("1000.00")));
+		this.accountsService.createAccount(new Account("Id-2", new BigDecimal("0.00")));
+		this.server = new BinaryTransferServer(accountsService, AdmissionControl.disabled(),
+				ClusterRing.standalone(), 0, 2, 8, 100_000, 1 << 16);
+		this.server.start();
+		this.client = SocketChannel.open(new InetSocketAddress("localhost", server.getPort()));
+	}
+
+	@AfterEach
+	public void stopServer() throws IOException, InterruptedException {
+		client.close();
+		server.stop();
+	}
+
+	@Test
+	public void requests_should_beAnsweredByCorrelationId() throws IOException {
+		final ByteBuffer requests = ByteBuffer.allocate(1024);
+		BinaryProtocol.writeCreate(requests, 1, "Id-3", new BigDecimal("5.50"));
+		BinaryProtocol.writeCreate(requests, 2, "Id-1", new BigDecimal("1.00"));
+		BinaryProtocol.writeCreate(requests, 3, "Id-4", new BigDecimal("-1.00"));
+		BinaryProtocol.writeGet(requests, 4, "Id-missing");
+		BinaryProtocol.writeTransfer(requests, 5, "Id-2", "Id-1", new BigDecimal("1.00"), null);
+		send(requests);
+
+		final Map<Long, ByteBuffer> answers = receive(5);
+		assertThat(answers.get(1L).get(4)).isEqualTo(BinaryProtocol.STATUS_OK);
+		assertThat(answers.get(2L).get(4)).isEqualTo(BinaryProtocol.STATUS_DUPLICATE);
+		assertThat(answers.get(3L).get(4)).isEqualTo(BinaryProtocol.STATUS_INVALID);
+		assertThat(answers.get(4L).get(4)).isEqualTo(BinaryProtocol.STATUS_NOT_FOUND);
+		assertThat(answers.get(5L).get(4)).isEqualTo(BinaryProtocol.STATUS_OK);
+		assertThat(BinaryProtocol.outcomeOf(answers.get(5L).get(BinaryProtocol.HEADER_LENGTH)))
+				.isEqualTo(TransferOutcome.INSUFFICIENT_BALANCE);
+
+		BinaryProtocol.writeGet(requests.clear(), 6, "Id-3");
+		send(requests);
+		final ByteBuffer account = receive(1).get(6L);
+		assertThat(account.get(4)).isEqualTo(BinaryProtocol.STATUS_OK);
+		assertThat(BinaryProtocol.getAmount(account, BinaryProtocol.HEADER_LENGTH)).isEqualByComparingTo("5.50");
+	}
+
+	@Test
+	public void pipelinedTransfers_should_allBeApplied() throws Exception {
+		final int transfers = 20_000;
+		// more requests than the buffers hold, written by another thread while this one reads
+		final Thread writer = new Thread(() -> {
+			final ByteBuffer requests = ByteBuffer.allocate(1 << 16);
+			try {
+				for (int i = 0; i < transfers; i++) {
+					if (requests.remaining() < 4 + BinaryProtocol.MAX_FRAME_LENGTH) {
+						send(requests);
+						requests.clear();
+					}
+					BinaryProtocol.writeTransfer(requests, i, "Id-1", "Id-2", new BigDecimal("0.05"), "key-" + i);
+				}
+				send(requests);
+			} catch (IOException e) {
+				throw new IllegalStateException(e);
+			}
+		});
+		writer.start();
+
+		final Map<Long, ByteBuffer> answers = receive(transfers);
+		writer.join();
+		assertThat(answers).hasSize(transfers);
+		assertThat(answers.values()).allSatisfy(answer -> assertThat(
+				BinaryProtocol.outcomeOf(answer.get(BinaryProtocol.HEADER_LENGTH))).isEqualTo(TransferOutcome.COMPLETED));
+		assertThat(accountsService.getAccount("Id-1").getBalance()).isEqualByComparingTo("0.00");
+		assertThat(accountsService.getAccount("Id-2").getBalance()).isEqualByComparingTo("1000.00");
+	}
+
+	@Test
+	public void malformedFrame_should_closeConnection() throws IOException {
+		final ByteBuffer requests = ByteBuffer.allocate(64);
+		requests.putInt(BinaryProtocol.HEADER_LENGTH - 4).put((byte) 42).putLong(7);
+		send(requests);
+
+		final ByteBuffer answer = receive(1).get(7L);
+		assertThat(answer.get(4)).isEqualTo(BinaryProtocol.STATUS_BAD_FRAME);
+		assertThat(client.read(responses)).isEqualTo(-1);
+	}
+
+	@Test
+	public void amountsOutsideBalanceScale_should_beInvalid() throws IOException {
+		final ByteBuffer requests = ByteBuffer.allocate(1024);
+		BinaryProtocol.writeTransfer(requests, 1, "Id-1", "Id-2", new BigDecimal("1E+3"), null);
+		BinaryProtocol.writeTransfer(requests, 2, "Id-1", "Id-2", new BigDecimal("0.001"), null);
+		BinaryProtocol.writeCreate(requests, 3, "Id-3", new BigDecimal("1E+100"));
+		BinaryProtocol.writeTransfer(requests, 4, "Id-1", "Id-2", new BigDecimal("10"), null);
+		send(requests);
+
+		final Map<Long, ByteBuffer> answers = receive(4);
+		assertThat(answers.get(1L).get(4)).isEqualTo(BinaryProtocol.STATUS_INVALID);
+		assertThat(answers.get(2L).get(4)).isEqualTo(BinaryProtocol.STATUS_INVALID);
+		assertThat(answers.get(3L).get(4)).isEqualTo(BinaryProtocol.STATUS_INVALID);
+		assertThat(answers.get(4L).get(4)).isEqualTo(BinaryProtocol.STATUS_OK);
+		assertThat(accountsService.getAccount("Id-3")).isNull();
+		assertThat(accountsService.getAccount("Id-1").getBalance()).isEqualByComparingTo("990.00");
+	}
+
+	@Test
+	public void failingConnection_should_notStopEventLoop() throws IOException {
+		// a balance the snapshot path cannot encode makes serving the GET throw on the event loop
+		repository.createAccount(new Account("Id-broken", null));
+		final ByteBuffer requests = ByteBuffer.allocate(64);
+		BinaryProtocol.writeGet(requests, 1, "Id-broken");
+		send(requests);
+		assertThat(client.read(responses)).isEqualTo(-1);
+
+		// two more connections, so that each of the two event loops serves one
+		for (int i = 0; i < 2; i++) {
+			client.close();
+			client = SocketChannel.open(new InetSocketAddress("localhost", server.getPort()));
+			responses.clear();
+			BinaryProtocol.writeGet(requests.clear(), 2, "Id-1");
+			send(requests);
+			assertThat(receive(1).get(2L).get(4)).isEqualTo(BinaryProtocol.STATUS_OK);
+		}
+	}
+
+	// Clients decode these bytes; changing one breaks every deployed client
+	@Test
+	public void outcomeCodes_should_stayPinned() {
+		Map<TransferOutcome, Integer> codes = new EnumMap<>(TransferOutcome.class);
+		codes.put(TransferOutcome.COMPLETED, 0);
+		codes.put(TransferOutcome.INVALID_AMOUNT, 1);
+		codes.put(TransferOutcome.IDEMPOTENCY_MISMATCH, 2);
+		codes.put(TransferOutcome.ACCOUNT_NOT_FOUND, 3);
+		codes.put(TransferOutcome.SAME_ACCOUNT, 4);
+		codes.put(TransferOutcome.INSUFFICIENT_BALANCE, 5);
+		codes.put(TransferOutcome.IN_PROGRESS, 6);
+		codes.put(TransferOutcome.NODE_UNAVAILABLE, 7);
+		codes.put(TransferOutcome.IDEMPOTENCY_CACHE_FULL, 8);
+		codes.put(TransferOutcome.BALANCE_LIMIT_EXCEEDED, 9);
+
+		assertThat(codes).hasSize(TransferOutcome.values().length);
+		codes.forEach((outcome, code) -> {
+			assertThat(BinaryProtocol.outcomeCode(outcome)).isEqualTo(code.byteValue());
+			assertThat(BinaryProtocol.outcomeOf(code.byteValue())).isEqualTo(outcome);
+		});
+		assertThat(BinaryProtocol.outcomeOf((byte) 10)).isNull();
+		assertThat(BinaryProtocol.outcomeOf((byte) -1)).isNull();
+	}
+
+	private void send(ByteBuffer requests) throws IOException {
+		requests.flip();
+		while (requests.hasRemaining()) {
+			client.write(requests);
+		}
+	}
+
+	// Reads count responses, keyed by correlation id
+	private Map<Long, ByteBuffer> receive(int count) throws IOException {
+		final Map<Long, ByteBuffer> answers = new HashMap<>();
+		while (answers.size() < count) {
+			assertThat(client.read(responses)).isNotNegative();
+			responses.flip();
+			while (responses.remaining() >= 4 && responses.remaining() >= 4 + responses.getInt(responses.position())) {
+				final int length = responses.getInt(responses.position());
+				final ByteBuffer answer = ByteBuffer.allocate(4 + length);
+				responses.get(answer.array());
+				answers.put(answer.getLong(5), answer);
+			}
+			responses.compact();
+		}
+		return answers;
+	}
+}
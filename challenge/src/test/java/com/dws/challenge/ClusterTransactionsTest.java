@@ -0,0 +1,258 @@
+package com.dws.challenge;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.dws.challenge.domain.Account;
+import com.dws.challenge.domain.TransferLeg;
+import com.dws.challenge.domain.TransferOutcome;
+import com.dws.challenge.repository.AccountsRepositoryInMemory;
+import com.dws.challenge.repository.ClusterTransactionLog;
+import com.dws.challenge.service.AccountLocks;
+import com.dws.challenge.service.AccountsService;
+import com.dws.challenge.service.ClusterClient;
+import com.dws.challenge.service.ClusterRing;
+import com.dws.challenge.service.ClusterTransactions;
+import com.dws.challenge.service.IdempotencyCache;
+import com.dws.challenge.service.TransferValidator;
+
+// Two nodes in one JVM, calling each other through an in-memory ClusterClient that can be made to
+// fail. A node "crashes" by being replaced with a fresh instance over the same log, its accounts
+// restored as journal recovery would.
+
+public class ClusterTransactionsTest {
+
+	private static final String NODE_A = "http://localhost:8081";
+
+	private static final String NODE_B = "http://localhost:8082";
+
+	private static final List<String> NODES = List.of(NODE_A, NODE_B);
+
+	@TempDir
+	Path directory;
+
+	private final Map<String, ClusterTransactions> nodes = new HashMap<>();
+
+	private final Map<String, AccountsService> services = new HashMap<>();
+
+	private final Set<String> unreachable = new HashSet<>();
+
+	// nodes that receive prepares but whose commits are lost
+	private final Set<String> losingCommits = new HashSet<>();
+
+	private final ClusterClient client = new ClusterClient() {
+
+		@Override
+		public TransferOutcome prepare(String node, String txId, TransferLeg leg, String coordinator,
+				String accountId, String counterpart, BigDecimal amount) throws IOException {
+			return reach(node).prepare(txId, leg, coordinator, accountId, counterpart, amount);
+		}
+
+		@Override
+		public void commit(String node, String txId) throws IOException {
+			if (losingCommits.contains(node)) {
+				throw new IOException("Read timed out: " + node);
+			}
+			reach(node).commit(txId);
+		}
+
+		@Override
+		public void abort(String node, String txId) throws IOException {
+			reach(node).abort(txId);
+		}
+
+		@Override
+		public boolean isCommitted(String node, String txId) throws IOException {
+			return reach(node).isCommitted(txId);
+		}
+	};
+
+	private String accountOnA;
+
+	private String accountOnB;
+
+	@BeforeEach
+	public void startNodes() throws IOException {
+		final ClusterRing ring = new ClusterRing(NODES, NODE_A, 128);
+		for (int i = 0; accountOnA == null || accountOnB == null; i++) {
+			final String accountId = "Id-" + i;
+			if (ring.isLocal(accountId)) {
+				accountOnA = accountOnA == null ? accountId : accountOnA;
+			} else {
+				accountOnB = accountOnB == null ? accountId : accountOnB;
+			}
+		}
+		startNode(NODE_A, accountOnA);
+		startNode(NODE_B, accountOnB);
+	}
+
+	@AfterEach
+	public void stopNodes() throws IOException {
+		for (ClusterTransactions node : nodes.values()) {
+			node.shutdown();
+		}
+	}
+
+	@Test
+	public void ring_should_spreadAccountsEvenly_and_moveFewWhenNodeAdded() {
+		final List<String> four = List.of("http://n1", "http://n2", "http://n3", "http://n4");
+		final ClusterRing ring = new ClusterRing(four, "http://n1", 128);
+		final ClusterRing grown = new ClusterRing(List.of("http://n1", "http://n2", "http://n3", "http://n4",
+				"http://n5"), "http://n1", 128);
+		final Map<String, Integer> shares = new HashMap<>();
+		int moved = 0;
+		for (int i = 0; i < 100_000; i++) {
+			final String accountId = "Id-" + i;
+			final String owner = ring.ownerOf(accountId);
+			shares.merge(owner, 1, Integer::sum);
+			if (!owner.equals(grown.ownerOf(accountId))) {
+				assertThat(grown.ownerOf(accountId)).isEqualTo("http://n5");
+				moved++;
+			}
+		}
+
+		assertThat(shares).hasSize(4);
+		assertThat(shares.values()).allSatisfy(share -> assertThat(share).isBetween(18_000, 32_000));
+		assertThat(moved).isBetween(12_000, 28_000);
+		assertThat(ClusterRing.standalone().isLocal("Id-1")).isTrue();
+	}
+
+	@Test
+	public void crossNodeTransfer_should_moveMoneyBetweenNodes() {
+		assertThat(nodes.get(NODE_A).tryTransfer(null, accountOnA, accountOnB, new BigDecimal("30.00")))
+				.isEqualTo(TransferOutcome.COMPLETED);
+
+		assertBalance(NODE_A, accountOnA, "70.00");
+		assertBalance(NODE_B, accountOnB, "130.00");
+		assertThat(nodes.get(NODE_A).getPreparedLegs()).isZero();
+		assertThat(nodes.get(NODE_B).getPreparedLegs()).isZero();
+	}
+
+	@Test
+	public void insufficientBalance_should_abortBothLegs() {
+		assertThat(nodes.get(NODE_A).tryTransfer(null, accountOnA, accountOnB, new BigDecimal("100.01")))
+				.isEqualTo(TransferOutcome.INSUFFICIENT_BALANCE);
+		assertThat(nodes.get(NODE_B).tryTransfer(null, accountOnB, accountOnA, new BigDecimal("10.00")))
+				.isEqualTo(TransferOutcome.COMPLETED);
+		assertThat(nodes.get(NODE_A).tryTransfer(null, accountOnA, "Id-missing", new BigDecimal("10.00")))
+				.isEqualTo(TransferOutcome.ACCOUNT_NOT_FOUND);
+
+		assertBalance(NODE_A, accountOnA, "110.00");
+		assertBalance(NODE_B, accountOnB, "90.00");
+	}
+
+	@Test
+	public void unreachableParticipant_should_releaseHeldDebit() {
+		unreachable.add(NODE_B);
+
+		assertThat(nodes.get(NODE_A).tryTransfer("key-1", accountOnA, accountOnB, new BigDecimal("30.00")))
+				.isEqualTo(TransferOutcome.NODE_UNAVAILABLE);
+		assertBalance(NODE_A, accountOnA, "100.00");
+		assertThat(nodes.get(NODE_A).getPreparedLegs()).isZero();
+
+		// the key was not remembered, so the retry goes through once the node is back
+		unreachable.clear();
+		assertThat(nodes.get(NODE_A).tryTransfer("key-1", accountOnA, accountOnB, new BigDecimal("30.00")))
+				.isEqualTo(TransferOutcome.COMPLETED);
+		assertThat(nodes.get(NODE_A).tryTransfer("key-1", accountOnA, accountOnB, new BigDecimal("30.00")))
+				.isEqualTo(TransferOutcome.COMPLETED);
+		assertBalance(NODE_A, accountOnA, "70.00");
+		assertBalance(NODE_B, accountOnB, "130.00");
+	}
+
+	@Test
+	public void prepare_should_rejectCoordinatorNotOwningSource() {
+		assertThatThrownBy(() -> nodes.get(NODE_B).prepare("tx-1", TransferLeg.CREDIT, "http://localhost:9999",
+				accountOnB, accountOnA, new BigDecimal("1000000"))).isInstanceOf(IllegalArgumentException.class);
+		assertThatThrownBy(() -> nodes.get(NODE_B).prepare("tx-1", TransferLeg.CREDIT, NODE_B, accountOnB,
+				accountOnA, new BigDecimal("1000000"))).isInstanceOf(IllegalArgumentException.class);
+		nodes.get(NODE_B).commit("tx-1");
+
+		assertBalance(NODE_B, accountOnB, "100.00");
+		assertThat(nodes.get(NODE_B).getPreparedLegs()).isZero();
+	}
+
+	@Test
+	public void coordinatorCrashBeforeDecision_should_abortHeldDebitOnRecovery() throws IOException {
+		nodes.get(NODE_A).prepare("tx-1", TransferLeg.DEBIT, NODE_A, accountOnA, accountOnB, new BigDecimal("30.00"));
+		assertBalance(NODE_A, accountOnA, "70.00");
+
+		restartNode(NODE_A, accountOnA);
+		// the hold is restored on top of the recovered account until the leg is resolved
+		assertBalance(NODE_A, accountOnA, "70.00");
+		assertThat(nodes.get(NODE_A).getPreparedLegs()).isEqualTo(1);
+
+		nodes.get(NODE_A).resolve();
+
+		assertBalance(NODE_A, accountOnA, "100.00");
+		assertThat(nodes.get(NODE_A).getPreparedLegs()).isZero();
+	}
+
+	@Test
+	public void coordinatorCrashAfterDecision_should_completeCommitOnRecovery() throws IOException {
+		losingCommits.add(NODE_B);
+		assertThat(nodes.get(NODE_A).tryTransfer(null, accountOnA, accountOnB, new BigDecimal("30.00")))
+				.isEqualTo(TransferOutcome.COMPLETED);
+		assertBalance(NODE_B, accountOnB, "100.00");
+		assertThat(nodes.get(NODE_B).getPreparedLegs()).isEqualTo(1);
+
+		restartNode(NODE_A, accountOnA);
+		assertBalance(NODE_A, accountOnA, "70.00");
+		losingCommits.clear();
+		nodes.get(NODE_A).resolve();
+
+		assertBalance(NODE_B, accountOnB, "130.00");
+		assertThat(nodes.get(NODE_B).getPreparedLegs()).isZero();
+
+		// the settled debit survives a further restart, compacted into the rewritten log
+		restartNode(NODE_A, accountOnA);
+		assertBalance(NODE_A, accountOnA, "70.00");
+		assertThat(nodes.get(NODE_A).getPreparedLegs()).isZero();
+	}
+
+	private ClusterTransactions reach(String node) throws IOException {
+		if (unreachable.contains(node)) {
+			throw new IOException("Connection refused: " + node);
+		}
+		return nodes.get(node);
+	}
+
+	private void startNode(String node, String accountId) throws IOException {
+		final AccountsService accountsService = new AccountsService(new AccountsRepositoryInMemory());
+		accountsService.setAccountLocks(new AccountLocks(1024));
+		accountsService.setTransferValidator(new TransferValidator());
+		accountsService.setNotificationService((account, transferDescription) -> {
+		});
+		accountsService.createAccount(new Account(accountId, new BigDecimal("100.00")));
+		final ClusterTransactionLog log = new ClusterTransactionLog(
+				directory.resolve(node.substring(node.lastIndexOf(':') + 1)).resolve("transactions.log"));
+		final ClusterTransactions clusterTransactions = new ClusterTransactions(new ClusterRing(NODES, node, 128),
+				client, accountsService, new IdempotencyCache(1024, 60, System::currentTimeMillis), log, 60_000);
+		clusterTransactions.start();
+		nodes.put(node, clusterTransactions);
+		services.put(node, accountsService);
+	}
+
+	private void restartNode(String node, String accountId) throws IOException {
+		nodes.remove(node).shutdown();
+		startNode(node, accountId);
+	}
+
+	private void assertBalance(String node, String accountId, String balance) {
+		assertThat(services.get(node).getAccount(accountId).getBalance()).isEqualByComparingTo(balance);
+	}
+}
@@ -0,0 +1,113 @@
+package com.dws.challenge;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.dws.challenge.domain.Account;
+import com.dws.challenge.domain.TransferLeg;
+import com.dws.challenge.domain.TransferNotification;
+import com.dws.challenge.repository.AccountsRepositoryInMemory;
+import com.dws.challenge.service.AccountLocks;
+import com.dws.challenge.service.AccountsService;
+import com.dws.challenge.service.CoalescingNotificationService;
+import com.dws.challenge.service.TransferValidator;
+
+public class CoalescingNotificationServiceTest {
+
+	private final AtomicLong clock = new AtomicLong();
+
+	private final List<String> sent = new ArrayList<>();
+
+	private CoalescingNotificationService coalescing;
+
+	private AccountsService accountsService;
+
+	@BeforeEach
+	public void setUp() {
+		// the flusher thread is not started; the tests flush by hand against their own clock
+		this.coalescing = new CoalescingNotificationService(
+				(account, transferDescription) -> sent.add(account.getAccountId() + ": " + transferDescription), 1000,
+				clock::get);
+		this.accountsService = new AccountsService(new AccountsRepositoryInMemory());
+		this.accountsService.setAccountLocks(new AccountLocks(1024));
+		this.accountsService.setTransferValidator(new TransferValidator());
+		this.accountsService.setNotificationService(coalescing);
+		this.accountsService.createAccount(new Account("Id-1", new BigDecimal("1000.00")));
+		this.accountsService.createAccount(new Account("Id-2", new BigDecimal("1000.00")));
+		this.accountsService.createAccount(new Account("Id-3", new BigDecimal("1000.00")));
+	}
+
+	@Test
+	public void transfersWithinWindow_should_beDeliveredAsOneDigestPerAccount() {
+		for (int i = 0; i < 100; i++) {
+			accountsService.amountTransfer("Id-1", "Id-2", new BigDecimal("1.00"));
+		}
+		accountsService.amountTransfer("Id-2", "Id-1", new BigDecimal("0.50"));
+
+		clock.set(999);
+		assertThat(coalescing.flush()).isZero();
+		assertThat(sent).isEmpty();
+
+		clock.set(1000);
+		assertThat(coalescing.flush()).isEqualTo(2);
+		assertThat(sent).containsExactlyInAnyOrder(
+				"Id-1: 101 transfers in the last 1000 ms: 100 sent for a total of 100.00, 1 received for a total of 0.50.",
+				"Id-2: 101 transfers in the last 1000 ms: 1 sent for a total of 0.50, 100 received for a total of 100.00.");
+		assertThat(coalescing.getReceivedCount()).isEqualTo(202);
+		assertThat(coalescing.getDeliveredCount()).isEqualTo(2);
+	}
+
+	@Test
+	public void singleTransfer_should_keepItsUsualText() {
+		accountsService.amountTransfer("Id-1", "Id-3", new BigDecimal("25.00"));
+
+		clock.set(1000);
+		coalescing.flush();
+		assertThat(sent).containsExactlyInAnyOrder(
+				"Id-1: The transfer to the account with ID Id-3 is now complete for the amount of 25.00.",
+				"Id-3: The account with ID + Id-1 has transferred 25.00 into your account.");
+	}
+
+	@Test
+	public void laterTransfers_should_openNewWindow() {
+		accountsService.amountTransfer("Id-1", "Id-3", new BigDecimal("1.00"));
+		clock.set(1000);
+		coalescing.flush();
+		sent.clear();
+
+		accountsService.amountTransfer("Id-1", "Id-3", new BigDecimal("2.00"));
+		accountsService.amountTransfer("Id-1", "Id-3", new BigDecimal("3.00"));
+		clock.set(1999);
+		assertThat(coalescing.flush()).isZero();
+		clock.set(2000);
+		assertThat(coalescing.flush()).isEqualTo(2);
+		assertThat(sent).containsExactlyInAnyOrder(
+				"Id-1: 2 transfers in the last 1000 ms: 2 sent for a total of 5.00.",
+				"Id-3: 2 transfers in the last 1000 ms: 2 received for a total of 5.00.");
+	}
+
+	@Test
+	public void plainTextNotifications_should_passStraightThrough() {
+		coalescing.notifyAboutTransfer(accountsService.getAccount("Id-1"), "Statement ready");
+
+		assertThat(sent).containsExactly("Id-1: Statement ready");
+		assertThat(coalescing.getDeliveredCount()).isEqualTo(1);
+	}
+
+	@Test
+	public void transferNotification_should_renderTheLegacyText() {
+		final Account account = new Account("Id-1");
+		assertThat(new TransferNotification(account, TransferLeg.DEBIT, "Id-1", "Id-2", new BigDecimal("10.50"))
+				.getDescription())
+				.isEqualTo("The transfer to the account with ID Id-2 is now complete for the amount of 10.50.");
+		assertThat(new TransferNotification(account, TransferLeg.CREDIT, "Id-2", "Id-1", new BigDecimal("10.50"))
+				.getDescription()).isEqualTo("The account with ID + Id-2 has transferred 10.50 into your account.");
+	}
+}
@@ -0,0 +1,176 @@
+package com.dws.challenge;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.dws.challenge.domain.Account;
+import com.dws.challenge.domain.TransferOutcome;
+import com.dws.challenge.repository.AccountsRepositoryInMemory;
+import com.dws.challenge.repository.AccountsSnapshotStore;
+import com.dws.challenge.repository.JournalCompactor;
+import com.dws.challenge.repository.JournalDurability;
+import com.dws.challenge.repository.MappedTransferJournal;
+import com.dws.challenge.repository.TransferJournal;
+import com.dws.challenge.service.AccountLocks;
+import com.dws.challenge.service.AccountsService;
+import com.dws.challenge.service.JournalRecovery;
+import com.dws.challenge.service.TransferValidator;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+public class JournalCompactorTest {
+
+	@TempDir
+	Path directory;
+
+	private MappedTransferJournal journal;
+
+	@BeforeEach
+	public void openJournal() throws Exception {
+		// small segments so that compaction has whole segments to discard
+		this.journal = new MappedTransferJournal(directory.toString(), JournalDurability.FSYNC_EACH, 4096, 100);
+	}
+
+	@AfterEach
+	public void closeJournal() throws Exception {
+		this.journal.close();
+	}
+
+	@Test
+	public void recovery_should_loadSnapshotAndReplayJournalTail() throws Exception {
+		AccountsService before = accountsService(journal);
+		before.createAccount(new Account("Id-1", new BigDecimal("1000.00")));
+		before.createAccount(new Account("Id-2", new BigDecimal("0.00")));
+		for (int i = 0; i < 200; i++) {
+			before.amountTransfer("Id-1", "Id-2", new BigDecimal("1.50"));
+		}
+
+		JournalCompactor compactor = new JournalCompactor(journal, new AccountsSnapshotStore(directory.toString()), 0,
+				1);
+		long snapshotSequence = compactor.compact();
+		assertThat(snapshotSequence).isEqualTo(journal.getLastSequence());
+
+		before.createAccount(new Account("Id-3", new BigDecimal("5.00")));
+		before.amountTransfer("Id-2", "Id-3", new BigDecimal("20.00"));
+		journal.close();
+
+		this.journal = new MappedTransferJournal(directory.toString(), JournalDurability.FSYNC_EACH, 4096, 100);
+		AccountsService after = accountsService(journal);
+		JournalRecovery recovery = new JournalRecovery(after, journal, new AccountsSnapshotStore(directory.toString()));
+		recovery.recover();
+		SimpleMeterRegistry registry = new SimpleMeterRegistry();
+		recovery.bindTo(registry);
+
+		assertThat(registry.get("accounts.recovery.duration").gauge().value())
+				.isEqualTo(recovery.getRecoveryMillis());
+		assertThat(after.getAccount("Id-1").getBalance()).isEqualByComparingTo("700.00");
+		assertThat(after.getAccount("Id-2").getBalance()).isEqualByComparingTo("280.00");
+		assertThat(after.getAccount("Id-3").getBalance()).isEqualByComparingTo("25.00");
+	}
+
+	@Test
+	public void transferRacingCreation_should_beReplayedAfterIt() throws Exception {
+		final AtomicReference<AccountsService> service = new AtomicReference<>();
+		final List<TransferOutcome> raced = new ArrayList<>();
+		AccountsService before = accountsService(racingJournal("Id-3", () -> raced
+				.add(service.get().tryAmountTransfer(null, "Id-1", "Id-3", new BigDecimal("1.00")))));
+		service.set(before);
+		before.createAccount(new Account("Id-1", new BigDecimal("100.00")));
+		before.createAccount(new Account("Id-3", new BigDecimal("5.00")));
+		before.amountTransfer("Id-1", "Id-3", new BigDecimal("10.00"));
+		journal.close();
+
+		this.journal = new MappedTransferJournal(directory.toString(), JournalDurability.FSYNC_EACH, 4096, 100);
+		AccountsService after = accountsService(journal);
+		new JournalRecovery(after, journal, new AccountsSnapshotStore(directory.toString())).recover();
+
+		// the account could not be found before its creation was journaled
+		assertThat(raced).containsExactly(TransferOutcome.ACCOUNT_NOT_FOUND);
+		assertThat(after.getAccount("Id-1").getBalance()).isEqualByComparingTo("90.00");
+		assertThat(after.getAccount("Id-3").getBalance()).isEqualByComparingTo("15.00");
+	}
+
+	@Test
+	public void compactionRacingCreation_should_coverEveryJournaledAccount() throws Exception {
+		final JournalCompactor compactor = new JournalCompactor(journal,
+				new AccountsSnapshotStore(directory.toString()), 0, 1);
+		final AtomicReference<AccountsService> service = new AtomicReference<>();
+		final List<TransferOutcome> raced = new ArrayList<>();
+		AccountsService before = accountsService(racingJournal("Id-3", () -> {
+			raced.add(service.get().tryAmountTransfer(null, "Id-1", "Id-3", new BigDecimal("1.00")));
+			try {
+				compactor.compact();
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		}));
+		service.set(before);
+		before.createAccount(new Account("Id-1", new BigDecimal("100.00")));
+		before.createAccount(new Account("Id-3", new BigDecimal("5.00")));
+		before.amountTransfer("Id-1", "Id-3", new BigDecimal("10.00"));
+		journal.close();
+
+		this.journal = new MappedTransferJournal(directory.toString(), JournalDurability.FSYNC_EACH, 4096, 100);
+		AccountsService after = accountsService(journal);
+		new JournalRecovery(after, journal, new AccountsSnapshotStore(directory.toString())).recover();
+
+		// the snapshot was taken while the creation of Id-3 was still to be journaled
+		assertThat(raced).containsExactly(TransferOutcome.ACCOUNT_NOT_FOUND);
+		assertThat(compactor.getSnapshotSequence()).isPositive();
+		assertThat(after.getAccount("Id-1").getBalance()).isEqualByComparingTo("90.00");
+		assertThat(after.getAccount("Id-3").getBalance()).isEqualByComparingTo("15.00");
+	}
+
+	// The journal, running a transfer on another thread just before the creation of one account is
+	// appended: a transfer finding the account then would be journaled ahead of its creation
+	private TransferJournal racingJournal(String accountId, Runnable transfer) {
+		return new TransferJournal() {
+
+			@Override
+			public long logAccountCreated(String createdId, BigDecimal balance) {
+				if (createdId.equals(accountId)) {
+					CompletableFuture.runAsync(transfer).join();
+				}
+				return journal.logAccountCreated(createdId, balance);
+			}
+
+			@Override
+			public long logTransfer(String accountFromId, String accountToId, BigDecimal amount) {
+				return journal.logTransfer(accountFromId, accountToId, amount);
+			}
+
+			@Override
+			public void sync(long sequence) {
+				journal.sync(sequence);
+			}
+
+			@Override
+			public long replay(long afterSequence, Visitor visitor) throws IOException {
+				return journal.replay(afterSequence, visitor);
+			}
+		};
+	}
+
+	private static AccountsService accountsService(TransferJournal journal) {
+		AccountsService accountsService = new AccountsService(new AccountsRepositoryInMemory());
+		accountsService.setAccountLocks(new AccountLocks(1024));
+		accountsService.setTransferValidator(new TransferValidator());
+		accountsService.setNotificationService((account, transferDescription) -> {
+		});
+		accountsService.setTransferJournal(journal);
+		return accountsService;
+	}
+}
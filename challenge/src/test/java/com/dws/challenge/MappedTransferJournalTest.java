@@ -0,0 +1,172 @@
+package com.dws.challenge;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.dws.challenge.repository.JournalDurability;
+import com.dws.challenge.repository.MappedTransferJournal;
+import com.dws.challenge.repository.TransferJournal;
+
+public class MappedTransferJournalTest {
+
+	@TempDir
+	Path directory;
+
+	private MappedTransferJournal journal;
+
+	@AfterEach
+	public void closeJournal() throws IOException {
+		if (journal != null) {
+			journal.close();
+		}
+	}
+
+	@Test
+	public void replay_should_visitRecordsInSequenceOrder() throws IOException {
+		open(1 << 20);
+		assertThat(journal.logAccountCreated("Id-1", new BigDecimal("100.00"))).isEqualTo(1);
+		assertThat(journal.logAccountCreated("Id-2", BigDecimal.ZERO)).isEqualTo(2);
+		assertThat(journal.logTransfer("Id-1", "Id-2", new BigDecimal("12.50"))).isEqualTo(3);
+		assertThat(journal.logTransfer("Id-2", "Id-1", new BigDecimal("0.01"))).isEqualTo(4);
+		reopen(1 << 20);
+
+		assertThat(replay(0)).containsExactly("1 created Id-1 100.00", "2 created Id-2 0",
+				"3 transfer Id-1 Id-2 12.50", "4 transfer Id-2 Id-1 0.01");
+		assertThat(replay(2)).containsExactly("3 transfer Id-1 Id-2 12.50", "4 transfer Id-2 Id-1 0.01");
+		assertThat(journal.getLastSequence()).isEqualTo(4);
+		assertThat(journal.logTransfer("Id-1", "Id-2", BigDecimal.ONE)).isEqualTo(5);
+	}
+
+	@Test
+	public void fullSegment_should_rollOverToANewOne() throws IOException {
+		open(256);
+		for (int i = 1; i <= 50; i++) {
+			journal.logTransfer("Id-1", "Id-2", BigDecimal.valueOf(i));
+		}
+		assertThat(segments().size()).isGreaterThan(1);
+		assertThat(segments().get(0).getFileName().toString()).isEqualTo("journal-00000000000000000001.log");
+		reopen(256);
+
+		List<String> records = replay(0);
+		assertThat(records).hasSize(50);
+		for (int i = 1; i <= 50; i++) {
+			assertThat(records.get(i - 1)).isEqualTo(i + " transfer Id-1 Id-2 " + i);
+		}
+		// replay from the middle skips whole segments before the wanted record
+		assertThat(replay(40)).hasSize(10);
+		assertThat(journal.logTransfer("Id-1", "Id-2", BigDecimal.ONE)).isEqualTo(51);
+
+		int discarded = journal.discardThrough(40);
+		assertThat(discarded).isPositive();
+		assertThat(replay(40)).hasSize(11);
+	}
+
+	@Test
+	public void tornTail_should_beTruncatedOnOpen() throws IOException {
+		open(1 << 20);
+		for (int i = 1; i <= 5; i++) {
+			journal.logTransfer("Id-1", "Id-2", BigDecimal.valueOf(i));
+		}
+		journal.close();
+		// the last record's body only partly reached the file
+		Path segment = segments().get(0);
+		List<Integer> offsets = recordOffsets(segment);
+		byte[] bytes = Files.readAllBytes(segment);
+		int last = offsets.get(4);
+		int length = ByteBuffer.wrap(bytes).getInt(last);
+		for (int i = last + 8 + length / 2; i < last + 8 + length; i++) {
+			bytes[i] = 0;
+		}
+		Files.write(segment, bytes);
+
+		journal = journal(1 << 20);
+		assertThat(journal.getLastSequence()).isEqualTo(4);
+		assertThat(replay(0)).hasSize(4);
+
+		// the record written in its place is read back whole
+		assertThat(journal.logTransfer("Id-2", "Id-1", new BigDecimal("7.00"))).isEqualTo(5);
+		reopen(1 << 20);
+		assertThat(replay(3)).containsExactly("4 transfer Id-1 Id-2 4", "5 transfer Id-2 Id-1 7.00");
+	}
+
+	@Test
+	public void crcMismatch_should_endTheReplay() throws IOException {
+		open(1 << 20);
+		for (int i = 1; i <= 5; i++) {
+			journal.logTransfer("Id-1", "Id-2", BigDecimal.valueOf(i));
+		}
+		journal.close();
+		// one bit of the third record's amount flipped on disk
+		Path segment = segments().get(0);
+		List<Integer> offsets = recordOffsets(segment);
+		byte[] bytes = Files.readAllBytes(segment);
+		int third = offsets.get(2);
+		int length = ByteBuffer.wrap(bytes).getInt(third);
+		bytes[third + 8 + length - 1] ^= 1;
+		Files.write(segment, bytes);
+
+		journal = journal(1 << 20);
+		assertThat(journal.getLastSequence()).isEqualTo(2);
+		assertThat(replay(0)).containsExactly("1 transfer Id-1 Id-2 1", "2 transfer Id-1 Id-2 2");
+	}
+
+	private void open(int segmentSize) throws IOException {
+		this.journal = journal(segmentSize);
+	}
+
+	private void reopen(int segmentSize) throws IOException {
+		journal.close();
+		this.journal = journal(segmentSize);
+	}
+
+	private MappedTransferJournal journal(int segmentSize) throws IOException {
+		return new MappedTransferJournal(directory.toString(), JournalDurability.FSYNC_EACH, segmentSize, 100);
+	}
+
+	private List<String> replay(long afterSequence) throws IOException {
+		final List<String> records = new ArrayList<>();
+		journal.replay(afterSequence, new TransferJournal.Visitor() {
+
+			@Override
+			public void accountCreated(long sequence, String accountId, BigDecimal balance) {
+				records.add(sequence + " created " + accountId + " " + balance.toPlainString());
+			}
+
+			@Override
+			public void transfer(long sequence, String accountFromId, String accountToId, BigDecimal amount) {
+				records.add(sequence + " transfer " + accountFromId + " " + accountToId + " " + amount.toPlainString());
+			}
+		});
+		return records;
+	}
+
+	private List<Path> segments() throws IOException {
+		try (Stream<Path> files = Files.list(directory)) {
+			return files.filter(file -> file.getFileName().toString().endsWith(".log")).sorted().toList();
+		}
+	}
+
+	// Start of every record in a segment, found by following the length fields
+	private static List<Integer> recordOffsets(Path segment) throws IOException {
+		final ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(segment));
+		final List<Integer> offsets = new ArrayList<>();
+		int offset = 0;
+		while (offset + 8 <= buffer.capacity() && buffer.getInt(offset) > 0) {
+			offsets.add(offset);
+			offset += 8 + buffer.getInt(offset);
+		}
+		return offsets;
+	}
+}
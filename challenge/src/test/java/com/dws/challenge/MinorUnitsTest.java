@@ -0,0 +1,95 @@
+package com.dws.challenge;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.math.BigDecimal;
+
+import org.junit.jupiter.api.Test;
+
+import com.dws.challenge.domain.Account;
+import com.dws.challenge.domain.MinorUnits;
+import com.dws.challenge.domain.MinorUnitsAccount;
+import com.dws.challenge.domain.TransferOutcome;
+import com.dws.challenge.repository.AccountsRepositoryInMemory;
+import com.dws.challenge.service.AccountLocks;
+import com.dws.challenge.service.AccountsService;
+import com.dws.challenge.service.TransferValidator;
+
+public class MinorUnitsTest {
+
+	@Test
+	public void amounts_should_convertToCentsAndBack() {
+		assertThat(MinorUnits.of(new BigDecimal("10.50"))).isEqualTo(1050L);
+		assertThat(MinorUnits.of(new BigDecimal("10.5"))).isEqualTo(1050L);
+		assertThat(MinorUnits.of(new BigDecimal("7"))).isEqualTo(700L);
+		assertThat(MinorUnits.of(BigDecimal.ZERO)).isEqualTo(0L);
+		assertThat(MinorUnits.of(new BigDecimal("-0.01"))).isEqualTo(-1L);
+
+		assertThat(MinorUnits.toBigDecimal(1050)).isEqualTo(new BigDecimal("10.50"));
+		assertThat(MinorUnits.toBigDecimal(1).scale()).isEqualTo(MinorUnits.SCALE);
+		assertThat(MinorUnits.toBigDecimal(MinorUnits.of(new BigDecimal("123456.78"))))
+				.isEqualTo(new BigDecimal("123456.78"));
+	}
+
+	@Test
+	public void extraDecimals_should_beRejectedUnlessZero() {
+		// trailing zeros lose nothing
+		assertThat(MinorUnits.of(new BigDecimal("1.500"))).isEqualTo(150L);
+		assertThat(MinorUnits.of(new BigDecimal("1E+2"))).isEqualTo(10000L);
+
+		// nothing is ever rounded
+		assertThatThrownBy(() -> MinorUnits.of(new BigDecimal("1.005"))).isInstanceOf(ArithmeticException.class);
+		assertThatThrownBy(() -> MinorUnits.of(new BigDecimal("0.001"))).isInstanceOf(ArithmeticException.class);
+		assertThatThrownBy(() -> MinorUnits.of(new BigDecimal("-0.009"))).isInstanceOf(ArithmeticException.class);
+	}
+
+	@Test
+	public void amountsBeyondALong_should_beRejected() {
+		assertThat(MinorUnits.of(new BigDecimal("92233720368547758.07"))).isEqualTo(Long.MAX_VALUE);
+		assertThat(MinorUnits.of(new BigDecimal("-92233720368547758.08"))).isEqualTo(Long.MIN_VALUE);
+
+		assertThatThrownBy(() -> MinorUnits.of(new BigDecimal("92233720368547758.08")))
+				.isInstanceOf(ArithmeticException.class);
+		assertThatThrownBy(() -> MinorUnits.of(new BigDecimal("-92233720368547758.09")))
+				.isInstanceOf(ArithmeticException.class);
+		assertThatThrownBy(() -> MinorUnits.of(new BigDecimal("1E+30"))).isInstanceOf(ArithmeticException.class);
+	}
+
+	@Test
+	public void minorUnitsAccount_should_compareBalancesByValue() {
+		MinorUnitsAccount account = MinorUnitsAccount.of(new Account("Id-1", new BigDecimal("10.5")));
+		assertThat(account.getMinorUnits()).isEqualTo(1050L);
+		assertThat(account.getBalance()).isEqualTo(new BigDecimal("10.50"));
+
+		assertThat(account.compareAndSetBalance(new BigDecimal("10.500"), new BigDecimal("3.25"))).isTrue();
+		assertThat(account.getMinorUnits()).isEqualTo(325L);
+		assertThat(account.compareAndSetBalance(new BigDecimal("10.50"), BigDecimal.ONE)).isFalse();
+
+		assertThatThrownBy(() -> account.setBalance(new BigDecimal("0.125"))).isInstanceOf(ArithmeticException.class);
+		assertThat(account.getMinorUnits()).isEqualTo(325L);
+	}
+
+	@Test
+	public void minorUnitsService_should_refuseAmountsItCannotHold() {
+		AccountsService accountsService = new AccountsService(new AccountsRepositoryInMemory());
+		accountsService.setAccountLocks(new AccountLocks(1024));
+		accountsService.setTransferValidator(new TransferValidator());
+		accountsService.setNotificationService((account, transferDescription) -> {
+		});
+		accountsService.setMinorUnits(true);
+		accountsService.createAccount(new Account("Id-1", new BigDecimal("100.00")));
+		accountsService.createAccount(new Account("Id-2", BigDecimal.ZERO));
+
+		assertThatThrownBy(() -> accountsService.createAccount(new Account("Id-3", new BigDecimal("1.001"))))
+				.isInstanceOf(ArithmeticException.class);
+		assertThat(accountsService.getAccount("Id-3")).isNull();
+
+		assertThat(accountsService.tryAmountTransfer(null, "Id-1", "Id-2", new BigDecimal("0.015")))
+				.isEqualTo(TransferOutcome.INVALID_AMOUNT);
+		assertThat(accountsService.tryAmountTransfer(null, "Id-1", "Id-2", new BigDecimal("0.01")))
+				.isEqualTo(TransferOutcome.COMPLETED);
+		assertThat(accountsService.getAccount("Id-1").getBalance()).isEqualTo(new BigDecimal("99.99"));
+		assertThat(accountsService.getAccount("Id-2").getBalance()).isEqualTo(new BigDecimal("0.01"));
+	}
+}
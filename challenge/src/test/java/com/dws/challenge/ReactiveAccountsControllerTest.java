@@ -0,0 +1,95 @@
+package com.dws.challenge;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.math.BigDecimal;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.reactive.AutoConfigureWebTestClient;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.reactive.server.WebTestClient;
+
+import com.dws.challenge.domain.Account;
+import com.dws.challenge.service.AccountsService;
+
+@SpringBootTest(properties = "spring.main.web-application-type=reactive")
+@AutoConfigureWebTestClient
+public class ReactiveAccountsControllerTest {
+
+	@Autowired
+	private WebTestClient webTestClient;
+
+	@Autowired
+	private AccountsService accountsService;
+
+	@BeforeEach
+	public void clearAccounts() {
+		accountsService.clearAccounts();
+	}
+
+	@Test
+	public void createAccount() {
+		this.webTestClient.post().uri("/v1/accounts").contentType(MediaType.APPLICATION_JSON)
+				.bodyValue("{\"accountId\":\"Id-123\",\"balance\":1000}").exchange().expectStatus().isCreated();
+
+		Account account = accountsService.getAccount("Id-123");
+		assertThat(account.getBalance()).isEqualByComparingTo("1000");
+	}
+
+	@Test
+	public void createDuplicateAccount() {
+		accountsService.createAccount(new Account("Id-123", new BigDecimal("1000")));
+
+		this.webTestClient.post().uri("/v1/accounts").contentType(MediaType.APPLICATION_JSON)
+				.bodyValue("{\"accountId\":\"Id-123\",\"balance\":1000}").exchange().expectStatus().isBadRequest();
+	}
+
+	@Test
+	public void createAccountNegativeBalance() {
+		this.webTestClient.post().uri("/v1/accounts").contentType(MediaType.APPLICATION_JSON)
+				.bodyValue("{\"accountId\":\"Id-123\",\"balance\":-1000}").exchange().expectStatus().isBadRequest();
+	}
+
+	@Test
+	public void getAccount() {
+		accountsService.createAccount(new Account("Id-123", new BigDecimal("123.45")));
+
+		this.webTestClient.get().uri("/v1/accounts/Id-123").exchange().expectStatus().isOk().expectBody()
+				.json("{\"accountId\":\"Id-123\",\"balance\":123.45}");
+	}
+
+	@Test
+	public void transferAmount() {
+		accountsService.createAccount(new Account("Id-1", new BigDecimal("100.00")));
+		accountsService.createAccount(new Account("Id-2", new BigDecimal("0.00")));
+
+		this.webTestClient.post().uri("/v1/accounts/transferAmount").contentType(MediaType.APPLICATION_JSON)
+				.bodyValue("{\"accountFrom\":\"Id-1\",\"accountTo\":\"Id-2\",\"transferAmount\":40.00}").exchange()
+				.expectStatus().isAccepted().expectBody(String.class).isEqualTo("Transfer Completed");
+
+		assertThat(accountsService.getAccount("Id-1").getBalance()).isEqualByComparingTo("60.00");
+		assertThat(accountsService.getAccount("Id-2").getBalance()).isEqualByComparingTo("40.00");
+	}
+
+	@Test
+	public void transferAmountInsufficientBalance() {
+		accountsService.createAccount(new Account("Id-1", new BigDecimal("10.00")));
+		accountsService.createAccount(new Account("Id-2", new BigDecimal("0.00")));
+
+		this.webTestClient.post().uri("/v1/accounts/transferAmount").contentType(MediaType.APPLICATION_JSON)
+				.bodyValue("{\"accountFrom\":\"Id-1\",\"accountTo\":\"Id-2\",\"transferAmount\":40.00}").exchange()
+				.expectStatus().isEqualTo(422);
+	}
+
+	@Test
+	public void transferAmountUnknownAccount() {
+		accountsService.createAccount(new Account("Id-1", new BigDecimal("10.00")));
+
+		this.webTestClient.post().uri("/v1/accounts/transferAmount").contentType(MediaType.APPLICATION_JSON)
+				.bodyValue("{\"accountFrom\":\"Id-1\",\"accountTo\":\"Id-9\",\"transferAmount\":1.00}").exchange()
+				.expectStatus().isNotFound();
+	}
+}
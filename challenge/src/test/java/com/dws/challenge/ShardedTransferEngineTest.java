@@ -0,0 +1,118 @@
+package com.dws.challenge;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.math.BigDecimal;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.dws.challenge.domain.Account;
+import com.dws.challenge.repository.AccountsRepositoryInMemory;
+import com.dws.challenge.repository.NoOpTransferJournal;
+import com.dws.challenge.service.AccountLocks;
+import com.dws.challenge.service.AccountsService;
+import com.dws.challenge.service.ShardedTransferEngine;
+import com.dws.challenge.service.TransferMode;
+import com.dws.challenge.service.TransferValidator;
+
+public class ShardedTransferEngineTest {
+
+	private AccountsRepositoryInMemory accountsRepository;
+
+	private ShardedTransferEngine engine;
+
+	@BeforeEach
+	public void startEngine() {
+		this.accountsRepository = new AccountsRepositoryInMemory();
+		// one shard, so every message goes through the same thread
+		this.engine = new ShardedTransferEngine(accountsRepository, new TransferValidator(), 1, 64);
+		accountsRepository.createAccount(new Account("Id-1", new BigDecimal("100")));
+		accountsRepository.createAccount(new Account("Id-2", BigDecimal.ZERO));
+	}
+
+	@AfterEach
+	public void stopEngine() throws InterruptedException {
+		engine.shutdown();
+	}
+
+	@Test
+	public void failingCredit_should_refundAndKeepTheShardRunning() throws Exception {
+		accountsRepository.createAccount(new Account("Frozen", BigDecimal.ZERO) {
+
+			@Override
+			public void setBalance(BigDecimal balance) {
+				throw new IllegalStateException("Account is frozen");
+			}
+		});
+
+		CompletableFuture<Long> frozen = engine.submit("Id-1", "Frozen", BigDecimal.TEN);
+		assertThatThrownBy(() -> frozen.get(10, TimeUnit.SECONDS)).isInstanceOf(ExecutionException.class)
+				.hasMessageContaining("Account is frozen");
+		assertThat(accountsRepository.getAccount("Id-1").getBalance()).isEqualByComparingTo("100");
+
+		engine.submit("Id-1", "Id-2", BigDecimal.TEN).get(10, TimeUnit.SECONDS);
+		assertThat(accountsRepository.getAccount("Id-2").getBalance()).isEqualByComparingTo("10");
+	}
+
+	@Test
+	public void failingJournal_should_failTheTransferAndKeepTheShardRunning() throws Exception {
+		engine.setTransferJournal(new NoOpTransferJournal() {
+
+			private boolean failed;
+
+			@Override
+			public long logTransfer(String accountFromId, String accountToId, BigDecimal amount) {
+				if (!failed) {
+					failed = true;
+					throw new IllegalStateException("Journal unavailable");
+				}
+				return 1;
+			}
+		});
+
+		CompletableFuture<Long> first = engine.submit("Id-1", "Id-2", BigDecimal.TEN);
+		assertThatThrownBy(() -> first.get(10, TimeUnit.SECONDS)).isInstanceOf(ExecutionException.class)
+				.hasMessageContaining("Journal unavailable");
+
+		assertThat(engine.submit("Id-1", "Id-2", BigDecimal.TEN).get(10, TimeUnit.SECONDS)).isEqualTo(1);
+	}
+
+	@Test
+	public void stuckShard_should_timeOutTheWaitingCaller() throws Exception {
+		final CountDownLatch release = new CountDownLatch(1);
+		engine.setTransferJournal(new NoOpTransferJournal() {
+
+			@Override
+			public long logTransfer(String accountFromId, String accountToId, BigDecimal amount) {
+				try {
+					release.await();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				return 1;
+			}
+		});
+		AccountsService accountsService = new AccountsService(accountsRepository);
+		accountsService.setAccountLocks(new AccountLocks(1024));
+		accountsService.setTransferValidator(new TransferValidator());
+		accountsService.setNotificationService((account, transferDescription) -> {
+		});
+		accountsService.setShardedTransferEngine(engine);
+		accountsService.setTransferMode(TransferMode.SHARDED);
+		accountsService.setShardedAwaitMillis(100);
+
+		try {
+			assertThatThrownBy(() -> accountsService.amountTransfer("Id-1", "Id-2", BigDecimal.TEN))
+					.isInstanceOf(IllegalStateException.class).hasMessageContaining("accounts.sharded.await-millis");
+		} finally {
+			release.countDown();
+		}
+	}
+}
@@ -0,0 +1,125 @@
+package com.dws.challenge;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.dws.challenge.domain.Account;
+import com.dws.challenge.domain.LedgerEntry;
+import com.dws.challenge.domain.TransferHistoryPage;
+import com.dws.challenge.exception.AccountNotFoundException;
+import com.dws.challenge.exception.NotSufficientBalanceException;
+import com.dws.challenge.repository.AccountsRepositoryInMemory;
+import com.dws.challenge.repository.TransferLedger;
+import com.dws.challenge.service.AccountLocks;
+import com.dws.challenge.service.AccountsService;
+import com.dws.challenge.service.TransferValidator;
+
+public class TransferLedgerTest {
+
+	private long clockMillis = 1_000_000;
+
+	private TransferLedger ledger;
+
+	private AccountsService accountsService;
+
+	@BeforeEach
+	public void prepareService() {
+		this.ledger = new TransferLedger(true, 1_000_000, () -> clockMillis);
+		this.accountsService = new AccountsService(new AccountsRepositoryInMemory());
+		this.accountsService.setAccountLocks(new AccountLocks(1024));
+		this.accountsService.setTransferValidator(new TransferValidator());
+		this.accountsService.setNotificationService((account, transferDescription) -> {
+		});
+		this.accountsService.setTransferLedger(ledger);
+		this.accountsService.createAccount(new Account("Id-1", new BigDecimal("1000.00")));
+		this.accountsService.createAccount(new Account("Id-2", new BigDecimal("0.00")));
+		this.accountsService.createAccount(new Account("Id-3", new BigDecimal("0.00")));
+	}
+
+	@Test
+	public void committedTransfers_should_beListedForBothAccounts() {
+		accountsService.amountTransfer("Id-1", "Id-2", new BigDecimal("10.00"));
+		clockMillis += 1000;
+		accountsService.amountTransfer("Id-1", "Id-3", new BigDecimal("20.50"));
+		assertThatThrownBy(() -> accountsService.amountTransfer("Id-3", "Id-2", new BigDecimal("99.00")))
+				.isInstanceOf(NotSufficientBalanceException.class);
+
+		TransferHistoryPage page = accountsService.getTransferHistory("Id-1", null, null, 0, 100);
+		assertThat(page.getTransfers()).extracting(LedgerEntry::getAccountTo).containsExactly("Id-2", "Id-3");
+		assertThat(page.getTransfers().get(1).getAmount()).isEqualByComparingTo("20.50");
+		assertThat(page.getTransfers().get(1).getTimestamp()).isEqualTo(Instant.ofEpochMilli(1_001_000));
+		assertThat(page.getNext()).isNull();
+
+		assertThat(accountsService.getTransferHistory("Id-3", null, null, 0, 100).getTransfers())
+				.extracting(LedgerEntry::getSequence).containsExactly(2L);
+	}
+
+	@Test
+	public void history_should_filterByTimeAndPage() {
+		for (int i = 0; i < 250; i++) {
+			clockMillis += 10;
+			accountsService.amountTransfer("Id-1", i % 2 == 0 ? "Id-2" : "Id-3", new BigDecimal("1.00"));
+		}
+		Instant from = Instant.ofEpochMilli(1_000_000 + 10 * 50);
+		Instant to = Instant.ofEpochMilli(1_000_000 + 10 * 201);
+
+		TransferHistoryPage first = accountsService.getTransferHistory("Id-1", from, to, 0, 100);
+		assertThat(first.getTransfers()).hasSize(100);
+		assertThat(first.getTransfers().get(0).getSequence()).isEqualTo(50);
+		assertThat(first.getNext()).isEqualTo(149);
+
+		TransferHistoryPage second = accountsService.getTransferHistory("Id-1", from, to, first.getNext(), 100);
+		assertThat(second.getTransfers()).extracting(LedgerEntry::getSequence).startsWith(150L).endsWith(200L);
+		assertThat(second.getNext()).isNull();
+
+		assertThat(accountsService.getTransferHistory("Id-2", from, to, 0, 1000).getTransfers()).hasSize(75);
+	}
+
+	@Test
+	public void largeAmounts_should_keepTheirValue() {
+		accountsService.createAccount(new Account("Id-4", new BigDecimal("1e30")));
+		accountsService.amountTransfer("Id-4", "Id-2", new BigDecimal("123456789012345678901234567.891"));
+
+		assertThat(accountsService.getTransferHistory("Id-2", null, null, 0, 10).getTransfers().get(0).getAmount())
+				.isEqualByComparingTo("123456789012345678901234567.891");
+	}
+
+	@Test
+	public void unknownAccount_should_notBeFound() {
+		assertThatThrownBy(() -> accountsService.getTransferHistory("Id-9", null, null, 0, 10))
+				.isInstanceOf(AccountNotFoundException.class);
+	}
+
+	@Test
+	public void fullLedger_should_markHistoryTruncated() {
+		accountsService.setTransferLedger(new TransferLedger(true, 2, () -> clockMillis));
+		accountsService.amountTransfer("Id-1", "Id-2", new BigDecimal("1.00"));
+		accountsService.amountTransfer("Id-1", "Id-2", new BigDecimal("2.00"));
+		clockMillis += 1000;
+		accountsService.amountTransfer("Id-1", "Id-3", new BigDecimal("3.00"));
+
+		TransferHistoryPage page = accountsService.getTransferHistory("Id-1", null, null, 0, 100);
+		assertThat(page.getTransfers()).hasSize(2);
+		assertThat(page.getTruncated()).isTrue();
+		assertThat(accountsService.getTransferHistory("Id-3", null, null, 0, 100).getTruncated()).isTrue();
+		assertThat(accountsService.getTransferHistory("Id-1", null, Instant.ofEpochMilli(clockMillis), 0, 100)
+				.getTruncated()).isNull();
+		assertThat(accountsService.getTransferLedger().getDroppedCount()).isEqualTo(1);
+	}
+
+	@Test
+	public void memory_should_stayCompactPerEntry() {
+		TransferLedger large = new TransferLedger(true, 1_000_000, () -> clockMillis);
+		for (int i = 0; i < 1_000_000; i++) {
+			large.append("Id-" + (i % 1000), "Id-" + (1000 + i % 1000), new BigDecimal("1.25"));
+		}
+
+		assertThat(large.memoryBytes() / large.size()).isLessThan(48);
+	}
+}
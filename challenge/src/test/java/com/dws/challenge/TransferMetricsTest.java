@@ -0,0 +1,66 @@
+package com.dws.challenge;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.math.BigDecimal;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.dws.challenge.domain.Account;
+import com.dws.challenge.exception.NotSufficientBalanceException;
+import com.dws.challenge.repository.AccountsRepositoryInMemory;
+import com.dws.challenge.service.AccountLocks;
+import com.dws.challenge.service.AccountsService;
+import com.dws.challenge.service.TransferMetrics;
+import com.dws.challenge.service.TransferValidator;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+public class TransferMetricsTest {
+
+	private SimpleMeterRegistry registry;
+
+	private AccountsService accountsService;
+
+	@BeforeEach
+	public void prepareService() {
+		AccountsRepositoryInMemory repository = new AccountsRepositoryInMemory();
+		this.registry = new SimpleMeterRegistry();
+		this.accountsService = new AccountsService(repository);
+		this.accountsService.setAccountLocks(new AccountLocks(1024));
+		this.accountsService.setTransferValidator(new TransferValidator());
+		this.accountsService.setNotificationService((account, transferDescription) -> {
+		});
+		this.accountsService.setTransferMetrics(new TransferMetrics(registry, repository, true));
+		this.accountsService.createAccount(new Account("Id-1", new BigDecimal("100.00")));
+		this.accountsService.createAccount(new Account("Id-2", new BigDecimal("0.00")));
+	}
+
+	@Test
+	public void transfer_should_recordEveryStep() {
+		accountsService.amountTransfer("Id-1", "Id-2", new BigDecimal("10.00"));
+
+		assertThat(registry.get("transfers.duration").timer().count()).isEqualTo(1);
+		assertThat(registry.get("transfers.step").tag("step", "validate").timer().count()).isEqualTo(1);
+		assertThat(registry.get("transfers.step").tag("step", "debit").timer().count()).isEqualTo(1);
+		assertThat(registry.get("transfers.step").tag("step", "credit").timer().count()).isEqualTo(1);
+		assertThat(registry.get("transfers.lock.wait").timer().count()).isEqualTo(1);
+		assertThat(registry.get("transfers.lock.hold").timer().count()).isEqualTo(1);
+		assertThat(registry.get("notifications.duration").timer().count()).isEqualTo(2);
+		assertThat(registry.get("accounts.repository.lookup").timer().count()).isPositive();
+		assertThat(registry.get("accounts.repository.size").gauge().value()).isEqualTo(2);
+	}
+
+	@Test
+	public void rejectedTransfer_should_countByExceptionType() {
+		assertThatThrownBy(() -> accountsService.amountTransfer("Id-2", "Id-1", new BigDecimal("10.00")))
+				.isInstanceOf(NotSufficientBalanceException.class);
+
+		assertThat(registry.get("transfers.rejected").tag("exception", "NotSufficientBalanceException").counter()
+				.count()).isEqualTo(1);
+		assertThat(registry.get("transfers.duration").timer().count()).isEqualTo(1);
+		assertThat(registry.get("transfers.step").tag("step", "debit").timer().count()).isZero();
+	}
+}
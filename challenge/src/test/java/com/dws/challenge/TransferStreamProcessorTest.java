@@ -0,0 +1,191 @@
+package com.dws.challenge;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.dws.challenge.domain.Account;
+import com.dws.challenge.repository.AccountsRepositoryInMemory;
+import com.dws.challenge.service.AccountLocks;
+import com.dws.challenge.service.AccountsService;
+import com.dws.challenge.service.AdmissionControl;
+import com.dws.challenge.service.TransferStreamProcessor;
+import com.dws.challenge.service.TransferValidator;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+public class TransferStreamProcessorTest {
+
+	private static final int CHUNK_SIZE = 10;
+
+	private static final String TRANSFER = "{\"accountFrom\":\"Id-1\",\"accountTo\":\"Id-2\",\"transferAmount\":1}\n";
+
+	private final ObjectMapper objectMapper = new ObjectMapper();
+
+	private AccountLocks accountLocks;
+
+	private AccountsService accountsService;
+
+	private TransferStreamProcessor processor;
+
+	@BeforeEach
+	public void prepareProcessor() {
+		this.accountLocks = new AccountLocks(1024);
+		this.accountsService = new AccountsService(new AccountsRepositoryInMemory());
+		this.accountsService.setAccountLocks(accountLocks);
+		this.accountsService.setTransferValidator(new TransferValidator());
+		this.accountsService.setNotificationService((account, transferDescription) -> {
+		});
+		this.accountsService.createAccount(new Account("Id-1", new BigDecimal("100000")));
+		this.accountsService.createAccount(new Account("Id-2", BigDecimal.ZERO));
+		this.processor = new TransferStreamProcessor(accountsService, AdmissionControl.disabled(), objectMapper,
+				CHUNK_SIZE, 2);
+	}
+
+	@AfterEach
+	public void shutdownProcessor() {
+		processor.shutdown();
+	}
+
+	@Test
+	public void stream_should_reportEveryRecordInOrder() throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+		int records = processor.process(input(TRANSFER.repeat(25)
+				+ "{\"accountFrom\":\"Id-1\",\"accountTo\":\"Id-1\",\"transferAmount\":1}\n"
+				+ "{\"accountFrom\":\"Id-1\",\"accountTo\":\"Id-2\",\"transferAmount\":\"x\"}\n" + TRANSFER), out, null);
+
+		List<JsonNode> results = results(out);
+		assertThat(records).isEqualTo(28);
+		assertThat(results).hasSize(28);
+		for (int i = 0; i < results.size(); i++) {
+			assertThat(results.get(i).get("index").asInt()).isEqualTo(i);
+		}
+		assertThat(results.get(25).get("status").asText()).isEqualTo("SAME_ACCOUNT");
+		assertThat(results.get(26).get("status").asText()).isEqualTo("FAILED");
+		assertThat(results.get(27).get("status").asText()).isEqualTo("COMPLETED");
+		assertThat(accountsService.getAccount("Id-2").getBalance()).isEqualByComparingTo("26");
+	}
+
+	@Test
+	public void malformedStream_should_beReportedAndEndTheResults() throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+		int records = processor.process(input(TRANSFER.repeat(15) + "{\"accountFrom\" ]\n" + TRANSFER), out, null);
+
+		List<JsonNode> results = results(out);
+		assertThat(records).isEqualTo(15);
+		assertThat(results).hasSize(16);
+		assertThat(results.get(15).get("index").asInt()).isEqualTo(15);
+		assertThat(results.get(15).get("status").asText()).isEqualTo("FAILED");
+		assertThat(results.get(15).get("message").asText()).startsWith("Malformed transfer stream");
+		assertThat(accountsService.getAccount("Id-2").getBalance()).isEqualByComparingTo("15");
+	}
+
+	@Test
+	public void writeFailure_should_stopTheStream() {
+		final AtomicInteger writes = new AtomicInteger();
+		// Fails when the results of the first chunk are flushed
+		OutputStream out = new OutputStream() {
+
+			@Override
+			public void write(int b) throws IOException {
+				writes.incrementAndGet();
+				throw new IOException("Connection reset");
+			}
+
+			@Override
+			public void write(byte[] b, int off, int len) throws IOException {
+				writes.incrementAndGet();
+				throw new IOException("Connection reset");
+			}
+		};
+
+		assertThatThrownBy(() -> processor.process(input(TRANSFER.repeat(100)), out, null))
+				.isInstanceOf(IOException.class).hasMessageContaining("Connection reset");
+
+		// nothing is written again, and no chunk after the first is applied
+		assertThat(writes.get()).isEqualTo(1);
+		assertThat(accountsService.getAccount("Id-2").getBalance()).isEqualByComparingTo("10");
+	}
+
+	@Test
+	public void slowChunks_should_holdBackReading() throws Exception {
+		final int total = 1000;
+		final AtomicInteger served = new AtomicInteger();
+		final byte[] record = TRANSFER.getBytes(StandardCharsets.UTF_8);
+		// Serves one record per read, and counts them
+		InputStream in = new InputStream() {
+
+			@Override
+			public int read() {
+				throw new UnsupportedOperationException();
+			}
+
+			@Override
+			public int read(byte[] b, int off, int len) {
+				if (served.get() == total) {
+					return -1;
+				}
+				served.incrementAndGet();
+				System.arraycopy(record, 0, b, off, record.length);
+				return record.length;
+			}
+		};
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		accountLocks.lock("Id-1");
+		try {
+			Future<Integer> processed = executor.submit(() -> processor.process(in, out, null));
+
+			// the first chunk is stuck on the lock: one more chunk is read, then the reader waits for it
+			long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+			while (served.get() < 2 * CHUNK_SIZE && System.nanoTime() < deadline) {
+				Thread.sleep(1);
+			}
+			Thread.sleep(200);
+			assertThat(served.get()).isBetween(2 * CHUNK_SIZE, 2 * CHUNK_SIZE + 1);
+			assertThat(processed.isDone()).isFalse();
+
+			accountLocks.unlock("Id-1");
+			assertThat(processed.get(10, TimeUnit.SECONDS)).isEqualTo(total);
+		} finally {
+			executor.shutdown();
+		}
+		assertThat(results(out)).hasSize(total);
+		assertThat(accountsService.getAccount("Id-2").getBalance()).isEqualByComparingTo("1000");
+	}
+
+	private static InputStream input(String records) {
+		return new ByteArrayInputStream(records.getBytes(StandardCharsets.UTF_8));
+	}
+
+	private List<JsonNode> results(ByteArrayOutputStream out) throws IOException {
+		List<JsonNode> results = new ArrayList<>();
+		for (String line : out.toString(StandardCharsets.UTF_8).split("\n")) {
+			if (!line.isEmpty()) {
+				results.add(objectMapper.readTree(line));
+			}
+		}
+		return results;
+	}
+}